@@ -20,21 +20,30 @@ public class Anilamp extends JFrame {
   private final Camera camera;
   private final Anilamp_GLEventListener glEventListener;
 
-  static JButton random, reset, jump;
+  private static final String TITLE = "COM3503 Anilamp";
 
   /**
    * The main method for Anilamp.
    *
-   * @param args Command line arguments  (not used)
+   * @param args Command line arguments, see Anilamp_Options
    */
   public static void main(String[] args) {
-    new Anilamp();
+    Anilamp_Options options = Anilamp_Options.parse(args);
+    if (options.bvhBoxes > 0) {
+      Anilamp_Headless.benchmarkBVH(options.bvhBoxes);
+    } else if (options.headlessFrames > 0) {
+      Anilamp_Headless.run(options);
+    } else {
+      new Anilamp(options);
+    }
   }
 
   /**
    * Constructor for the Anilamp frame.
+   *
+   * @param options Command line options
    */
-  private Anilamp() {
+  private Anilamp(Anilamp_Options options) {
     final Container contentPane = getContentPane();
 
     // Canvas on center
@@ -42,19 +51,32 @@ public class Anilamp extends JFrame {
     glcapabilities.setDepthBits(24); // Prevent Z-fighting
     canvas = new GLCanvas(glcapabilities);
     camera = new Camera(Camera.ROOM_X, Camera.DEFAULT_TARGET, Camera.DEFAULT_UP);
-    glEventListener = new Anilamp_GLEventListener(camera);
+    glEventListener = new Anilamp_GLEventListener(camera, options);
     canvas.addGLEventListener(glEventListener);
-    canvas.addMouseMotionListener(new MyMouseInput(camera));
-    canvas.addKeyListener(new MyKeyboardInput(camera));
+    canvas.addMouseMotionListener(new MyMouseInput());
+    canvas.addMouseListener(new MyMousePicker());
+    glEventListener.setPickListener(name -> SwingUtilities.invokeLater(
+        () -> setTitle(name == null ? TITLE : TITLE + " - " + name)));
+    canvas.addKeyListener(new MyKeyboardInput());
 
     // Creates a control panel on the left side
     final JPanel buttonPanel = createControlPanel();
     contentPane.add(buttonPanel, BorderLayout.WEST);
     contentPane.add(canvas, BorderLayout.CENTER);
 
-    FPSAnimator animator = new FPSAnimator(canvas, 60);
+    FPSAnimator animator = new FPSAnimator(canvas, Anilamp_Input.FRAME_RATE);
     animator.start();
 
+    // Stop drawing and release the scene before exiting, which finishes a recording
+    addWindowListener(new WindowAdapter() {
+      public void windowClosing(WindowEvent e) {
+        animator.stop();
+        canvas.destroy();
+      }
+    });
+    glEventListener.setReplayListener(() -> SwingUtilities.invokeLater(
+        () -> dispatchEvent(new WindowEvent(this, WindowEvent.WINDOW_CLOSING))));
+
     setFrameProperties();
   }
 
@@ -67,7 +89,7 @@ public class Anilamp extends JFrame {
 
     /* Set title, size, and location */
     final Dimension screenDimensions = Toolkit.getDefaultToolkit().getScreenSize();
-    setTitle("COM3503 Anilamp");
+    setTitle(TITLE);
     setSize(WIDTH, HEIGHT);
     setLocation(new Point((screenDimensions.width - WIDTH) / 2,
         (screenDimensions.height - HEIGHT) / 2)
@@ -155,19 +177,19 @@ public class Anilamp extends JFrame {
     deskPanel.setLayout(deskGroup);
 
     frontView.addActionListener(e -> {
-      camera.setCamera(Camera.CameraType.X);
+      glEventListener.post(Anilamp_Input.Type.VIEW, Camera.CameraType.X.name());
       canvas.requestFocusInWindow();
     });
     leftView.addActionListener(e -> {
-      camera.setCamera(Camera.CameraType.NZ);
+      glEventListener.post(Anilamp_Input.Type.VIEW, Camera.CameraType.NZ.name());
       canvas.requestFocusInWindow();
     });
     rightView.addActionListener(e -> {
-      camera.setCamera(Camera.CameraType.Z);
+      glEventListener.post(Anilamp_Input.Type.VIEW, Camera.CameraType.Z.name());
       canvas.requestFocusInWindow();
     });
     deskView.addActionListener(e -> {
-      camera.setCamera(Camera.CameraType.DESK);
+      glEventListener.post(Anilamp_Input.Type.VIEW, Camera.CameraType.DESK.name());
       canvas.requestFocusInWindow();
     });
 
@@ -237,7 +259,7 @@ public class Anilamp extends JFrame {
     // Change the intensity of world lights
     intensity.addChangeListener(e -> {
       float val = ((Double) intensity.getValue()).floatValue();
-      glEventListener.setIntensity(val);
+      glEventListener.post(Anilamp_Input.Type.INTENSITY, Float.toString(val));
 
       if (val == 0) {
         glEventListener.lightIsOn = false;
@@ -268,9 +290,10 @@ public class Anilamp extends JFrame {
     JPanel animationPanel = new JPanel();
     animationPanel.setBorder(BorderFactory.createTitledBorder("Animation"));
 
-    random = new JButton("Random Pose");
-    reset = new JButton("Reset");
-    jump = new JButton("Jump");
+    JButton random = new JButton("Random Pose");
+    JButton reset = new JButton("Reset");
+    JButton jump = new JButton("Jump");
+    JCheckBox sway = new JCheckBox("Idle Sway");
 
     GroupLayout lampGroup = new GroupLayout(lampPanel);
     lampGroup.setAutoCreateGaps(true);
@@ -304,33 +327,28 @@ public class Anilamp extends JFrame {
         .addComponent(random)
         .addComponent(reset)
         .addComponent(jump)
+        .addComponent(sway)
     );
     animationGroup.setVerticalGroup(animationGroup.createParallelGroup(Alignment.LEADING)
         .addGroup(animationGroup.createSequentialGroup()
             .addComponent(random)
             .addComponent(reset)
-            .addComponent(jump))
+            .addComponent(jump)
+            .addComponent(sway))
     );
     animationPanel.setLayout(animationGroup);
 
-    // Turn spotlight on or off
-    onOrOff.addActionListener(e -> {
-      if (glEventListener.spotlightIsOn) {
-        onOrOff.setText("Turn ON");
-      } else {
-        onOrOff.setText("Turn OFF");
-      }
+    // Turn spotlight on or off, the label follows the spotlight once it is switched
+    onOrOff.addActionListener(e -> glEventListener.post(Anilamp_Input.Type.SPOTLIGHT, ""));
+    glEventListener.setSpotlightListener(on -> SwingUtilities.invokeLater(
+        () -> onOrOff.setText(on ? "Turn OFF" : "Turn ON")));
 
-      glEventListener.setSpotlightOnOrOff();
-    });
-
-    // Animation controls
-    random.addActionListener(e -> glEventListener.lamp.clickedRandom = true);
-    reset.addActionListener(e -> glEventListener.lamp.clickedReset = true);
-    jump.addActionListener(e -> {
-      glEventListener.lamp.clickedReset = true;
-      glEventListener.lamp.clickedJump = true;
-    });
+    // Animation controls, a new animation blends from the current one
+    random.addActionListener(e -> glEventListener.post(Anilamp_Input.Type.RANDOM, ""));
+    reset.addActionListener(e -> glEventListener.post(Anilamp_Input.Type.RESET, ""));
+    jump.addActionListener(e -> glEventListener.post(Anilamp_Input.Type.JUMP, ""));
+    sway.addActionListener(e -> glEventListener.post(Anilamp_Input.Type.SWAY,
+        Boolean.toString(sway.isSelected())));
 
     return lampPanel;
   }
@@ -342,12 +360,6 @@ public class Anilamp extends JFrame {
    */
   private class MyKeyboardInput extends KeyAdapter {
 
-    private final Camera camera;
-
-    MyKeyboardInput(Camera camera) {
-      this.camera = camera;
-    }
-
     public void keyPressed(KeyEvent e) {
       Camera.Movement m = Camera.Movement.NO_MOVEMENT;
       switch (e.getKeyCode()) {
@@ -369,8 +381,13 @@ public class Anilamp extends JFrame {
         case KeyEvent.VK_Z:
           m = Camera.Movement.BACK;
           break;
+        case KeyEvent.VK_P:
+          glEventListener.post(Anilamp_Input.Type.PREPASS, "");
+          break;
+      }
+      if (m != Camera.Movement.NO_MOVEMENT) {
+        glEventListener.post(Anilamp_Input.Type.MOVE, m.name());
       }
-      camera.keyboardInput(m);
     }
   }
 
@@ -382,11 +399,6 @@ public class Anilamp extends JFrame {
   private class MyMouseInput extends MouseMotionAdapter {
 
     private Point lastpoint;
-    private final Camera camera;
-
-    MyMouseInput(Camera camera) {
-      this.camera = camera;
-    }
 
     /**
      * mouse is used to control camera position.
@@ -399,7 +411,7 @@ public class Anilamp extends JFrame {
       float dx = (float) (ms.x - lastpoint.x) * sensitivity;
       float dy = (float) (ms.y - lastpoint.y) * sensitivity;
       if (e.getModifiersEx() == MouseEvent.BUTTON1_DOWN_MASK) {
-        camera.updateYawPitch(dx, -dy);
+        glEventListener.post(Anilamp_Input.Type.TURN, dx + " " + -dy);
       }
       lastpoint = ms;
     }
@@ -413,4 +425,19 @@ public class Anilamp extends JFrame {
       lastpoint = e.getPoint();
     }
   }
+
+  /**
+   * A class for picking the object under the mouse when it is clicked.
+   */
+  private class MyMousePicker extends MouseAdapter {
+
+    /**
+     * Shows the name of the clicked object in the title.
+     *
+     * @param e instance of MouseEvent
+     */
+    public void mouseClicked(MouseEvent e) {
+      glEventListener.requestPick(e.getX(), e.getY(), canvas.getWidth(), canvas.getHeight());
+    }
+  }
 }
\ No newline at end of file
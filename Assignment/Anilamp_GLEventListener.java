@@ -1,7 +1,14 @@
 import com.jogamp.opengl.*;
+import java.awt.Color;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.util.*;
+import java.util.function.*;
 import lib.*;
 import lib.gmaths.*;
+import lib.physics.*;
 import models.*;
 import shapes.*;
 
@@ -12,8 +19,11 @@ import shapes.*;
  * @author Zer Jun Eng (zjeng1@sheffield.ac.uk)
  */
 class Anilamp_GLEventListener implements GLEventListener {
-  Anilamp_GLEventListener(Camera camera) {
+  Anilamp_GLEventListener(Camera camera, Anilamp_Options options) {
     this.camera = camera;
+    this.options = options;
+    input = Anilamp_Input.create(options);
+    timings = createTimings();
   }
 
   // ***************************************************
@@ -30,8 +40,7 @@ class Anilamp_GLEventListener implements GLEventListener {
     gl.glFrontFace(GL.GL_CCW);    // default is 'CCW'
     gl.glEnable(GL.GL_CULL_FACE); // default is 'not enabled'
     gl.glCullFace(GL.GL_BACK);    // default is 'back', assuming CCW
-    gl.glEnable(GL.GL_BLEND);
-    gl.glBlendFunc(GL.GL_SRC_ALPHA, GL.GL_ONE_MINUS_SRC_ALPHA);
+    gl.glBlendFunc(GL.GL_SRC_ALPHA, GL.GL_ONE_MINUS_SRC_ALPHA); // Enabled by transparent draws
 
     initialise(gl);
   }
@@ -40,6 +49,12 @@ class Anilamp_GLEventListener implements GLEventListener {
   public void reshape(GLAutoDrawable drawable, int x, int y, int width, int height) {
     GL3 gl = drawable.getGL().getGL3();
     gl.glViewport(x, y, width, height);
+    viewportWidth = width;
+    viewportHeight = height;
+    renderStats.setViewport(width, height);
+    if (deferredRenderer != null) {
+      deferredRenderer.resize(gl, width, height);
+    }
     float aspect = (float) width / (float) height;
     camera.setPerspectiveMatrix(Mat4Transform.perspective(45, aspect));
   }
@@ -54,103 +69,343 @@ class Anilamp_GLEventListener implements GLEventListener {
   public void dispose(GLAutoDrawable drawable) {
     GL3 gl = drawable.getGL().getGL3();
 
-    for (Light light : lightList) {
-      light.dispose(gl);
-    }
+    closeInput();
+    lighting.dispose(gl);
 
     for (Model model : modelList) {
       model.dispose(gl);
     }
+
+    renderStats.dispose(gl);
+    skybox.dispose(gl);
+    glBackend.dispose(gl);
+    textureStreamer.dispose();
+    if (frameRecorder != null) {
+      frameRecorder.finish(gl);
+      System.out.println(frameRecorder);
+    }
+    drawList.dispose();
+    uniformRing.dispose(gl);
+    if (indirectDraws != null) {
+      indirectDraws.dispose(gl);
+    }
+    if (deferredRenderer != null) {
+      deferredRenderer.dispose(gl);
+    }
   }
 
   // ***************************************************
   /* THE SCENE */
 
   private final Camera camera;
-  private Light lampLight;
-  private Model floor;                                                         // Floor
-  private Model wall;                                                          // Wall
-  private Model topWallpaper, bottomWallpaper, leftWallpaper, rightWallpaper;  // Wallpaper
-  private Model tableFrame, drawerGaps, drawerHandle;                          // Table
-  private Model frame, holder, picture;                                        // Picture frame
-  private Model pot, cactus, flower;                                           // Cactus plant pot
-  private Model body, nose, ear, leg, cubeDeco, sphereDeco;                    // Piggy bank
-  private Model cube, cylinder, sphere, frustumCone;                           // Lamp
-  private Model lampEar, lowerTail;                                            // Lamp decorations
-  private Model windowFrame, glass, outsideScene;                         // Window and scene
-
+  private final Anilamp_Options options;
+  private int viewportWidth, viewportHeight;
+  private Light innerWorldLight, lampLight;
+
+  private Lighting lighting;
+  private DrawList drawList;
+  private Shader prepassShader;
+  private IndirectDraws indirectDraws;  // Null without OpenGL 4.3
+  private TextureStreamer textureStreamer;  // Null if the textures were loaded with the scene
+  private FrameRecorder frameRecorder;  // Null unless the frames are recorded
+
+  private final CommandList bulbCommands = new CommandList();
+  private UniformRing uniformRing;
+  private Skybox skybox;
   private List<Light> lightList;
-  private List<Model> modelList;
+  private Collection<Model> modelList;
+  private SGNode[] staticCasters;  // Still objects casting shadows
+  private Lamp lamp;
 
-  private Room room;
-  private Window window;
-  private Table table;
-  private PictureFrame pictureFrame;
-  private CactusPot cactusPot;
-  private PiggyBank piggyBank;
-  Lamp lamp;
+  // The models, nodes and table size the lamp is built from, written with an exported scene
+  private SceneFile.Named lampParts;
+  private static final String[] LAMP_MODELS = {"lampCube", "lampCylinder", "lampJoint",
+      "lampShade", "lampEar", "lampTail"};
 
   // Room dimension (width, height, depth)
   private final Vec3 ROOM_DIMENSION = new Vec3(20f, 20f, 20f);
 
   private void initialise(GL3 gl) {
-    // Create constant mesh, shaders
-    createConstants(gl);
+    glBackend = new GLBackend(gl, options.vertexFormat);
+    lighting = new Lighting(gl);
+    textureStreamer = new TextureStreamer(glBackend, options.threads);
+    if (options.sceneFile != null) {
+      loadScene(textureStreamer);
+    } else {
+      createScene(textureStreamer);
+    }
+    textureStreamer.start(sceneRoots, camera);
+
+    // Shadows of the ceiling light and the lamp, the other world light is outside the room
+    innerWorldLight.setShadowMap(
+        new ShadowMap(gl, WORLD_SHADOW_RESOLUTION, SHADOW_PCF_RADIUS, WORLD_SHADOW_FOV));
+    lampLight.setShadowMap(
+        new ShadowMap(gl, SPOT_SHADOW_RESOLUTION, SHADOW_PCF_RADIUS, SPOT_SHADOW_FOV));
+    // The prepass is drawn in a few indirect draws where supported
+    if (IndirectDraws.isSupported(gl)) {
+      indirectDraws = new IndirectDraws(gl);
+      prepassShader = glBackend.createShader("shaders/vs_depth.txt", "shaders/fs_shadow.txt",
+          IndirectDraws.DEFINE);
+    } else {
+      prepassShader = glBackend.createShader("shaders/vs_depth.txt", "shaders/fs_shadow.txt");
+    }
+    uniformRing = new UniformRing(gl);
+    renderStats = new RenderStats(gl, "shadow", "prepass", "scene");
+    renderStats.measureOverdraw(gl, PREPASS);
+    renderStats.measureOverdraw(gl, SCENE_PASS);
+    depthPrepass = options.depthPrepass;
+    skybox = new Skybox(gl, cubeMesh);
+    if (options.deferred) {
+      deferredRenderer = new DeferredRenderer(gl, lighting, sphereMesh);
+    }
+    if (options.recordFile != null) {
+      frameRecorder = new FrameRecorder(options.recordFile, Anilamp_Input.FRAME_RATE);
+    }
+
+    // Only the lamp moves, everything else is cached in the shadow maps
+    for (Light light : lightList) {
+      if (light.getShadowMap() != null) {
+        light.getShadowMap().setStaticCasters(staticCasters);
+        light.getShadowMap().setDynamicCasters(lamp.getRoot());
+      }
+    }
+  }
+
+  /**
+   * Creates the scene for the software renderer, which draws it instead of OpenGL, or loads it
+   * from the scene file of the options.
+   *
+   * @param renderer The software renderer
+   */
+  void initialise(SoftwareRenderer renderer) {
+    lighting = new Lighting();
+    if (options.sceneFile != null) {
+      loadScene(renderer);
+    } else if (options.streamTextures) {
+      textureStreamer = new TextureStreamer(renderer, options.threads);
+      createScene(textureStreamer);
+      textureStreamer.start(sceneRoots, camera);
+    } else {
+      createScene(renderer);
+    }
+    if (options.recordFile != null) {
+      frameRecorder = new FrameRecorder(options.recordFile, Anilamp_Input.FRAME_RATE);
+    }
+  }
+
+  /**
+   * Finishes the recording of the software renderer frames and releases the renderer.
+   *
+   * @param renderer The software renderer the scene was created for
+   */
+  void dispose(SoftwareRenderer renderer) {
+    closeInput();
+    if (textureStreamer != null) {
+      textureStreamer.dispose();
+    }
+    if (frameRecorder != null) {
+      frameRecorder.finish();
+      System.out.println(frameRecorder);
+    }
+    renderer.dispose();
+  }
+
+  /**
+   * Creates the lights, models and scene graphs, with the meshes, textures and shaders of a
+   * render backend, and exports them if the options ask to.
+   *
+   * @param backend The render backend
+   */
+  private void createScene(RenderBackend backend) {
+    SceneFile.Recorder recorder = null;
+    if (options.exportScene != null) {
+      recorder = new SceneFile.Recorder(backend);
+      backend = recorder;
+    }
 
+    // Create constant shader defines
+    createConstants();
+    createLights(backend);
+    Map<String, SGNode> roots = createModels(backend);
+    indexScene(roots);
+
+    if (recorder != null) {
+      try {
+        // The lamp is left out, it is built again on the loaded table
+        Map<String, SGNode> objects = new LinkedHashMap<>(roots);
+        objects.remove("Lamp");
+        List<String> casters = new ArrayList<>();
+        for (Map.Entry<String, SGNode> root : objects.entrySet()) {
+          if (Arrays.asList(staticCasters).contains(root.getValue())) {
+            casters.add(root.getKey());
+          }
+        }
+        SceneFile.write(Paths.get(options.exportScene), recorder, objects,
+            Collections.singleton(lamp.getRoot()), lightList, options.vertexFormat, lampParts,
+            casters);
+        System.out.println("Exported the scene to " + options.exportScene);
+      } catch (IOException e) {
+        System.err.println("[error] Unable to export the scene: " + e.getMessage());
+      }
+    }
+  }
+
+  /**
+   * Creates the lights, then loads the models and scene graphs from the scene file of the
+   * options, and builds the lamp on the loaded table. The scene is built instead if the file
+   * cannot be loaded.
+   *
+   * @param backend The render backend
+   */
+  private void loadScene(RenderBackend backend) {
+    createLights(backend);
+    try {
+      SceneFile scene = SceneFile.load(Paths.get(options.sceneFile), backend,
+          options.vertexFormat, camera, lighting);
+      System.out.println(scene);
+      modelList = scene.getModels();
+      staticCasters = scene.getShadowCasters();
+      cubeMesh = scene.getMesh("cube");
+      if (cubeMesh == null) {
+        cubeMesh = backend.createMesh(Cube.vertices.clone(), Cube.indices.clone());
+      }
+      sphereMesh = scene.getMesh("sphere");
+      if (sphereMesh == null) {
+        sphereMesh = backend.createMesh(Sphere.vertices.clone(), Sphere.indices.clone());
+      }
+      lampParts = scene.getNamed();
+      indexScene(createLamp(scene.getRoots()));
+    } catch (IOException e) {
+      System.err.println("[error] Unable to load the scene, building it: " + e.getMessage());
+      createConstants();
+      indexScene(createModels(backend));
+    }
+  }
+
+  /**
+   * Creates the lights of the scene.
+   *
+   * @param backend The render backend
+   */
+  private void createLights(RenderBackend backend) {
     // Create world lights
-    Light innerWorldLight = new Light(gl, camera);
+    innerWorldLight = new Light(backend, camera);
     innerWorldLight.setPosition(0, ROOM_DIMENSION.y, 0);
 
-    Light outerWorldLight = new Light(gl, camera);
+    Light outerWorldLight = new Light(backend, camera);
     outerWorldLight.setPosition(0, ROOM_DIMENSION.y, -ROOM_DIMENSION.z);
 
     // Create lamp light (spotlight)
-    lampLight = new Spotlight(gl, camera);
-
-    // Add all lights to list for disposal management
-    lightList = Arrays.asList(innerWorldLight, outerWorldLight, lampLight);
-
-    // Create the required models first
-    modelFloor(gl);
-    modelWall(gl);
-    modelWallpaper(gl);
-    modelWindow(gl);
-    modelTable(gl);
-    modelPictureFrame(gl);
-    modelCactusPot(gl);
-    modelPiggyBank(gl);
-    modelLamp(gl);
-
-    // Add all models to list for disposal management
-    modelList = Arrays.asList(floor, wall, topWallpaper, bottomWallpaper, leftWallpaper,
-        rightWallpaper, tableFrame, drawerGaps, drawerHandle, frame, holder, picture, pot, cactus,
-        flower, body, nose, ear, leg, cubeDeco, sphereDeco, cube, cylinder, sphere, frustumCone,
-        lampEar, lowerTail, windowFrame, glass, outsideScene);
-
-    // Room
-    room = new Room(ROOM_DIMENSION, floor, wall);
-    room.new Wallpaper(topWallpaper, bottomWallpaper, leftWallpaper, rightWallpaper);
-    room.initialise();
-
-    // Window
-    window = new Window(ROOM_DIMENSION, windowFrame, glass, outsideScene);
-    window.initialise();
-
-    // Table
-    table = new Table(ROOM_DIMENSION, tableFrame, drawerGaps, drawerHandle);
-    table.initialise();
-
-    // 3 Table accessories
-    pictureFrame = new PictureFrame(frame, holder, picture);
-    pictureFrame.initialise();
-    cactusPot = new CactusPot(pot, cactus, flower);
-    cactusPot.initialise();
-    piggyBank = new PiggyBank(body, nose, ear, leg, cubeDeco, sphereDeco);
-    piggyBank.initialise();
+    lampLight = new Spotlight(backend, camera);
+
+    // Add all lights to the scene lighting, which also disposes them
+    lighting.add(innerWorldLight);
+    lighting.add(outerWorldLight);
+    lighting.add(lampLight);
+    addFillLights(options.fillLights);
+    lightList = lighting.getLights();
+  }
+
+  /**
+   * Creates the models and their scene graphs from the scene description of the options, and
+   * the lamp on the table of the scene.
+   *
+   * @param backend The render backend
+   * @return The roots of the scene graphs by label, the objects on the table first
+   */
+  private Map<String, SGNode> createModels(RenderBackend backend) {
+    SceneDescription scene;
+    try {
+      scene = SceneDescription.load(Paths.get(options.sceneDescription), backend, camera,
+          lighting, vertexDefines, litDefines);
+    } catch (IOException e) {
+      throw new IllegalStateException("Unable to load the scene description", e);
+    }
+    System.out.println(scene);
+    cubeMesh = scene.getMesh("cube");
+    sphereMesh = scene.getMesh("sphere");
+    System.out.println("Cube mesh: " + cubeMesh);
+    System.out.println("Sphere mesh: " + sphereMesh);
+
+    // All models in a list for disposal management
+    modelList = scene.getModels();
+
+    String[] casters = scene.getStrings("shadowCasters");
+    staticCasters = new SGNode[casters.length];
+    for (int i = 0; i < casters.length; i++) {
+      staticCasters[i] = scene.getObject(casters[i]);
+    }
+
+    // The parts of the lamp, and the meshes of the skybox and light volumes
+    lampParts = new SceneFile.Named();
+    lampParts.meshes.put("cube", cubeMesh);
+    lampParts.meshes.put("sphere", sphereMesh);
+    for (String name : LAMP_MODELS) {
+      lampParts.models.put(name, scene.getModel(name));
+    }
+    lampParts.nodes.put("lampAnchor",
+        new SGNode[]{scene.getNode(scene.getString("lampAnchor"))});
+    lampParts.nodes.put("lampSurface",
+        new SGNode[]{scene.getNode(scene.getString("lampSurface"))});
+    String[] obstacles = scene.getStrings("lampObstacles");
+    SGNode[] obstacleNodes = new SGNode[obstacles.length];
+    for (int i = 0; i < obstacles.length; i++) {
+      obstacleNodes[i] = scene.getObject(obstacles[i]);
+    }
+    lampParts.nodes.put("lampObstacles", obstacleNodes);
+    Vec3 tableSize = scene.getVec3("tableSize");
+    lampParts.values.put("tableSize", new float[]{tableSize.x, tableSize.y, tableSize.z});
+    lampParts.values.put("tableTopThickness", new float[]{scene.getFloat("tableTopThickness")});
+    return createLamp(scene.getObjects());
+  }
+
+  /**
+   * Creates the lamp on the table from its parts, the same way for a built and a loaded scene
+   *
+   * @param objects The roots of the scene graphs of the objects by label
+   * @return The roots of the scene graphs by label, the lamp then the objects
+   */
+  private Map<String, SGNode> createLamp(Map<String, SGNode> objects) {
+    // Table top and accessories for the lamp to jump around
+    PhysicsWorld physics = new PhysicsWorld(
+        lampParts.nodes.get("lampSurface")[0].getWorldBounds());
+    for (SGNode obstacle : lampParts.nodes.get("lampObstacles")) {
+      physics.addCollider(obstacle.getWorldBounds());
+    }
 
     // Desk lamp
-    lamp = new Lamp(cube, cylinder, sphere, frustumCone, lampLight, lampEar, lowerTail);
+    Map<String, Model> models = lampParts.models;
+    float[] tableSize = lampParts.values.get("tableSize");
+    lamp = new Lamp(models.get("lampCube"), models.get("lampCylinder"),
+        models.get("lampJoint"), models.get("lampShade"), lampLight, models.get("lampEar"),
+        models.get("lampTail"), physics, lampParts.nodes.get("lampAnchor")[0],
+        new Vec3(tableSize[0], tableSize[1], tableSize[2]),
+        lampParts.values.get("tableTopThickness")[0]);
     lamp.initialise();
+    lamp.setSeed(input.getSeed());
+
+    Map<String, SGNode> roots = new LinkedHashMap<>();
+    roots.put("Lamp", lamp.getRoot());
+    roots.putAll(objects);
+    return roots;
+  }
+
+  /**
+   * Creates the scene index for picking and the draw list. The objects on the table are also
+   * reached through the table, so they must come first: they are not labelled as the table and
+   * each is recorded as a group of its own.
+   *
+   * @param roots The roots of the scene graphs by label
+   */
+  private void indexScene(Map<String, SGNode> roots) {
+    sceneRoots = roots.values();
+    sceneBVH = new BVH();
+    drawList = new DrawList(options.threads);
+    for (Map.Entry<String, SGNode> root : roots.entrySet()) {
+      sceneBVH.add(root.getValue(), root.getKey());
+      drawList.add(root.getValue());
+    }
+    sceneBVH.build();
   }
 
   /**
@@ -159,324 +414,467 @@ class Anilamp_GLEventListener implements GLEventListener {
    * @param gl OpenGL object, for rendering
    */
   private void render(GL3 gl) {
-    gl.glClear(GL.GL_COLOR_BUFFER_BIT | GL.GL_DEPTH_BUFFER_BIT);
+    float deltaTime = beginFrame();
+    if (mustFinishLoading()) {
+      textureStreamer.finish();
+      skybox.finish(gl);
+    }
 
+    // Move the lamp and its spotlight before anything is shadowed or lit by it
+    textureStreamer.update();
+    lamp.update(deltaTime);
+    skybox.update(gl, seconds);
+    lighting.update(gl, camera, viewportWidth, viewportHeight);
+    drawList.sort(camera, viewportHeight);
+
+    renderStats.begin(gl, SHADOW_PASS);
     for (Light light : lightList) {
-      light.render(gl);
+      if (light.getShadowMap() != null) {
+        light.getShadowMap().render(gl, light);
+      }
     }
-
-    // Animation controls
-    // No further animations available until the current one is finished
-    if (lamp.isAnimatingRandom || lamp.isAnimatingReset || lamp.isAnimatingJump) {
-      Anilamp.random.setEnabled(false);
-      Anilamp.reset.setEnabled(false);
-      Anilamp.jump.setEnabled(false);
+    renderStats.end(gl);
+    boolean prepass = depthPrepass;
+    recordCommands(prepass);
+    uploadDrawData(gl);
+
+    // Opaque models into the G-buffer when deferred, then the bulbs and transparent models
+    if (deferredRenderer == null) {
+      gl.glClear(GL.GL_COLOR_BUFFER_BIT | GL.GL_DEPTH_BUFFER_BIT);
     } else {
-      Anilamp.random.setEnabled(true);
-      Anilamp.reset.setEnabled(true);
-      Anilamp.jump.setEnabled(true);
+      deferredRenderer.beginGeometry(gl);
     }
 
-    room.render(gl);
-    table.render(gl);
-    pictureFrame.render(gl);
-    cactusPot.render(gl);
-    piggyBank.render(gl);
-    lamp.render(gl);
-    window.render(gl);
-  }
+    if (prepass) {
+      renderStats.begin(gl, PREPASS);
+      drawList.getPrepassCommands().execute(gl, indirectDraws);
+      renderStats.end(gl);
+    }
 
-  // ***************************************************
-  /* CONSTANTS */
+    renderStats.begin(gl, SCENE_PASS);
+    drawList.getOpaqueCommands().execute(gl);
+    if (deferredRenderer != null) {
+      deferredRenderer.shade(gl, camera);
+    }
+    bulbCommands.execute(gl);
+    skybox.render(gl, camera);
+    drawList.getTransparentCommands().execute(gl);
+    renderStats.end(gl);
+    uniformRing.endFrame(gl);
+    if (frameRecorder != null) {
+      frameRecorder.capture(gl, viewportWidth, viewportHeight);
+    }
+    if (textureStreamer.endFrame()) {
+      System.out.println(textureStreamer);
+    }
 
-  private Mesh cubeMesh, cylinderMesh, frustumConeMesh, sphereMesh, twoTrianglesMesh;
-  private Shader cubeShader, twoTrianglesShader;
+    if (renderStats.endFrame()) {
+      System.out.println(renderStats);
+      System.out.println(lighting.getClusters());
+      System.out.println(drawList);
+      System.out.println("Opaque commands: " + drawList.getOpaqueCommands());
+      System.out.println(uniformRing);
+      if (frameRecorder != null) {
+        System.out.println(frameRecorder);
+      }
+      if (indirectDraws != null) {
+        System.out.println(indirectDraws);
+        indirectDraws.reset();
+      }
+    }
+
+    if (pickRequested) {
+      pickRequested = false;
+      pick();
+    }
+    endFrame();
+  }
+
+  /**
+   * Records the passes of a frame into their command lists, the draws on the recording threads.
+   *
+   * @param prepass Whether to record the depth prepass
+   */
+  private void recordCommands(boolean prepass) {
+    drawList.record(prepass ? prepassShader : null);
+    bulbCommands.reset();
+    for (Light light : lightList) {
+      light.record(bulbCommands);
+    }
+  }
 
   /**
-   * Creates constant meshes, shaders.
+   * Copies the draw data of the recorded passes into the uniform ring, in one go.
    *
    * @param gl OpenGL object
    */
-  private void createConstants(GL3 gl) {
-    cubeMesh = new Mesh(gl, Cube.vertices.clone(), Cube.indices.clone());
-    cylinderMesh = new Mesh(gl, Cylinder.vertices.clone(), Cylinder.indices.clone());
-    frustumConeMesh = new Mesh(gl, FrustumCone.vertices.clone(), FrustumCone.indices.clone());
-    sphereMesh = new Mesh(gl, Sphere.vertices.clone(), Sphere.indices.clone());
-    twoTrianglesMesh = new Mesh(gl, TwoTriangles.vertices.clone(), TwoTriangles.indices.clone());
+  private void uploadDrawData(GL3 gl) {
+    CommandList[] passes = {drawList.getPrepassCommands(), drawList.getOpaqueCommands(),
+        bulbCommands, drawList.getTransparentCommands()};
+    int bytes = 0;
+    for (CommandList pass : passes) {
+      bytes += pass.getDrawDataBytes();
+    }
+    uniformRing.beginFrame(gl, bytes);
+    for (CommandList pass : passes) {
+      pass.upload(uniformRing);
+    }
+    uniformRing.endWrites(gl);
+  }
 
-    cubeShader = new Shader(gl, "shaders/vs_cube.txt", "shaders/fs_cube.txt");
-    twoTrianglesShader = new Shader(gl, "shaders/vs_tt.txt", "shaders/fs_tt.txt");
+  /**
+   * Renders a frame with the software renderer.
+   *
+   * @param renderer The software renderer the scene was created for
+   * @return The frame, see SoftwareRenderer.getFrame()
+   */
+  int[] render(SoftwareRenderer renderer) {
+    float deltaTime = beginFrame();
+    if (textureStreamer != null) {
+      if (mustFinishLoading()) {
+        textureStreamer.finish();
+      }
+      textureStreamer.update();
+    }
+    lamp.update(deltaTime);
+    drawList.sort(camera, renderer.getHeight());
+    int[] frame = renderer.render(drawList, camera, lighting);
+    if (frameRecorder != null) {
+      frameRecorder.capture(frame, renderer.getWidth(), renderer.getHeight());
+    }
+    if (textureStreamer != null && textureStreamer.endFrame()) {
+      System.out.println(textureStreamer);
+    }
+    endFrame();
+    return frame;
   }
 
   // ***************************************************
-  /* LIGHTS */
+  /* INPUT AND TIMING */
 
-  // Turn light off and on
-  boolean lightIsOn = true;
-  boolean spotlightIsOn = true;
+  private final Anilamp_Input input;
+  private Runnable replayListener;
+  private final PrintWriter timings;  // Null unless the options ask for them
+  private int frameCount = 0;
+  private double seconds = 0;  // Time of the animations
+  private long frameStart;
+  private long lastFrameStart = -1;
 
   /**
-   * Sets the intensity of the world lights.
+   * Queues an input event, applied at the start of the next frame so it can be replayed.
    *
-   * @param intensity The intensity spinner value
+   * @param type Type of the event
+   * @param value Its value, or an empty string
    */
-  void setIntensity(float intensity) {
-    for (Light worldLight : lightList) {
-      if (!worldLight.getClass().equals(Spotlight.class)) {
-        Material m = worldLight.getMaterial();
+  void post(Anilamp_Input.Type type, String value) {
+    input.post(type, value);
+  }
 
-        m.setDiffuse(Vec3.multiply(new Vec3(1, 1, 1), intensity));
-        m.setSpecular(Vec3.multiply(new Vec3(1, 1, 1), intensity));
-        worldLight.setLightColor(1 - (1 - intensity) / 2);
-      }
-    }
+  /**
+   * Sets the listener told when the replay of the options has ended.
+   *
+   * @param listener Called on the rendering thread, after the last frame of the replay
+   */
+  void setReplayListener(Runnable listener) {
+    replayListener = listener;
   }
 
   /**
-   * Sets the spotlight on or off.
+   * Starts a frame: advances the time of the animations, by the fixed step of the input or by
+   * the time since the last frame, and applies the input events of the frame.
+   *
+   * @return Seconds to advance the animations by
    */
-  void setSpotlightOnOrOff() {
-    if (spotlightIsOn) {
-      lampLight.setSpotlightIntensity(0);
-      lampLight.setLightColor(0.5f);
-    } else {
-      lampLight.setSpotlightIntensity(1);
-      lampLight.setLightColor(1);
+  private float beginFrame() {
+    frameStart = System.nanoTime();
+    float deltaTime = input.getStep();
+    if (deltaTime == 0 && lastFrameStart >= 0) {
+      deltaTime = (frameStart - lastFrameStart) / 1e9f;
     }
-
-    spotlightIsOn = !spotlightIsOn;
+    seconds += deltaTime;
+    for (Anilamp_Input.Event event : input.poll(frameCount, seconds)) {
+      apply(event);
+    }
+    return deltaTime;
   }
 
-  // ***************************************************
-  /* MODELS */
-
   /**
-   * Creates the model of floor.
+   * Tells if the loading must finish before the frame, the first of a recorded or replayed run,
+   * so its frames do not depend on how long the textures and sky take to load
    *
-   * @param gl OpenGL object, for modelling
+   * @return True before the first frame with a fixed step
    */
-  private void modelFloor(GL3 gl) {
-    final int[] DIFFUSE = TextureLibrary.loadTexture(gl, "textures/floor.jpg");
-    final int[] SPECULAR = TextureLibrary.loadTexture(gl, "textures/floor_specular.jpg");
+  private boolean mustFinishLoading() {
+    return frameCount == 0 && input.getStep() != 0;
+  }
 
-    Material material = new Material(
-        new Vec3(0, 0, 0),
-        new Vec3(0, 0, 0),
-        new Vec3(0.3f, 0.3f, 0.3f), 25f);
-    floor = new Model(camera, lightList, cubeShader, material, cubeMesh, DIFFUSE, SPECULAR);
+  /**
+   * Ends a frame: writes its timings and tells the replay listener if the replay has ended.
+   */
+  private void endFrame() {
+    long end = System.nanoTime();
+    if (timings != null) {
+      double interval = lastFrameStart < 0 ? 0 : (frameStart - lastFrameStart) / 1e6;
+      timings.printf(Locale.ROOT, "%d,%.4f,%.3f,%.3f%n", frameCount, seconds,
+          (end - frameStart) / 1e6, interval);
+    }
+    lastFrameStart = frameStart;
+    frameCount++;
+    if (input.isFinished(frameCount) && !input.isFinished(frameCount - 1)) {
+      System.out.println("Replay ended after " + frameCount + " frames");
+      if (replayListener != null) {
+        replayListener.run();
+      }
+    }
   }
 
   /**
-   * Creates the model of wall.
+   * Applies an input event, an invalid event of a replay is reported and ignored.
    *
-   * @param gl OpenGL object, for modelling
+   * @param event The event
    */
-  private void modelWall(GL3 gl) {
-    final int[] DIFFUSE = TextureLibrary.loadTexture(gl, "textures/wall.jpg");
-    final int[] SPECULAR = TextureLibrary.loadTexture(gl, "textures/wall_specular.jpg");
-
-    Material material = new Material(
-        new Vec3(0, 0, 0),
-        new Vec3(0, 0, 0),
-        new Vec3(0.3f, 0.3f, 0.3f), 25f);
-    wall = new Model(camera, lightList, cubeShader, material, cubeMesh, DIFFUSE, SPECULAR);
+  private void apply(Anilamp_Input.Event event) {
+    try {
+      switch (event.type) {
+        case MOVE:
+          camera.keyboardInput(Camera.Movement.valueOf(event.value));
+          break;
+        case TURN:
+          String[] offsets = event.value.split(" ");
+          camera.updateYawPitch(Float.parseFloat(offsets[0]), Float.parseFloat(offsets[1]));
+          break;
+        case VIEW:
+          camera.setCamera(Camera.CameraType.valueOf(event.value));
+          break;
+        case INTENSITY:
+          setIntensity(Float.parseFloat(event.value));
+          break;
+        case SPOTLIGHT:
+          setSpotlightOnOrOff();
+          break;
+        case PREPASS:
+          depthPrepass = !depthPrepass;
+          System.out.println("Depth prepass " + (depthPrepass ? "on" : "off"));
+          break;
+        default:
+          applyToLamp(event);
+      }
+    } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+      System.err.println("[warning] Ignored the invalid input " + event.type + " " + event.value);
+    }
   }
 
   /**
-   * Creates the model of wallpaper.
+   * Applies an animation control of the lamp.
    *
-   * @param gl OpenGL object, for modelling
+   * @param event The event
    */
-  private void modelWallpaper(GL3 gl) {
-    final int[] DIFFUSE = TextureLibrary.loadTexture(gl, "textures/wallpaper.jpg");
-
-    float[] vertices = TwoTriangles.vertices.clone();
-    int[] indices = TwoTriangles.indices.clone();
-
-    // Texture coordinates for wallpaper
-    final float[] topTexCoords = {
-        Window.RATIO.x, 1,                                                           // top left
-        Window.RATIO.x, Window.Y_POS + Window.RATIO.y,                               // bottom left
-        (1 - Window.RATIO.x) / 2 + Window.RATIO.x, Window.Y_POS + Window.RATIO.y,    // bottom right
-        (1 - Window.RATIO.x) / 2 + Window.RATIO.x, 1                                 // top right
-    };
-
-    final float[] bottomTexCoords = {
-        (1 - Window.RATIO.x) / 2, Window.Y_POS,                     // top left
-        (1 - Window.RATIO.x) / 2, 0,                                // bottom left
-        (1 - Window.RATIO.x) / 2 + Window.RATIO.x, 0,               // bottom right
-        (1 - Window.RATIO.x) / 2 + Window.RATIO.x, Window.Y_POS     // top right
-    };
-
-    final float[] leftTexCoords = {
-        0, 1,                                                 // top left
-        0, 0,                                                 // bottom left
-        (1 - Window.RATIO.x) / 2, 0,                          // bottom right
-        (1 - Window.RATIO.x) / 2, 1                           // top right
-    };
-
-    final float[] rightTexCoords = {
-        (1 - Window.RATIO.x) / 2 + Window.RATIO.x, 1,         // top left
-        (1 - Window.RATIO.x) / 2 + Window.RATIO.x, 0,         // bottom left
-        1, 0,                                                 // bottom right
-        1, 1                                                  // top right
-    };
-
-    Mesh topMesh = new Mesh(gl, TwoTriangles.setTexCoords(vertices, topTexCoords), indices);
-    Mesh bottomMesh = new Mesh(gl, TwoTriangles.setTexCoords(vertices, bottomTexCoords), indices);
-    Mesh leftMesh = new Mesh(gl, TwoTriangles.setTexCoords(vertices, leftTexCoords), indices);
-    Mesh rightMesh = new Mesh(gl, TwoTriangles.setTexCoords(vertices, rightTexCoords), indices);
-
-    Material material = new Material(
-        new Vec3(1f, 1f, 1f),
-        new Vec3(1f, 1f, 1f),
-        new Vec3(0.0f, 0.0f, 0.0f), 32f);
-    topWallpaper = new Model(camera, lightList, twoTrianglesShader, material, topMesh, DIFFUSE);
-    bottomWallpaper = new Model(camera, lightList, twoTrianglesShader, material, bottomMesh, DIFFUSE);
-    leftWallpaper = new Model(camera, lightList, twoTrianglesShader, material, leftMesh, DIFFUSE);
-    rightWallpaper = new Model(camera, lightList, twoTrianglesShader, material, rightMesh, DIFFUSE);
+  private void applyToLamp(Anilamp_Input.Event event) {
+    switch (event.type) {
+      case RANDOM:
+        lamp.clickedRandom = true;
+        break;
+      case RESET:
+        lamp.clickedReset = true;
+        break;
+      case JUMP:
+        lamp.clickedJump = true;
+        break;
+      case SWAY:
+        lamp.idleSway = Boolean.parseBoolean(event.value);
+        break;
+    }
   }
 
   /**
-   * Creates the model of window.
+   * Opens the CSV file of the frame timings of the options.
    *
-   * @param gl OpenGL object, for modelling
+   * @return The file, or null if the options do not ask for timings or it cannot be written
    */
-  private void modelWindow(GL3 gl) {
-    final int[] DIFFUSE = TextureLibrary.loadTexture(gl, "textures/window_frame.jpg");
-    final int[] SPECULAR = TextureLibrary.loadTexture(gl, "textures/window_frame_specular.jpg");
-    final int[] GLASS_DIFFUSE = TextureLibrary.loadTexture(gl, "textures/glass.jpg");
-    final int[] GLASS_SPECULAR = TextureLibrary.loadTexture(gl, "textures/glass_specular.jpg");
-    final int[] SCENE = TextureLibrary.loadTexture(gl, "textures/fuji.jpg");
-    final int[] SNOW = TextureLibrary.loadTexture(gl, "textures/snow.jpg");
+  private PrintWriter createTimings() {
+    if (options.timings == null) {
+      return null;
+    }
+    try {
+      PrintWriter out = new PrintWriter(Files.newBufferedWriter(Paths.get(options.timings)));
+      out.println("frame,seconds,cpu_ms,interval_ms");
+      return out;
+    } catch (IOException e) {
+      System.err.println("[error] Unable to write the timings to " + options.timings + ": "
+          + e.getMessage());
+      return null;
+    }
+  }
 
-    Material material = new Material(
-        new Vec3(1, 1, 1),
-        new Vec3(1, 1, 1),
-        new Vec3(0.3f, 0.3f, 0.3f), 30f);
-    windowFrame = new Model(camera, lightList, cubeShader, material, cubeMesh, DIFFUSE, SPECULAR);
+  private void closeInput() {
+    input.close(frameCount);
+    if (timings != null) {
+      timings.close();
+    }
+  }
 
-    // Transparency glass
-    Shader shader = new Shader(gl, "shaders/vs_cube.txt", "shaders/fs_glass.txt");
-    glass = new Model(camera, lightList, shader, material, cubeMesh, GLASS_DIFFUSE, GLASS_SPECULAR);
+  // ***************************************************
+  /* PICKING */
 
-    shader = new Shader(gl, "shaders/vs_scene.txt", "shaders/fs_scene.txt");
-    outsideScene = new Model(camera, lightList, shader, material, twoTrianglesMesh, SCENE, SNOW);
-  }
+  private BVH sceneBVH;
+  private Collection<SGNode> sceneRoots;
+  private Consumer<String> pickListener;
+  private volatile boolean pickRequested = false;
+  private volatile float pickX, pickY;
 
   /**
-   * Creates the model of table.
+   * Sets the listener told the name of the object under the mouse after each pick.
    *
-   * @param gl OpenGL object, for modelling
+   * @param listener Called on the rendering thread, with null if nothing was hit
    */
-  private void modelTable(GL3 gl) {
-    final int[] DIFFUSE = TextureLibrary.loadTexture(gl, "textures/table.jpg");
-    final int[] SPECULAR = TextureLibrary.loadTexture(gl, "textures/table_specular.jpg");
-    final int[] GAPS = TextureLibrary.loadTexture(gl, "textures/gaps.jpg");
-    final int[] HANDLE_DIFFUSE = TextureLibrary.loadTexture(gl, "textures/drawer_handle.jpg");
-    final int[] HANDLE_SPECULAR = TextureLibrary.loadTexture(gl, "textures/drawer_handle_specular.jpg");
-
-    Material material = new Material(
-        new Vec3(0, 0, 0),
-        new Vec3(0, 0, 0),
-        new Vec3(0.3f, 0.3f, 0.3f), 30f);
-    tableFrame = new Model(camera, lightList, cubeShader, material, cubeMesh, DIFFUSE, SPECULAR);
-    drawerGaps = new Model(camera, lightList, cubeShader, material, cubeMesh, GAPS);
-    drawerHandle = new Model(camera, lightList, cubeShader, material, cylinderMesh, HANDLE_DIFFUSE, HANDLE_SPECULAR);
+  void setPickListener(Consumer<String> listener) {
+    pickListener = listener;
   }
 
   /**
-   * Creates a picture frame.
+   * Picks the object under a point of the canvas on the next frame.
    *
-   * @param gl OpenGL object, for modelling
+   * @param x X of the point in pixels, from the left
+   * @param y Y of the point in pixels, from the top
+   * @param width Canvas width
+   * @param height Canvas height
+   */
+  void requestPick(int x, int y, int width, int height) {
+    pickX = 2f * x / width - 1;
+    pickY = 1 - 2f * y / height;
+    pickRequested = true;
+  }
+
+  /**
+   * Casts a ray from the camera through the requested point, after the scene graph has been
+   * updated for this frame.
+   */
+  private void pick() {
+    BVH.Hit hit = sceneBVH.raycast(camera.getPosition(), camera.getRayDirection(pickX, pickY));
+    if (pickListener != null) {
+      pickListener.accept(hit == null ? null : hit.label + " (" + hit.node.getName() + ")");
+    }
+  }
+
+  // ***************************************************
+  /* CONSTANTS */
+
+  private GLBackend glBackend;
+  private Mesh cubeMesh, sphereMesh;  // Of the skybox and the light volumes
+  private String[] vertexDefines;  // Variant of the shaders for the layout of the meshes
+  private String[] litDefines;     // Variant of the lit shaders of opaque models
+
+  /**
+   * Creates constant shader defines.
    */
-  private void modelPictureFrame(GL3 gl) {
-    final int[] DIFFUSE = TextureLibrary.loadTexture(gl, "textures/frame.jpg");
-    final int[] SPECULAR = TextureLibrary.loadTexture(gl, "textures/frame_specular.jpg");
-    final int[] PICTURE = TextureLibrary.loadTexture(gl, "textures/dog.jpg");
-    final int[] HOLDER_DIFFUSE = TextureLibrary.loadTexture(gl, "textures/window_frame.jpg");
-    final int[] HOLDER_SPECULAR = TextureLibrary.loadTexture(gl, "textures/window_frame_specular.jpg");
-
-    Material material = new Material(
-        new Vec3(1, 1, 1),
-        new Vec3(1, 1, 1),
-        new Vec3(0, 0, 0), 32f);
-    frame = new Model(camera, lightList, cubeShader, material, cubeMesh, DIFFUSE, SPECULAR);
-    picture = new Model(camera, lightList, twoTrianglesShader, material, twoTrianglesMesh, PICTURE);
-    holder = new Model(camera, lightList, cubeShader, material, cubeMesh, HOLDER_DIFFUSE, HOLDER_SPECULAR);
+  private void createConstants() {
+    List<String> defines = new ArrayList<>();
+    if (options.vertexFormat == Mesh.Format.COMPACT) {
+      defines.add(Mesh.COMPACT);
+    }
+    vertexDefines = defines.toArray(new String[0]);
+    if (options.deferred) {
+      defines.add(DeferredRenderer.GBUFFER);
+    }
+    litDefines = defines.toArray(new String[0]);
   }
 
+  // ***************************************************
+  /* LIGHTS */
+
+  // Shadow maps
+  private static final int WORLD_SHADOW_RESOLUTION = 2048;
+  private static final int SPOT_SHADOW_RESOLUTION = 1024;
+  private static final int SHADOW_PCF_RADIUS = 1;       // 3x3 lookups
+  private static final float WORLD_SHADOW_FOV = 60;     // Covers the floor from the ceiling
+  private static final float SPOT_SHADOW_FOV = 35;      // Outer cut off of 15 degrees plus margin
+
+  // Passes timed by the render stats
+  private static final int SHADOW_PASS = 0;
+  private static final int PREPASS = 1;
+  private static final int SCENE_PASS = 2;
+  private RenderStats renderStats;
+  private DeferredRenderer deferredRenderer;  // null for forward shading
+
+  // Turn light off and on
+  boolean lightIsOn = true;
+  private boolean spotlightIsOn = true;
+  private Consumer<Boolean> spotlightListener;
+
+  // Depth prepass before the lit colour pass, toggled with the P key
+  private boolean depthPrepass;
+
   /**
-   * Creates a cactus plant pot.
+   * Sets the intensity of the world lights.
    *
-   * @param gl OpenGL object, for modelling
+   * @param intensity The intensity spinner value
    */
-  private void modelCactusPot(GL3 gl) {
-    final int[] POT_DIFFUSE = TextureLibrary.loadTexture(gl, "textures/pot.jpg");
-    final int[] POT_SPECULAR = TextureLibrary.loadTexture(gl, "textures/pot_specular.jpg");
-    final int[] CACTUS_DIFFUSE = TextureLibrary.loadTexture(gl, "textures/cactus.jpg");
-    final int[] CACTUS_SPECULAR = TextureLibrary.loadTexture(gl, "textures/cactus_specular.jpg");
-    final int[] FLOWER_DIFFUSE = TextureLibrary.loadTexture(gl, "textures/flower.jpg");
-    final int[] FLOWER_SPECULAR = TextureLibrary.loadTexture(gl, "textures/flower_specular.jpg");
-
-    Material material = new Material(
-        new Vec3(1, 1, 1),
-        new Vec3(1, 1, 1),
-        new Vec3(0, 0, 0), 32f);
-    pot = new Model(camera, lightList, cubeShader, material, frustumConeMesh, POT_DIFFUSE, POT_SPECULAR);
-    cactus = new Model(camera, lightList, cubeShader, material, sphereMesh, CACTUS_DIFFUSE, CACTUS_SPECULAR);
-    flower = new Model(camera, lightList, cubeShader, material, sphereMesh, FLOWER_DIFFUSE, FLOWER_SPECULAR);
+  private void setIntensity(float intensity) {
+    for (Light worldLight : lightList) {
+      if (worldLight.getType() == Light.Type.DIRECTIONAL) {
+        Material m = worldLight.getMaterial();
+
+        m.setDiffuse(Vec3.multiply(new Vec3(1, 1, 1), intensity));
+        m.setSpecular(Vec3.multiply(new Vec3(1, 1, 1), intensity));
+        worldLight.setLightColor(1 - (1 - intensity) / 2);
+      }
+    }
   }
 
+  // Fill lights fade out within a few metres, so each lights a small part of the room
+  private static final long FILL_LIGHT_SEED = 3503;
+  private static final float FILL_LIGHT_LINEAR = 1.4f;
+  private static final float FILL_LIGHT_QUADRATIC = 7f;
+
   /**
-   * Creates a piggy bank.
+   * Scatters coloured point lights around the room, to light the scene with many lights.
    *
-   * @param gl OpenGL object, for modelling
+   * @param count Number of lights
    */
-  private void modelPiggyBank(GL3 gl) {
-    final int[] DIFFUSE = TextureLibrary.loadTexture(gl, "textures/piggybank.jpg");
-    final int[] SPECULAR = TextureLibrary.loadTexture(gl, "textures/piggybank_specular.jpg");
-    final int[] DECO = TextureLibrary.loadTexture(gl, "textures/gaps.jpg");
+  private void addFillLights(int count) {
+    Random random = new Random(FILL_LIGHT_SEED);
+    float halfWidth = ROOM_DIMENSION.x / 2 - 1;
+    float halfDepth = ROOM_DIMENSION.z / 2 - 1;
+
+    for (int i = 0; i < count; i++) {
+      Light light = new Light(Light.Type.POINT);
+      light.setPosition((random.nextFloat() * 2 - 1) * halfWidth,
+          1 + random.nextFloat() * (ROOM_DIMENSION.y / 2),
+          (random.nextFloat() * 2 - 1) * halfDepth);
+      light.setAttenuation(1, FILL_LIGHT_LINEAR, FILL_LIGHT_QUADRATIC);
+
+      Color color = Color.getHSBColor(random.nextFloat(), 0.6f, 1);
+      Vec3 rgb = new Vec3(color.getRed() / 255f, color.getGreen() / 255f, color.getBlue() / 255f);
+      light.getMaterial().setDiffuse(rgb);
+      light.getMaterial().setSpecular(Vec3.multiply(rgb, 0.5f));
+      lighting.add(light);
+    }
+  }
 
-    Material material = new Material(
-        new Vec3(1, 1, 1),
-        new Vec3(0, 0, 0),
-        new Vec3(0, 0, 0), 32f);
-    body = new Model(camera, lightList, cubeShader, material, sphereMesh, DIFFUSE, SPECULAR);
-    nose = new Model(camera, lightList, cubeShader, material, cylinderMesh, DIFFUSE, SPECULAR);
-    ear = new Model(camera, lightList, cubeShader, material, sphereMesh, DIFFUSE, SPECULAR);
-    leg = new Model(camera, lightList, cubeShader, material, cylinderMesh, DIFFUSE, SPECULAR);
+  /**
+   * Sets the spotlight on or off.
+   */
+  private void setSpotlightOnOrOff() {
+    if (spotlightIsOn) {
+      lampLight.setSpotlightIntensity(0);
+      lampLight.setLightColor(0.5f);
+    } else {
+      lampLight.setSpotlightIntensity(1);
+      lampLight.setLightColor(1);
+    }
 
-    // Black decorations
-    cubeDeco = new Model(camera, lightList, cubeShader, material, cubeMesh, DECO);
-    sphereDeco = new Model(camera, lightList, cubeShader, material, sphereMesh, DECO);
+    spotlightIsOn = !spotlightIsOn;
+    if (spotlightListener != null) {
+      spotlightListener.accept(spotlightIsOn);
+    }
   }
 
   /**
-   * Creates the model of lamp.
+   * Sets the listener told whether the spotlight is on each time it is switched.
    *
-   * @param gl OpenGL object, for modelling
+   * @param listener Called on the rendering thread
    */
-  private void modelLamp(GL3 gl) {
-    final int[] DIFFUSE = TextureLibrary.loadTexture(gl, "textures/lamp.jpg");
-    final int[] SPECULAR = TextureLibrary.loadTexture(gl, "textures/lamp_specular.jpg");
-    final int[] JOINT = TextureLibrary.loadTexture(gl, "textures/lamp_joint.jpg");
-    final int[] EAR = TextureLibrary.loadTexture(gl, "textures/lamp_ear.jpg");
-
-    Material material = new Material(
-        new Vec3(1, 1, 1),
-        new Vec3(0, 0, 0),
-        new Vec3(1, 1, 1), 32f);
-
-    Mesh mesh = new Mesh(gl, FrustumCone.createVertices(true), FrustumCone.createIndices(false));
-
-    cube = new Model(camera, lightList, cubeShader, material, cubeMesh, DIFFUSE, SPECULAR);
-    cylinder = new Model(camera, lightList, cubeShader, material, cylinderMesh, DIFFUSE, SPECULAR);
-    sphere = new Model(camera, lightList, cubeShader, material, sphereMesh, JOINT, SPECULAR);
-    frustumCone = new Model(camera, lightList, cubeShader, material, mesh, DIFFUSE, SPECULAR);
-
-    // Decorations
-    lampEar = new Model(camera, lightList, cubeShader, material, sphereMesh, EAR, SPECULAR);
-    lowerTail = new Model(camera, lightList, cubeShader, material, cubeMesh, JOINT, SPECULAR);
+  void setSpotlightListener(Consumer<Boolean> listener) {
+    spotlightListener = listener;
   }
 }
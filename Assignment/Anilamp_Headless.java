@@ -0,0 +1,169 @@
+import java.awt.image.*;
+import java.io.*;
+import java.util.*;
+import javax.imageio.*;
+import lib.*;
+import lib.gmaths.*;
+import shapes.*;
+
+/**
+ * I declare that this code is my own work.
+ * Renders the scene with the software renderer without opening a window, for machines without
+ * a GPU. Prints the time taken to build or load the scene and the time per frame, to measure
+ * how the renderer scales with the threads, and saves the last frame. Also times the scene BVH
+ * on random boxes against a brute-force search.
+ *
+ * @author Zer Jun Eng (zjeng1@sheffield.ac.uk)
+ */
+final class Anilamp_Headless {
+
+  private static final int WIDTH = 1280;
+  private static final int HEIGHT = 720;
+  private static final String OUTPUT = "headless.png";
+
+  // Random boxes of the BVH benchmark: spread of their centres, and rays cast
+  private static final float BOX_SPREAD = 100;
+  private static final int BVH_RAYS = 10000;
+
+  private Anilamp_Headless() {
+  }
+
+  /**
+   * Renders the frames of the options from the front view of the room
+   *
+   * @param options Command line options
+   */
+  static void run(Anilamp_Options options) {
+    Camera camera = new Camera(Camera.ROOM_X, Camera.DEFAULT_TARGET, Camera.DEFAULT_UP);
+    camera.setPerspectiveMatrix(Mat4Transform.perspective(45, (float) WIDTH / HEIGHT));
+    Anilamp_GLEventListener scene = new Anilamp_GLEventListener(camera, options);
+    SoftwareRenderer renderer = new SoftwareRenderer(WIDTH, HEIGHT, options.threads);
+    long setup = System.nanoTime();
+    scene.initialise(renderer);
+    System.out.printf("Scene %s in %.2f ms%n", options.sceneFile == null ? "built" : "loaded",
+        (System.nanoTime() - setup) / 1e6);
+
+    long total = 0;
+    for (int i = 0; i < options.headlessFrames; i++) {
+      long start = System.nanoTime();
+      scene.render(renderer);
+      total += System.nanoTime() - start;
+      System.out.println(renderer);
+    }
+    System.out.printf("%d frames, %.2f ms per frame%n", options.headlessFrames,
+        total / 1e6 / options.headlessFrames);
+
+    BufferedImage image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+    image.setRGB(0, 0, WIDTH, HEIGHT, renderer.getFrame(), 0, WIDTH);
+    try {
+      ImageIO.write(image, "png", new File(OUTPUT));
+      System.out.println("Saved the last frame as " + OUTPUT);
+    } catch (IOException e) {
+      System.err.println("[error] Unable to save " + OUTPUT + ": " + e.getMessage());
+    }
+    scene.dispose(renderer);
+  }
+
+  /**
+   * Times building, refitting and ray casting a BVH of random boxes, and checks every ray cast
+   * against a brute-force search
+   *
+   * @param boxes Number of boxes
+   */
+  static void benchmarkBVH(int boxes) {
+    Random random = new Random(1);
+    SoftwareRenderer renderer = new SoftwareRenderer(1, 1, 1);
+    Model cube = new Model(null, null, null, new Material(),
+        renderer.createMesh(Cube.vertices.clone(), Cube.indices.clone()), null);
+    NameNode root = new NameNode("Boxes");
+    TransformNode[] transforms = new TransformNode[boxes];
+    ModelNode[] models = new ModelNode[boxes];
+    for (int i = 0; i < boxes; i++) {
+      transforms[i] = new TransformNode("Box transform", randomBox(random));
+      models[i] = new ModelNode("Box", cube);
+      root.addChild(transforms[i]);
+      transforms[i].addChild(models[i]);
+    }
+    root.update();
+
+    BVH bvh = new BVH();
+    bvh.add(root, "Boxes");
+    long start = System.nanoTime();
+    bvh.build();
+    long built = System.nanoTime() - start;
+
+    // A tenth of the boxes move, as the lamp does in the scene
+    for (int i = 0; i < boxes / 10; i++) {
+      transforms[i].setTransform(randomBox(random));
+      transforms[i].update();
+    }
+    start = System.nanoTime();
+    int refitted = bvh.refit();
+    long refit = System.nanoTime() - start;
+
+    AABB[] bounds = new AABB[boxes];
+    for (int i = 0; i < boxes; i++) {
+      bounds[i] = models[i].getWorldBounds();
+    }
+    long rayNanos = 0, bruteRayNanos = 0;
+    int mismatches = 0;
+    for (int q = 0; q < BVH_RAYS; q++) {
+      Vec3 origin = randomPoint(random);
+      Vec3 direction = Vec3.subtract(randomPoint(random), origin);
+      direction.normalize();
+      start = System.nanoTime();
+      BVH.Hit hit = bvh.raycast(origin, direction);
+      rayNanos += System.nanoTime() - start;
+      start = System.nanoTime();
+      float nearest = Float.MAX_VALUE;
+      for (AABB b : bounds) {
+        nearest = Math.min(nearest, intersect(b, origin, direction));
+      }
+      bruteRayNanos += System.nanoTime() - start;
+      if (hit == null ? nearest != Float.MAX_VALUE : Math.abs(hit.distance - nearest) > 1e-3f) {
+        mismatches++;
+      }
+    }
+    renderer.dispose();
+
+    System.out.printf("BVH of %d boxes: built in %.2f ms, %d moved refitted in %.2f ms%n",
+        boxes, built / 1e6, refitted, refit / 1e6);
+    System.out.printf("%d ray casts: %.2f us each, brute force %.2f us%n", BVH_RAYS,
+        rayNanos / 1e3 / BVH_RAYS, bruteRayNanos / 1e3 / BVH_RAYS);
+    System.out.println(mismatches == 0 ? "Every ray cast matches the brute-force search"
+        : "[error] " + mismatches + " ray casts differ from the brute-force search");
+  }
+
+  // A unit cube scaled between 0.2 and 2, somewhere in the spread
+  private static Mat4 randomBox(Random random) {
+    float scale = 0.2f + 1.8f * random.nextFloat();
+    Vec3 centre = randomPoint(random);
+    return Mat4.multiply(Mat4Transform.translate(centre),
+        Mat4Transform.scale(scale, scale, scale));
+  }
+
+  private static Vec3 randomPoint(Random random) {
+    return new Vec3((random.nextFloat() - 0.5f) * BOX_SPREAD,
+        (random.nextFloat() - 0.5f) * BOX_SPREAD, (random.nextFloat() - 0.5f) * BOX_SPREAD);
+  }
+
+  /**
+   * Distance along a ray to a box, by the slab test
+   *
+   * @return The distance, 0 if the ray starts inside, or Float.MAX_VALUE if it misses
+   */
+  private static float intersect(AABB b, Vec3 origin, Vec3 direction) {
+    float[] o = {origin.x, origin.y, origin.z};
+    float[] d = {direction.x, direction.y, direction.z};
+    float[] lo = {b.min.x, b.min.y, b.min.z};
+    float[] hi = {b.max.x, b.max.y, b.max.z};
+    float near = 0, far = Float.MAX_VALUE;
+    for (int a = 0; a < 3; a++) {
+      float t1 = (lo[a] - o[a]) / d[a];
+      float t2 = (hi[a] - o[a]) / d[a];
+      near = Math.max(near, Math.min(t1, t2));
+      far = Math.min(far, Math.max(t1, t2));
+    }
+    return near <= far ? near : Float.MAX_VALUE;
+  }
+}
@@ -0,0 +1,205 @@
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * I declare that this code is my own work.
+ * Input of Anilamp, recorded to a file and replayed so that two runs draw the same frames. The
+ * camera moves and controls of the UI are queued as events and applied at the start of the next
+ * frame, stamped with its number, so a replay applies each of them on the same frame. While the
+ * input is recorded or replayed, the animations advance by a fixed step each frame instead of
+ * the time between frames, the lamp takes its random poses from the recorded seed, and the
+ * textures and sky are loaded in full before the first frame.
+ *
+ * <p>The file is text: the seed and step, then an event per line with its frame, its time, its
+ * type and its value, and the number of frames at the end.
+ *
+ * @author Zer Jun Eng (zjeng1@sheffield.ac.uk)
+ */
+class Anilamp_Input {
+
+  // Frames per second of the animator, and the fixed step of recorded and replayed animations
+  static final int FRAME_RATE = 60;
+  private static final float STEP = 1f / FRAME_RATE;
+
+  enum Type {
+    MOVE,       // Camera.Movement
+    TURN,       // Yaw and pitch offsets of the camera
+    VIEW,       // Camera.CameraType
+    INTENSITY,  // Of the world lights
+    SPOTLIGHT,  // Toggles the spotlight
+    RANDOM,     // Lamp animations
+    RESET,
+    JUMP,
+    SWAY,       // Whether the lamp sways
+    PREPASS     // Toggles the depth prepass
+  }
+
+  static final class Event {
+    final Type type;
+    final String value;  // Empty if the event has none
+
+    Event(Type type, String value) {
+      this.type = type;
+      this.value = value;
+    }
+  }
+
+  private final long seed;
+  private final float step;
+  private final boolean replaying;
+  private final Queue<Event> posted = new ConcurrentLinkedQueue<>();
+  private final Map<Integer, List<Event>> replayed = new HashMap<>();
+  private int replayFrames = 0;
+  private PrintWriter recording;  // Null unless the input is recorded
+
+  private Anilamp_Input(long seed, float step, boolean replaying) {
+    this.seed = seed;
+    this.step = step;
+    this.replaying = replaying;
+  }
+
+  /**
+   * Creates the input of the options: replayed from a file, recorded to a file, or both to
+   * record the replay again, or neither. A file that cannot be read or written is reported, and
+   * the input is live instead.
+   *
+   * @param options Command line options
+   * @return The input
+   */
+  static Anilamp_Input create(Anilamp_Options options) {
+    Anilamp_Input input = null;
+    if (options.replay != null) {
+      try {
+        input = load(Paths.get(options.replay));
+        System.out.println("Replaying " + input.replayFrames + " frames of " + options.replay);
+      } catch (IOException | RuntimeException e) {
+        System.err.println("[error] Unable to replay " + options.replay + ": " + e.getMessage());
+      }
+    }
+    if (input == null) {
+      boolean fixed = options.recordInput != null;
+      input = new Anilamp_Input(new Random().nextLong(), fixed ? STEP : 0, false);
+    }
+    if (options.recordInput != null) {
+      try {
+        input.recording = new PrintWriter(Files.newBufferedWriter(Paths.get(options.recordInput)));
+        input.recording.println("seed " + input.seed);
+        input.recording.println("step " + input.step);
+      } catch (IOException e) {
+        System.err.println("[error] Unable to record the input to " + options.recordInput + ": "
+            + e.getMessage());
+      }
+    }
+    return input;
+  }
+
+  private static Anilamp_Input load(Path path) throws IOException {
+    try (BufferedReader in = Files.newBufferedReader(path)) {
+      long seed = Long.parseLong(field(in.readLine(), "seed"));
+      float step = Float.parseFloat(field(in.readLine(), "step"));
+      Anilamp_Input input = new Anilamp_Input(seed, step, true);
+      String line;
+      while ((line = in.readLine()) != null) {
+        String[] fields = line.split(" ", 4);
+        if (fields[0].equals("end")) {
+          input.replayFrames = Integer.parseInt(fields[1]);
+          break;
+        }
+        int frame = Integer.parseInt(fields[0]);
+        Event event = new Event(Type.valueOf(fields[2]), fields.length > 3 ? fields[3] : "");
+        input.replayed.computeIfAbsent(frame, f -> new ArrayList<>()).add(event);
+        input.replayFrames = frame + 1;
+      }
+      return input;
+    }
+  }
+
+  private static String field(String line, String name) throws IOException {
+    if (line == null || !line.startsWith(name + " ")) {
+      throw new IOException("Expected " + name);
+    }
+    return line.substring(name.length() + 1);
+  }
+
+  /**
+   * Gets the seed of the random lamp animations
+   *
+   * @return The recorded seed when replaying, else a new one
+   */
+  long getSeed() {
+    return seed;
+  }
+
+  /**
+   * Gets the time a frame advances the animations by
+   *
+   * @return The fixed step in seconds, 0 if the animations follow the time between frames
+   */
+  float getStep() {
+    return step;
+  }
+
+  /**
+   * Queues an event for the next frame, from any thread. The events of the UI are ignored when
+   * replaying.
+   *
+   * @param type Type of the event
+   * @param value Its value, or an empty string
+   */
+  void post(Type type, String value) {
+    if (!replaying) {
+      posted.add(new Event(type, value));
+    }
+  }
+
+  /**
+   * Takes the events of a frame, before anything is updated, and records them
+   *
+   * @param frame Number of the frame, from 0
+   * @param seconds Time of the frame
+   * @return The events in order
+   */
+  List<Event> poll(int frame, double seconds) {
+    List<Event> events = new ArrayList<>();
+    if (replaying) {
+      events.addAll(replayed.getOrDefault(frame, Collections.emptyList()));
+    } else {
+      Event event;
+      while ((event = posted.poll()) != null) {
+        events.add(event);
+      }
+    }
+    if (recording != null) {
+      for (Event event : events) {
+        recording.printf(Locale.ROOT, "%d %.4f %s%s%n", frame, seconds, event.type,
+            event.value.isEmpty() ? "" : " " + event.value);
+      }
+    }
+    return events;
+  }
+
+  /**
+   * Tells if the replay has ended
+   *
+   * @param frames Frames drawn so far
+   * @return True once a replay has drawn all of its frames
+   */
+  boolean isFinished(int frames) {
+    return replaying && frames >= replayFrames;
+  }
+
+  /**
+   * Ends the recording
+   *
+   * @param frames Frames drawn
+   */
+  void close(int frames) {
+    if (recording != null) {
+      recording.println("end " + frames);
+      recording.close();
+      recording = null;
+    }
+  }
+}
@@ -0,0 +1,145 @@
+import lib.*;
+
+/**
+ * I declare that this code is my own work.
+ * Command line options of Anilamp.
+ *
+ * @author Zer Jun Eng (zjeng1@sheffield.ac.uk)
+ */
+class Anilamp_Options {
+
+  private static final String USAGE =
+      "Usage: Anilamp [-lights N] [-deferred] [-prepass] [-float-vertices] [-headless N]"
+      + " [-threads N] [-description FILE] [-stream] [-export-scene FILE] [-scene FILE]"
+      + " [-record FILE] [-record-input FILE] [-replay FILE] [-timings FILE]"
+      + " [-bvh-benchmark N]\n"
+      + "  -lights N         Adds N coloured point lights around the room\n"
+      + "  -deferred         Uses deferred shading instead of clustered forward shading\n"
+      + "  -prepass          Starts with the depth prepass on, toggled with the P key\n"
+      + "  -float-vertices   Stores the meshes as floats instead of the compact layout\n"
+      + "  -headless N       Renders N frames with the software renderer, without a window\n"
+      + "  -threads N        Threads recording the draws and of the software renderer, all\n"
+      + "                    processors by default\n"
+      + "  -description FILE Builds the scene from a JSON scene description, by default\n"
+      + "                    scenes/anilamp.json\n"
+      + "  -stream           Streams the textures in after the first frame with -headless, as the\n"
+      + "                    window always does\n"
+      + "  -export-scene FILE Writes the built scene to a binary scene file\n"
+      + "  -scene FILE        Loads the scene from a scene file instead of building it\n"
+      + "  -record FILE      Records the frames as a raw video if FILE ends with .y4m, else as\n"
+      + "                    PNGs in the folder FILE\n"
+      + "  -record-input FILE Records the input and the random seed, with the animations at a\n"
+      + "                    fixed step, to replay the run\n"
+      + "  -replay FILE      Replays recorded input at its fixed step, ignoring the UI, and\n"
+      + "                    closes the window at its end\n"
+      + "  -timings FILE     Writes the time of each frame to a CSV file\n"
+      + "  -bvh-benchmark N  Times the scene BVH on N random boxes against a brute-force search,\n"
+      + "                    without a window";
+
+  // Number of extra point lights scattered around the room
+  int fillLights = 0;
+
+  // Light the opaque models from a G-buffer, see DeferredRenderer
+  boolean deferred = false;
+
+  // Draw the depth of the opaque models before lighting them
+  boolean depthPrepass = false;
+
+  // Layout of the vertices of every mesh
+  Mesh.Format vertexFormat = Mesh.Format.COMPACT;
+
+  // Frames to render with the software renderer without a window, 0 to open the window
+  int headlessFrames = 0;
+
+  // Threads recording the draws, and of the software renderer
+  int threads = Runtime.getRuntime().availableProcessors();
+
+  // JSON description the scene is built from, see SceneDescription
+  String sceneDescription = "scenes/anilamp.json";
+
+  // Stream the textures of the headless scene in, the window always does, see TextureStreamer
+  boolean streamTextures = false;
+
+  // Scene file to write once the scene is built, and to load the scene from, or null
+  String exportScene = null;
+  String sceneFile = null;
+
+  // Video file or folder of PNGs to record the frames to, or null, see FrameRecorder
+  String recordFile = null;
+
+  // Input to record and to replay, or null, see Anilamp_Input
+  String recordInput = null;
+  String replay = null;
+
+  // CSV file of the time of each frame, or null
+  String timings = null;
+
+  // Random boxes to time the BVH on without a window, 0 for none
+  int bvhBoxes = 0;
+
+  /**
+   * Parses the command line arguments, unknown arguments are reported and ignored
+   *
+   * @param args Command line arguments
+   * @return The options
+   */
+  static Anilamp_Options parse(String[] args) {
+    Anilamp_Options options = new Anilamp_Options();
+    for (int i = 0; i < args.length; i++) {
+      try {
+        switch (args[i]) {
+          case "-lights":
+            options.fillLights = Math.max(0, Integer.parseInt(args[++i]));
+            break;
+          case "-deferred":
+            options.deferred = true;
+            break;
+          case "-prepass":
+            options.depthPrepass = true;
+            break;
+          case "-float-vertices":
+            options.vertexFormat = Mesh.Format.FLOAT;
+            break;
+          case "-headless":
+            options.headlessFrames = Math.max(0, Integer.parseInt(args[++i]));
+            break;
+          case "-threads":
+            options.threads = Math.max(1, Integer.parseInt(args[++i]));
+            break;
+          case "-description":
+            options.sceneDescription = args[++i];
+            break;
+          case "-stream":
+            options.streamTextures = true;
+            break;
+          case "-export-scene":
+            options.exportScene = args[++i];
+            break;
+          case "-scene":
+            options.sceneFile = args[++i];
+            break;
+          case "-record":
+            options.recordFile = args[++i];
+            break;
+          case "-record-input":
+            options.recordInput = args[++i];
+            break;
+          case "-replay":
+            options.replay = args[++i];
+            break;
+          case "-timings":
+            options.timings = args[++i];
+            break;
+          case "-bvh-benchmark":
+            options.bvhBoxes = Math.max(0, Integer.parseInt(args[++i]));
+            break;
+          default:
+            System.err.println("[warning] Unknown argument " + args[i] + "\n" + USAGE);
+        }
+      } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+        System.err.println("[warning] Missing or invalid value of " + args[i - 1] + "\n" + USAGE);
+      }
+    }
+    return options;
+  }
+}
@@ -0,0 +1,21 @@
+package lib;
+
+import com.jogamp.opengl.*;
+
+/**
+ * I declare that this code is my own work.
+ * A node that places its children relative to its parent without drawing them, for objects
+ * that sit on another object but are rendered by their own class (e.g. the table accessories).
+ * The children are still updated with the parent and included in its world bounds.
+ *
+ * @author Zer Jun Eng (zjeng1@sheffield.ac.uk)
+ */
+public class AnchorNode extends SGNode {
+
+  public AnchorNode(String name) {
+    super(name);
+  }
+
+  void drawDepth(GL3 gl, Shader shader) {
+  }
+}
@@ -0,0 +1,337 @@
+package lib;
+
+import java.util.*;
+import lib.gmaths.*;
+
+/**
+ * A bounding volume hierarchy over the world bounds of every ModelNode in the scene, for ray
+ * picking. Nodes are stored in flat arrays in depth first order, so the left child of a node is
+ * the next node. The models tell the BVH when they move, and ray casts refit the leaves of the
+ * models that have moved since the last ray cast and their ancestors, the tree is only rebuilt
+ * by build().
+ *
+ * @author Zer Jun Eng (zjeng1@sheffield.ac.uk)
+ */
+public class BVH {
+
+  private static final int LEAF_SIZE = 4;
+  private static final int MAX_DEPTH = 64;
+
+  /**
+   * The nearest model hit by a ray
+   */
+  public static class Hit {
+    public final ModelNode node;
+    public final String label;
+    public final float distance;
+
+    Hit(ModelNode node, String label, float distance) {
+      this.node = node;
+      this.label = label;
+      this.distance = distance;
+    }
+  }
+
+  // Items, in the order they were added
+  private final List<ModelNode> items = new ArrayList<>();
+  private final List<String> labels = new ArrayList<>();
+  private final Map<ModelNode, Integer> itemIndex = new IdentityHashMap<>();
+  private final List<ModelNode> movedItems = new ArrayList<>();  // Since the last refit
+  private float[] itemBounds = new float[0];   // min xyz, max xyz
+  private int[] itemLeaf = new int[0];
+
+  // Nodes, interior nodes have a count of 0
+  private int nodeCount;
+  private float[] nodeBounds = new float[0];
+  private int[] nodeFirst = new int[0];
+  private int[] nodeItems = new int[0];
+  private int[] nodeRight = new int[0];
+  private int[] nodeParent = new int[0];
+  private int[] order = new int[0];  // Item indices, each leaf owns a range
+
+  private final int[] stack = new int[MAX_DEPTH * 2];
+
+  /**
+   * Adds every model below a node, models added before are skipped. A model is in one BVH at a
+   * time.
+   *
+   * @param root The root of the models to add
+   * @param label Name reported when one of the models is hit
+   */
+  public void add(SGNode root, String label) {
+    if (root instanceof ModelNode && !itemIndex.containsKey(root)) {
+      itemIndex.put((ModelNode) root, items.size());
+      items.add((ModelNode) root);
+      labels.add(label);
+      ((ModelNode) root).setBVH(this);
+    }
+    for (SGNode child : root.children) {
+      add(child, label);
+    }
+  }
+
+  public int size() {
+    return items.size();
+  }
+
+  /**
+   * Builds the tree from the current world bounds, splitting at the median of the longest axis
+   */
+  public void build() {
+    int n = items.size();
+    itemBounds = new float[n * 6];
+    itemLeaf = new int[n];
+    order = new int[n];
+    for (ModelNode node : movedItems) {
+      node.clearMoved();
+    }
+    movedItems.clear();
+    for (int i = 0; i < n; i++) {
+      setItemBounds(i);
+      order[i] = i;
+    }
+
+    int maxNodes = Math.max(1, 2 * n);
+    nodeBounds = new float[maxNodes * 6];
+    nodeFirst = new int[maxNodes];
+    nodeItems = new int[maxNodes];
+    nodeRight = new int[maxNodes];
+    nodeParent = new int[maxNodes];
+    nodeCount = 0;
+    if (n > 0) {
+      buildNode(0, n, -1, 0);
+    }
+  }
+
+  /**
+   * Refits the bounds of the models that have moved, and of the nodes above them
+   *
+   * @return Number of models refitted
+   */
+  public int refit() {
+    for (ModelNode moved : movedItems) {
+      moved.clearMoved();
+      int i = itemIndex.get(moved);
+      setItemBounds(i);
+      for (int node = itemLeaf[i]; node >= 0; node = nodeParent[node]) {
+        if (!fitNode(node)) {
+          break;  // Nothing above changes
+        }
+      }
+    }
+    int refitted = movedItems.size();
+    movedItems.clear();
+    return refitted;
+  }
+
+  /**
+   * Queues a model for the next refit, called by the model when its world transform changes
+   *
+   * @param node The model, queued once until it is refitted
+   */
+  void markMoved(ModelNode node) {
+    movedItems.add(node);
+  }
+
+  /**
+   * Finds the nearest model along a ray
+   *
+   * @param origin Start of the ray
+   * @param direction Direction of the ray
+   * @return The nearest hit, or null if the ray misses everything
+   */
+  public Hit raycast(Vec3 origin, Vec3 direction) {
+    refit();
+    if (nodeCount == 0) {
+      return null;
+    }
+
+    float[] o = {origin.x, origin.y, origin.z};
+    float[] inv = {inverse(direction.x), inverse(direction.y), inverse(direction.z)};
+    float best = Float.MAX_VALUE;
+    int bestItem = -1;
+
+    int top = 0;
+    stack[top++] = 0;
+    while (top > 0) {
+      int node = stack[--top];
+      if (intersect(nodeBounds, node, o, inv) >= best) {
+        continue;
+      }
+
+      if (nodeItems[node] > 0) {
+        for (int k = nodeFirst[node]; k < nodeFirst[node] + nodeItems[node]; k++) {
+          float t = intersect(itemBounds, order[k], o, inv);
+          if (t < best) {
+            best = t;
+            bestItem = order[k];
+          }
+        }
+      } else {
+        // Visit the nearer child first so the far one is more likely to be culled
+        int left = node + 1;
+        int right = nodeRight[node];
+        float tLeft = intersect(nodeBounds, left, o, inv);
+        float tRight = intersect(nodeBounds, right, o, inv);
+        if (tLeft < tRight) {
+          if (tRight < best) stack[top++] = right;
+          if (tLeft < best) stack[top++] = left;
+        } else {
+          if (tLeft < best) stack[top++] = left;
+          if (tRight < best) stack[top++] = right;
+        }
+      }
+    }
+
+    return bestItem < 0 ? null : new Hit(items.get(bestItem), labels.get(bestItem), best);
+  }
+
+  private int buildNode(int first, int count, int parent, int depth) {
+    int node = nodeCount++;
+    nodeParent[node] = parent;
+    nodeFirst[node] = first;
+
+    if (count <= LEAF_SIZE || depth >= MAX_DEPTH - 1) {
+      nodeItems[node] = count;
+      for (int k = first; k < first + count; k++) {
+        itemLeaf[order[k]] = node;
+      }
+      fitNode(node);
+      return node;
+    }
+
+    // Split the centroids at the median of their longest axis
+    float[] lo = {Float.MAX_VALUE, Float.MAX_VALUE, Float.MAX_VALUE};
+    float[] hi = {-Float.MAX_VALUE, -Float.MAX_VALUE, -Float.MAX_VALUE};
+    for (int k = first; k < first + count; k++) {
+      for (int a = 0; a < 3; a++) {
+        float c = centroid(order[k], a);
+        lo[a] = Math.min(lo[a], c);
+        hi[a] = Math.max(hi[a], c);
+      }
+    }
+    int axis = 0;
+    for (int a = 1; a < 3; a++) {
+      if (hi[a] - lo[a] > hi[axis] - lo[axis]) {
+        axis = a;
+      }
+    }
+
+    int mid = first + count / 2;
+    select(first, first + count - 1, mid, axis);
+
+    nodeItems[node] = 0;
+    buildNode(first, mid - first, node, depth + 1);
+    nodeRight[node] = buildNode(mid, first + count - mid, node, depth + 1);
+    fitNode(node);
+    return node;
+  }
+
+  /**
+   * Quickselect: partially sorts order[lo..hi] so the k-th item is in place along an axis
+   */
+  private void select(int lo, int hi, int k, int axis) {
+    while (lo < hi) {
+      float pivot = centroid(order[(lo + hi) >>> 1], axis);
+      int i = lo, j = hi;
+      while (i <= j) {
+        while (centroid(order[i], axis) < pivot) i++;
+        while (centroid(order[j], axis) > pivot) j--;
+        if (i <= j) {
+          int t = order[i];
+          order[i++] = order[j];
+          order[j--] = t;
+        }
+      }
+      if (k <= j) {
+        hi = j;
+      } else if (k >= i) {
+        lo = i;
+      } else {
+        return;
+      }
+    }
+  }
+
+  private float centroid(int item, int axis) {
+    return (itemBounds[item * 6 + axis] + itemBounds[item * 6 + 3 + axis]) / 2;
+  }
+
+  private void setItemBounds(int i) {
+    ModelNode node = items.get(i);
+    AABB b = node.getModel().getBounds().transform(node.worldTransform);
+    if (b.isEmpty()) {
+      // A model without vertices, put it at its origin
+      Vec3 p = node.worldTransform.getTranslateVec();
+      b.expand(p.x, p.y, p.z);
+    }
+    itemBounds[i * 6] = b.min.x;
+    itemBounds[i * 6 + 1] = b.min.y;
+    itemBounds[i * 6 + 2] = b.min.z;
+    itemBounds[i * 6 + 3] = b.max.x;
+    itemBounds[i * 6 + 4] = b.max.y;
+    itemBounds[i * 6 + 5] = b.max.z;
+  }
+
+  /**
+   * Recomputes the bounds of a node from its items or children
+   *
+   * @return true if the bounds have changed
+   */
+  private boolean fitNode(int node) {
+    float[] b = {Float.MAX_VALUE, Float.MAX_VALUE, Float.MAX_VALUE,
+        -Float.MAX_VALUE, -Float.MAX_VALUE, -Float.MAX_VALUE};
+    if (nodeItems[node] > 0) {
+      for (int k = nodeFirst[node]; k < nodeFirst[node] + nodeItems[node]; k++) {
+        grow(b, itemBounds, order[k]);
+      }
+    } else {
+      grow(b, nodeBounds, node + 1);
+      grow(b, nodeBounds, nodeRight[node]);
+    }
+
+    boolean changed = false;
+    for (int a = 0; a < 6; a++) {
+      if (nodeBounds[node * 6 + a] != b[a]) {
+        nodeBounds[node * 6 + a] = b[a];
+        changed = true;
+      }
+    }
+    return changed;
+  }
+
+  private static float inverse(float d) {
+    return d == 0 ? Float.MAX_VALUE : 1 / d;
+  }
+
+  private static void grow(float[] b, float[] bounds, int i) {
+    for (int a = 0; a < 3; a++) {
+      b[a] = Math.min(b[a], bounds[i * 6 + a]);
+      b[a + 3] = Math.max(b[a + 3], bounds[i * 6 + 3 + a]);
+    }
+  }
+
+  /**
+   * Slab test of a ray against a box
+   *
+   * @return Distance to the box along the ray, 0 if the origin is inside, MAX_VALUE if missed
+   */
+  private static float intersect(float[] bounds, int i, float[] o, float[] inv) {
+    float tMin = 0, tMax = Float.MAX_VALUE;
+    for (int a = 0; a < 3; a++) {
+      float t0 = (bounds[i * 6 + a] - o[a]) * inv[a];
+      float t1 = (bounds[i * 6 + 3 + a] - o[a]) * inv[a];
+      if (t0 > t1) {
+        float t = t0;
+        t0 = t1;
+        t1 = t;
+      }
+      tMin = Math.max(tMin, t0);
+      tMax = Math.min(tMax, t1);
+      if (tMin > tMax) {
+        return Float.MAX_VALUE;
+      }
+    }
+    return tMin;
+  }
+}
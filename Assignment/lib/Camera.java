@@ -90,6 +90,21 @@ public class Camera {
     return perspective;
   }
 
+  /**
+   * Gets the direction from the camera through a point on the screen, for picking
+   *
+   * @param x Normalised device X of the point, -1 is the left edge
+   * @param y Normalised device Y of the point, -1 is the bottom edge
+   * @return The normalised world space direction
+   */
+  public Vec3 getRayDirection(float x, float y) {
+    // The perspective matrix scales X by 1 / (tan(fov / 2) * aspect) and Y by 1 / tan(fov / 2)
+    Vec3 dir = Vec3.add(front, Vec3.add(Vec3.multiply(right, x / perspective.get(0, 0)),
+        Vec3.multiply(up, y / perspective.get(1, 1))));
+    dir.normalize();
+    return dir;
+  }
+
   public void keyboardInput(Movement movement) {
     switch (movement) {
       case NO_MOVEMENT:
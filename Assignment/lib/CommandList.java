@@ -0,0 +1,529 @@
+package lib;
+
+import com.jogamp.opengl.*;
+import java.util.*;
+import lib.gmaths.*;
+
+/**
+ * I declare that this code is my own work.
+ * A list of render commands: set the pipeline (a shader, the depth test and blending), set
+ * uniforms, bind textures and draw meshes. Recording makes no OpenGL call, so a list can be
+ * built away from the rendering thread. A list is kept from frame to frame and cleared by
+ * reset(), reusing its storage. execute() is the JOGL implementation, it replays the list and
+ * skips the calls that would not change anything: a program or texture that is already bound,
+ * or a uniform that already holds the value.
+ *
+ * <p>The uniforms of each draw are recorded as one block of draw data, copied in bulk into the
+ * UniformRing of the frame by upload() and bound by offset before the draw. A list with draw
+ * data must be uploaded before it is executed.
+ *
+ * <p>Consecutive draws of a shader compiled for indirect draws are submitted together by the
+ * IndirectDraws given to execute(), reading their draw data from a texture buffer.
+ *
+ * <p>A list can be split into segments, e.g. one per draw, so lists recorded on several threads
+ * are merged by appending their segments in the order to draw them, see append().
+ *
+ * @author Zer Jun Eng (zjeng1@sheffield.ac.uk)
+ */
+public final class CommandList {
+
+  // Opcodes, each followed by its operands in the command stream
+  private static final int PIPELINE = 0;    // shader
+  private static final int INT = 1;         // name, count, ints
+  private static final int FLOAT = 2;       // name, count, first float
+  private static final int MATRIX = 3;      // name, first float
+  private static final int TEXTURE = 4;     // unit, target, texture
+  private static final int DRAW = 5;        // mesh
+  private static final int DEPTH_FUNC = 6;  // function
+  private static final int DEPTH_MASK = 7;  // 0 or 1
+  private static final int COLOR_MASK = 8;  // 0 or 1
+  private static final int BLEND = 9;       // 0 or 1
+  private static final int DRAW_DATA = 10;  // block
+
+  private static final int STRIDE_FLOATS = UniformRing.STRIDE_BYTES / Float.BYTES;
+
+  // Texture units tracked while executing, must cover the units used by Lighting
+  private static final int TEXTURE_UNITS = 16;
+
+  // Texture unit of the draw data of indirect draws
+  private static final int DRAW_DATA_UNIT = TEXTURE_UNITS - 1;
+
+  private int[] commands = new int[256];
+  private int commandLength = 0;
+  private float[] floats = new float[256];
+  private int floatLength = 0;
+  private Object[] objects = new Object[64];  // Shaders, uniform names and meshes
+  private int objectLength = 0;
+  private int drawCount = 0;
+  private int[] segments = new int[64];  // First command of each segment
+  private int segmentCount = 0;
+
+  // Blocks of draw data, STRIDE_FLOATS apart, and where they were uploaded
+  private float[] drawData = new float[16 * STRIDE_FLOATS];
+  private int blockCount = 0;
+  private int uploadBuffer = 0;
+  private int uploadOffset = 0;
+
+  // Textures bound by the last execute(), by unit
+  private final int[] boundTextures = new int[TEXTURE_UNITS];
+  private final int[] boundTargets = new int[TEXTURE_UNITS];
+  private int activeUnit;
+  private final int[] drawDataUnit = {DRAW_DATA_UNIT};
+
+  // OpenGL calls made and skipped by the last execute()
+  private int callsMade = 0;
+  private int callsSkipped = 0;
+
+  /**
+   * Clears the list for recording, keeping its storage
+   */
+  public void reset() {
+    commandLength = 0;
+    floatLength = 0;
+    Arrays.fill(objects, 0, objectLength, null);
+    objectLength = 0;
+    drawCount = 0;
+    segmentCount = 0;
+    blockCount = 0;
+    uploadBuffer = 0;
+  }
+
+  /**
+   * Starts a segment, which runs to the start of the next one or to the end of the list
+   *
+   * @return Index of the segment, for append()
+   */
+  public int beginSegment() {
+    if (segmentCount == segments.length) {
+      segments = Arrays.copyOf(segments, segments.length * 2);
+    }
+    segments[segmentCount] = commandLength;
+    return segmentCount++;
+  }
+
+  /**
+   * Appends a copy of a segment of another list, which may be recorded again afterwards
+   *
+   * @param source The list holding the segment, not being recorded meanwhile
+   * @param segment Index of the segment
+   */
+  public void append(CommandList source, int segment) {
+    int i = source.segments[segment];
+    int end = segment + 1 < source.segmentCount ? source.segments[segment + 1]
+        : source.commandLength;
+    int[] words = source.commands;
+    while (i < end) {
+      int length = getLength(words, i);
+      int start = reserve(length);
+      System.arraycopy(words, i, commands, start, length);
+
+      if (words[i] == DRAW) {
+        drawCount++;
+      }
+
+      // Operands pointing into the pools of the source are moved into the pools of this list
+      switch (words[i]) {
+        case DRAW:
+        case PIPELINE:
+        case INT:
+          commands[start + 1] = addObject(source.objects[words[i + 1]]);
+          break;
+        case FLOAT:
+          commands[start + 1] = addObject(source.objects[words[i + 1]]);
+          commands[start + 3] = addFloats(source.floats, words[i + 3], words[i + 2]);
+          break;
+        case MATRIX:
+          commands[start + 1] = addObject(source.objects[words[i + 1]]);
+          commands[start + 2] = addFloats(source.floats, words[i + 2], 16);
+          break;
+        case DRAW_DATA:
+          commands[start + 1] = addBlock(source.drawData, words[i + 1] * STRIDE_FLOATS);
+          break;
+        default:
+          break;
+      }
+      i += length;
+    }
+  }
+
+  /**
+   * Uses a shader for the commands that follow, uniforms are set on the shader in use
+   *
+   * @param shader The shader
+   */
+  public void setPipeline(Shader shader) {
+    addCommand(PIPELINE, addObject(shader));
+  }
+
+  public void setDepthFunc(int func) {
+    addCommand(DEPTH_FUNC, func);
+  }
+
+  public void setDepthMask(boolean write) {
+    addCommand(DEPTH_MASK, write ? 1 : 0);
+  }
+
+  public void setColorMask(boolean write) {
+    addCommand(COLOR_MASK, write ? 1 : 0);
+  }
+
+  public void setBlend(boolean enabled) {
+    addCommand(BLEND, enabled ? 1 : 0);
+  }
+
+  public void setInt(String name, int value) {
+    addCommand(INT, addObject(name), 1, value);
+  }
+
+  public void setInt(String name, int i1, int i2, int i3) {
+    addCommand(INT, addObject(name), 3, i1, i2, i3);
+  }
+
+  public void setFloat(String name, float value) {
+    addCommand(FLOAT, addObject(name), 1, addFloats(value));
+  }
+
+  public void setFloat(String name, float f1, float f2) {
+    addCommand(FLOAT, addObject(name), 2, addFloats(f1, f2));
+  }
+
+  public void setVec3(String name, Vec3 v) {
+    addCommand(FLOAT, addObject(name), 3, addFloats(v.x, v.y, v.z));
+  }
+
+  public void setMatrix(String name, Mat4 matrix) {
+    addCommand(MATRIX, addObject(name), addFloats(matrix.toFloatArrayForGLSL()));
+  }
+
+  /**
+   * Binds a texture to a unit
+   *
+   * @param unit Texture unit, from 0
+   * @param target Target of the texture, e.g. GL_TEXTURE_2D
+   * @param texture Name of the texture
+   */
+  public void bindTexture(int unit, int target, int texture) {
+    addCommand(TEXTURE, unit, target, texture);
+  }
+
+  /**
+   * Adds a block for the uniforms of the Draw block of the draws that follow. The caller packs
+   * the values in place, in the std140 layout of inc_draw.txt, before the list is uploaded.
+   *
+   * @return Index of the first value of the block in getDrawData()
+   */
+  public int addDrawData() {
+    int block = newBlock();
+    addCommand(DRAW_DATA, block);
+    return block * STRIDE_FLOATS;
+  }
+
+  // The blocks of draw data, replaced when more blocks are added than it can hold
+  public float[] getDrawData() {
+    return drawData;
+  }
+
+  public void draw(Mesh mesh) {
+    addCommand(DRAW, addObject(mesh));
+    drawCount++;
+  }
+
+  public int getDrawCount() {
+    return drawCount;
+  }
+
+  /**
+   * Gets the size of the draw data, for UniformRing.beginFrame()
+   *
+   * @return Bytes of the blocks of draw data
+   */
+  public int getDrawDataBytes() {
+    return blockCount * UniformRing.STRIDE_BYTES;
+  }
+
+  /**
+   * Copies the draw data into the region of the frame of a ring, between its beginFrame() and
+   * endWrites(), once the list is recorded
+   *
+   * @param ring The ring
+   */
+  public void upload(UniformRing ring) {
+    if (blockCount > 0) {
+      uploadOffset = ring.write(drawData, blockCount * STRIDE_FLOATS);
+      uploadBuffer = ring.getBufferId();
+    }
+  }
+
+  /**
+   * Replays the commands on the rendering thread. Nothing is assumed about the state before, so
+   * a list may follow any other OpenGL code, and the state is left as the last commands set it.
+   * A list with draw data must have been uploaded, see upload().
+   *
+   * @param gl OpenGL object, for rendering
+   */
+  public void execute(GL3 gl) {
+    execute(gl, null);
+  }
+
+  /**
+   * Replays the commands, submitting the draws of shaders compiled for indirect draws together
+   *
+   * @param gl OpenGL object, for rendering
+   * @param indirect Submits the indirect draws, null if the list has none
+   */
+  public void execute(GL3 gl, IndirectDraws indirect) {
+    Shader shader = null;
+    boolean drawDataBound = false;
+    int block = 0;
+    activeUnit = -1;
+    Arrays.fill(boundTextures, -1);
+    callsMade = 0;
+    callsSkipped = 0;
+    if (blockCount > 0 && uploadBuffer == 0) {
+      throw new IllegalStateException("The draw data was not uploaded into a uniform ring");
+    }
+
+    int i = 0;
+    while (i < commandLength) {
+      // Any command but the draws of the indirect shader in use ends the call being built
+      if (indirect != null && commands[i] != DRAW_DATA && commands[i] != DRAW
+          && (commands[i] != PIPELINE || objects[commands[i + 1]] != shader)) {
+        indirect.flush(gl);
+      }
+      int location;
+      switch (commands[i]) {
+        case PIPELINE:
+          Shader next = (Shader) objects[commands[i + 1]];
+          if (next != shader) {
+            shader = next;
+            shader.use(gl);
+            callsMade++;
+            if (indirect != null && shader.isIndirect()) {
+              if (!drawDataBound) {
+                bindTexture(gl, DRAW_DATA_UNIT, GL2ES3.GL_TEXTURE_BUFFER,
+                    indirect.getTextureId());
+                indirect.setDrawData(gl, uploadBuffer, uploadOffset, blockCount);
+                drawDataBound = true;
+              }
+              location = shader.updateUniform(gl, IndirectDraws.DRAW_DATA, drawDataUnit, 0, 1);
+              if (location >= 0) {
+                gl.glUniform1i(location, DRAW_DATA_UNIT);
+              }
+            }
+          } else {
+            callsSkipped++;
+          }
+          i += 2;
+          break;
+        case INT:
+          location = shader.updateUniform(gl, (String) objects[commands[i + 1]], commands, i + 3,
+              commands[i + 2]);
+          if (location >= 0) {
+            if (commands[i + 2] == 1) {
+              gl.glUniform1i(location, commands[i + 3]);
+            } else {
+              gl.glUniform3i(location, commands[i + 3], commands[i + 4], commands[i + 5]);
+            }
+          }
+          count(location >= 0);
+          i += 3 + commands[i + 2];
+          break;
+        case FLOAT:
+          int f = commands[i + 3];
+          location = shader.updateUniform(gl, (String) objects[commands[i + 1]], floats, f,
+              commands[i + 2]);
+          if (location >= 0) {
+            if (commands[i + 2] == 1) {
+              gl.glUniform1f(location, floats[f]);
+            } else if (commands[i + 2] == 2) {
+              gl.glUniform2f(location, floats[f], floats[f + 1]);
+            } else {
+              gl.glUniform3f(location, floats[f], floats[f + 1], floats[f + 2]);
+            }
+          }
+          count(location >= 0);
+          i += 4;
+          break;
+        case MATRIX:
+          location = shader.updateUniform(gl, (String) objects[commands[i + 1]], floats,
+              commands[i + 2], 16);
+          if (location >= 0) {
+            gl.glUniformMatrix4fv(location, 1, false, floats, commands[i + 2]);
+          }
+          count(location >= 0);
+          i += 3;
+          break;
+        case TEXTURE:
+          bindTexture(gl, commands[i + 1], commands[i + 2], commands[i + 3]);
+          i += 4;
+          break;
+        case DRAW_DATA:
+          if (indirect != null && shader.isIndirect()) {
+            block = commands[i + 1];
+            callsSkipped++;
+            i += 2;
+            break;
+          }
+          gl.glBindBufferRange(GL2ES3.GL_UNIFORM_BUFFER, UniformRing.DRAW_BINDING, uploadBuffer,
+              uploadOffset + commands[i + 1] * (long) UniformRing.STRIDE_BYTES,
+              UniformRing.BLOCK_BYTES);
+          callsMade++;
+          i += 2;
+          break;
+        case DRAW:
+          if (indirect != null && shader.isIndirect()) {
+            indirect.add(gl, (Mesh) objects[commands[i + 1]], block);
+            callsSkipped++;
+          } else {
+            ((Mesh) objects[commands[i + 1]]).render(gl);
+            callsMade++;
+          }
+          i += 2;
+          break;
+        case DEPTH_FUNC:
+          gl.glDepthFunc(commands[i + 1]);
+          callsMade++;
+          i += 2;
+          break;
+        case DEPTH_MASK:
+          gl.glDepthMask(commands[i + 1] != 0);
+          callsMade++;
+          i += 2;
+          break;
+        case COLOR_MASK:
+          boolean write = commands[i + 1] != 0;
+          gl.glColorMask(write, write, write, write);
+          callsMade++;
+          i += 2;
+          break;
+        default:
+          if (commands[i + 1] != 0) {
+            gl.glEnable(GL.GL_BLEND);
+          } else {
+            gl.glDisable(GL.GL_BLEND);
+          }
+          callsMade++;
+          i += 2;
+      }
+    }
+    if (indirect != null) {
+      indirect.flush(gl);
+    }
+  }
+
+  // The draws of the list, and the OpenGL calls of its last execution
+  public String toString() {
+    return String.format("%d draws, %d calls made and %d skipped", drawCount, callsMade,
+        callsSkipped);
+  }
+
+  /**
+   * Binds a texture to a unit, unless already bound by this execution
+   */
+  private void bindTexture(GL3 gl, int unit, int target, int texture) {
+    if (boundTextures[unit] != texture || boundTargets[unit] != target) {
+      if (activeUnit != unit) {
+        gl.glActiveTexture(GL.GL_TEXTURE0 + unit);
+        activeUnit = unit;
+      }
+      gl.glBindTexture(target, texture);
+      boundTextures[unit] = texture;
+      boundTargets[unit] = target;
+      callsMade++;
+    } else {
+      callsSkipped++;
+    }
+  }
+
+  private void count(boolean made) {
+    if (made) {
+      callsMade++;
+    } else {
+      callsSkipped++;
+    }
+  }
+
+  /**
+   * Gets the number of words of a command, its opcode and operands
+   */
+  private static int getLength(int[] words, int i) {
+    switch (words[i]) {
+      case INT:
+        return 3 + words[i + 2];
+      case FLOAT:
+      case TEXTURE:
+        return 4;
+      case MATRIX:
+        return 3;
+      default:
+        return 2;
+    }
+  }
+
+  private void addCommand(int... words) {
+    System.arraycopy(words, 0, commands, reserve(words.length), words.length);
+  }
+
+  /**
+   * Makes room for a command at the end of the command stream
+   *
+   * @return Index of the first word of the command
+   */
+  private int reserve(int length) {
+    if (commandLength + length > commands.length) {
+      commands = Arrays.copyOf(commands, Math.max(commands.length * 2, commandLength + length));
+    }
+    commandLength += length;
+    return commandLength - length;
+  }
+
+  private int addFloats(float... values) {
+    return addFloats(values, 0, values.length);
+  }
+
+  /**
+   * Adds the values of a uniform to the float pool
+   *
+   * @return Index of the first value
+   */
+  private int addFloats(float[] values, int offset, int count) {
+    if (floatLength + count > floats.length) {
+      floats = Arrays.copyOf(floats, Math.max(floats.length * 2, floatLength + count));
+    }
+    System.arraycopy(values, offset, floats, floatLength, count);
+    floatLength += count;
+    return floatLength - count;
+  }
+
+  /**
+   * Copies a block of draw data to the end of the blocks
+   *
+   * @return Index of the block
+   */
+  private int addBlock(float[] values, int offset) {
+    int block = newBlock();
+    int count = Math.min(STRIDE_FLOATS, values.length - offset);
+    System.arraycopy(values, offset, drawData, block * STRIDE_FLOATS, count);
+    return block;
+  }
+
+  /**
+   * Adds a block of draw data at the end of the blocks, growing them when they are full
+   *
+   * @return Index of the block
+   */
+  private int newBlock() {
+    if ((blockCount + 1) * STRIDE_FLOATS > drawData.length) {
+      drawData = Arrays.copyOf(drawData, drawData.length * 2);
+    }
+    return blockCount++;
+  }
+
+  private int addObject(Object object) {
+    if (objectLength == objects.length) {
+      objects = Arrays.copyOf(objects, objects.length * 2);
+    }
+    objects[objectLength] = object;
+    return objectLength++;
+  }
+}
@@ -0,0 +1,199 @@
+package lib;
+
+import com.jogamp.opengl.*;
+import lib.gmaths.*;
+
+/**
+ * I declare that this code is my own work.
+ * Deferred shading, an alternative to lighting every fragment of every model with the clustered
+ * lights. The opaque models are drawn once into a G-buffer with their world lighting and the
+ * surface of the local lights (albedo, specular and normal), then each local light only shades
+ * the pixels inside its volume, so hidden fragments are never lit by them. Transparent models
+ * are drawn forward afterwards.
+ *
+ * <p>The lit shaders of the opaque models must be compiled with GBUFFER defined.
+ *
+ * @author Zer Jun Eng (zjeng1@sheffield.ac.uk)
+ */
+public class DeferredRenderer {
+
+  // Define of the lit shaders that write the G-buffer
+  public static final String GBUFFER = "GBUFFER";
+
+  // Colour attachments, in the order of the outputs in inc_lighting.txt
+  private static final int LIGHT = 0;
+  private static final int ALBEDO = 1;
+  private static final int SPECULAR = 2;
+  private static final int NORMAL = 3;
+  private static final int[] DRAW_BUFFERS = {GL.GL_COLOR_ATTACHMENT0,
+      GL.GL_COLOR_ATTACHMENT0 + 1, GL.GL_COLOR_ATTACHMENT0 + 2, GL.GL_COLOR_ATTACHMENT0 + 3};
+
+  // Units 0 and 1 are free after the geometry pass, 2 to 6 are used by Lighting
+  private static final int LIGHT_UNIT = 0;
+  private static final int ALBEDO_UNIT = 0;
+  private static final int SPECULAR_UNIT = 1;
+  private static final int NORMAL_UNIT = 7;
+  private static final int DEPTH_UNIT = 8;
+
+  private final Lighting lighting;
+  private final Mesh volumeMesh;
+  private final Shader compositeShader;
+  private final Shader volumeShader;
+
+  private final int[] framebufferId = new int[1];
+  private final int[] textureId = new int[4];
+  private final int[] depthTextureId = new int[1];
+  private final int[] emptyVertexArrayId = new int[1];
+  private int width, height;
+
+  /**
+   * DeferredRenderer constructor, resize() must be called before the first frame
+   *
+   * @param gl OpenGL object
+   * @param lighting The lighting of the scene
+   * @param sphereMesh A sphere of radius 0.5, for the light volumes
+   */
+  public DeferredRenderer(GL3 gl, Lighting lighting, Mesh sphereMesh) {
+    this.lighting = lighting;
+    this.volumeMesh = sphereMesh;
+    compositeShader = new Shader(gl, "shaders/vs_fullscreen.txt", "shaders/fs_composite.txt");
+    volumeShader = new Shader(gl, "shaders/vs_volume.txt", "shaders/fs_volume.txt");
+
+    gl.glGenFramebuffers(1, framebufferId, 0);
+    gl.glGenTextures(4, textureId, 0);
+    gl.glGenTextures(1, depthTextureId, 0);
+    gl.glGenVertexArrays(1, emptyVertexArrayId, 0);  // The full screen pass has no vertices
+  }
+
+  /**
+   * Reallocates the G-buffer for the size of the viewport
+   *
+   * @param gl OpenGL object
+   * @param width Viewport width in pixels
+   * @param height Viewport height in pixels
+   */
+  public void resize(GL3 gl, int width, int height) {
+    this.width = width;
+    this.height = height;
+
+    // Lighting is summed beyond 1 before it is written to the screen
+    createTexture(gl, textureId[LIGHT], GL.GL_RGBA16F, GL.GL_RGBA, GL.GL_FLOAT);
+    createTexture(gl, textureId[ALBEDO], GL.GL_RGBA8, GL.GL_RGBA, GL.GL_UNSIGNED_BYTE);
+    createTexture(gl, textureId[SPECULAR], GL.GL_RGBA16F, GL.GL_RGBA, GL.GL_FLOAT);
+    createTexture(gl, textureId[NORMAL], GL.GL_RGBA16F, GL.GL_RGBA, GL.GL_FLOAT);
+    createTexture(gl, depthTextureId[0], GL.GL_DEPTH_COMPONENT24, GL2ES2.GL_DEPTH_COMPONENT,
+        GL.GL_UNSIGNED_INT);
+
+    gl.glBindFramebuffer(GL.GL_FRAMEBUFFER, framebufferId[0]);
+    for (int i = 0; i < textureId.length; i++) {
+      gl.glFramebufferTexture2D(GL.GL_FRAMEBUFFER, DRAW_BUFFERS[i], GL.GL_TEXTURE_2D,
+          textureId[i], 0);
+    }
+    gl.glFramebufferTexture2D(GL.GL_FRAMEBUFFER, GL.GL_DEPTH_ATTACHMENT, GL.GL_TEXTURE_2D,
+        depthTextureId[0], 0);
+    gl.glDrawBuffers(DRAW_BUFFERS.length, DRAW_BUFFERS, 0);
+    if (gl.glCheckFramebufferStatus(GL.GL_FRAMEBUFFER) != GL.GL_FRAMEBUFFER_COMPLETE) {
+      System.err.println("[error] Incomplete G-buffer framebuffer");
+    }
+    gl.glBindFramebuffer(GL.GL_FRAMEBUFFER, 0);
+  }
+
+  /**
+   * Starts the geometry pass, the opaque models drawn until shade() write the G-buffer
+   *
+   * @param gl OpenGL object, for rendering
+   */
+  public void beginGeometry(GL3 gl) {
+    gl.glBindFramebuffer(GL.GL_FRAMEBUFFER, framebufferId[0]);
+    gl.glClear(GL.GL_COLOR_BUFFER_BIT | GL.GL_DEPTH_BUFFER_BIT);
+  }
+
+  /**
+   * Ends the geometry pass and lights the G-buffer on the screen, the transparent models can
+   * then be drawn forward over it
+   *
+   * @param gl OpenGL object, for rendering
+   * @param camera The camera of the view
+   */
+  public void shade(GL3 gl, Camera camera) {
+    gl.glBindFramebuffer(GL.GL_FRAMEBUFFER, 0);
+    gl.glClear(GL.GL_COLOR_BUFFER_BIT | GL.GL_DEPTH_BUFFER_BIT);
+    bindTexture(gl, LIGHT_UNIT, textureId[LIGHT]);
+    bindTexture(gl, DEPTH_UNIT, depthTextureId[0]);
+
+    // World lights and depth, the depth then limits the light volumes to the surfaces
+    gl.glDepthFunc(GL.GL_ALWAYS);
+    compositeShader.use(gl);
+    compositeShader.setInt(gl, "gLight", LIGHT_UNIT);
+    compositeShader.setInt(gl, "gDepth", DEPTH_UNIT);
+    gl.glBindVertexArray(emptyVertexArrayId[0]);
+    gl.glDrawArrays(GL.GL_TRIANGLES, 0, 3);
+    gl.glBindVertexArray(0);
+
+    renderVolumes(gl, camera);
+
+    gl.glDepthFunc(GL.GL_LEQUAL);
+  }
+
+  public void dispose(GL3 gl) {
+    gl.glDeleteFramebuffers(1, framebufferId, 0);
+    gl.glDeleteTextures(4, textureId, 0);
+    gl.glDeleteTextures(1, depthTextureId, 0);
+    gl.glDeleteVertexArrays(1, emptyVertexArrayId, 0);
+  }
+
+  /**
+   * Adds the local lights, drawing the back faces of their volumes that lie behind a surface.
+   * Back faces are still drawn with the camera inside a volume, and are kept beyond the far
+   * plane by depth clamping.
+   */
+  private void renderVolumes(GL3 gl, Camera camera) {
+    int lights = lighting.getClusters().getLightCount();
+    if (lights == 0) {
+      return;
+    }
+
+    Mat4 view = camera.getViewMatrix();
+    volumeShader.use(gl);
+    volumeShader.setFloatArray(gl, "view", view.toFloatArrayForGLSL());
+    volumeShader.setFloatArray(gl, "vpMatrix",
+        Mat4.multiply(camera.getPerspectiveMatrix(), view).toFloatArrayForGLSL());
+    volumeShader.setVec3(gl, "viewPos", camera.getPosition());
+    volumeShader.setInt(gl, "gAlbedo", ALBEDO_UNIT);
+    volumeShader.setInt(gl, "gSpecular", SPECULAR_UNIT);
+    volumeShader.setInt(gl, "gNormal", NORMAL_UNIT);
+    volumeShader.setInt(gl, "gDepth", DEPTH_UNIT);
+    bindTexture(gl, ALBEDO_UNIT, textureId[ALBEDO]);
+    bindTexture(gl, SPECULAR_UNIT, textureId[SPECULAR]);
+    bindTexture(gl, NORMAL_UNIT, textureId[NORMAL]);
+    lighting.apply(gl, volumeShader);
+
+    gl.glDepthFunc(GL.GL_GEQUAL);
+    gl.glDepthMask(false);
+    gl.glCullFace(GL.GL_FRONT);
+    gl.glEnable(GL3.GL_DEPTH_CLAMP);
+    gl.glEnable(GL.GL_BLEND);
+    gl.glBlendFunc(GL.GL_ONE, GL.GL_ONE);
+
+    volumeMesh.renderInstanced(gl, lights);
+
+    gl.glDisable(GL3.GL_DEPTH_CLAMP);
+    gl.glDisable(GL.GL_BLEND);
+    gl.glBlendFunc(GL.GL_SRC_ALPHA, GL.GL_ONE_MINUS_SRC_ALPHA);
+    gl.glCullFace(GL.GL_BACK);
+    gl.glDepthMask(true);
+  }
+
+  private void createTexture(GL3 gl, int id, int internalFormat, int format, int type) {
+    gl.glBindTexture(GL.GL_TEXTURE_2D, id);
+    gl.glTexImage2D(GL.GL_TEXTURE_2D, 0, internalFormat, width, height, 0, format, type, null);
+    gl.glTexParameteri(GL.GL_TEXTURE_2D, GL.GL_TEXTURE_MIN_FILTER, GL.GL_NEAREST);
+    gl.glTexParameteri(GL.GL_TEXTURE_2D, GL.GL_TEXTURE_MAG_FILTER, GL.GL_NEAREST);
+    gl.glBindTexture(GL.GL_TEXTURE_2D, 0);
+  }
+
+  private static void bindTexture(GL3 gl, int unit, int id) {
+    gl.glActiveTexture(GL.GL_TEXTURE0 + unit);
+    gl.glBindTexture(GL.GL_TEXTURE_2D, id);
+  }
+}
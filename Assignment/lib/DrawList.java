@@ -0,0 +1,385 @@
+package lib;
+
+import com.jogamp.opengl.*;
+import java.util.*;
+import java.util.concurrent.*;
+import lib.gmaths.*;
+
+/**
+ * I declare that this code is my own work.
+ * The models of the scene graphs as a flat list of draws. Opaque draws are sorted front to back
+ * so hidden fragments fail the depth test early, and can be preceded by a depth-only prepass so
+ * the lighting shaders run once per pixel. Transparent draws are drawn separately, after the
+ * opaque ones are lit, sorted back to front so they blend in the right order whatever the order
+ * of the scene graphs. Blending is only enabled for them. The level of detail of every draw is
+ * selected when sorted. The software renderer draws the same lists in the same order.
+ *
+ * <p>The draws below each root passed to add(), e.g. the room or the lamp, form a group. The
+ * groups select their levels of detail and record their draws in parallel on worker threads, each
+ * draw into a segment of the command list of its group. The segments are then merged in the
+ * sorted order into one command list per pass, so the rendering thread only executes them. The
+ * merge records the view position and lights once per switch of shader, not once per draw.
+ *
+ * @author Zer Jun Eng (zjeng1@sheffield.ac.uk)
+ */
+public class DrawList {
+
+  /**
+   * The draws below a root, with the command list they are recorded into
+   */
+  private final class Group {
+
+    final List<Integer> opaqueDraws = new ArrayList<>();       // Indices into opaque
+    final List<Integer> transparentDraws = new ArrayList<>();  // Indices into transparent
+    final CommandList commands = new CommandList();
+    int trianglesDrawn, trianglesSaved;
+
+    /**
+     * Selects the levels of detail of the draws and computes their sort keys
+     */
+    void sort() {
+      trianglesDrawn = 0;
+      trianglesSaved = 0;
+      Vec3 eye = camera.getPosition();
+      for (int i : opaqueDraws) {
+        distance[i] = selectLevel(this, opaque.get(i)).distanceSquared(eye);
+      }
+      for (int i : transparentDraws) {
+        Vec3 c = selectLevel(this, transparent.get(i)).getCentre();
+        transparentDepth[i] = -(view.get(2, 0) * c.x + view.get(2, 1) * c.y
+            + view.get(2, 2) * c.z + view.get(2, 3));
+      }
+    }
+
+    /**
+     * Records every draw of the group into a segment of its own
+     */
+    void record() {
+      commands.reset();
+      for (int i : opaqueDraws) {
+        ModelNode node = opaque.get(i);
+        if (prepassShader != null) {
+          prepassSegment[i] = commands.beginSegment();
+          node.getModel().recordPrepass(commands, prepassShader, node.worldTransform,
+              node.getLevel());
+        }
+        opaqueSegment[i] = commands.beginSegment();
+        node.getModel().record(commands, node.worldTransform, node.getLevel());
+      }
+      for (int i : transparentDraws) {
+        ModelNode node = transparent.get(i);
+        transparentSegment[i] = commands.beginSegment();
+        node.getModel().record(commands, node.worldTransform, node.getLevel());
+      }
+    }
+  }
+
+  private final List<ModelNode> opaque = new ArrayList<>();
+  private final List<ModelNode> transparent = new ArrayList<>();
+  private final List<Group> opaqueGroup = new ArrayList<>();       // Group of each draw
+  private final List<Group> transparentGroup = new ArrayList<>();
+  private final List<Group> groups = new ArrayList<>();
+  private final Set<ModelNode> added = Collections.newSetFromMap(new IdentityHashMap<>());
+
+  // Runs the groups on worker threads, null to run them on the calling thread
+  private final ExecutorService workers;
+  private final int threads;
+  private final List<Callable<Void>> sortTasks = new ArrayList<>();
+  private final List<Callable<Void>> recordTasks = new ArrayList<>();
+
+  // View of the frame being sorted and shader of the prepass being recorded, null for none
+  private Camera camera;
+  private int viewportHeight;
+  private Mat4 view;
+  private Shader prepassShader;
+
+  // Sort keys of the draws, by index in their list
+  private float[] distance = new float[0];
+  private Integer[] order = new Integer[0];
+  private float[] transparentDepth = new float[0];
+  private Integer[] transparentOrder = new Integer[0];
+
+  // Segment of each draw in the command list of its group
+  private int[] prepassSegment = new int[0];
+  private int[] opaqueSegment = new int[0];
+  private int[] transparentSegment = new int[0];
+
+  // The passes of the frame, merged from the groups
+  private final CommandList prepassCommands = new CommandList();
+  private final CommandList opaqueCommands = new CommandList();
+  private final CommandList transparentCommands = new CommandList();
+
+  // Triangles of the levels of detail drawn in the last frame, and left out by them
+  private int trianglesDrawn = 0;
+  private int trianglesSaved = 0;
+
+  // Time spent sorting, recording and merging the last frame
+  private long sortNanos, recordNanos, mergeNanos;
+
+  /**
+   * DrawList constructor
+   *
+   * @param threads Threads sorting and recording the groups, 1 for the calling thread only
+   */
+  public DrawList(int threads) {
+    this.threads = Math.max(1, threads);
+    if (this.threads == 1) {
+      workers = null;
+    } else {
+      workers = Executors.newFixedThreadPool(this.threads, task -> {
+        Thread thread = new Thread(task, "Draw recorder");
+        thread.setDaemon(true);
+        return thread;
+      });
+    }
+  }
+
+  /**
+   * Adds every model below a node as a group, models added before are skipped
+   *
+   * @param root The root of the models to add
+   */
+  public void add(SGNode root) {
+    Group group = new Group();
+    add(root, group);
+    if (!group.opaqueDraws.isEmpty() || !group.transparentDraws.isEmpty()) {
+      groups.add(group);
+      sortTasks.add(() -> {
+        group.sort();
+        return null;
+      });
+      recordTasks.add(() -> {
+        group.record();
+        return null;
+      });
+    }
+  }
+
+  private void add(SGNode root, Group group) {
+    if (root instanceof ModelNode && added.add((ModelNode) root)) {
+      ModelNode node = (ModelNode) root;
+      if (node.getModel().isTransparent()) {
+        group.transparentDraws.add(transparent.size());
+        transparent.add(node);
+        transparentGroup.add(group);
+      } else {
+        group.opaqueDraws.add(opaque.size());
+        opaque.add(node);
+        opaqueGroup.add(group);
+      }
+    }
+    for (SGNode child : root.children) {
+      add(child, group);
+    }
+  }
+
+  /**
+   * Selects the levels of detail, then sorts the opaque draws front to back by the distance from
+   * the camera to their world bounds, and the transparent draws back to front by the view depth
+   * of their centres. Called each frame before rendering and after the scene graphs have been
+   * updated.
+   *
+   * @param camera The camera of the view
+   * @param viewportHeight Viewport height in pixels
+   */
+  public void sort(Camera camera, int viewportHeight) {
+    long start = System.nanoTime();
+    if (order.length != opaque.size()) {
+      distance = new float[opaque.size()];
+      order = identityOrder(opaque.size());
+      prepassSegment = new int[opaque.size()];
+      opaqueSegment = new int[opaque.size()];
+    }
+    if (transparentOrder.length != transparent.size()) {
+      transparentDepth = new float[transparent.size()];
+      transparentOrder = identityOrder(transparent.size());
+      transparentSegment = new int[transparent.size()];
+    }
+
+    this.camera = camera;
+    this.viewportHeight = viewportHeight;
+    view = camera.getViewMatrix();
+    run(sortTasks);
+    trianglesDrawn = 0;
+    trianglesSaved = 0;
+    for (Group group : groups) {
+      trianglesDrawn += group.trianglesDrawn;
+      trianglesSaved += group.trianglesSaved;
+    }
+
+    // The previous orders are nearly sorted when the camera moves a little
+    Arrays.sort(order, (a, b) -> Float.compare(distance[a], distance[b]));
+    Arrays.sort(transparentOrder,
+        (a, b) -> Float.compare(transparentDepth[b], transparentDepth[a]));
+    sortNanos = System.nanoTime() - start;
+  }
+
+  /**
+   * Records the passes of the frame after sort(), once the lights and shadow maps are known. The
+   * prepass draws the depth of the opaque models only, so their lit shaders only run for the
+   * visible fragments. Until the opaque pass, the depth test then passes equal depths only and
+   * the depth is not written. The opaque pass restores the depth test. The transparent pass
+   * blends the transparent models over the opaque ones without writing depth, so they never
+   * hide each other.
+   *
+   * @param prepassShader The depth prepass shader, null to record no prepass
+   */
+  public void record(Shader prepassShader) {
+    long start = System.nanoTime();
+    this.prepassShader = prepassShader;
+    run(recordTasks);
+    long recorded = System.nanoTime();
+
+    prepassCommands.reset();
+    if (prepassShader != null) {
+      prepassCommands.setColorMask(false);
+      for (Integer i : order) {
+        prepassCommands.append(opaqueGroup.get(i).commands, prepassSegment[i]);
+      }
+      prepassCommands.setColorMask(true);
+      prepassCommands.setDepthFunc(GL.GL_EQUAL);
+      prepassCommands.setDepthMask(false);
+    }
+
+    opaqueCommands.reset();
+    Shader shader = null;
+    for (Integer i : order) {
+      shader = append(opaqueCommands, shader, opaque.get(i), opaqueGroup.get(i), opaqueSegment[i]);
+    }
+    opaqueCommands.setDepthFunc(GL.GL_LEQUAL);
+    opaqueCommands.setDepthMask(true);
+
+    transparentCommands.reset();
+    transparentCommands.setBlend(true);
+    transparentCommands.setDepthMask(false);
+    shader = null;
+    for (Integer i : transparentOrder) {
+      shader = append(transparentCommands, shader, transparent.get(i), transparentGroup.get(i),
+          transparentSegment[i]);
+    }
+    transparentCommands.setDepthMask(true);
+    transparentCommands.setBlend(false);
+
+    recordNanos = recorded - start;
+    mergeNanos = System.nanoTime() - recorded;
+  }
+
+  // The passes recorded by record(), empty for the prepass when it was not recorded
+  public CommandList getPrepassCommands() {
+    return prepassCommands;
+  }
+
+  public CommandList getOpaqueCommands() {
+    return opaqueCommands;
+  }
+
+  public CommandList getTransparentCommands() {
+    return transparentCommands;
+  }
+
+  /**
+   * Gets the opaque draws in the order of the opaque pass
+   *
+   * @return The draws, front to back
+   */
+  List<ModelNode> getOpaqueDraws() {
+    List<ModelNode> draws = new ArrayList<>(opaque.size());
+    for (Integer i : order) {
+      draws.add(opaque.get(i));
+    }
+    return draws;
+  }
+
+  /**
+   * Gets the transparent draws in the order of the transparent pass
+   *
+   * @return The draws, back to front
+   */
+  List<ModelNode> getTransparentDraws() {
+    List<ModelNode> draws = new ArrayList<>(transparent.size());
+    for (Integer i : transparentOrder) {
+      draws.add(transparent.get(i));
+    }
+    return draws;
+  }
+
+  public int getTrianglesDrawn() {
+    return trianglesDrawn;
+  }
+
+  public int getTrianglesSaved() {
+    return trianglesSaved;
+  }
+
+  public void dispose() {
+    if (workers != null) {
+      workers.shutdown();
+    }
+  }
+
+  // Time of each step of the last frame, to compare numbers of threads
+  public String toString() {
+    return String.format("%d draws of %d triangles, %d triangles saved by levels of detail%n"
+            + "%d groups on %d threads: sorted in %.3f ms, recorded in %.3f ms, merged in %.3f ms",
+        opaque.size() + transparent.size(), trianglesDrawn, trianglesSaved, groups.size(),
+        threads, sortNanos / 1e6, recordNanos / 1e6, mergeNanos / 1e6);
+  }
+
+  /**
+   * Runs a task of every group and waits for them all
+   */
+  private void run(List<Callable<Void>> tasks) {
+    try {
+      if (workers == null) {
+        for (Callable<Void> task : tasks) {
+          task.call();
+        }
+        return;
+      }
+      for (Future<Void> result : workers.invokeAll(tasks)) {
+        result.get();
+      }
+    } catch (Exception e) {
+      throw new IllegalStateException("Unable to prepare the draws", e);
+    }
+  }
+
+  /**
+   * Appends the segment of a draw to a pass, after the uniforms shared by its shader when the
+   * draw before used another shader
+   *
+   * @param shader Shader of the draw before, null for the first draw of the pass
+   * @return Shader of the draw
+   */
+  private static Shader append(CommandList pass, Shader shader, ModelNode node, Group group,
+      int segment) {
+    Model model = node.getModel();
+    if (model.getShader() != shader) {
+      model.recordPipeline(pass);
+    }
+    pass.append(group.commands, segment);
+    return model.getShader();
+  }
+
+  /**
+   * Selects the level of detail of a draw and counts its triangles
+   *
+   * @return The world bounds of the draw
+   */
+  private AABB selectLevel(Group group, ModelNode node) {
+    AABB bounds = node.selectLevel(camera, viewportHeight);
+    MeshLOD lod = node.getModel().getLOD();
+    int triangles = lod.getMesh(node.getLevel()).getTriangleCount();
+    group.trianglesDrawn += triangles;
+    group.trianglesSaved += lod.getMesh(0).getTriangleCount() - triangles;
+    return bounds;
+  }
+
+  private static Integer[] identityOrder(int n) {
+    Integer[] order = new Integer[n];
+    for (int i = 0; i < n; i++) {
+      order[i] = i;
+    }
+    return order;
+  }
+}
@@ -0,0 +1,341 @@
+package lib;
+
+import com.jogamp.opengl.*;
+import java.awt.image.*;
+import java.io.*;
+import java.nio.*;
+import java.util.concurrent.*;
+import javax.imageio.*;
+import javax.imageio.stream.*;
+
+/**
+ * I declare that this code is my own work.
+ * Records the drawn frames as a PNG sequence or a raw Y4M video, without stalling the frames.
+ * Each frame is read into the next of a ring of pixel buffer objects with glReadPixels, which
+ * returns at once, and the buffer is mapped when it comes round again a few frames later, once
+ * its fence has passed. The pixels are copied into a free frame of a small pool and encoded on a
+ * background thread. A frame is dropped and counted, instead of waited for, when the encoder has
+ * fallen behind and no frame is free, so the recording never slows the drawing down.
+ *
+ * <p>The frames are recorded at the size of the first frame, frames of another size are dropped.
+ * A FILE ending with .y4m is written as YUV 4:2:0 video, anything else is a folder of PNGs.
+ *
+ * @author Zer Jun Eng (zjeng1@sheffield.ac.uk)
+ */
+public class FrameRecorder {
+
+  // Frames in flight before a pixel buffer is mapped, and frames waiting to be encoded
+  private static final int LATENCY = 3;
+  private static final int QUEUED_FRAMES = 8;
+  private static final long WAIT_NANOS = 1000000;
+
+  // Deflate level 1, the frames are many and large and compress little better at higher levels
+  private static final float PNG_QUALITY = 0.85f;
+
+  private final String path;
+  private final int frameRate;
+  private final boolean video;
+  private final BlockingQueue<Frame> free = new ArrayBlockingQueue<>(QUEUED_FRAMES);
+  private final BlockingQueue<Frame> pending = new LinkedBlockingQueue<>();
+  private final Thread encoder;
+  private int width = -1;
+  private int height = -1;
+
+  // Pixel buffers of the frames in flight, a fence is 0 once its frame is read back
+  private final int[] bufferId = new int[LATENCY];
+  private final long[] fences = new long[LATENCY];
+  private int slot = 0;
+
+  // Frames captured and dropped, and time spent waiting for the GPU and copying the pixels
+  private int captured = 0;
+  private int dropped = 0;
+  private volatile int encoded = 0;
+  private long waitNanos = 0;
+  private long copyNanos = 0;
+
+  // The pixels of a frame as read by glReadPixels, RGBA rows from the bottom up
+  private static final class Frame {
+    final byte[] pixels;
+
+    Frame(int bytes) {
+      this.pixels = new byte[bytes];
+    }
+  }
+
+  private static final Frame END = new Frame(0);
+
+  /**
+   * FrameRecorder constructor, the encoder starts waiting for frames
+   *
+   * @param path The video file, ending with .y4m, or the folder of the PNG sequence
+   * @param frameRate Frames per second of the video
+   */
+  public FrameRecorder(String path, int frameRate) {
+    this.path = path;
+    this.frameRate = frameRate;
+    video = path.toLowerCase().endsWith(".y4m");
+    encoder = new Thread(this::encode, "Frame encoder");
+    encoder.setDaemon(true);
+    encoder.start();
+  }
+
+  /**
+   * Reads the drawn frame into the next pixel buffer, after its last draw, and hands the frame
+   * read into it a few frames ago to the encoder
+   *
+   * @param gl OpenGL object
+   * @param width Width of the frame in pixels
+   * @param height Height of the frame in pixels
+   */
+  public void capture(GL3 gl, int width, int height) {
+    if (!setSize(width, height)) {
+      return;
+    }
+    if (bufferId[0] == 0) {
+      gl.glGenBuffers(LATENCY, bufferId, 0);
+      for (int id : bufferId) {
+        gl.glBindBuffer(GL2ES3.GL_PIXEL_PACK_BUFFER, id);
+        gl.glBufferData(GL2ES3.GL_PIXEL_PACK_BUFFER, frameBytes(), null, GL2ES3.GL_STREAM_READ);
+      }
+    }
+
+    slot = (slot + 1) % LATENCY;
+    readBack(gl, slot);
+    gl.glBindBuffer(GL2ES3.GL_PIXEL_PACK_BUFFER, bufferId[slot]);
+    gl.glReadPixels(0, 0, width, height, GL.GL_RGBA, GL.GL_UNSIGNED_BYTE, 0);
+    gl.glBindBuffer(GL2ES3.GL_PIXEL_PACK_BUFFER, 0);
+    fences[slot] = gl.glFenceSync(GL3ES3.GL_SYNC_GPU_COMMANDS_COMPLETE, 0);
+  }
+
+  /**
+   * Hands a frame of the software renderer to the encoder
+   *
+   * @param frame The pixels, see SoftwareRenderer.getFrame()
+   * @param width Width of the frame in pixels
+   * @param height Height of the frame in pixels
+   */
+  public void capture(int[] frame, int width, int height) {
+    if (!setSize(width, height)) {
+      return;
+    }
+    long start = System.nanoTime();
+    Frame recorded = free.poll();
+    if (recorded == null) {
+      dropped++;
+      return;
+    }
+    byte[] pixels = recorded.pixels;
+    for (int y = 0; y < height; y++) {
+      int row = (height - 1 - y) * width * 4;
+      for (int x = 0; x < width; x++) {
+        int rgb = frame[y * width + x];
+        pixels[row + x * 4] = (byte) (rgb >> 16);
+        pixels[row + x * 4 + 1] = (byte) (rgb >> 8);
+        pixels[row + x * 4 + 2] = (byte) rgb;
+      }
+    }
+    copyNanos += System.nanoTime() - start;
+    pending.add(recorded);
+  }
+
+  /**
+   * Reads back the frames still in flight and waits for the encoder to write every frame
+   *
+   * @param gl OpenGL object
+   */
+  public void finish(GL3 gl) {
+    for (int i = 1; i <= LATENCY; i++) {
+      readBack(gl, (slot + i) % LATENCY);
+    }
+    if (bufferId[0] != 0) {
+      gl.glDeleteBuffers(LATENCY, bufferId, 0);
+      bufferId[0] = 0;
+    }
+    finish();
+  }
+
+  /**
+   * Waits for the encoder to write every frame handed to it
+   */
+  public void finish() {
+    pending.add(END);
+    try {
+      encoder.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  public String toString() {
+    int frames = Math.max(1, captured);
+    return String.format("Frame recorder: %d frames to %s, %d encoded, %d dropped, "
+            + "%.3f ms waiting for the GPU and %.3f ms copying per frame", captured, path, encoded,
+        dropped, waitNanos / 1e6 / frames, copyNanos / 1e6 / frames);
+  }
+
+  /**
+   * Fixes the size of the recording at the first frame, and fills the pool of free frames
+   *
+   * @return False if the frame is of another size and dropped
+   */
+  private boolean setSize(int width, int height) {
+    if (this.width < 0) {
+      this.width = width;
+      this.height = height;
+      for (int i = 0; i < QUEUED_FRAMES; i++) {
+        free.add(new Frame(frameBytes()));
+      }
+    }
+    captured++;
+    if (width != this.width || height != this.height) {
+      dropped++;
+      return false;
+    }
+    return true;
+  }
+
+  private int frameBytes() {
+    return width * height * 4;
+  }
+
+  /**
+   * Copies the frame in a pixel buffer to a free frame for the encoder, waiting for the GPU to
+   * have read it, which it should have a few frames after it was issued
+   */
+  private void readBack(GL3 gl, int region) {
+    if (fences[region] == 0) {
+      return;
+    }
+    long start = System.nanoTime();
+    int result;
+    do {
+      result = gl.glClientWaitSync(fences[region], GL3ES3.GL_SYNC_FLUSH_COMMANDS_BIT, WAIT_NANOS);
+    } while (result == GL3ES3.GL_TIMEOUT_EXPIRED);
+    if (result == GL3ES3.GL_WAIT_FAILED) {
+      System.err.println("[error] Unable to wait for a frame recorder fence");
+    }
+    gl.glDeleteSync(fences[region]);
+    fences[region] = 0;
+    long copy = System.nanoTime();
+    waitNanos += copy - start;
+
+    Frame recorded = free.poll();
+    if (recorded == null) {
+      dropped++;
+      return;
+    }
+    gl.glBindBuffer(GL2ES3.GL_PIXEL_PACK_BUFFER, bufferId[region]);
+    ByteBuffer mapped = gl.glMapBufferRange(GL2ES3.GL_PIXEL_PACK_BUFFER, 0, frameBytes(),
+        GL.GL_MAP_READ_BIT);
+    mapped.get(recorded.pixels);
+    gl.glUnmapBuffer(GL2ES3.GL_PIXEL_PACK_BUFFER);
+    gl.glBindBuffer(GL2ES3.GL_PIXEL_PACK_BUFFER, 0);
+    copyNanos += System.nanoTime() - copy;
+    pending.add(recorded);
+  }
+
+  /**
+   * Writes the frames handed to the encoder in order, until the end of the recording
+   */
+  private void encode() {
+    OutputStream out = null;
+    try {
+      if (video) {
+        out = new BufferedOutputStream(new FileOutputStream(path), 1 << 20);
+      } else {
+        new File(path).mkdirs();
+      }
+      Frame frame;
+      while ((frame = pending.take()) != END) {
+        if (video) {
+          writeY4M(out, frame.pixels);
+        } else {
+          writePNG(new File(path, String.format("frame_%05d.png", encoded)), frame.pixels);
+        }
+        encoded++;
+        free.add(frame);
+      }
+    } catch (IOException e) {
+      System.err.println("[error] Unable to record the frames to " + path + ": "
+          + e.getMessage());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } finally {
+      if (out != null) {
+        try {
+          out.close();
+        } catch (IOException e) {
+          System.err.println("[error] Unable to close " + path + ": " + e.getMessage());
+        }
+      }
+    }
+  }
+
+  private void writePNG(File file, byte[] pixels) throws IOException {
+    BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+    int[] rgb = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+    for (int y = 0; y < height; y++) {
+      int row = (height - 1 - y) * width * 4;
+      for (int x = 0; x < width; x++) {
+        int i = row + x * 4;
+        rgb[y * width + x] = (pixels[i] & 0xff) << 16 | (pixels[i + 1] & 0xff) << 8
+            | (pixels[i + 2] & 0xff);
+      }
+    }
+    ImageWriter writer = ImageIO.getImageWritersByFormatName("png").next();
+    ImageWriteParam param = writer.getDefaultWriteParam();
+    if (param.canWriteCompressed()) {
+      param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+      param.setCompressionQuality(PNG_QUALITY);
+    }
+    try (ImageOutputStream out = ImageIO.createImageOutputStream(file)) {
+      writer.setOutput(out);
+      writer.write(null, new IIOImage(image, null, null), param);
+    } finally {
+      writer.dispose();
+    }
+  }
+
+  /**
+   * Writes a frame of the video, with the header before the first. The colours are converted to
+   * BT.601 studio range YUV, with each chroma sample the average of 2x2 pixels.
+   */
+  private void writeY4M(OutputStream out, byte[] pixels) throws IOException {
+    if (encoded == 0) {
+      out.write(String.format("YUV4MPEG2 W%d H%d F%d:1 Ip A1:1 C420jpeg\n", width, height,
+          frameRate).getBytes("US-ASCII"));
+    }
+    int chromaWidth = (width + 1) / 2;
+    int chromaHeight = (height + 1) / 2;
+    byte[] yPlane = new byte[width * height];
+    byte[] uPlane = new byte[chromaWidth * chromaHeight];
+    byte[] vPlane = new byte[chromaWidth * chromaHeight];
+    for (int cy = 0; cy < chromaHeight; cy++) {
+      for (int cx = 0; cx < chromaWidth; cx++) {
+        int r = 0, g = 0, b = 0, n = 0;
+        for (int y = cy * 2; y < Math.min(cy * 2 + 2, height); y++) {
+          int row = (height - 1 - y) * width * 4;
+          for (int x = cx * 2; x < Math.min(cx * 2 + 2, width); x++) {
+            int pr = pixels[row + x * 4] & 0xff;
+            int pg = pixels[row + x * 4 + 1] & 0xff;
+            int pb = pixels[row + x * 4 + 2] & 0xff;
+            yPlane[y * width + x] = (byte) (((66 * pr + 129 * pg + 25 * pb + 128) >> 8) + 16);
+            r += pr;
+            g += pg;
+            b += pb;
+            n++;
+          }
+        }
+        r /= n;
+        g /= n;
+        b /= n;
+        uPlane[cy * chromaWidth + cx] = (byte) (((-38 * r - 74 * g + 112 * b + 128) >> 8) + 128);
+        vPlane[cy * chromaWidth + cx] = (byte) (((112 * r - 94 * g - 18 * b + 128) >> 8) + 128);
+      }
+    }
+    out.write("FRAME\n".getBytes("US-ASCII"));
+    out.write(yPlane);
+    out.write(uPlane);
+    out.write(vPlane);
+  }
+}
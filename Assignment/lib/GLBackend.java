@@ -0,0 +1,61 @@
+package lib;
+
+import com.jogamp.opengl.*;
+import java.nio.*;
+import lib.gmaths.*;
+
+/**
+ * I declare that this code is my own work.
+ * The OpenGL backend, every mesh is stored in one MeshArena.
+ *
+ * @author Zer Jun Eng (zjeng1@sheffield.ac.uk)
+ */
+public class GLBackend implements RenderBackend {
+
+  private final GL3 gl;
+  private final MeshArena arena;
+
+  /**
+   * GLBackend constructor
+   *
+   * @param gl OpenGL object, only used while the scene is created
+   * @param format Format of the vertices of every mesh
+   */
+  public GLBackend(GL3 gl, Mesh.Format format) {
+    this.gl = gl;
+    arena = new MeshArena(gl, format);
+  }
+
+  public Mesh createMesh(float[] vertices, int[] indices) {
+    return new Mesh(gl, arena, vertices, indices);
+  }
+
+  public Mesh createOptimisedMesh(float[] vertices, int[] indices, float acmrBefore) {
+    return new Mesh(gl, arena, vertices, indices, acmrBefore);
+  }
+
+  public Mesh createPackedMesh(Mesh.Format format, ByteBuffer vertices, ByteBuffer indices,
+      int vertexCount, int indexCount, AABB bounds, float acmrBefore, float acmrAfter) {
+    if (format != arena.getFormat()) {
+      return null;
+    }
+    return new Mesh(gl, arena, vertices, indices, vertexCount, indexCount, bounds, acmrBefore,
+        acmrAfter);
+  }
+
+  public int[] loadTexture(String path) {
+    return TextureLibrary.loadTexture(gl, path);
+  }
+
+  public int[] createTexture(int width, int height, ByteBuffer rgb) {
+    return TextureLibrary.createTexture(gl, width, height, rgb);
+  }
+
+  public Shader createShader(String vertexPath, String fragmentPath, String... defines) {
+    return new Shader(gl, vertexPath, fragmentPath, defines);
+  }
+
+  public void dispose(GL3 gl) {
+    arena.dispose(gl);
+  }
+}
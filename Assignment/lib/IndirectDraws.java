@@ -0,0 +1,184 @@
+package lib;
+
+import com.jogamp.common.nio.*;
+import com.jogamp.opengl.*;
+import java.nio.*;
+
+/**
+ * I declare that this code is my own work.
+ * Submits consecutive draws of a command list that share their shader and textures in one
+ * glMultiDrawElementsIndirect (OpenGL 4.3), from a GL_DRAW_INDIRECT_BUFFER of
+ * DrawElementsIndirectCommands. The draws of a call share their uniforms, so the shader reads the
+ * draw data of each draw from a texture buffer over the uploaded blocks of the list instead of
+ * the Draw block, at the draw index given as base instance, see vs_depth.txt. Such a shader is
+ * compiled with the INDIRECT define, and must be executed with an IndirectDraws.
+ *
+ * <p>Only the depth prepass draws this way: the lit shaders bind the textures of each model, so
+ * consecutive draws hardly ever share them. Without OpenGL 4.3 the prepass is drawn one draw at a
+ * time with the Draw block.
+ *
+ * <p>The texture buffer holds at most maxDraws blocks. A list with more draws is drawn in windows
+ * of that many blocks, the texture buffer is pointed at the window of each draw past the first.
+ *
+ * @author Zer Jun Eng (zjeng1@sheffield.ac.uk)
+ */
+public class IndirectDraws {
+
+  // Define of the shaders reading the draw data of indirect draws, and their texture buffer
+  public static final String DEFINE = "INDIRECT";
+  static final String DRAW_DATA = "drawData";
+
+  // count, instanceCount, firstIndex, baseVertex, baseInstance
+  private static final int COMMAND_INTS = 5;
+
+  private final int[] bufferId = new int[1];
+  private final int[] textureId = new int[1];
+  private final int maxDraws;
+  private IntBuffer data = Buffers.newDirectIntBuffer(64 * COMMAND_INTS);
+
+  // The draw data of the list being drawn, and the first block of the window the texture buffer
+  // points at
+  private int drawBuffer, drawOffset, drawBlocks;
+  private int window = 0;
+  private boolean warned = false;
+
+  // The draws of the call being built, all of the layout and index type of the first
+  private Mesh first;
+  private int count = 0;
+
+  // Calls made and draws submitted since the last reset()
+  private int calls = 0;
+  private int draws = 0;
+
+  public IndirectDraws(GL3 gl) {
+    int[] maxTexels = new int[1];
+    gl.glGetIntegerv(GL2ES3.GL_MAX_TEXTURE_BUFFER_SIZE, maxTexels, 0);
+    maxDraws = Math.min(MeshArena.DRAW_INDICES,
+        maxTexels[0] / (UniformRing.STRIDE_BYTES / (4 * Float.BYTES)));
+    gl.glGenBuffers(1, bufferId, 0);
+    gl.glGenTextures(1, textureId, 0);
+  }
+
+  /**
+   * Tells if the context can draw indirectly with a base instance
+   *
+   * @param gl OpenGL object
+   * @return True with OpenGL 4.3 or the equivalent extensions
+   */
+  public static boolean isSupported(GL3 gl) {
+    return gl.isFunctionAvailable("glMultiDrawElementsIndirect")
+        && gl.isFunctionAvailable("glDrawElementsInstancedBaseVertexBaseInstance")
+        && gl.isFunctionAvailable("glTexBufferRange");
+  }
+
+  int getTextureId() {
+    return textureId[0];
+  }
+
+  /**
+   * Points the texture buffer at the draw data of a list, once its texture is bound
+   *
+   * @param gl OpenGL object, for rendering
+   * @param buffer The buffer holding the draw data
+   * @param offset Offset of the first block in bytes
+   * @param blocks Number of blocks
+   */
+  void setDrawData(GL3 gl, int buffer, int offset, int blocks) {
+    drawBuffer = buffer;
+    drawOffset = offset;
+    drawBlocks = blocks;
+    window = 0;
+    pointWindow(gl);
+  }
+
+  // Points the bound texture buffer at the blocks of the window. The stride of the blocks is
+  // 256 bytes, a multiple of GL_TEXTURE_BUFFER_OFFSET_ALIGNMENT, so a window may start anywhere.
+  private void pointWindow(GL3 gl) {
+    int blocks = Math.max(1, Math.min(drawBlocks - window, maxDraws));
+    gl.glTexBufferRange(GL2ES3.GL_TEXTURE_BUFFER, GL.GL_RGBA32F, drawBuffer,
+        drawOffset + window * (long) UniformRing.STRIDE_BYTES,
+        blocks * (long) UniformRing.STRIDE_BYTES);
+  }
+
+  /**
+   * Adds a draw to the call being built, which is submitted first if the mesh cannot join it
+   *
+   * @param gl OpenGL object, for rendering
+   * @param mesh The mesh to draw
+   * @param drawIndex Index of the block of draw data of the draw
+   */
+  void add(GL3 gl, Mesh mesh, int drawIndex) {
+    if (count > 0 && (mesh.getLayout() != first.getLayout()
+        || mesh.getIndexType() != first.getIndexType())) {
+      flush(gl);
+    }
+    if (drawIndex < window || drawIndex >= window + maxDraws) {
+      // Past the draw data the texture buffer holds, the window moves to start at the draw
+      flush(gl);
+      if (!warned) {
+        System.err.println("[warning] More than " + maxDraws + " indirect draws, the draw data "
+            + "is drawn in windows of that many");
+        warned = true;
+      }
+      window = drawIndex;
+      // The range is state of the texture, so binding it to the active unit also moves it on the
+      // draw data unit
+      gl.glBindTexture(GL2ES3.GL_TEXTURE_BUFFER, textureId[0]);
+      pointWindow(gl);
+    }
+    if (count == 0) {
+      first = mesh;
+    }
+    if (data.remaining() < COMMAND_INTS) {
+      IntBuffer larger = Buffers.newDirectIntBuffer(data.capacity() * 2);
+      data.flip();
+      data = larger.put(data);
+    }
+    int indexSize = mesh.getIndexType() == GL.GL_UNSIGNED_SHORT ? Short.BYTES : Integer.BYTES;
+    data.put(mesh.getIndexCount()).put(1).put(mesh.getIndexOffset() / indexSize)
+        .put(mesh.getBaseVertex()).put(drawIndex - window);
+    count++;
+  }
+
+  /**
+   * Submits the call being built, if any
+   *
+   * @param gl OpenGL object, for rendering
+   */
+  void flush(GL3 gl) {
+    if (count == 0) {
+      return;
+    }
+    first.bind(gl);
+    data.flip();
+    gl.glBindBuffer(GL3ES3.GL_DRAW_INDIRECT_BUFFER, bufferId[0]);
+    gl.glBufferData(GL3ES3.GL_DRAW_INDIRECT_BUFFER, data.remaining() * (long) Integer.BYTES,
+        data, GL2ES2.GL_STREAM_DRAW);
+    // A null buffer is offset 0 in the bound indirect buffer
+    gl.glMultiDrawElementsIndirect(GL.GL_TRIANGLES, first.getIndexType(), null, count, 0);
+    gl.glBindBuffer(GL3ES3.GL_DRAW_INDIRECT_BUFFER, 0);
+    data.clear();
+    calls++;
+    draws += count;
+    count = 0;
+    first = null;
+  }
+
+  /**
+   * Resets the counts of calls and draws, e.g. each frame
+   */
+  public void reset() {
+    calls = 0;
+    draws = 0;
+  }
+
+  public void dispose(GL3 gl) {
+    gl.glDeleteBuffers(1, bufferId, 0);
+    gl.glDeleteTextures(1, textureId, 0);
+  }
+
+  // The calls and draws since the last reset()
+  public String toString() {
+    return String.format("Indirect draws: %d draws in %d calls", draws, calls);
+  }
+}
@@ -0,0 +1,376 @@
+package lib;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * I declare that this code is my own work.
+ * A streaming JSON parser, reading one token at a time from a character stream instead of
+ * building a tree of the whole document, so a large document is handled as it is read. The
+ * tokens are consumed with the begin, end and next methods of their type, peek() tells the type
+ * of the next one.
+ *
+ * @author Zer Jun Eng (zjeng1@sheffield.ac.uk)
+ */
+public class JsonReader implements Closeable {
+
+  public enum Token {
+    BEGIN_OBJECT, END_OBJECT, BEGIN_ARRAY, END_ARRAY, NAME, STRING, NUMBER, BOOLEAN, NULL,
+    END_DOCUMENT
+  }
+
+  // What the innermost scope expects next
+  private static final int EMPTY_DOCUMENT = 0;
+  private static final int NONEMPTY_DOCUMENT = 1;
+  private static final int EMPTY_ARRAY = 2;
+  private static final int NONEMPTY_ARRAY = 3;
+  private static final int EMPTY_OBJECT = 4;
+  private static final int NONEMPTY_OBJECT = 5;
+  private static final int DANGLING_NAME = 6;  // A name, then its value
+
+  private final Reader in;
+  private final char[] buffer = new char[8192];
+  private int pos = 0;
+  private int limit = 0;
+  private int line = 1;
+  private int column = 0;
+
+  private int[] stack = new int[32];
+  private int depth = 1;
+
+  // The next token once peeked, with the text of a name, string, number or literal
+  private Token peeked;
+  private String value;
+
+  public JsonReader(Reader in) {
+    this.in = in;
+    stack[0] = EMPTY_DOCUMENT;
+  }
+
+  /**
+   * Reads the type of the next token without consuming it
+   *
+   * @return The type of the next token
+   * @throws IOException If the stream cannot be read or is not valid JSON
+   */
+  public Token peek() throws IOException {
+    if (peeked != null) {
+      return peeked;
+    }
+    int c;
+    switch (stack[depth - 1]) {
+      case EMPTY_DOCUMENT:
+        stack[depth - 1] = NONEMPTY_DOCUMENT;
+        return peeked = readValue(nextNonSpace());
+      case NONEMPTY_DOCUMENT:
+        if (nextNonSpace() != -1) {
+          throw error("Expected the end of the document");
+        }
+        return peeked = Token.END_DOCUMENT;
+      case EMPTY_ARRAY:
+      case NONEMPTY_ARRAY:
+        c = nextNonSpace();
+        if (c == ']') {
+          depth--;
+          return peeked = Token.END_ARRAY;
+        }
+        if (stack[depth - 1] == NONEMPTY_ARRAY) {
+          if (c != ',') {
+            throw error("Expected ',' or ']'");
+          }
+          c = nextNonSpace();
+        }
+        stack[depth - 1] = NONEMPTY_ARRAY;
+        return peeked = readValue(c);
+      case EMPTY_OBJECT:
+      case NONEMPTY_OBJECT:
+        c = nextNonSpace();
+        if (c == '}') {
+          depth--;
+          return peeked = Token.END_OBJECT;
+        }
+        if (stack[depth - 1] == NONEMPTY_OBJECT) {
+          if (c != ',') {
+            throw error("Expected ',' or '}'");
+          }
+          c = nextNonSpace();
+        }
+        if (c != '"') {
+          throw error("Expected a name");
+        }
+        value = readString();
+        stack[depth - 1] = DANGLING_NAME;
+        return peeked = Token.NAME;
+      default:  // DANGLING_NAME
+        if (nextNonSpace() != ':') {
+          throw error("Expected ':'");
+        }
+        stack[depth - 1] = NONEMPTY_OBJECT;
+        return peeked = readValue(nextNonSpace());
+    }
+  }
+
+  /**
+   * Tells if the current array or object has another element
+   *
+   * @return False at the end of the array or object
+   * @throws IOException If the stream cannot be read or is not valid JSON
+   */
+  public boolean hasNext() throws IOException {
+    Token token = peek();
+    return token != Token.END_OBJECT && token != Token.END_ARRAY && token != Token.END_DOCUMENT;
+  }
+
+  public void beginObject() throws IOException {
+    consume(Token.BEGIN_OBJECT);
+  }
+
+  public void endObject() throws IOException {
+    consume(Token.END_OBJECT);
+  }
+
+  public void beginArray() throws IOException {
+    consume(Token.BEGIN_ARRAY);
+  }
+
+  public void endArray() throws IOException {
+    consume(Token.END_ARRAY);
+  }
+
+  public String nextName() throws IOException {
+    consume(Token.NAME);
+    return value;
+  }
+
+  public String nextString() throws IOException {
+    consume(Token.STRING);
+    return value;
+  }
+
+  public boolean nextBoolean() throws IOException {
+    consume(Token.BOOLEAN);
+    return value.equals("true");
+  }
+
+  public void nextNull() throws IOException {
+    consume(Token.NULL);
+  }
+
+  public float nextFloat() throws IOException {
+    if (peek() != Token.NUMBER) {
+      throw error("Expected a number but was " + peeked);
+    }
+    try {
+      float f = Float.parseFloat(value);
+      peeked = null;
+      return f;
+    } catch (NumberFormatException e) {
+      throw error("Malformed number " + value);
+    }
+  }
+
+  public int nextInt() throws IOException {
+    if (peek() != Token.NUMBER) {
+      throw error("Expected a number but was " + peeked);
+    }
+    try {
+      int i = Integer.parseInt(value);
+      peeked = null;
+      return i;
+    } catch (NumberFormatException e) {
+      throw error("Expected an integer but was " + value);
+    }
+  }
+
+  /**
+   * Reads an array of numbers
+   *
+   * @return The numbers
+   * @throws IOException If the next value is not an array of numbers
+   */
+  public float[] nextFloats() throws IOException {
+    List<Float> floats = new ArrayList<>();
+    beginArray();
+    while (hasNext()) {
+      floats.add(nextFloat());
+    }
+    endArray();
+    float[] result = new float[floats.size()];
+    for (int i = 0; i < result.length; i++) {
+      result[i] = floats.get(i);
+    }
+    return result;
+  }
+
+  /**
+   * Skips the next value, with all it contains if it is an array or object
+   *
+   * @throws IOException If the stream cannot be read or is not valid JSON
+   */
+  public void skipValue() throws IOException {
+    int open = 0;
+    do {
+      Token token = peek();
+      peeked = null;
+      if (token == Token.BEGIN_OBJECT || token == Token.BEGIN_ARRAY) {
+        open++;
+      } else if (token == Token.END_OBJECT || token == Token.END_ARRAY) {
+        open--;
+      } else if (token == Token.END_DOCUMENT) {
+        throw error("Unexpected end of the document");
+      }
+    } while (open > 0);
+  }
+
+  /**
+   * Creates an error at the current position in the stream, also for errors in the content of a
+   * valid document
+   *
+   * @param message What is wrong
+   * @return The error, to be thrown
+   */
+  public IOException error(String message) {
+    return new IOException(message + " at line " + line + " column " + column);
+  }
+
+  public void close() throws IOException {
+    in.close();
+  }
+
+  private void consume(Token expected) throws IOException {
+    if (peek() != expected) {
+      throw error("Expected " + expected + " but was " + peeked);
+    }
+    peeked = null;
+  }
+
+  /**
+   * Reads the value starting with a character, the nested scope of an array or object is opened
+   */
+  private Token readValue(int c) throws IOException {
+    switch (c) {
+      case '{':
+        push(EMPTY_OBJECT);
+        return Token.BEGIN_OBJECT;
+      case '[':
+        push(EMPTY_ARRAY);
+        return Token.BEGIN_ARRAY;
+      case '"':
+        value = readString();
+        return Token.STRING;
+      case -1:
+        throw error("Unexpected end of the document");
+      default:
+        StringBuilder literal = new StringBuilder().append((char) c);
+        while (isLiteral(peekChar())) {
+          literal.append((char) read());
+        }
+        value = literal.toString();
+        switch (value) {
+          case "true":
+          case "false":
+            return Token.BOOLEAN;
+          case "null":
+            return Token.NULL;
+          default:
+            if (c == '-' || (c >= '0' && c <= '9')) {
+              return Token.NUMBER;
+            }
+            throw error("Unexpected value " + value);
+        }
+    }
+  }
+
+  private static boolean isLiteral(int c) {
+    return (c >= '0' && c <= '9') || (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')
+        || c == '-' || c == '+' || c == '.';
+  }
+
+  // Reads the rest of a string after its opening quote
+  private String readString() throws IOException {
+    StringBuilder s = new StringBuilder();
+    while (true) {
+      int c = read();
+      if (c == '"') {
+        return s.toString();
+      } else if (c == -1 || c == '\n') {
+        throw error("Unterminated string");
+      } else if (c != '\\') {
+        s.append((char) c);
+        continue;
+      }
+      c = read();
+      switch (c) {
+        case 'b': s.append('\b'); break;
+        case 'f': s.append('\f'); break;
+        case 'n': s.append('\n'); break;
+        case 'r': s.append('\r'); break;
+        case 't': s.append('\t'); break;
+        case 'u':
+          int code = 0;
+          for (int i = 0; i < 4; i++) {
+            int digit = Character.digit(read(), 16);
+            if (digit < 0) {
+              throw error("Malformed unicode escape");
+            }
+            code = code * 16 + digit;
+          }
+          s.append((char) code);
+          break;
+        case '"':
+        case '\\':
+        case '/':
+          s.append((char) c);
+          break;
+        default:
+          throw error("Malformed escape");
+      }
+    }
+  }
+
+  private void push(int scope) {
+    if (depth == stack.length) {
+      stack = Arrays.copyOf(stack, depth * 2);
+    }
+    stack[depth++] = scope;
+  }
+
+  private int nextNonSpace() throws IOException {
+    int c = read();
+    while (c == ' ' || c == '\t' || c == '\n' || c == '\r') {
+      c = read();
+    }
+    return c;
+  }
+
+  private int peekChar() throws IOException {
+    if (pos == limit && !fill()) {
+      return -1;
+    }
+    return buffer[pos];
+  }
+
+  private int read() throws IOException {
+    if (pos == limit && !fill()) {
+      return -1;
+    }
+    char c = buffer[pos++];
+    if (c == '\n') {
+      line++;
+      column = 0;
+    } else {
+      column++;
+    }
+    return c;
+  }
+
+  private boolean fill() throws IOException {
+    limit = in.read(buffer, 0, buffer.length);
+    pos = 0;
+    if (limit <= 0) {
+      limit = 0;
+      return false;
+    }
+    return true;
+  }
+}
@@ -1,46 +1,145 @@
 package lib;
 
-import com.jogamp.common.nio.*;
 import com.jogamp.opengl.*;
-import java.nio.*;
 import lib.gmaths.*;
 import shapes.*;
 
 /**
  * Light class adapted from tutorial 7
  * Constructor have been added to allow inheritance and different shapes of light
- * A new render method has been added to allow Light in scene graph
+ * A new record method has been added to allow Light in scene graph
  * setDirection() and getDirection() have been added for spotlight
+ * A light can have a shadow map, see setShadowMap()
+ * Lights have a type, point and spot lights fade out with distance and have a limited range
+ * The bulb is a sphere mesh of the render backend, recorded into a CommandList
  *
  * @author Dr. Steve Maddock and Zer Jun Eng (zjeng1@sheffield.ac.uk)
  */
 public class Light {
 
+  public enum Type {DIRECTIONAL, POINT, SPOT}
+
+  // Attenuation at the edge of the range of a light, it fades to nothing from there
+  private static final float RANGE_ATTENUATION = 1f / 64;
+
+  private final Type type;
   private final Material material;
   private final Vec3 position;
   private final Vec3 direction = new Vec3();
   private final Shader shader;
+  private final Mesh bulb;
   private Camera camera;
   private float lightColor = 1;
   private float spotlightIntensity = 1;
+  private ShadowMap shadowMap;
+
+  // Attenuation of point and spot lights, and the cone of spot lights in degrees
+  private float constant = 1.0f;
+  private float linear = 0.09f;
+  private float quadratic = 0.032f;
+  private float cutOff = 12.5f;
+  private float outerCutOff = 15f;
+
+  /**
+   * Constructor for a world light, which lights the whole scene
+   *
+   * @param backend Backend of the bulb
+   * @param camera Camera object
+   */
+  public Light(RenderBackend backend, Camera camera) {
+    this(backend, camera, Type.DIRECTIONAL);
+  }
 
   /**
    * Constructor for light that allows different shape
    *
-   * @param gl OpenGL object
+   * @param backend Backend of the bulb
    * @param camera Camera object
+   * @param type Type of the light
    */
-  public Light(GL3 gl, Camera camera) {
+  protected Light(RenderBackend backend, Camera camera, Type type) {
+    this.type = type;
     material = new Material();
     material.setAmbient(0.5f, 0.5f, 0.5f);
     material.setDiffuse(1, 1, 1);
     material.setSpecular(1, 1, 1);
     position = new Vec3(3f, 2f, 1f);
-    shader = new Shader(gl, "shaders/vs_light.txt", "shaders/fs_light.txt");
-    fillBuffers(gl);
+    shader = backend.createShader("shaders/vs_light.txt", "shaders/fs_light.txt");
+    bulb = backend.createMesh(Sphere.vertices.clone(), Sphere.indices.clone());
     setCamera(camera);
   }
 
+  /**
+   * Constructor for a light without a visible bulb, e.g. the fill lights of a room
+   *
+   * @param type Type of the light
+   */
+  public Light(Type type) {
+    this.type = type;
+    material = new Material();
+    material.setAmbient(0, 0, 0);
+    material.setDiffuse(1, 1, 1);
+    material.setSpecular(1, 1, 1);
+    position = new Vec3();
+    shader = null;
+    bulb = null;
+  }
+
+  public Type getType() {
+    return type;
+  }
+
+  /**
+   * Sets how point and spot lights fade with distance, 1 / (constant + linear * d + quadratic * d^2)
+   *
+   * @param constant Constant term
+   * @param linear Linear term
+   * @param quadratic Quadratic term
+   */
+  public void setAttenuation(float constant, float linear, float quadratic) {
+    this.constant = constant;
+    this.linear = linear;
+    this.quadratic = quadratic;
+  }
+
+  /**
+   * Sets the cone of a spot light, the light fades out between the inner and outer angles
+   *
+   * @param cutOff Inner angle in degrees
+   * @param outerCutOff Outer angle in degrees
+   */
+  public void setCutOff(float cutOff, float outerCutOff) {
+    this.cutOff = cutOff;
+    this.outerCutOff = outerCutOff;
+  }
+
+  float getConstant() { return constant; }
+
+  float getLinear() { return linear; }
+
+  float getQuadratic() { return quadratic; }
+
+  float getCutOff() { return cutOff; }
+
+  float getOuterCutOff() { return outerCutOff; }
+
+  /**
+   * Gets the distance at which the attenuation falls to RANGE_ATTENUATION
+   *
+   * @return The range, infinite for world lights
+   */
+  public float getRange() {
+    if (type == Type.DIRECTIONAL) {
+      return Float.POSITIVE_INFINITY;
+    }
+
+    float c = constant - 1 / RANGE_ATTENUATION;
+    if (quadratic > 0) {
+      return (float) ((-linear + Math.sqrt(linear * linear - 4 * quadratic * c)) / (2 * quadratic));
+    }
+    return linear > 0 ? -c / linear : Float.POSITIVE_INFINITY;
+  }
+
   public void setPosition(Vec3 v) {
     position.x = v.x;
     position.y = v.y;
@@ -81,95 +180,83 @@ public class Light {
 
   public void setLightColor(float value) { this.lightColor = value; }
 
+  float getLightColor() { return lightColor; }
+
   float getSpotlightIntensity() { return this.spotlightIntensity; }
 
   public void setSpotlightIntensity(float value) {
     this.spotlightIntensity = value;
   }
 
+  /**
+   * Makes the light cast shadows, or stop casting them
+   *
+   * @param shadowMap The shadow map of the light, null for no shadows
+   */
+  public void setShadowMap(ShadowMap shadowMap) {
+    this.shadowMap = shadowMap;
+  }
+
+  public ShadowMap getShadowMap() {
+    return shadowMap;
+  }
+
   private void setCamera(Camera camera) {
     this.camera = camera;
   }
 
-  public void render(GL3 gl) {
+  /**
+   * Gets the mesh of the bulb
+   *
+   * @return The mesh, null for a light without a bulb
+   */
+  Mesh getBulb() {
+    return bulb;
+  }
+
+  /**
+   * Gets the model matrix of the bulb at the position of the light
+   *
+   * @return The model matrix
+   */
+  Mat4 getBulbMatrix() {
     Mat4 model = new Mat4(1);
     model = Mat4.multiply(Mat4Transform.scale(0.3f, 0.3f, 0.3f), model);
-    model = Mat4.multiply(Mat4Transform.translate(position), model);
-
-    Mat4 mvpMatrix = Mat4
-        .multiply(camera.getPerspectiveMatrix(), Mat4.multiply(camera.getViewMatrix(), model));
-
-    shader.use(gl);
-    shader.setFloatArray(gl, "mvpMatrix", mvpMatrix.toFloatArrayForGLSL());
-    shader.setFloat(gl, "lightColor", this.lightColor);
+    return Mat4.multiply(Mat4Transform.translate(position), model);
+  }
 
-    gl.glBindVertexArray(vertexArrayId[0]);
-    gl.glDrawElements(GL.GL_TRIANGLES, indices.length, GL.GL_UNSIGNED_INT, 0);
-    gl.glBindVertexArray(0);
+  /**
+   * Records the draw of the bulb at the position of the light
+   *
+   * @param commands The command list
+   */
+  public void record(CommandList commands) {
+    record(commands, getBulbMatrix());
   }
 
   /**
-   * Render method that allows Light to be used in scene graph
+   * Records the draw of the bulb, lights without a bulb record nothing
    *
-   * @param gl OpenGL object, for rendering
+   * @param commands The command list
    * @param modelMatrix Model matrix from scene graph
    */
-  public void render(GL3 gl, Mat4 modelMatrix) {
+  public void record(CommandList commands, Mat4 modelMatrix) {
+    if (shader == null) {
+      return;
+    }
+
     Mat4 mvpMatrix = Mat4
         .multiply(camera.getPerspectiveMatrix(), Mat4.multiply(camera.getViewMatrix(), modelMatrix));
 
-    shader.use(gl);
-    shader.setFloatArray(gl, "mvpMatrix", mvpMatrix.toFloatArrayForGLSL());
-    shader.setFloat(gl, "lightColor", this.lightColor);
-
-    gl.glBindVertexArray(vertexArrayId[0]);
-    gl.glDrawElements(GL.GL_TRIANGLES, indices.length, GL.GL_UNSIGNED_INT, 0);
-    gl.glBindVertexArray(0);
+    commands.setPipeline(shader);
+    commands.setMatrix("mvpMatrix", mvpMatrix);
+    commands.setFloat("lightColor", this.lightColor);
+    commands.draw(bulb);
   }
 
   public void dispose(GL3 gl) {
-    gl.glDeleteBuffers(1, vertexBufferId, 0);
-    gl.glDeleteVertexArrays(1, vertexArrayId, 0);
-    gl.glDeleteBuffers(1, elementBufferId, 0);
-  }
-
-  // ***************************************************
-  /* THE DATA
-   */
-  // anticlockwise/counterclockwise ordering
-
-  private static final float[] vertices = Sphere.vertices.clone();
-  private static final int[] indices = Sphere.indices.clone();
-
-
-  // ***************************************************
-  /* THE LIGHT BUFFERS
-   */
-
-  private final int[] vertexBufferId = new int[1];
-  private final int[] vertexArrayId = new int[1];
-  private final int[] elementBufferId = new int[1];
-
-  private void fillBuffers(GL3 gl) {
-    gl.glGenVertexArrays(1, vertexArrayId, 0);
-    gl.glBindVertexArray(vertexArrayId[0]);
-    gl.glGenBuffers(1, vertexBufferId, 0);
-    gl.glBindBuffer(GL.GL_ARRAY_BUFFER, vertexBufferId[0]);
-    FloatBuffer fb = Buffers.newDirectFloatBuffer(vertices);
-
-    gl.glBufferData(GL.GL_ARRAY_BUFFER, Float.BYTES * vertices.length, fb, GL.GL_STATIC_DRAW);
-
-    int stride = 8;
-    int numXYZFloats = 3;
-    int offset = 0;
-    gl.glVertexAttribPointer(0, numXYZFloats, GL.GL_FLOAT, false, stride * Float.BYTES, offset);
-    gl.glEnableVertexAttribArray(0);
-
-    gl.glGenBuffers(1, elementBufferId, 0);
-    IntBuffer ib = Buffers.newDirectIntBuffer(indices);
-    gl.glBindBuffer(GL.GL_ELEMENT_ARRAY_BUFFER, elementBufferId[0]);
-    gl.glBufferData(GL.GL_ELEMENT_ARRAY_BUFFER, Integer.BYTES * indices.length, ib,
-        GL.GL_STATIC_DRAW);
-    gl.glBindVertexArray(0);
+    if (shadowMap != null) {
+      shadowMap.dispose(gl);
+    }
   }
 }
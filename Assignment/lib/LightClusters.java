@@ -0,0 +1,391 @@
+package lib;
+
+import com.jogamp.common.nio.*;
+import com.jogamp.opengl.*;
+import java.nio.*;
+import java.util.*;
+import lib.gmaths.*;
+
+/**
+ * I declare that this code is my own work.
+ * Clustered light assignment. The view frustum is split into screen tiles and exponential depth
+ * slices (froxels), and every point and spot light is listed in the clusters its range touches.
+ * The lights, the (offset, count) of each cluster and the light lists are uploaded as texture
+ * buffers, so a fragment only evaluates the lights of its own cluster.
+ *
+ * @author Zer Jun Eng (zjeng1@sheffield.ac.uk)
+ */
+public class LightClusters {
+
+  public static final int TILES_X = 16;
+  public static final int TILES_Y = 9;
+  public static final int SLICES = 24;
+  public static final int CLUSTERS = TILES_X * TILES_Y * SLICES;
+
+  // RGBA texels per light in the light data buffer, see fetchLight() in inc_lighting.txt
+  static final int TEXELS_PER_LIGHT = 6;
+
+  private static final int LIGHT_DATA = 0;
+  private static final int GRID = 1;
+  private static final int INDICES = 2;
+  private static final String[] SAMPLERS = {"lightData", "clusterGrid", "lightIndices"};
+
+  private final int[] bufferId = new int[3];
+  private final int[] textureId = new int[3];
+  private final int maxTexels;
+
+  // Local lights of the last build, in the order of the light data
+  private final List<Light> localLights = new ArrayList<>();
+  private float[] lightData = new float[0];
+  private final int[] grid = new int[CLUSTERS * 2];   // offset, count
+  private int[] indices = new int[256];
+  private int indexCount;
+  private final int[] next = new int[CLUSTERS];
+
+  // Staging for the uploads, grown as needed
+  private FloatBuffer dataBuffer = Buffers.newDirectFloatBuffer(TEXELS_PER_LIGHT * 4);
+  private final IntBuffer gridBuffer = Buffers.newDirectIntBuffer(CLUSTERS * 2);
+  private IntBuffer indexBuffer = Buffers.newDirectIntBuffer(256);
+
+  // (cluster, light) pairs before they are sorted by cluster
+  private int[] pairCluster = new int[256];
+  private int[] pairLight = new int[256];
+  private int pairCount;
+
+  // Projection of the last build
+  private float near, far, scaleX, scaleY;
+  private final float[] sliceDepth = new float[SLICES + 1];
+  private float sliceScale, sliceBias;
+  private float tileWidth, tileHeight;
+
+  private boolean overflowed = false;
+  private long buildNanos;
+
+  public LightClusters(GL3 gl) {
+    int[] max = new int[1];
+    gl.glGetIntegerv(GL2ES3.GL_MAX_TEXTURE_BUFFER_SIZE, max, 0);
+    maxTexels = max[0];
+
+    int[] formats = {GL.GL_RGBA32F, GL2ES3.GL_RG32UI, GL2ES3.GL_R32UI};
+    gl.glGenBuffers(3, bufferId, 0);
+    gl.glGenTextures(3, textureId, 0);
+    for (int i = 0; i < 3; i++) {
+      gl.glBindBuffer(GL2ES3.GL_TEXTURE_BUFFER, bufferId[i]);
+      gl.glBufferData(GL2ES3.GL_TEXTURE_BUFFER, 16, null, GL2ES2.GL_STREAM_DRAW);
+      gl.glBindTexture(GL2ES3.GL_TEXTURE_BUFFER, textureId[i]);
+      gl.glTexBuffer(GL2ES3.GL_TEXTURE_BUFFER, formats[i], bufferId[i]);
+    }
+    gl.glBindTexture(GL2ES3.GL_TEXTURE_BUFFER, 0);
+    gl.glBindBuffer(GL2ES3.GL_TEXTURE_BUFFER, 0);
+  }
+
+  /**
+   * Assigns the point and spot lights to the clusters of a view, and uploads the result
+   *
+   * @param gl OpenGL object
+   * @param camera The camera of the view
+   * @param lights Every light, world lights are skipped
+   * @param width Viewport width in pixels
+   * @param height Viewport height in pixels
+   */
+  public void update(GL3 gl, Camera camera, List<Light> lights, int width, int height) {
+    assign(camera.getViewMatrix(), camera.getPerspectiveMatrix(), lights, width, height);
+    upload(gl);
+  }
+
+  /**
+   * Assigns the point and spot lights to the clusters, on the CPU only
+   *
+   * @param view View matrix
+   * @param perspective Symmetric perspective matrix
+   * @param lights Every light, world lights are skipped
+   * @param width Viewport width in pixels
+   * @param height Viewport height in pixels
+   */
+  void assign(Mat4 view, Mat4 perspective, List<Light> lights, int width, int height) {
+    long start = System.nanoTime();
+    setProjection(perspective, width, height);
+
+    localLights.clear();
+    for (Light light : lights) {
+      if (light.getType() != Light.Type.DIRECTIONAL) {
+        localLights.add(light);
+      }
+    }
+    int lightLimit = Math.min(localLights.size(), maxTexels / TEXELS_PER_LIGHT);
+    if (lightLimit < localLights.size()) {
+      warnOverflow();
+      localLights.subList(lightLimit, localLights.size()).clear();
+    }
+
+    if (lightData.length < localLights.size() * TEXELS_PER_LIGHT * 4) {
+      lightData = new float[localLights.size() * TEXELS_PER_LIGHT * 4];
+    }
+    pairCount = 0;
+    for (int i = 0; i < localLights.size(); i++) {
+      Light light = localLights.get(i);
+      writeLight(i, light);
+      if (light.getSpotlightIntensity() > 0) {
+        addPairs(i, view, light.getPosition(), light.getRange());
+      }
+    }
+    sortPairs();
+    buildNanos = System.nanoTime() - start;
+  }
+
+  /**
+   * Records the binding of the buffers and the cluster uniforms of a lit shader
+   *
+   * @param commands The command list, with the lit shader in use
+   * @param unit First of the three texture units used
+   */
+  void record(CommandList commands, int unit) {
+    for (int i = 0; i < 3; i++) {
+      commands.setInt(SAMPLERS[i], unit + i);
+      commands.bindTexture(unit + i, GL2ES3.GL_TEXTURE_BUFFER, textureId[i]);
+    }
+    commands.setInt("clusterCount", TILES_X, TILES_Y, SLICES);
+    commands.setFloat("clusterTileSize", tileWidth, tileHeight);
+    commands.setFloat("clusterScale", sliceScale);
+    commands.setFloat("clusterBias", sliceBias);
+    commands.setFloat("depthRange", near, far);
+  }
+
+  /**
+   * Gets the index of a light in the light data, for shadows
+   *
+   * @param light The light
+   * @return The index, -1 if the light is not a local light
+   */
+  int indexOf(Light light) {
+    return localLights.indexOf(light);
+  }
+
+  public int getLightCount() {
+    return localLights.size();
+  }
+
+  /**
+   * Gets the number of lights in the busiest cluster
+   *
+   * @return The maximum number of lights in a cluster
+   */
+  public int getMaxLightsPerCluster() {
+    int max = 0;
+    for (int c = 0; c < CLUSTERS; c++) {
+      max = Math.max(max, grid[c * 2 + 1]);
+    }
+    return max;
+  }
+
+  public String toString() {
+    return String.format("%d local lights in %d clusters: %.2f per cluster, %d at most, "
+            + "assigned in %.3f ms", localLights.size(), CLUSTERS, (float) indexCount / CLUSTERS,
+        getMaxLightsPerCluster(), buildNanos / 1e6);
+  }
+
+  public void dispose(GL3 gl) {
+    gl.glDeleteTextures(3, textureId, 0);
+    gl.glDeleteBuffers(3, bufferId, 0);
+  }
+
+  private void setProjection(Mat4 perspective, int width, int height) {
+    // The perspective matrix is 1 / (tan * aspect), 1 / tan and the depth terms of the clip planes
+    scaleX = perspective.get(0, 0);
+    scaleY = perspective.get(1, 1);
+    float sz = perspective.get(2, 2);
+    float pz = perspective.get(2, 3);
+    near = pz / (sz - 1);
+    far = pz / (sz + 1);
+
+    for (int k = 0; k <= SLICES; k++) {
+      sliceDepth[k] = near * (float) Math.pow(far / near, (double) k / SLICES);
+    }
+    float logRatio = (float) Math.log(far / near);
+    sliceScale = SLICES / logRatio;
+    sliceBias = -SLICES * (float) Math.log(near) / logRatio;
+    tileWidth = (float) width / TILES_X;
+    tileHeight = (float) height / TILES_Y;
+  }
+
+  private void writeLight(int index, Light light) {
+    Material m = light.getMaterial();
+    boolean spot = light.getType() == Light.Type.SPOT;
+    // A point light is a spot light whose cone always contains the fragment
+    float cutOff = spot ? (float) Math.cos(Math.toRadians(light.getCutOff())) : -1;
+    float outerCutOff = spot ? (float) Math.cos(Math.toRadians(light.getOuterCutOff())) : -2;
+    Vec3 direction = spot ? light.getDirection() : new Vec3(0, -1, 0);
+
+    int o = index * TEXELS_PER_LIGHT * 4;
+    put(o, light.getPosition(), light.getRange());
+    put(o + 4, direction, light.getSpotlightIntensity());
+    lightData[o + 8] = light.getConstant();
+    lightData[o + 9] = light.getLinear();
+    lightData[o + 10] = light.getQuadratic();
+    lightData[o + 11] = cutOff;
+    put(o + 12, m.getAmbient(), outerCutOff);
+    put(o + 16, m.getDiffuse(), 0);
+    put(o + 20, m.getSpecular(), 0);
+  }
+
+  private void put(int offset, Vec3 v, float w) {
+    lightData[offset] = v.x;
+    lightData[offset + 1] = v.y;
+    lightData[offset + 2] = v.z;
+    lightData[offset + 3] = w;
+  }
+
+  /**
+   * Lists a light in every cluster its bounding sphere touches
+   */
+  private void addPairs(int light, Mat4 view, Vec3 position, float radius) {
+    // View space centre, depth is positive in front of the camera
+    float cx = view.get(0, 0) * position.x + view.get(0, 1) * position.y
+        + view.get(0, 2) * position.z + view.get(0, 3);
+    float cy = view.get(1, 0) * position.x + view.get(1, 1) * position.y
+        + view.get(1, 2) * position.z + view.get(1, 3);
+    float depth = -(view.get(2, 0) * position.x + view.get(2, 1) * position.y
+        + view.get(2, 2) * position.z + view.get(2, 3));
+    if (depth + radius < near || depth - radius > far) {
+      return;
+    }
+
+    int k0 = slice(Math.max(depth - radius, near));
+    int k1 = slice(Math.min(depth + radius, far));
+    for (int k = k0; k <= k1; k++) {
+      float d0 = sliceDepth[k];
+      float d1 = sliceDepth[k + 1];
+
+      // Screen extent of the sphere's bounding box within the slice
+      float dA = Math.max(d0, depth - radius);
+      float dB = Math.min(d1, depth + radius);
+      if (dA > dB) {
+        continue;
+      }
+      int i0 = tile(Math.min((cx - radius) / dA, (cx - radius) / dB) * scaleX, TILES_X);
+      int i1 = tile(Math.max((cx + radius) / dA, (cx + radius) / dB) * scaleX, TILES_X);
+      int j0 = tile(Math.min((cy - radius) / dA, (cy - radius) / dB) * scaleY, TILES_Y);
+      int j1 = tile(Math.max((cy + radius) / dA, (cy + radius) / dB) * scaleY, TILES_Y);
+
+      for (int j = j0; j <= j1; j++) {
+        for (int i = i0; i <= i1; i++) {
+          if (sphereTouchesCluster(cx, cy, depth, radius, i, j, d0, d1)) {
+            addPair(i + TILES_X * (j + TILES_Y * k), light);
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Tests a sphere against the view space bounding box of a cluster
+   */
+  private boolean sphereTouchesCluster(float cx, float cy, float depth, float radius,
+      int i, int j, float d0, float d1) {
+    float x0 = -1 + 2f * i / TILES_X;
+    float x1 = -1 + 2f * (i + 1) / TILES_X;
+    float y0 = -1 + 2f * j / TILES_Y;
+    float y1 = -1 + 2f * (j + 1) / TILES_Y;
+    float minX = Math.min(x0 * d0, x0 * d1) / scaleX;
+    float maxX = Math.max(x1 * d0, x1 * d1) / scaleX;
+    float minY = Math.min(y0 * d0, y0 * d1) / scaleY;
+    float maxY = Math.max(y1 * d0, y1 * d1) / scaleY;
+
+    float dx = Math.max(0, Math.max(minX - cx, cx - maxX));
+    float dy = Math.max(0, Math.max(minY - cy, cy - maxY));
+    float dz = Math.max(0, Math.max(d0 - depth, depth - d1));
+    return dx * dx + dy * dy + dz * dz <= radius * radius;
+  }
+
+  private int slice(float depth) {
+    int k = (int) Math.floor(Math.log(depth) * sliceScale + sliceBias);
+    return Math.max(0, Math.min(SLICES - 1, k));
+  }
+
+  private static int tile(float ndc, int tiles) {
+    int t = (int) Math.floor((ndc + 1) / 2 * tiles);
+    return Math.max(0, Math.min(tiles - 1, t));
+  }
+
+  private void addPair(int cluster, int light) {
+    if (pairCount == pairCluster.length) {
+      pairCluster = Arrays.copyOf(pairCluster, pairCount * 2);
+      pairLight = Arrays.copyOf(pairLight, pairCount * 2);
+    }
+    pairCluster[pairCount] = cluster;
+    pairLight[pairCount] = light;
+    pairCount++;
+  }
+
+  /**
+   * Counting sort of the pairs by cluster into the light lists
+   */
+  private void sortPairs() {
+    Arrays.fill(grid, 0);
+    for (int p = 0; p < pairCount; p++) {
+      grid[pairCluster[p] * 2 + 1]++;
+    }
+
+    int offset = 0;
+    for (int c = 0; c < CLUSTERS; c++) {
+      grid[c * 2] = offset;
+      offset += grid[c * 2 + 1];
+    }
+
+    if (offset > maxTexels) {
+      // Keep the lists within the buffer, the clusters at the end lose their lights
+      warnOverflow();
+      for (int c = 0; c < CLUSTERS; c++) {
+        int start = Math.min(grid[c * 2], maxTexels);
+        grid[c * 2 + 1] = Math.min(grid[c * 2 + 1], maxTexels - start);
+      }
+    }
+
+    indexCount = Math.min(offset, maxTexels);
+    if (indices.length < offset) {
+      indices = new int[Math.max(offset, indices.length * 2)];
+    }
+    Arrays.fill(next, 0);
+    for (int p = 0; p < pairCount; p++) {
+      int c = pairCluster[p];
+      indices[grid[c * 2] + next[c]++] = pairLight[p];
+    }
+  }
+
+  private void upload(GL3 gl) {
+    int dataLength = Math.max(4, localLights.size() * TEXELS_PER_LIGHT * 4);
+    if (dataBuffer.capacity() < dataLength) {
+      dataBuffer = Buffers.newDirectFloatBuffer(Math.max(dataLength, dataBuffer.capacity() * 2));
+    }
+    dataBuffer.clear();
+    dataBuffer.put(lightData, 0, Math.min(dataLength, lightData.length)).flip();
+
+    gridBuffer.clear();
+    gridBuffer.put(grid).flip();
+
+    int indexLength = Math.max(1, indexCount);
+    if (indexBuffer.capacity() < indexLength) {
+      indexBuffer = Buffers.newDirectIntBuffer(Math.max(indexLength, indexBuffer.capacity() * 2));
+    }
+    indexBuffer.clear();
+    indexBuffer.put(indices, 0, indexLength).flip();
+
+    // Orphan the old storage so the GPU can keep reading it while the new lists are written
+    upload(gl, bufferId[LIGHT_DATA], dataBuffer, (long) dataLength * Float.BYTES);
+    upload(gl, bufferId[GRID], gridBuffer, (long) grid.length * Integer.BYTES);
+    upload(gl, bufferId[INDICES], indexBuffer, (long) indexLength * Integer.BYTES);
+    gl.glBindBuffer(GL2ES3.GL_TEXTURE_BUFFER, 0);
+  }
+
+  private static void upload(GL3 gl, int buffer, Buffer data, long bytes) {
+    gl.glBindBuffer(GL2ES3.GL_TEXTURE_BUFFER, buffer);
+    gl.glBufferData(GL2ES3.GL_TEXTURE_BUFFER, bytes, data, GL2ES2.GL_STREAM_DRAW);
+  }
+
+  private void warnOverflow() {
+    if (!overflowed) {
+      overflowed = true;
+      System.err.println("[warning] Too many lights for the cluster buffers, some are dropped");
+    }
+  }
+}
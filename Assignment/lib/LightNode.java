@@ -1,6 +1,6 @@
 package lib;
 
-import com.jogamp.opengl.*;
+import lib.gmaths.*;
 
 /**
  * I declare that this code is my own work.
@@ -10,6 +10,9 @@ import com.jogamp.opengl.*;
  */
 public class LightNode extends SGNode {
 
+  // The bulb shines down its local Y axis
+  private static final Vec3 LOCAL_DIRECTION = new Vec3(0, -1, 0);
+
   private final Light light;
 
   /**
@@ -24,13 +27,21 @@ public class LightNode extends SGNode {
   }
 
   /**
-   * Sets the position and direction of the spotlight, and renders it
+   * Sets the position and direction of the spotlight, so they are up to date before anything
+   * is lit or shadowed by it in this frame
    *
-   * @param gl OpenGL object, for rendering
+   * @param t World transform of the light
    */
-  public void draw(GL3 gl) {
+  void update(Mat4 t) {
+    super.update(t);
     light.setPosition(worldTransform.getTranslateVec());
-    light.setDirection(worldTransform.getRotationVec());
-    light.render(gl, worldTransform);
+    light.setDirection(Quat.fromMat4(worldTransform).rotate(LOCAL_DIRECTION));
+  }
+
+  /**
+   * Gets the light placed by this node, for the scene file
+   */
+  Light getLight() {
+    return light;
   }
 }
@@ -0,0 +1,153 @@
+package lib;
+
+import com.jogamp.opengl.*;
+import java.util.*;
+
+/**
+ * I declare that this code is my own work.
+ * The lights of a scene. World lights are set as uniforms, point and spot lights are clustered
+ * so each fragment only evaluates the lights that reach it (see LightClusters). One world light
+ * and one local light can cast shadows. The lights of the software renderer are not clustered.
+ * The lighting of a shader is recorded into the command list drawing with it.
+ *
+ * @author Zer Jun Eng (zjeng1@sheffield.ac.uk)
+ */
+public class Lighting {
+
+  // Must match inc_lighting.txt
+  public static final int MAX_DIR_LIGHTS = 4;
+
+  // Texture units 0 and 1 are the diffuse and specular maps of a model
+  private static final int DIR_SHADOW_UNIT = 2;
+  private static final int SPOT_SHADOW_UNIT = 3;
+  private static final int CLUSTER_UNIT = 4;
+
+  // Position, ambient, diffuse and specular uniforms of each world light
+  private static final String[][] DIR_LIGHT_UNIFORMS = new String[MAX_DIR_LIGHTS][];
+
+  static {
+    for (int i = 0; i < MAX_DIR_LIGHTS; i++) {
+      String name = "dirLight[" + i + "]";
+      DIR_LIGHT_UNIFORMS[i] = new String[]{name + ".position", name + ".ambient",
+          name + ".diffuse", name + ".specular"};
+    }
+  }
+
+  private final List<Light> lights = new ArrayList<>();
+  private final LightClusters clusters;
+  private final CommandList applyCommands = new CommandList();  // Reused by apply()
+
+  public Lighting(GL3 gl) {
+    clusters = new LightClusters(gl);
+  }
+
+  /**
+   * Lights of a scene drawn by the software renderer, which finds the lights of each draw itself
+   */
+  public Lighting() {
+    clusters = null;
+  }
+
+  public void add(Light light) {
+    lights.add(light);
+  }
+
+  public List<Light> getLights() {
+    return Collections.unmodifiableList(lights);
+  }
+
+  /**
+   * Gets the clusters of the local lights
+   *
+   * @return The clusters, null for the software renderer
+   */
+  public LightClusters getClusters() {
+    return clusters;
+  }
+
+  /**
+   * Assigns the point and spot lights to the clusters of the view, once per frame after every
+   * light has moved
+   *
+   * @param gl OpenGL object
+   * @param camera The camera of the view
+   * @param width Viewport width in pixels
+   * @param height Viewport height in pixels
+   */
+  public void update(GL3 gl, Camera camera, int width, int height) {
+    clusters.update(gl, camera, lights, width, height);
+  }
+
+  /**
+   * Sets the lighting uniforms of a lit shader
+   *
+   * @param gl OpenGL object, for rendering
+   * @param shader The lit shader
+   */
+  void apply(GL3 gl, Shader shader) {
+    applyCommands.reset();
+    applyCommands.setPipeline(shader);
+    record(applyCommands);
+    applyCommands.execute(gl);
+  }
+
+  /**
+   * Records the lighting uniforms of a lit shader, once the clusters and shadow maps of the frame
+   * are known
+   *
+   * @param commands The command list, with the lit shader in use
+   */
+  void record(CommandList commands) {
+    int dirLightCount = 0;
+    int shadowedDirLight = -1;
+    int shadowedLight = -1;
+
+    // Every shadow sampler needs its own unit, even when unused
+    commands.setInt("dirShadow.map", DIR_SHADOW_UNIT);
+    commands.setInt("spotShadow.map", SPOT_SHADOW_UNIT);
+
+    for (Light light : lights) {
+      ShadowMap shadowMap = light.getShadowMap();
+      if (light.getType() == Light.Type.DIRECTIONAL) {
+        if (dirLightCount == MAX_DIR_LIGHTS) {
+          continue;
+        }
+
+        String[] names = DIR_LIGHT_UNIFORMS[dirLightCount];
+        commands.setVec3(names[0], light.getPosition());
+        commands.setVec3(names[1], light.getMaterial().getAmbient());
+        commands.setVec3(names[2], light.getMaterial().getDiffuse());
+        commands.setVec3(names[3], light.getMaterial().getSpecular());
+        if (shadowMap != null && shadowedDirLight < 0) {
+          shadowMap.record(commands, "dirShadow", DIR_SHADOW_UNIT);
+          shadowedDirLight = dirLightCount;
+        }
+        dirLightCount++;
+      } else if (shadowMap != null && shadowedLight < 0) {
+        shadowedLight = clusters.indexOf(light);
+        if (shadowedLight >= 0) {
+          shadowMap.record(commands, "spotShadow", SPOT_SHADOW_UNIT);
+        }
+      }
+    }
+
+    commands.setInt("dirLightCount", dirLightCount);
+    commands.setInt("shadowedDirLight", shadowedDirLight);
+    commands.setInt("shadowedLight", shadowedLight);
+    if (shadowedDirLight < 0) {
+      commands.setInt("dirShadow.enabled", 0);
+    }
+    if (shadowedLight < 0) {
+      commands.setInt("spotShadow.enabled", 0);
+    }
+
+    clusters.record(commands, CLUSTER_UNIT);
+  }
+
+  public void dispose(GL3 gl) {
+    for (Light light : lights) {
+      light.dispose(gl);
+    }
+    clusters.dispose(gl);
+  }
+}
@@ -1,80 +1,260 @@
 package lib;
 
-import com.jogamp.common.nio.*;
 import com.jogamp.opengl.*;
 import java.nio.*;
+import lib.gmaths.*;
 
 /**
  * Mesh class adapted from tutorial 7
+ * Keeps the local bounds of the vertices for collision queries
+ * Vertices can be stored in a compact layout
+ * Triangles and vertices are reordered for the vertex cache when constructed, see MeshOptimiser
+ * The vertices and indices are stored in a MeshArena shared with the other meshes, a mesh is the
+ * range of its indices and its base vertex. Meshes of the software renderer have no arena.
  *
- * @author Dr. Steve Maddock
+ * @author Dr. Steve Maddock and Zer Jun Eng (zjeng1@sheffield.ac.uk)
  */
 public class Mesh {
 
-  private final float[] vertices;
+  /**
+   * Layouts of the vertices in the vertex buffer
+   */
+  public enum Format {
+    // 8 floats, 32 bytes per vertex
+    FLOAT,
+
+    // Positions as normalised shorts when they lie in [-1, 1] or else floats, normals in the
+    // octahedral mapping as 2 normalised shorts, texture coordinates as half floats.
+    // 16 or 20 bytes per vertex, the vertex shaders must be compiled with COMPACT defined.
+    COMPACT
+  }
+
+  // Define of the vertex shaders that decode the normals of Format.COMPACT, see inc_vertex.txt
+  public static final String COMPACT = "COMPACT_VERTICES";
+
+  private static final int MAX_SHORT_INDEX = 0xffff;
+
+  private final float[] vertices;  // Null if the mesh was uploaded packed
   private final int[] indices;
   private final int vertexStride = 8;
-  private final int vertexXYZFloats = 3;
-  private final int vertexNormalFloats = 3;
-  private final int vertexTexFloats = 2;
-  private final int[] vertexBufferId = new int[1];
-  private final int[] vertexArrayId = new int[1];
-  private final int[] elementBufferId = new int[1];
-
-  public Mesh(GL3 gl, float[] vertices, int[] indices) {
+  private final int vertexCount;
+  private final int indexCount;
+  private final AABB bounds = new AABB();
+  private final float acmrBefore;
+  private final float acmrAfter;
+
+  // Range of the mesh in the arena, if any
+  private final MeshArena arena;
+  private final VertexLayout layout;
+  private final int baseVertex;
+  private final int indexOffset;  // Bytes
+  private final int indexType;
+
+  /**
+   * Mesh constructor
+   *
+   * @param gl OpenGL object
+   * @param arena The arena to store the mesh in, null to keep it in memory only
+   * @param vertices Interleaved vertices, 8 floats each
+   * @param indices Triangle list
+   */
+  public Mesh(GL3 gl, MeshArena arena, float[] vertices, int[] indices) {
+    this(gl, arena, vertices, indices, MeshOptimiser.getACMR(indices), false);
+  }
+
+  /**
+   * A mesh whose vertices and indices were optimised by another Mesh, e.g. loaded from a
+   * SceneFile, so they are stored as they are
+   *
+   * @param gl OpenGL object
+   * @param arena The arena to store the mesh in, null to keep it in memory only
+   * @param vertices Interleaved vertices, 8 floats each, as returned by getVertices()
+   * @param indices Triangle list, as returned by getIndices()
+   * @param acmrBefore The ACMR of the indices before they were optimised
+   */
+  Mesh(GL3 gl, MeshArena arena, float[] vertices, int[] indices, float acmrBefore) {
+    this(gl, arena, vertices, indices, acmrBefore, true);
+  }
+
+  private Mesh(GL3 gl, MeshArena arena, float[] vertices, int[] indices, float acmrBefore,
+      boolean optimised) {
+    this.acmrBefore = acmrBefore;
+    if (!optimised) {
+      indices = MeshOptimiser.removeInvalidTriangles(vertices, vertexStride, indices);
+      indices = MeshOptimiser.optimiseVertexCache(indices, vertices.length / vertexStride);
+      vertices = MeshOptimiser.optimiseVertexFetch(vertices, vertexStride, indices);
+    }
     this.vertices = vertices;
     this.indices = indices;
-    fillBuffers(gl);
+    vertexCount = vertices.length / vertexStride;
+    indexCount = indices.length;
+    acmrAfter = MeshOptimiser.getACMR(indices);
+    for (int i = 0; i + 2 < this.vertices.length; i += vertexStride) {
+      bounds.expand(this.vertices[i], this.vertices[i + 1], this.vertices[i + 2]);
+    }
+
+    this.arena = arena;
+    indexType = getIndexType(vertexCount);
+    if (arena == null) {
+      layout = null;
+      baseVertex = 0;
+      indexOffset = 0;
+    } else {
+      layout = getLayout(arena.getFormat(), this.bounds);
+      baseVertex = arena.addVertices(gl, layout, this.vertices);
+      indexOffset = arena.addIndices(gl, indices, indexType);
+    }
+  }
+
+  /**
+   * A mesh uploaded from vertices and indices already packed for the arena, e.g. mapped from a
+   * SceneFile, so they are copied to the buffers as they are. The floats are not kept.
+   *
+   * @param gl OpenGL object
+   * @param arena The arena to store the mesh in, of the format the vertices are packed in
+   * @param vertices The vertices in the layout of getLayout(), see VertexLayout.encode()
+   * @param indices The indices in the type of getIndexType(), see MeshArena.packIndices()
+   * @param vertexCount Number of vertices
+   * @param indexCount Number of indices
+   * @param bounds Bounds of the vertex positions
+   * @param acmrBefore The ACMR of the indices before they were optimised
+   * @param acmrAfter The ACMR of the indices
+   */
+  Mesh(GL3 gl, MeshArena arena, ByteBuffer vertices, ByteBuffer indices, int vertexCount,
+      int indexCount, AABB bounds, float acmrBefore, float acmrAfter) {
+    this.vertices = null;
+    this.indices = null;
+    this.vertexCount = vertexCount;
+    this.indexCount = indexCount;
+    this.bounds.union(bounds);
+    this.acmrBefore = acmrBefore;
+    this.acmrAfter = acmrAfter;
+    this.arena = arena;
+    indexType = getIndexType(vertexCount);
+    layout = getLayout(arena.getFormat(), this.bounds);
+    baseVertex = arena.addVertices(gl, layout, vertices, vertexCount);
+    indexOffset = arena.addIndices(gl, indices, indexType);
+  }
+
+  /**
+   * A mesh kept in memory only, drawn by the software renderer
+   *
+   * @param vertices Interleaved vertices, 8 floats each
+   * @param indices Triangle list
+   */
+  Mesh(float[] vertices, int[] indices) {
+    this(null, null, vertices, indices);
+  }
+
+  /**
+   * Gets the bounds of the vertex positions in model space
+   *
+   * @return A copy of the bounds
+   */
+  public AABB getBounds() {
+    return new AABB(bounds);
   }
 
   public void render(GL3 gl) {
-    gl.glBindVertexArray(vertexArrayId[0]);
-    gl.glDrawElements(GL.GL_TRIANGLES, indices.length, GL.GL_UNSIGNED_INT, 0);
-    gl.glBindVertexArray(0);
-  }
-
-  private void fillBuffers(GL3 gl) {
-    gl.glGenVertexArrays(1, vertexArrayId, 0);
-    gl.glBindVertexArray(vertexArrayId[0]);
-    gl.glGenBuffers(1, vertexBufferId, 0);
-    gl.glBindBuffer(GL.GL_ARRAY_BUFFER, vertexBufferId[0]);
-    FloatBuffer fb = Buffers.newDirectFloatBuffer(vertices);
-
-    gl.glBufferData(GL.GL_ARRAY_BUFFER, Float.BYTES * vertices.length, fb, GL.GL_STATIC_DRAW);
-
-    int stride = vertexStride;
-    int numXYZFloats = vertexXYZFloats;
-    int offset = 0;
-    gl.glVertexAttribPointer(0, numXYZFloats, GL.GL_FLOAT, false, stride * Float.BYTES, offset);
-    gl.glEnableVertexAttribArray(0);
-
-    int numNormalFloats = vertexNormalFloats; // x,y,z for each vertex 
-    offset = numXYZFloats
-        * Float.BYTES;  // the normal values are three floats after the three x,y,z values
-    // so change the offset value
-    gl.glVertexAttribPointer(1, numNormalFloats, GL.GL_FLOAT, false, stride * Float.BYTES, offset);
-    // the vertex shader uses location 1 (sometimes called index 1)
-    // for the normal information
-    // location, size, type, normalize, stride, offset
-    // offset is relative to the start of the array of data
-    gl.glEnableVertexAttribArray(1);// Enable the vertex attribute array at location 1
-
-    // now do the texture coordinates  in vertex attribute 2
-    offset = (numXYZFloats + numNormalFloats) * Float.BYTES;
-    gl.glVertexAttribPointer(2, vertexTexFloats, GL.GL_FLOAT, false, stride * Float.BYTES, offset);
-    gl.glEnableVertexAttribArray(2);
-
-    gl.glGenBuffers(1, elementBufferId, 0);
-    IntBuffer ib = Buffers.newDirectIntBuffer(indices);
-    gl.glBindBuffer(GL.GL_ELEMENT_ARRAY_BUFFER, elementBufferId[0]);
-    gl.glBufferData(GL.GL_ELEMENT_ARRAY_BUFFER, Integer.BYTES * indices.length, ib,
-        GL.GL_STATIC_DRAW);
-    gl.glBindVertexArray(0);
-  }
-
-  void dispose(GL3 gl) {
-    gl.glDeleteBuffers(1, vertexBufferId, 0);
-    gl.glDeleteVertexArrays(1, vertexArrayId, 0);
-    gl.glDeleteBuffers(1, elementBufferId, 0);
+    arena.bind(gl, layout);
+    gl.glDrawElementsBaseVertex(GL.GL_TRIANGLES, indexCount, indexType, indexOffset,
+        baseVertex);
+  }
+
+  /**
+   * Renders several instances of the mesh in one draw call, told apart by gl_InstanceID
+   *
+   * @param gl OpenGL object, for rendering
+   * @param instances Number of instances
+   */
+  public void renderInstanced(GL3 gl, int instances) {
+    arena.bind(gl, layout);
+    gl.glDrawElementsInstancedBaseVertex(GL.GL_TRIANGLES, indexCount, indexType, indexOffset,
+        instances, baseVertex);
+  }
+
+  /**
+   * Binds the vertex array of the mesh, for a draw made elsewhere, e.g. by IndirectDraws
+   *
+   * @param gl OpenGL object, for rendering
+   */
+  void bind(GL3 gl) {
+    arena.bind(gl, layout);
+  }
+
+  /**
+   * Gets the layout of the vertices of a mesh in an arena of a format
+   *
+   * @param format The format
+   * @param bounds Bounds of the vertex positions
+   * @return The layout, with short positions if the mesh lies in [-1, 1]
+   */
+  static VertexLayout getLayout(Format format, AABB bounds) {
+    // Normalised shorts keep about 5 significant digits in [-1, 1], enough for unit meshes
+    AABB unitCube = new AABB(new Vec3(-1, -1, -1), new Vec3(1, 1, 1));
+    boolean shortPositions = unitCube.contains(bounds.min.x, bounds.min.y, bounds.min.z)
+        && unitCube.contains(bounds.max.x, bounds.max.y, bounds.max.z);
+    return VertexLayout.of(format, shortPositions);
+  }
+
+  /**
+   * Gets the type of the indices of a mesh in an arena
+   *
+   * @param vertexCount Number of vertices of the mesh
+   * @return GL_UNSIGNED_SHORT if they fit in a short, else GL_UNSIGNED_INT
+   */
+  static int getIndexType(int vertexCount) {
+    return vertexCount - 1 <= MAX_SHORT_INDEX ? GL.GL_UNSIGNED_SHORT : GL.GL_UNSIGNED_INT;
+  }
+
+  // The vertices and indices as reordered, not copied, null if the mesh was uploaded packed
+  float[] getVertices() {
+    return vertices;
+  }
+
+  int[] getIndices() {
+    return indices;
+  }
+
+  float getAcmrBefore() {
+    return acmrBefore;
+  }
+
+  float getAcmrAfter() {
+    return acmrAfter;
+  }
+
+  int getVertexCount() {
+    return vertexCount;
+  }
+
+  VertexLayout getLayout() {
+    return layout;
+  }
+
+  int getBaseVertex() {
+    return baseVertex;
+  }
+
+  int getIndexOffset() {
+    return indexOffset;
+  }
+
+  int getIndexCount() {
+    return indexCount;
+  }
+
+  int getIndexType() {
+    return indexType;
+  }
+
+  public int getTriangleCount() {
+    return indexCount / 3;
+  }
+
+  // The average cache miss ratio of the triangles as given, then as reordered
+  public String toString() {
+    return String.format("%d vertices, %d triangles, ACMR %.3f -> %.3f",
+        vertexCount, indexCount / 3, acmrBefore, acmrAfter);
   }
 }
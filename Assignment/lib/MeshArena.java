@@ -0,0 +1,250 @@
+package lib;
+
+import com.jogamp.common.nio.*;
+import com.jogamp.opengl.*;
+import java.nio.*;
+import java.util.*;
+
+/**
+ * I declare that this code is my own work.
+ * One vertex buffer, element buffer and vertex array shared by every static mesh, so drawing one
+ * mesh after another never switches buffers. Each mesh is a range of the buffers, its indices
+ * count from its first vertex and are drawn with a base vertex. Meshes are never freed, the
+ * buffers grow as meshes are added and are deleted with the arena.
+ *
+ * <p>The vertices of a layout must share a vertex array, so meshes of another layout (e.g. a
+ * compact mesh too large for short positions) get a vertex buffer and vertex array of their
+ * own, still sharing the element buffer.
+ *
+ * <p>Every vertex array also reads a draw index per instance, the index of the instance plus its
+ * base instance. An indirect draw gives each draw its index as base instance, so the shader can
+ * fetch the draw data of that draw, see IndirectDraws.
+ *
+ * @author Zer Jun Eng (zjeng1@sheffield.ac.uk)
+ */
+public class MeshArena {
+
+  // Initial sizes, enough for the meshes of the room
+  private static final int VERTEX_CAPACITY = 256 * 1024;
+  private static final int INDEX_CAPACITY = 64 * 1024;
+
+  // Attribute of the draw index, and the number of indices, enough for the draw data of 4096
+  // draws in a texture buffer of the minimum GL_MAX_TEXTURE_BUFFER_SIZE
+  static final int DRAW_INDEX_LOCATION = 3;
+  static final int DRAW_INDICES = 4096;
+
+  /**
+   * The vertex buffer and vertex array of a vertex layout
+   */
+  private static final class Pool {
+
+    final VertexLayout layout;
+    final int[] vertexArrayId = new int[1];
+    final int[] vertexBufferId = new int[1];
+    int capacity = 0;
+    int vertexCount = 0;
+
+    private Pool(VertexLayout layout) {
+      this.layout = layout;
+    }
+  }
+
+  private final Mesh.Format format;
+  private final Map<VertexLayout, Pool> pools = new EnumMap<>(VertexLayout.class);
+  private final int[] elementBufferId = new int[1];
+  private final int[] drawIndexBufferId = new int[1];
+  private int indexCapacity = 0;
+  private int indexBytes = 0;
+
+  /**
+   * MeshArena constructor
+   *
+   * @param gl OpenGL object
+   * @param format Format of the vertices of every mesh
+   */
+  public MeshArena(GL3 gl, Mesh.Format format) {
+    this.format = format;
+    indexCapacity = growBuffer(gl, elementBufferId, 0, INDEX_CAPACITY, 0);
+
+    int[] drawIndices = new int[DRAW_INDICES];
+    for (int i = 0; i < DRAW_INDICES; i++) {
+      drawIndices[i] = i;
+    }
+    gl.glGenBuffers(1, drawIndexBufferId, 0);
+    gl.glBindBuffer(GL.GL_ARRAY_BUFFER, drawIndexBufferId[0]);
+    gl.glBufferData(GL.GL_ARRAY_BUFFER, DRAW_INDICES * (long) Integer.BYTES,
+        Buffers.newDirectIntBuffer(drawIndices), GL.GL_STATIC_DRAW);
+    gl.glBindBuffer(GL.GL_ARRAY_BUFFER, 0);
+  }
+
+  public Mesh.Format getFormat() {
+    return format;
+  }
+
+  /**
+   * Copies the vertices of a mesh to the end of the vertex buffer of their layout
+   *
+   * @param gl OpenGL object
+   * @param layout Layout of the vertices
+   * @param vertices The vertices, 8 floats each
+   * @return The base vertex of the mesh, the index of its first vertex in the buffer
+   */
+  int addVertices(GL3 gl, VertexLayout layout, float[] vertices) {
+    return addVertices(gl, layout, layout.encode(vertices), vertices.length / 8);
+  }
+
+  /**
+   * Copies vertices already in a layout to the end of the vertex buffer of the layout
+   *
+   * @param gl OpenGL object
+   * @param layout Layout of the vertices
+   * @param bytes The vertices, from their position to their limit
+   * @param vertexCount Number of vertices
+   * @return The base vertex of the mesh, the index of its first vertex in the buffer
+   */
+  int addVertices(GL3 gl, VertexLayout layout, ByteBuffer bytes, int vertexCount) {
+    Pool pool = pools.get(layout);
+    if (pool == null) {
+      pool = new Pool(layout);
+      gl.glGenVertexArrays(1, pool.vertexArrayId, 0);
+      pools.put(layout, pool);
+    }
+
+    int offset = pool.vertexCount * layout.stride;
+    if (offset + bytes.remaining() > pool.capacity) {
+      pool.capacity = growBuffer(gl, pool.vertexBufferId, pool.capacity,
+          Math.max(VERTEX_CAPACITY, offset + bytes.remaining()), offset);
+      pointVertexArray(gl, pool);
+    }
+    gl.glBindBuffer(GL.GL_ARRAY_BUFFER, pool.vertexBufferId[0]);
+    gl.glBufferSubData(GL.GL_ARRAY_BUFFER, offset, bytes.remaining(), bytes);
+    gl.glBindBuffer(GL.GL_ARRAY_BUFFER, 0);
+    int baseVertex = pool.vertexCount;
+    pool.vertexCount += vertexCount;
+    return baseVertex;
+  }
+
+  /**
+   * Copies the indices of a mesh to the end of the element buffer, as unsigned shorts when they
+   * fit or else as unsigned ints
+   *
+   * @param gl OpenGL object
+   * @param indices The indices, counted from the first vertex of the mesh
+   * @param type GL_UNSIGNED_SHORT or GL_UNSIGNED_INT
+   * @return Offset of the first index in bytes
+   */
+  int addIndices(GL3 gl, int[] indices, int type) {
+    return addIndices(gl, packIndices(indices, type), type);
+  }
+
+  /**
+   * Copies indices already packed in their type to the end of the element buffer
+   *
+   * @param gl OpenGL object
+   * @param bytes The indices, from their position to their limit
+   * @param type GL_UNSIGNED_SHORT or GL_UNSIGNED_INT
+   * @return Offset of the first index in bytes
+   */
+  int addIndices(GL3 gl, ByteBuffer bytes, int type) {
+    int size = type == GL.GL_UNSIGNED_SHORT ? Short.BYTES : Integer.BYTES;
+    int offset = (indexBytes + size - 1) / size * size;  // Aligned to the index size
+    int length = bytes.remaining();
+    if (offset + length > indexCapacity) {
+      indexCapacity = growBuffer(gl, elementBufferId, indexCapacity, offset + length, indexBytes);
+      for (Pool pool : pools.values()) {
+        pointVertexArray(gl, pool);
+      }
+    }
+    gl.glBindBuffer(GL2ES3.GL_COPY_WRITE_BUFFER, elementBufferId[0]);
+    gl.glBufferSubData(GL2ES3.GL_COPY_WRITE_BUFFER, offset, length, bytes);
+    gl.glBindBuffer(GL2ES3.GL_COPY_WRITE_BUFFER, 0);
+    indexBytes = offset + length;
+    return offset;
+  }
+
+  /**
+   * Packs indices in their type for the element buffer
+   *
+   * @param indices The indices
+   * @param type GL_UNSIGNED_SHORT or GL_UNSIGNED_INT
+   * @return The bytes of the indices, in native order
+   */
+  static ByteBuffer packIndices(int[] indices, int type) {
+    if (type == GL.GL_UNSIGNED_SHORT) {
+      ByteBuffer bytes = Buffers.newDirectByteBuffer(indices.length * Short.BYTES);
+      ShortBuffer sb = bytes.asShortBuffer();
+      for (int index : indices) {
+        sb.put((short) index);
+      }
+      return bytes;
+    }
+    ByteBuffer bytes = Buffers.newDirectByteBuffer(indices.length * Integer.BYTES);
+    bytes.asIntBuffer().put(indices);
+    return bytes;
+  }
+
+  /**
+   * Binds the vertex array of a layout. It is left bound after a draw, so consecutive draws from
+   * the arena do not switch vertex arrays, and everything else binds its own before drawing.
+   *
+   * @param gl OpenGL object, for rendering
+   * @param layout Layout of the vertices to draw
+   */
+  void bind(GL3 gl, VertexLayout layout) {
+    gl.glBindVertexArray(pools.get(layout).vertexArrayId[0]);
+  }
+
+  public void dispose(GL3 gl) {
+    for (Pool pool : pools.values()) {
+      gl.glDeleteVertexArrays(1, pool.vertexArrayId, 0);
+      gl.glDeleteBuffers(1, pool.vertexBufferId, 0);
+    }
+    pools.clear();
+    gl.glDeleteBuffers(1, elementBufferId, 0);
+    gl.glDeleteBuffers(1, drawIndexBufferId, 0);
+  }
+
+  /**
+   * Points a vertex array at the current buffers of the arena, after one has grown
+   */
+  private void pointVertexArray(GL3 gl, Pool pool) {
+    gl.glBindVertexArray(pool.vertexArrayId[0]);
+    gl.glBindBuffer(GL.GL_ARRAY_BUFFER, pool.vertexBufferId[0]);
+    pool.layout.setAttributes(gl);
+    gl.glBindBuffer(GL.GL_ARRAY_BUFFER, drawIndexBufferId[0]);
+    gl.glVertexAttribIPointer(DRAW_INDEX_LOCATION, 1, GL2ES2.GL_INT, 0, 0);
+    gl.glVertexAttribDivisor(DRAW_INDEX_LOCATION, 1);
+    gl.glEnableVertexAttribArray(DRAW_INDEX_LOCATION);
+    gl.glBindBuffer(GL.GL_ELEMENT_ARRAY_BUFFER, elementBufferId[0]);
+    gl.glBindVertexArray(0);
+    gl.glBindBuffer(GL.GL_ARRAY_BUFFER, 0);
+  }
+
+  /**
+   * Replaces a buffer by a larger one, keeping the bytes in use
+   *
+   * @param id Id of the buffer, replaced
+   * @param capacity Current capacity in bytes, 0 if the buffer is not allocated yet
+   * @param required Capacity needed in bytes
+   * @param used Bytes to keep
+   * @return The new capacity
+   */
+  private static int growBuffer(GL3 gl, int[] id, int capacity, int required, int used) {
+    int newCapacity = Math.max(capacity * 2, required);
+    int[] newId = new int[1];
+    gl.glGenBuffers(1, newId, 0);
+    gl.glBindBuffer(GL2ES3.GL_COPY_WRITE_BUFFER, newId[0]);
+    gl.glBufferData(GL2ES3.GL_COPY_WRITE_BUFFER, newCapacity, null, GL.GL_STATIC_DRAW);
+    if (capacity > 0) {
+      gl.glBindBuffer(GL2ES3.GL_COPY_READ_BUFFER, id[0]);
+      gl.glCopyBufferSubData(GL2ES3.GL_COPY_READ_BUFFER, GL2ES3.GL_COPY_WRITE_BUFFER, 0, 0, used);
+      gl.glBindBuffer(GL2ES3.GL_COPY_READ_BUFFER, 0);
+    }
+    gl.glBindBuffer(GL2ES3.GL_COPY_WRITE_BUFFER, 0);
+    if (id[0] != 0) {
+      gl.glDeleteBuffers(1, id, 0);
+    }
+    id[0] = newId[0];
+    return newCapacity;
+  }
+}
@@ -0,0 +1,85 @@
+package lib;
+
+/**
+ * I declare that this code is my own work.
+ * Levels of detail of a mesh, finest first. Each coarser level is used while the bounding sphere
+ * of its model projects to at most a given radius in pixels. A level is only left for a coarser
+ * one once the radius is a margin below its limit, so a model near a limit does not keep popping
+ * between two levels.
+ *
+ * @author Zer Jun Eng (zjeng1@sheffield.ac.uk)
+ */
+public class MeshLOD {
+
+  // Largest error in pixels between a level of a round shape and the true surface
+  public static final float MAX_ERROR_PIXELS = 1;
+
+  // Fraction of the radius limit a model must shrink below before a coarser level is used
+  private static final float HYSTERESIS = 0.2f;
+
+  private final Mesh[] meshes;
+  private final float[] maxRadius;
+
+  /**
+   * A single level, never switched
+   *
+   * @param mesh The mesh
+   */
+  public MeshLOD(Mesh mesh) {
+    this(new Mesh[]{mesh}, new float[]{Float.POSITIVE_INFINITY});
+  }
+
+  /**
+   * MeshLOD constructor
+   *
+   * @param meshes The levels, finest first
+   * @param maxRadius Largest projected radius in pixels of each level, the first is ignored
+   */
+  public MeshLOD(Mesh[] meshes, float[] maxRadius) {
+    this.meshes = meshes.clone();
+    this.maxRadius = maxRadius.clone();
+    this.maxRadius[0] = Float.POSITIVE_INFINITY;
+  }
+
+  /**
+   * Gets the largest projected radius for a round shape approximated by a polygon of a number of
+   * segments, so the polygon stays within MAX_ERROR_PIXELS of the circle
+   *
+   * @param segments Number of edges around the shape
+   * @return The radius in pixels
+   */
+  public static float getMaxRadius(int segments) {
+    return MAX_ERROR_PIXELS / (float) (1 - Math.cos(Math.PI / segments));
+  }
+
+  public int getLevelCount() {
+    return meshes.length;
+  }
+
+  public Mesh getMesh(int level) {
+    return meshes[level];
+  }
+
+  // Largest projected radius of a level, as given to the constructor
+  float getLevelRadius(int level) {
+    return maxRadius[level];
+  }
+
+  /**
+   * Selects the level of a model from its projected size
+   *
+   * @param radius Radius of the bounding sphere of the model in pixels
+   * @param current The level used in the last frame
+   * @return The level to use
+   */
+  public int selectLevel(float radius, int current) {
+    int level = Math.min(current, meshes.length - 1);
+    while (level > 0 && radius > maxRadius[level]) {
+      level--;
+    }
+    while (level + 1 < meshes.length && radius <= maxRadius[level + 1] * (1 - HYSTERESIS)) {
+      level++;
+    }
+    return level;
+  }
+}
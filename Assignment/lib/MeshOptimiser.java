@@ -0,0 +1,271 @@
+package lib;
+
+import java.util.*;
+
+/**
+ * I declare that this code is my own work.
+ * Reorders the triangles and vertices of an indexed mesh so the GPU transforms fewer vertices
+ * and fetches them in order. Triangles are ordered with Tom Forsyth's linear-speed vertex cache
+ * optimisation, then vertices are renumbered in the order they are first used. Works on any mesh
+ * of the interleaved layout of Mesh, not only the generated shapes.
+ *
+ * <p>The average cache miss ratio (ACMR) is the number of vertices transformed per triangle,
+ * between 0.5 for an ideal cache and 3 without any reuse.
+ *
+ * @author Zer Jun Eng (zjeng1@sheffield.ac.uk)
+ */
+public final class MeshOptimiser {
+
+  // Post-transform cache modelled for the ACMR, a FIFO as in most hardware
+  public static final int FIFO_CACHE_SIZE = 16;
+
+  // Scoring of Forsyth's algorithm, modelled as an LRU cache
+  private static final int CACHE_SIZE = 32;
+  private static final float CACHE_DECAY_POWER = 1.5f;
+  private static final float LAST_TRIANGLE_SCORE = 0.75f;
+  private static final float VALENCE_BOOST_SCALE = 2;
+  private static final float VALENCE_BOOST_POWER = 0.5f;
+
+  private MeshOptimiser() {
+  }
+
+  /**
+   * Removes the triangles that cannot produce any fragment: those with an index out of range,
+   * with a repeated index, or with no area
+   *
+   * @param vertices Interleaved vertices, positions first
+   * @param stride Floats per vertex
+   * @param indices Triangle list
+   * @return The valid triangles, in the same order
+   */
+  public static int[] removeInvalidTriangles(float[] vertices, int stride, int[] indices) {
+    int vertexCount = vertices.length / stride;
+    int[] valid = new int[indices.length - indices.length % 3];
+    int length = 0;
+    for (int i = 0; i + 2 < indices.length; i += 3) {
+      int a = indices[i];
+      int b = indices[i + 1];
+      int c = indices[i + 2];
+      if (a < 0 || b < 0 || c < 0 || a >= vertexCount || b >= vertexCount || c >= vertexCount
+          || a == b || b == c || c == a || isZeroArea(vertices, stride, a, b, c)) {
+        continue;
+      }
+      valid[length++] = a;
+      valid[length++] = b;
+      valid[length++] = c;
+    }
+    return Arrays.copyOf(valid, length);
+  }
+
+  /**
+   * Orders the triangles so each one reuses the vertices of the triangles just before it
+   *
+   * @param indices Triangle list, every index below vertexCount
+   * @param vertexCount Number of vertices
+   * @return The triangles in the new order, each keeping its winding
+   */
+  public static int[] optimiseVertexCache(int[] indices, int vertexCount) {
+    int triangleCount = indices.length / 3;
+
+    // Triangles of each vertex, the first remaining[v] of them are not emitted yet
+    int[] remaining = new int[vertexCount];
+    for (int index : indices) {
+      remaining[index]++;
+    }
+    int[] offset = new int[vertexCount + 1];
+    for (int v = 0; v < vertexCount; v++) {
+      offset[v + 1] = offset[v] + remaining[v];
+    }
+    int[] adjacency = new int[indices.length];
+    int[] filled = new int[vertexCount];
+    for (int i = 0; i < indices.length; i++) {
+      int v = indices[i];
+      adjacency[offset[v] + filled[v]++] = i / 3;
+    }
+
+    int[] cachePosition = new int[vertexCount];
+    Arrays.fill(cachePosition, -1);
+    float[] vertexScore = new float[vertexCount];
+    for (int v = 0; v < vertexCount; v++) {
+      vertexScore[v] = score(-1, remaining[v]);
+    }
+    float[] triangleScore = new float[triangleCount];
+    for (int t = 0; t < triangleCount; t++) {
+      triangleScore[t] = vertexScore[indices[t * 3]] + vertexScore[indices[t * 3 + 1]]
+          + vertexScore[indices[t * 3 + 2]];
+    }
+
+    boolean[] emitted = new boolean[triangleCount];
+    int[] cache = new int[CACHE_SIZE + 3];
+    int[] newCache = new int[CACHE_SIZE + 3];
+    int cacheLength = 0;
+    int[] output = new int[triangleCount * 3];
+    int scanStart = 0;
+    int best = -1;
+
+    for (int n = 0; n < triangleCount; n++) {
+      if (best < 0) {
+        // Nothing in the cache has a triangle left, start again from the best of the rest
+        while (emitted[scanStart]) {
+          scanStart++;
+        }
+        best = scanStart;
+        for (int t = scanStart + 1; t < triangleCount; t++) {
+          if (!emitted[t] && triangleScore[t] > triangleScore[best]) {
+            best = t;
+          }
+        }
+      }
+
+      emitted[best] = true;
+      int newLength = 0;
+      for (int k = 0; k < 3; k++) {
+        int v = indices[best * 3 + k];
+        output[n * 3 + k] = v;
+
+        // Swap the triangle out of the remaining triangles of the vertex
+        int last = offset[v] + --remaining[v];
+        for (int j = offset[v]; j < last; j++) {
+          if (adjacency[j] == best) {
+            adjacency[j] = adjacency[last];
+            adjacency[last] = best;
+            break;
+          }
+        }
+        newCache[newLength++] = v;
+      }
+
+      // The vertices of the triangle move to the front of the cache
+      for (int i = 0; i < cacheLength; i++) {
+        int v = cache[i];
+        if (v != newCache[0] && v != newCache[1] && v != newCache[2]) {
+          newCache[newLength++] = v;
+        }
+      }
+      int[] swap = cache;
+      cache = newCache;
+      newCache = swap;
+      cacheLength = Math.min(newLength, CACHE_SIZE);
+
+      // Rescore the cached vertices and the evicted ones, then their triangles
+      for (int i = 0; i < newLength; i++) {
+        int v = cache[i];
+        cachePosition[v] = i < CACHE_SIZE ? i : -1;
+        vertexScore[v] = score(cachePosition[v], remaining[v]);
+      }
+      best = -1;
+      for (int i = 0; i < newLength; i++) {
+        int v = cache[i];
+        for (int j = offset[v]; j < offset[v] + remaining[v]; j++) {
+          int t = adjacency[j];
+          triangleScore[t] = vertexScore[indices[t * 3]] + vertexScore[indices[t * 3 + 1]]
+              + vertexScore[indices[t * 3 + 2]];
+          if (best < 0 || triangleScore[t] > triangleScore[best]) {
+            best = t;
+          }
+        }
+      }
+    }
+    return output;
+  }
+
+  /**
+   * Renumbers the vertices in the order the triangles first use them, so vertex fetches walk
+   * the vertex buffer forwards. Vertices no triangle uses are dropped.
+   *
+   * @param vertices Interleaved vertices
+   * @param stride Floats per vertex
+   * @param indices Triangle list, rewritten with the new numbers
+   * @return The vertices in the new order
+   */
+  public static float[] optimiseVertexFetch(float[] vertices, int stride, int[] indices) {
+    int[] remap = new int[vertices.length / stride];
+    Arrays.fill(remap, -1);
+    int vertexCount = 0;
+    for (int i = 0; i < indices.length; i++) {
+      int v = indices[i];
+      if (remap[v] < 0) {
+        remap[v] = vertexCount++;
+      }
+      indices[i] = remap[v];
+    }
+
+    float[] reordered = new float[vertexCount * stride];
+    for (int v = 0; v < remap.length; v++) {
+      if (remap[v] >= 0) {
+        System.arraycopy(vertices, v * stride, reordered, remap[v] * stride, stride);
+      }
+    }
+    return reordered;
+  }
+
+  /**
+   * Gets the average cache miss ratio of a triangle list, with a FIFO cache of
+   * FIFO_CACHE_SIZE vertices
+   *
+   * @param indices Triangle list, the indices may be out of range as it is not validated yet
+   * @return Vertices transformed per triangle, 0 without triangles
+   */
+  public static float getACMR(int[] indices) {
+    if (indices.length < 3) {
+      return 0;
+    }
+
+    // Time each vertex entered the cache, it is still cached for FIFO_CACHE_SIZE misses
+    int[] entered = new int[Arrays.stream(indices).max().getAsInt() + 1];
+    Arrays.fill(entered, -FIFO_CACHE_SIZE - 1);
+    int misses = 0;
+    for (int index : indices) {
+      if (index < 0) {
+        misses++;
+      } else if (misses - entered[index] > FIFO_CACHE_SIZE) {
+        entered[index] = misses++;
+      }
+    }
+    return (float) misses / (indices.length / 3);
+  }
+
+  private static boolean isZeroArea(float[] vertices, int stride, int a, int b, int c) {
+    float abx = vertices[b * stride] - vertices[a * stride];
+    float aby = vertices[b * stride + 1] - vertices[a * stride + 1];
+    float abz = vertices[b * stride + 2] - vertices[a * stride + 2];
+    float acx = vertices[c * stride] - vertices[a * stride];
+    float acy = vertices[c * stride + 1] - vertices[a * stride + 1];
+    float acz = vertices[c * stride + 2] - vertices[a * stride + 2];
+    float x = aby * acz - abz * acy;
+    float y = abz * acx - abx * acz;
+    float z = abx * acy - aby * acx;
+    return x == 0 && y == 0 && z == 0;
+  }
+
+  /**
+   * Gets the score of a vertex: recently used vertices score higher, so their triangles are
+   * emitted while they are still cached, and so do vertices with few triangles left, so no
+   * vertex is left behind with a lone triangle
+   */
+  private static float score(int cachePosition, int remainingTriangles) {
+    if (remainingTriangles == 0) {
+      return -1;
+    }
+    float valenceScore = remainingTriangles < VALENCE_SCORE.length
+        ? VALENCE_SCORE[remainingTriangles]
+        : VALENCE_BOOST_SCALE * (float) Math.pow(remainingTriangles, -VALENCE_BOOST_POWER);
+    return CACHE_POSITION_SCORE[cachePosition + 1] + valenceScore;
+  }
+
+  // Scores of the cache positions from -1 (not cached), and of the first valences
+  private static final float[] CACHE_POSITION_SCORE = new float[CACHE_SIZE + 1];
+  private static final float[] VALENCE_SCORE = new float[32];
+
+  static {
+    for (int position = 0; position < CACHE_SIZE; position++) {
+      // The last triangle's vertices score the same, whatever order they were added in
+      CACHE_POSITION_SCORE[position + 1] = position < 3 ? LAST_TRIANGLE_SCORE : (float) Math.pow(
+          1 - (position - 3) / (float) (CACHE_SIZE - 3), CACHE_DECAY_POWER);
+    }
+    for (int valence = 1; valence < VALENCE_SCORE.length; valence++) {
+      VALENCE_SCORE[valence] =
+          VALENCE_BOOST_SCALE * (float) Math.pow(valence, -VALENCE_BOOST_POWER);
+    }
+  }
+}
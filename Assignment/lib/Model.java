@@ -7,13 +7,18 @@ import lib.gmaths.*;
 /**
  * Model class adapted from tutorial 7
  * Constructors and renders are modified
- * A new method is added for daytime / nighttime transformation
+ * A new method is added for moving textures
+ * The lights are set by Lighting, renderDepth() draws into shadow maps and recordPrepass() into
+ * the depth prepass
+ * The mesh can have levels of detail, selected by the ModelNode drawing it
+ * The software renderer reads the material, shader and textures to draw it the same way
+ * Draws are recorded into a CommandList, see record(), with the uniforms of each draw in one block
  *
  * @author Dr. Steve Maddock and Zer Jun Eng (zjeng1@sheffield.ac.uk)
  */
 public class Model {
 
-  private final Mesh mesh;
+  private final MeshLOD lod;
   private float offsetX = 0;
   private float offsetY = 0;
   private final int[] textureId1;
@@ -22,40 +27,29 @@ public class Model {
   private final Shader shader;
   private final Mat4 modelMatrix;
   private final Camera camera;
-  private final List<Light> lightList;
+  private final Lighting lighting;
+  private boolean transparent = false;
 
-  public Model(Camera camera, List<Light> lightList, Shader shader, Material material, Mesh mesh,
+  public Model(Camera camera, Lighting lighting, Shader shader, Material material, MeshLOD lod,
       int[] textureId1, int[] textureId2) {
-    this.mesh = mesh;
+    this.lod = lod;
     this.material = material;
     this.modelMatrix = new Mat4();
     this.shader = shader;
     this.camera = camera;
-    this.lightList = lightList;
+    this.lighting = lighting;
     this.textureId1 = textureId1;
     this.textureId2 = textureId2;
   }
 
-  public Model(Camera camera, List<Light> lightList, Shader shader, Material material, Mesh mesh,
-      int[] textureId1) {
-    this(camera, lightList, shader, material, mesh, textureId1, null);
+  public Model(Camera camera, Lighting lighting, Shader shader, Material material, Mesh mesh,
+      int[] textureId1, int[] textureId2) {
+    this(camera, lighting, shader, material, new MeshLOD(mesh), textureId1, textureId2);
   }
 
-  /**
-   * Day night transformation for outside scene
-   *
-   * @param value RGB value
-   */
-  public void setDayNightCycle(float value) {
-    final float THRESHOLD = 0.25f;
-
-    if (value < THRESHOLD) {
-      this.material.setAmbient(value, value, THRESHOLD);
-    } else {
-      this.material.setAmbient(value, value, value);
-    }
-
-    this.material.setDiffuse(value, value, value);
+  public Model(Camera camera, Lighting lighting, Shader shader, Material material, Mesh mesh,
+      int[] textureId1) {
+    this(camera, lighting, shader, material, mesh, textureId1, null);
   }
 
   /**
@@ -69,62 +63,160 @@ public class Model {
     this.offsetY = offsetY;
   }
 
-  public void render(GL3 gl, Mat4 modelMatrix) {
-    Mat4 mvpMatrix = Mat4.multiply(camera.getPerspectiveMatrix(),
-        Mat4.multiply(camera.getViewMatrix(), modelMatrix));
-    shader.use(gl);
-    shader.setFloatArray(gl, "model", modelMatrix.toFloatArrayForGLSL());
-    shader.setFloatArray(gl, "mvpMatrix", mvpMatrix.toFloatArrayForGLSL());
-
-    shader.setVec3(gl, "viewPos", camera.getPosition());
-
-    for (int i = 0; i < lightList.size(); i++) {
-      String light;
-
-      if (lightList.get(i).getClass().equals(Spotlight.class)) {
-        // Spotlight - lamp light
-        light = "spotLight";
-
-        shader.setFloat(gl, "spotlight_intensity", lightList.get(i).getSpotlightIntensity());
-        shader.setVec3(gl,"spotLight.direction", lightList.get(i).getDirection());
-        shader.setFloat(gl, "spotLight.constant", 1.0f);
-        shader.setFloat(gl, "spotLight.linear", 0.09f);
-        shader.setFloat(gl, "spotLight.quadratic", 0.032f);
-        shader.setFloat(gl, "spotLight.cutOff", (float) Math.cos(Math.toRadians(12.5)));
-        shader.setFloat(gl, "spotLight.outerCutOff", (float) Math.cos(Math.toRadians(15)));
-      } else {
-        // Directional world light
-        light = "dirLight" + "[" + i + "]";
-      }
+  /**
+   * Marks the model as transparent, so it is drawn after the opaque models are lit
+   *
+   * @param transparent Whether the model blends with what is behind it
+   */
+  public void setTransparent(boolean transparent) {
+    this.transparent = transparent;
+  }
 
-      shader.setVec3(gl, light + ".position", lightList.get(i).getPosition());
-      shader.setVec3(gl, light + ".ambient", lightList.get(i).getMaterial().getAmbient());
-      shader.setVec3(gl, light + ".diffuse", lightList.get(i).getMaterial().getDiffuse());
-      shader.setVec3(gl, light + ".specular", lightList.get(i).getMaterial().getSpecular());
-    }
+  public boolean isTransparent() {
+    return transparent;
+  }
+
+  /**
+   * Gets the bounds of the finest level, which contain every coarser level
+   *
+   * @return A copy of the bounds
+   */
+  public AABB getBounds() {
+    return lod.getMesh(0).getBounds();
+  }
+
+  public MeshLOD getLOD() {
+    return lod;
+  }
+
+  Material getMaterial() {
+    return material;
+  }
+
+  Shader getShader() {
+    return shader;
+  }
+
+  // Names of the diffuse and specular textures, null if unused
+  int[] getTextureId1() {
+    return textureId1;
+  }
+
+  int[] getTextureId2() {
+    return textureId2;
+  }
+
+  float getOffsetX() {
+    return offsetX;
+  }
 
-    shader.setVec3(gl, "material.ambient", material.getAmbient());
-    shader.setVec3(gl, "material.diffuse", material.getDiffuse());
-    shader.setVec3(gl, "material.specular", material.getSpecular());
-    shader.setFloat(gl, "material.shininess", material.getShininess());
+  float getOffsetY() {
+    return offsetY;
+  }
 
-    shader.setFloat(gl, "offset", offsetX, offsetY);
+  /**
+   * Renders the depth of the finest level only, for a shadow map. Shadow maps are cached and
+   * seen from the lights, so they never follow the levels seen by the camera.
+   *
+   * @param gl OpenGL object, for rendering
+   * @param depthShader The depth shader, already in use
+   * @param modelMatrix Model matrix from scene graph
+   */
+  public void renderDepth(GL3 gl, Shader depthShader, Mat4 modelMatrix) {
+    depthShader.setFloatArray(gl, "model", modelMatrix.toFloatArrayForGLSL());
+    lod.getMesh(0).render(gl);
+  }
+
+  /**
+   * Records the depth of the model from the camera. The vertices are transformed exactly as in
+   * record(), so the colour pass can test the depth for equality.
+   *
+   * @param commands The command list
+   * @param prepassShader The depth prepass shader
+   * @param modelMatrix Model matrix from scene graph
+   * @param level Level of detail, the same as in record()
+   */
+  public void recordPrepass(CommandList commands, Shader prepassShader, Mat4 modelMatrix,
+      int level) {
+    commands.setPipeline(prepassShader);
+    addDrawData(commands, modelMatrix);
+    commands.draw(lod.getMesh(level));
+  }
+
+  /**
+   * Records the uniforms shared by every model of the shader of this one: the view position and
+   * the lights. Recorded once before the draws of the shader when the passes are merged, after
+   * the lights and shadow maps of the frame are known.
+   *
+   * @param commands The command list
+   */
+  public void recordPipeline(CommandList commands) {
+    commands.setPipeline(shader);
+    commands.setVec3("viewPos", camera.getPosition());
+    lighting.record(commands);
+  }
+
+  /**
+   * Records the draw of a level of detail of the model, which follows recordPipeline() once the
+   * passes are merged
+   *
+   * @param commands The command list
+   * @param modelMatrix Model matrix from scene graph
+   * @param level Level of detail, 0 is the finest
+   */
+  public void record(CommandList commands, Mat4 modelMatrix, int level) {
+    commands.setPipeline(shader);
+    addDrawData(commands, modelMatrix);
 
     if (textureId1 != null) {
-      shader.setInt(gl, "first_texture", 0);  // be careful to match these with GL_TEXTURE0 and GL_TEXTURE1
-      gl.glActiveTexture(GL.GL_TEXTURE0);
-      gl.glBindTexture(GL.GL_TEXTURE_2D, textureId1[0]);
+      commands.setInt("first_texture", 0);  // be careful to match these with units 0 and 1
+      commands.bindTexture(0, GL.GL_TEXTURE_2D, textureId1[0]);
     }
     if (textureId2 != null) {
-      shader.setInt(gl, "second_texture", 1);
-      gl.glActiveTexture(GL.GL_TEXTURE1);
-      gl.glBindTexture(GL.GL_TEXTURE_2D, textureId2[0]);
+      commands.setInt("second_texture", 1);
+      commands.bindTexture(1, GL.GL_TEXTURE_2D, textureId2[0]);
+    }
+    commands.draw(lod.getMesh(level));
+  }
+
+  /**
+   * Packs the uniforms of a draw straight into a block of the list, in the std140 layout of the
+   * Draw block, see inc_draw.txt
+   */
+  private void addDrawData(CommandList commands, Mat4 modelMatrix) {
+    int i = commands.addDrawData();
+    float[] block = commands.getDrawData();
+    putMat4(block, i, modelMatrix);
+    putMat4(block, i + 16, getMvpMatrix(modelMatrix));
+    putVec3(block, i + 32, material.getAmbient());
+    putVec3(block, i + 36, material.getDiffuse());
+    putVec3(block, i + 40, material.getSpecular());
+    block[i + 43] = material.getShininess();
+    block[i + 44] = offsetX;
+    block[i + 45] = offsetY;
+  }
+
+  // Column by column, as toFloatArrayForGLSL()
+  private static void putMat4(float[] block, int i, Mat4 m) {
+    for (int c = 0; c < 4; c++) {
+      for (int r = 0; r < 4; r++) {
+        block[i + c * 4 + r] = m.get(r, c);
+      }
     }
-    mesh.render(gl);
+  }
+
+  private static void putVec3(float[] block, int i, Vec3 v) {
+    block[i] = v.x;
+    block[i + 1] = v.y;
+    block[i + 2] = v.z;
+  }
+
+  private Mat4 getMvpMatrix(Mat4 modelMatrix) {
+    return Mat4.multiply(camera.getPerspectiveMatrix(),
+        Mat4.multiply(camera.getViewMatrix(), modelMatrix));
   }
 
   public void dispose(GL3 gl) {
-    mesh.dispose(gl);
     if (textureId1 != null) {
       gl.glDeleteBuffers(1, textureId1, 0);
     }
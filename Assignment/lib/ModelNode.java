@@ -1,6 +1,7 @@
 package lib;
 
 import com.jogamp.opengl.*;
+import lib.gmaths.*;
 
 /**
  * ModelNode class adapted from tutorial 7
@@ -11,15 +12,76 @@ public class ModelNode extends SGNode {
 
   private final Model model;
 
+  // The BVH holding the model, and whether it was told of a move it has not refitted yet
+  private BVH bvh;
+  private boolean moved = false;
+
+  // Level of detail of the model, see selectLevel()
+  private int level = 0;
+
   public ModelNode(String name, Model m) {
     super(name);
     model = m;
   }
 
-  public void draw(GL3 gl) {
-    model.render(gl, worldTransform);
-    for (SGNode aChildren : children) {
-      aChildren.draw(gl);
+  public Model getModel() {
+    return model;
+  }
+
+  public int getLevel() {
+    return level;
+  }
+
+  /**
+   * Selects the level of detail of the model from the size of its world bounds on the screen,
+   * once per frame after the node has been updated
+   *
+   * @param camera The camera of the view
+   * @param viewportHeight Viewport height in pixels
+   * @return The world bounds of the model
+   */
+  AABB selectLevel(Camera camera, int viewportHeight) {
+    AABB bounds = model.getBounds().transform(worldTransform);
+    Vec3 size = bounds.getSize();
+    Vec3 toCentre = Vec3.subtract(bounds.getCentre(), camera.getPosition());
+    float radius = (float) Math.sqrt(size.x * size.x + size.y * size.y + size.z * size.z) / 2;
+    float distance = (float) Math.sqrt(toCentre.x * toCentre.x + toCentre.y * toCentre.y
+        + toCentre.z * toCentre.z);
+    if (distance <= radius) {
+      level = 0;  // The camera is inside the bounds
+    } else {
+      // Scale of Y by the perspective matrix, 1 / tan(fov / 2), over half the viewport
+      float pixels = camera.getPerspectiveMatrix().get(1, 1) * viewportHeight / 2;
+      level = model.getLOD().selectLevel(radius * pixels / distance, level);
+    }
+    return bounds;
+  }
+
+  void update(Mat4 t) {
+    if (bvh != null && !moved && !t.equals(worldTransform)) {
+      moved = true;
+      bvh.markMoved(this);
     }
+    super.update(t);
+  }
+
+  void setBVH(BVH bvh) {
+    this.bvh = bvh;
+    moved = false;
+  }
+
+  // Called by the BVH once it has refitted the node, so the next move is queued again
+  void clearMoved() {
+    moved = false;
+  }
+
+  void addWorldBounds(AABB bounds) {
+    bounds.union(model.getBounds().transform(worldTransform));
+    super.addWorldBounds(bounds);
+  }
+
+  void drawDepth(GL3 gl, Shader shader) {
+    model.renderDepth(gl, shader, worldTransform);
+    super.drawDepth(gl, shader);
   }
 }
@@ -0,0 +1,82 @@
+package lib;
+
+import java.nio.*;
+import lib.gmaths.*;
+
+/**
+ * I declare that this code is my own work.
+ * Creates the meshes, textures and shaders that the models of a scene are built from. A model
+ * can only be drawn by the backend that created its resources: OpenGL (see GLBackend) or the
+ * software renderer (see SoftwareRenderer).
+ *
+ * @author Zer Jun Eng (zjeng1@sheffield.ac.uk)
+ */
+public interface RenderBackend {
+
+  /**
+   * Creates a mesh of the backend
+   *
+   * @param vertices Interleaved vertices, 8 floats each (x,y,z, nx,ny,nz, s,t)
+   * @param indices Triangle list
+   * @return The mesh
+   */
+  Mesh createMesh(float[] vertices, int[] indices);
+
+  /**
+   * Creates a mesh of the backend from vertices and indices already optimised by a mesh, e.g.
+   * loaded from a SceneFile
+   *
+   * @param vertices Interleaved vertices, 8 floats each, in the order of the optimised mesh
+   * @param indices Triangle list of the optimised mesh
+   * @param acmrBefore ACMR of the indices before they were optimised
+   * @return The mesh
+   */
+  Mesh createOptimisedMesh(float[] vertices, int[] indices, float acmrBefore);
+
+  /**
+   * Creates a mesh of the backend from optimised vertices and indices already packed for the
+   * buffers of a vertex format, e.g. mapped from a SceneFile, so they are uploaded as they are
+   *
+   * @param format Format the vertices are packed in, see Mesh.getLayout()
+   * @param vertices The packed vertices, in native order
+   * @param indices The packed indices, in native order, see Mesh.getIndexType()
+   * @param vertexCount Number of vertices
+   * @param indexCount Number of indices
+   * @param bounds Bounds of the vertex positions
+   * @param acmrBefore ACMR of the indices before they were optimised
+   * @param acmrAfter ACMR of the indices
+   * @return The mesh, or null if the backend does not store meshes packed in the format, the
+   *     mesh is then created from its floats
+   */
+  Mesh createPackedMesh(Mesh.Format format, ByteBuffer vertices, ByteBuffer indices,
+      int vertexCount, int indexCount, AABB bounds, float acmrBefore, float acmrAfter);
+
+  /**
+   * Loads an RGB JPEG texture, repeated in both directions and filtered with mipmaps
+   *
+   * @param path Path of the image
+   * @return The name of the texture in the backend
+   */
+  int[] loadTexture(String path);
+
+  /**
+   * Creates a texture from a decoded image, set up as loadTexture() does, e.g. for an image
+   * decoded on another thread
+   *
+   * @param width Width of the image
+   * @param height Height of the image
+   * @param rgb RGB bytes of the image, from its first row
+   * @return The name of the texture in the backend
+   */
+  int[] createTexture(int width, int height, ByteBuffer rgb);
+
+  /**
+   * Creates a shader program of the backend
+   *
+   * @param vertexPath Path of the vertex shader
+   * @param fragmentPath Path of the fragment shader
+   * @param defines Macros to define in both shaders
+   * @return The shader
+   */
+  Shader createShader(String vertexPath, String fragmentPath, String... defines);
+}
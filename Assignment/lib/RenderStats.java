@@ -0,0 +1,206 @@
+package lib;
+
+import com.jogamp.opengl.*;
+
+/**
+ * I declare that this code is my own work.
+ * GPU timings of the render passes, measured with timer queries. Results are read a few frames
+ * after they are issued so the CPU never waits for the GPU, and averaged over a report interval.
+ * Passes must not overlap, as only one timer query can be active at a time. The overdraw of a pass
+ * is the number of fragments that passed the depth test per pixel of the viewport.
+ *
+ * @author Zer Jun Eng (zjeng1@sheffield.ac.uk)
+ */
+public class RenderStats {
+
+  // Frames in flight before a result is read
+  private static final int LATENCY = 3;
+  private static final double REPORT_INTERVAL = 5;  // Seconds
+
+  private final String[] passNames;
+  private final int[][] queryId;         // [pass][frame]
+  private final boolean[][] issued;
+  private final int[][] sampleQueryId;   // [pass][frame], null if overdraw is not measured
+  private final long[] result = new long[1];
+  private final int[] available = new int[1];
+
+  private int frame = 0;
+  private int activePass = -1;
+
+  // Totals of the current report interval
+  private final long[] totalNanos;
+  private final int[] samples;
+  private final double[] averageMillis;
+  private final long[] totalFragments;
+  private final double[] averageOverdraw;
+  private long intervalStart = System.nanoTime();
+  private int pixelCount = 1;
+
+  /**
+   * RenderStats constructor
+   *
+   * @param gl OpenGL object
+   * @param passNames Names of the passes to time, in the order they are reported
+   */
+  public RenderStats(GL3 gl, String... passNames) {
+    this.passNames = passNames.clone();
+    int passes = passNames.length;
+    queryId = new int[passes][LATENCY];
+    issued = new boolean[passes][LATENCY];
+    totalNanos = new long[passes];
+    samples = new int[passes];
+    averageMillis = new double[passes];
+    sampleQueryId = new int[passes][];
+    totalFragments = new long[passes];
+    averageOverdraw = new double[passes];
+    for (int[] ids : queryId) {
+      gl.glGenQueries(LATENCY, ids, 0);
+    }
+  }
+
+  /**
+   * Counts the fragments of a pass too, before the pass is first timed
+   *
+   * @param gl OpenGL object
+   * @param pass Index of the pass
+   */
+  public void measureOverdraw(GL3 gl, int pass) {
+    if (sampleQueryId[pass] == null) {
+      sampleQueryId[pass] = new int[LATENCY];
+      gl.glGenQueries(LATENCY, sampleQueryId[pass], 0);
+    }
+  }
+
+  /**
+   * Sets the size of the viewport the overdraw is relative to
+   *
+   * @param width Viewport width in pixels
+   * @param height Viewport height in pixels
+   */
+  public void setViewport(int width, int height) {
+    pixelCount = Math.max(1, width * height);
+  }
+
+  /**
+   * Starts timing a pass
+   *
+   * @param gl OpenGL object, for rendering
+   * @param pass Index of the pass, in the order given to the constructor
+   */
+  public void begin(GL3 gl, int pass) {
+    collect(gl, pass);
+    gl.glBeginQuery(GL2ES2.GL_TIME_ELAPSED, queryId[pass][frame]);
+    if (sampleQueryId[pass] != null) {
+      gl.glBeginQuery(GL2GL3.GL_SAMPLES_PASSED, sampleQueryId[pass][frame]);
+    }
+    issued[pass][frame] = true;
+    activePass = pass;
+  }
+
+  /**
+   * Stops timing the pass started by begin()
+   *
+   * @param gl OpenGL object, for rendering
+   */
+  public void end(GL3 gl) {
+    if (activePass >= 0) {
+      gl.glEndQuery(GL2ES2.GL_TIME_ELAPSED);
+      if (sampleQueryId[activePass] != null) {
+        gl.glEndQuery(GL2GL3.GL_SAMPLES_PASSED);
+      }
+      activePass = -1;
+    }
+  }
+
+  /**
+   * Ends the frame, and updates the averages at the end of a report interval
+   *
+   * @return true if the averages have just been updated
+   */
+  public boolean endFrame() {
+    frame = (frame + 1) % LATENCY;
+
+    long now = System.nanoTime();
+    if ((now - intervalStart) / 1e9 < REPORT_INTERVAL) {
+      return false;
+    }
+
+    for (int i = 0; i < passNames.length; i++) {
+      averageMillis[i] = samples[i] == 0 ? 0 : totalNanos[i] / 1e6 / samples[i];
+      averageOverdraw[i] = samples[i] == 0 ? 0
+          : (double) totalFragments[i] / pixelCount / samples[i];
+      totalNanos[i] = 0;
+      totalFragments[i] = 0;
+      samples[i] = 0;
+    }
+    intervalStart = now;
+    return true;
+  }
+
+  /**
+   * Gets the average GPU time of a pass over the last report interval
+   *
+   * @param pass Index of the pass
+   * @return Time in milliseconds
+   */
+  public double getAverageMillis(int pass) {
+    return averageMillis[pass];
+  }
+
+  /**
+   * Gets the average overdraw of a pass over the last report interval
+   *
+   * @param pass Index of the pass
+   * @return Fragments per pixel, 0 if not measured
+   */
+  public double getAverageOverdraw(int pass) {
+    return averageOverdraw[pass];
+  }
+
+  public String toString() {
+    StringBuilder s = new StringBuilder("GPU time per frame:");
+    for (int i = 0; i < passNames.length; i++) {
+      s.append(String.format(" %s %.3f ms", passNames[i], averageMillis[i]));
+      if (sampleQueryId[i] != null) {
+        s.append(String.format(" (overdraw %.2f)", averageOverdraw[i]));
+      }
+      s.append(i < passNames.length - 1 ? "," : "");
+    }
+    return s.toString();
+  }
+
+  public void dispose(GL3 gl) {
+    for (int[] ids : queryId) {
+      gl.glDeleteQueries(LATENCY, ids, 0);
+    }
+    for (int[] ids : sampleQueryId) {
+      if (ids != null) {
+        gl.glDeleteQueries(LATENCY, ids, 0);
+      }
+    }
+  }
+
+  /**
+   * Reads the result of the query about to be reused, if the GPU has finished it
+   */
+  private void collect(GL3 gl, int pass) {
+    int id = queryId[pass][frame];
+    if (!issued[pass][frame]) {
+      return;
+    }
+    issued[pass][frame] = false;
+
+    gl.glGetQueryObjectiv(id, GL2ES2.GL_QUERY_RESULT_AVAILABLE, available, 0);
+    if (available[0] != 0) {
+      gl.glGetQueryObjectui64v(id, GL2ES2.GL_QUERY_RESULT, result, 0);
+      totalNanos[pass] += result[0];
+      samples[pass]++;
+
+      // Ended with the timer query frames ago, so waiting for it is short
+      if (sampleQueryId[pass] != null) {
+        gl.glGetQueryObjectui64v(sampleQueryId[pass][frame], GL2ES2.GL_QUERY_RESULT, result, 0);
+        totalFragments[pass] += result[0];
+      }
+    }
+  }
+}
@@ -22,6 +22,10 @@ public class SGNode {
     worldTransform = new Mat4(1);
   }
 
+  public String getName() {
+    return name;
+  }
+
   public void addChild(SGNode child) {
     children.add(child);
   }
@@ -40,6 +44,27 @@ public class SGNode {
     transform.addChild(model);
   }
 
+  public Mat4 getWorldTransform() {
+    return new Mat4(worldTransform);
+  }
+
+  /**
+   * Bounds every model below this node, in world space as of the last update()
+   *
+   * @return The world bounds, empty if there is no model below this node
+   */
+  public AABB getWorldBounds() {
+    AABB bounds = new AABB();
+    addWorldBounds(bounds);
+    return bounds;
+  }
+
+  void addWorldBounds(AABB bounds) {
+    for (SGNode aChildren : children) {
+      aChildren.addWorldBounds(bounds);
+    }
+  }
+
   public void update() {
     update(worldTransform);
   }
@@ -70,9 +95,15 @@ public class SGNode {
     }
   }
 
-  public void draw(GL3 gl) {
+  /**
+   * Draws the depth of every model below this node, for a shadow map
+   *
+   * @param gl OpenGL object, for rendering
+   * @param shader The depth shader, already in use
+   */
+  void drawDepth(GL3 gl, Shader shader) {
     for (SGNode aChildren : children) {
-      aChildren.draw(gl);
+      aChildren.drawDepth(gl, shader);
     }
   }
 }
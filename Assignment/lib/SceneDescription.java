@@ -0,0 +1,599 @@
+package lib;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.function.*;
+import lib.gmaths.*;
+import shapes.*;
+
+/**
+ * I declare that this code is my own work.
+ * A scene described in JSON: its textures, shaders, meshes, materials and models by name, the
+ * properties the application reads, e.g. sizes, the trees of scene graph nodes and the labelled
+ * objects of the scene. The document is read with a JsonReader and each part is created as soon
+ * as it is read, so its sections must come in that order: a part can only refer to parts of the
+ * sections before it, or to nodes of the trees before it.
+ *
+ * <pre>
+ * {
+ *   "textures": {"floor": "textures/floor.jpg"},
+ *   "shaders": {"cube": {"vertex": "shaders/vs_cube.txt", "fragment": "shaders/fs_cube.txt",
+ *       "lit": true}},
+ *   "meshes": {"cube": {"shape": "cube"}, "sphere": {"shape": "sphere", "levels": [16, 10]}},
+ *   "materials": {"room": {"ambient": [0, 0, 0], "diffuse": [0, 0, 0],
+ *       "specular": [0.3, 0.3, 0.3], "shininess": 25}},
+ *   "models": {"floor": {"shader": "cube", "material": "room", "mesh": "cube",
+ *       "textures": ["floor"]}},
+ *   "properties": {"roomSize": [20, 20, 20]},
+ *   "nodes": [{"name": "Floor transform", "transform": [{"scale": [20, 1, 20]}], "children": [
+ *     {"name": "Floor model", "model": "floor"}]}],
+ *   "objects": {"Floor": "Floor transform"}
+ * }
+ * </pre>
+ *
+ * <p>The shapes are those of the shapes package, the round ones with coarser levels of detail of
+ * the given numbers of vertices around them. A node is a transform node if it has a transform, a
+ * list of translate, rotateX, rotateY, rotateZ and scale operations applied from the last, a
+ * model node if it has a model, an anchor node if it is an anchor, and a name node otherwise. Its
+ * children must come last. Lit shaders are compiled with the defines of the lit shaders of opaque
+ * models, the others with the defines of the layout of the meshes only. A material takes the
+ * defaults of Material for the fields it leaves out.
+ *
+ * @author Zer Jun Eng (zjeng1@sheffield.ac.uk)
+ */
+public class SceneDescription {
+
+  // Value of a property that is an empty array, read as an array of either type
+  private static final Object EMPTY_ARRAY = new Object();
+
+  private final RenderBackend backend;
+  private final Camera camera;
+  private final Lighting lighting;
+  private final String[] vertexDefines;
+  private final String[] litDefines;
+
+  private final Map<String, int[]> textures = new HashMap<>();
+  private final Map<String, Shader> shaders = new HashMap<>();
+  private final Map<String, MeshLOD> meshes = new HashMap<>();
+  private final Map<String, Material> materials = new HashMap<>();
+  private final Map<String, Model> models = new LinkedHashMap<>();
+  private final Map<String, Object> properties = new HashMap<>();
+  private final Map<String, SGNode> nodes = new HashMap<>();  // The first node of each name
+  private final List<SGNode> trees = new ArrayList<>();
+  private final Map<String, SGNode> objects = new LinkedHashMap<>();
+  private int nodeCount = 0;
+  private long loadNanos;
+
+  private SceneDescription(RenderBackend backend, Camera camera, Lighting lighting,
+      String[] vertexDefines, String[] litDefines) {
+    this.backend = backend;
+    this.camera = camera;
+    this.lighting = lighting;
+    this.vertexDefines = vertexDefines;
+    this.litDefines = litDefines;
+  }
+
+  /**
+   * Loads a scene description, creating its parts with a render backend
+   *
+   * @param path The JSON file
+   * @param backend The backend to create the meshes, textures and shaders of
+   * @param camera The camera of the models
+   * @param lighting The lighting of the models
+   * @param vertexDefines Defines of the shaders for the layout of the meshes
+   * @param litDefines Defines of the lit shaders of opaque models
+   * @return The loaded scene, with its scene graphs updated
+   * @throws IOException If the file cannot be read or does not describe a scene
+   */
+  public static SceneDescription load(Path path, RenderBackend backend, Camera camera,
+      Lighting lighting, String[] vertexDefines, String[] litDefines) throws IOException {
+    SceneDescription scene = new SceneDescription(backend, camera, lighting, vertexDefines,
+        litDefines);
+    long start = System.nanoTime();
+    try (JsonReader in = new JsonReader(Files.newBufferedReader(path))) {
+      scene.read(in);
+    } catch (IOException e) {
+      throw new IOException(path + ": " + e.getMessage(), e);
+    }
+    for (SGNode tree : scene.trees) {
+      tree.update();
+    }
+    scene.loadNanos = System.nanoTime() - start;
+    return scene;
+  }
+
+  /**
+   * Gets the finest mesh of a shape, e.g. for drawing it without a model
+   *
+   * @param name Name of the mesh
+   * @return The mesh
+   */
+  public Mesh getMesh(String name) {
+    return get(meshes, "mesh", name).getMesh(0);
+  }
+
+  public Model getModel(String name) {
+    return get(models, "model", name);
+  }
+
+  /**
+   * Gets the models in the order they are described, e.g. to dispose them
+   *
+   * @return The models
+   */
+  public Collection<Model> getModels() {
+    return Collections.unmodifiableCollection(models.values());
+  }
+
+  /**
+   * Gets a node of the scene graphs by name, the first one described if several have the name
+   *
+   * @param name Name of the node
+   * @return The node
+   */
+  public SGNode getNode(String name) {
+    return get(nodes, "node", name);
+  }
+
+  /**
+   * Gets the labelled objects of the scene, in the order they are described
+   *
+   * @return The roots of the objects by label
+   */
+  public Map<String, SGNode> getObjects() {
+    return Collections.unmodifiableMap(objects);
+  }
+
+  /**
+   * Gets a labelled object of the scene
+   *
+   * @param label Label of the object
+   * @return The root of the object
+   */
+  public SGNode getObject(String label) {
+    return get(objects, "object", label);
+  }
+
+  public float getFloat(String property) {
+    return getProperty(properties, Float.class, property);
+  }
+
+  public Vec3 getVec3(String property) {
+    float[] f = getProperty(properties, float[].class, property);
+    if (f.length != 3) {
+      throw new IllegalArgumentException("Not a vector: " + property);
+    }
+    return new Vec3(f[0], f[1], f[2]);
+  }
+
+  public String getString(String property) {
+    return getProperty(properties, String.class, property);
+  }
+
+  public String[] getStrings(String property) {
+    return getProperty(properties, String[].class, property).clone();
+  }
+
+  public String toString() {
+    return String.format("Scene description: %d textures, %d meshes, %d models, %d nodes, "
+            + "%d objects loaded in %.2f ms", textures.size(), meshes.size(), models.size(),
+        nodeCount, objects.size(), loadNanos / 1e6);
+  }
+
+  private static <T> T get(Map<String, T> map, String kind, String name) {
+    T value = map.get(name);
+    if (value == null) {
+      throw new IllegalArgumentException("Unknown " + kind + ": " + name);
+    }
+    return value;
+  }
+
+  private static <T> T getProperty(Map<String, Object> properties, Class<T> type,
+      String name) {
+    Object value = get(properties, "property", name);
+    if (value == EMPTY_ARRAY) {
+      if (type == float[].class) {
+        value = new float[0];
+      } else if (type == String[].class) {
+        value = new String[0];
+      }
+    }
+    if (!type.isInstance(value)) {
+      throw new IllegalArgumentException("Property " + name + " is not a " + type.getSimpleName());
+    }
+    return type.cast(value);
+  }
+
+  // Reads the name of a part referred to, and gets the part
+  private static <T> T get(JsonReader in, Map<String, T> map, String kind) throws IOException {
+    String name = in.nextString();
+    T value = map.get(name);
+    if (value == null) {
+      throw in.error("Unknown " + kind + " " + name);
+    }
+    return value;
+  }
+
+  private void read(JsonReader in) throws IOException {
+    in.beginObject();
+    while (in.hasNext()) {
+      String section = in.nextName();
+      if (section.equals("nodes")) {
+        in.beginArray();
+        while (in.hasNext()) {
+          trees.add(readNode(in));
+        }
+        in.endArray();
+        continue;
+      }
+      in.beginObject();
+      while (in.hasNext()) {
+        String name = in.nextName();
+        switch (section) {
+          case "textures":
+            textures.put(name, backend.loadTexture(in.nextString()));
+            break;
+          case "shaders":
+            shaders.put(name, readShader(in));
+            break;
+          case "meshes":
+            meshes.put(name, readMesh(in, name));
+            break;
+          case "materials":
+            materials.put(name, readMaterial(in));
+            break;
+          case "models":
+            models.put(name, readModel(in, name));
+            break;
+          case "properties":
+            properties.put(name, readProperty(in));
+            break;
+          case "objects":
+            objects.put(name, get(in, nodes, "node"));
+            break;
+          default:
+            throw in.error("Unknown section " + section);
+        }
+      }
+      in.endObject();
+    }
+    in.endObject();
+    in.peek();  // Nothing may follow the scene
+  }
+
+  private Shader readShader(JsonReader in) throws IOException {
+    String vertex = null;
+    String fragment = null;
+    boolean lit = false;
+    in.beginObject();
+    while (in.hasNext()) {
+      switch (in.nextName()) {
+        case "vertex":
+          vertex = in.nextString();
+          break;
+        case "fragment":
+          fragment = in.nextString();
+          break;
+        case "lit":
+          lit = in.nextBoolean();
+          break;
+        default:
+          throw in.error("Unknown shader field");
+      }
+    }
+    if (vertex == null || fragment == null) {
+      throw in.error("A shader needs a vertex and a fragment shader");
+    }
+    in.endObject();
+    return backend.createShader(vertex, fragment, lit ? litDefines : vertexDefines);
+  }
+
+  private MeshLOD readMesh(JsonReader in, String name) throws IOException {
+    String shape = null;
+    float[] levels = {};
+    boolean forLamp = false;
+    boolean hasCover = true;
+    float[] texCoords = null;
+    in.beginObject();
+    while (in.hasNext()) {
+      switch (in.nextName()) {
+        case "shape":
+          shape = in.nextString();
+          break;
+        case "levels":
+          levels = in.nextFloats();
+          break;
+        case "forLamp":
+          forLamp = in.nextBoolean();
+          break;
+        case "cover":
+          hasCover = in.nextBoolean();
+          break;
+        case "texCoords":
+          texCoords = in.nextFloats();
+          break;
+        default:
+          throw in.error("Unknown mesh field");
+      }
+    }
+
+    // The finest level, then the coarser levels if the shape has any
+    float[] vertices;
+    int[] indices;
+    IntFunction<float[]> levelVertices = null;
+    IntFunction<int[]> levelIndices = null;
+    switch (shape == null ? "" : shape) {
+      case "cube":
+        vertices = Cube.vertices.clone();
+        indices = Cube.indices.clone();
+        break;
+      case "twoTriangles":
+        vertices = TwoTriangles.vertices.clone();
+        indices = TwoTriangles.indices.clone();
+        if (texCoords != null) {
+          if (texCoords.length != 8) {
+            throw in.error("Mesh " + name + " needs texture coordinates for four vertices");
+          }
+          TwoTriangles.setTexCoords(vertices, texCoords);
+        }
+        break;
+      case "cylinder":
+        vertices = Cylinder.vertices.clone();
+        indices = Cylinder.indices.clone();
+        levelVertices = Cylinder::createVertices;
+        levelIndices = Cylinder::createIndices;
+        break;
+      case "sphere":
+        vertices = Sphere.vertices.clone();
+        indices = Sphere.indices.clone();
+        levelVertices = n -> Sphere.createVertices(n, n);
+        levelIndices = n -> Sphere.createIndices(n, n);
+        break;
+      case "frustumCone":
+        final boolean isForLamp = forLamp;
+        final boolean cover = hasCover;
+        vertices = FrustumCone.createVertices(isForLamp);
+        indices = FrustumCone.createIndices(cover);
+        levelVertices = n -> FrustumCone.createVertices(isForLamp, n);
+        levelIndices = n -> FrustumCone.createIndices(cover, n);
+        break;
+      default:
+        throw in.error("Unknown shape " + shape + " of mesh " + name);
+    }
+    if (levels.length > 0 && levelVertices == null) {
+      throw in.error("Mesh " + name + " has no levels of detail");
+    }
+    in.endObject();
+
+    Mesh[] levelMeshes = new Mesh[levels.length + 1];
+    float[] maxRadius = new float[levelMeshes.length];
+    levelMeshes[0] = backend.createMesh(vertices, indices);
+    for (int i = 0; i < levels.length; i++) {
+      int xlong = (int) levels[i];
+      levelMeshes[i + 1] = backend.createMesh(levelVertices.apply(xlong),
+          levelIndices.apply(xlong));
+      maxRadius[i + 1] = MeshLOD.getMaxRadius(xlong - 1);  // The first and last overlap
+    }
+    return new MeshLOD(levelMeshes, maxRadius);
+  }
+
+  private Material readMaterial(JsonReader in) throws IOException {
+    Material defaults = new Material();
+    Vec3 ambient = defaults.getAmbient();
+    Vec3 diffuse = defaults.getDiffuse();
+    Vec3 specular = defaults.getSpecular();
+    float shininess = defaults.getShininess();
+    in.beginObject();
+    while (in.hasNext()) {
+      switch (in.nextName()) {
+        case "ambient":
+          ambient = readVec3(in);
+          break;
+        case "diffuse":
+          diffuse = readVec3(in);
+          break;
+        case "specular":
+          specular = readVec3(in);
+          break;
+        case "shininess":
+          shininess = in.nextFloat();
+          break;
+        default:
+          throw in.error("Unknown material field");
+      }
+    }
+    in.endObject();
+    return new Material(ambient, diffuse, specular, shininess);
+  }
+
+  private Model readModel(JsonReader in, String name) throws IOException {
+    Shader shader = null;
+    MeshLOD mesh = null;
+    Material material = null;
+    int[][] modelTextures = new int[2][];
+    boolean transparent = false;
+    in.beginObject();
+    while (in.hasNext()) {
+      switch (in.nextName()) {
+        case "shader":
+          shader = get(in, shaders, "shader");
+          break;
+        case "mesh":
+          mesh = get(in, meshes, "mesh");
+          break;
+        case "material":
+          material = get(in, materials, "material");
+          break;
+        case "textures":
+          in.beginArray();
+          for (int i = 0; in.hasNext(); i++) {
+            if (i == modelTextures.length) {
+              throw in.error("Model " + name + " has more than " + i + " textures");
+            }
+            modelTextures[i] = get(in, textures, "texture");
+          }
+          in.endArray();
+          break;
+        case "transparent":
+          transparent = in.nextBoolean();
+          break;
+        default:
+          throw in.error("Unknown model field");
+      }
+    }
+    if (shader == null || mesh == null || material == null) {
+      throw in.error("Model " + name + " needs a shader, a mesh and a material");
+    }
+    in.endObject();
+    Model model = new Model(camera, lighting, shader, material, mesh, modelTextures[0],
+        modelTextures[1]);
+    model.setTransparent(transparent);
+    return model;
+  }
+
+  // A number, a string, or an array of either, an empty array is typed when it is got
+  private Object readProperty(JsonReader in) throws IOException {
+    switch (in.peek()) {
+      case NUMBER:
+        return in.nextFloat();
+      case STRING:
+        return in.nextString();
+      case BEGIN_ARRAY:
+        in.beginArray();
+        if (in.peek() == JsonReader.Token.END_ARRAY) {
+          in.endArray();
+          return EMPTY_ARRAY;
+        }
+        if (in.peek() == JsonReader.Token.STRING) {
+          List<String> strings = new ArrayList<>();
+          while (in.hasNext()) {
+            strings.add(in.nextString());
+          }
+          in.endArray();
+          return strings.toArray(new String[0]);
+        }
+        List<Float> floats = new ArrayList<>();
+        while (in.hasNext()) {
+          floats.add(in.nextFloat());
+        }
+        in.endArray();
+        float[] f = new float[floats.size()];
+        for (int i = 0; i < f.length; i++) {
+          f[i] = floats.get(i);
+        }
+        return f;
+      default:
+        throw in.error("A property is a number, a string, or an array of either");
+    }
+  }
+
+  private SGNode readNode(JsonReader in) throws IOException {
+    String name = null;
+    Mat4 transform = null;
+    Model model = null;
+    boolean anchor = false;
+    SGNode node = null;
+    in.beginObject();
+    while (in.hasNext()) {
+      String field = in.nextName();
+      if (node != null) {
+        throw in.error("The children of node " + name + " must come last");
+      }
+      switch (field) {
+        case "name":
+          name = in.nextString();
+          break;
+        case "transform":
+          transform = readTransform(in);
+          break;
+        case "model":
+          model = get(in, models, "model");
+          break;
+        case "anchor":
+          anchor = in.nextBoolean();
+          break;
+        case "children":
+          node = createNode(in, name, transform, model, anchor);
+          in.beginArray();
+          while (in.hasNext()) {
+            node.addChild(readNode(in));
+          }
+          in.endArray();
+          break;
+        default:
+          throw in.error("Unknown node field");
+      }
+    }
+    if (node == null) {
+      node = createNode(in, name, transform, model, anchor);
+    }
+    in.endObject();
+    return node;
+  }
+
+  private SGNode createNode(JsonReader in, String name, Mat4 transform, Model model,
+      boolean anchor) throws IOException {
+    if (name == null) {
+      throw in.error("A node needs a name");
+    }
+    if ((transform != null ? 1 : 0) + (model != null ? 1 : 0) + (anchor ? 1 : 0) > 1) {
+      throw in.error("Node " + name + " is more than one of a transform, model and anchor");
+    }
+    SGNode node;
+    if (transform != null) {
+      node = new TransformNode(name, transform);
+    } else if (model != null) {
+      node = new ModelNode(name, model);
+    } else if (anchor) {
+      node = new AnchorNode(name);
+    } else {
+      node = new NameNode(name);
+    }
+    nodes.putIfAbsent(name, node);
+    nodeCount++;
+    return node;
+  }
+
+  private Mat4 readTransform(JsonReader in) throws IOException {
+    Mat4 m = new Mat4(1);
+    in.beginArray();
+    while (in.hasNext()) {
+      in.beginObject();
+      String operation = in.nextName();
+      Mat4 t;
+      switch (operation) {
+        case "translate":
+          t = Mat4Transform.translate(readVec3(in));
+          break;
+        case "rotateX":
+          t = Mat4Transform.rotateAroundX(in.nextFloat());
+          break;
+        case "rotateY":
+          t = Mat4Transform.rotateAroundY(in.nextFloat());
+          break;
+        case "rotateZ":
+          t = Mat4Transform.rotateAroundZ(in.nextFloat());
+          break;
+        case "scale":
+          Vec3 s = readVec3(in);
+          t = Mat4Transform.scale(s.x, s.y, s.z);
+          break;
+        default:
+          throw in.error("Unknown transform " + operation);
+      }
+      in.endObject();
+      m = Mat4.multiply(m, t);
+    }
+    in.endArray();
+    return m;
+  }
+
+  private static Vec3 readVec3(JsonReader in) throws IOException {
+    float[] f = in.nextFloats();
+    if (f.length != 3) {
+      throw in.error("Expected a vector of 3 numbers");
+    }
+    return new Vec3(f[0], f[1], f[2]);
+  }
+}
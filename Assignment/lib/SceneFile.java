@@ -0,0 +1,921 @@
+package lib;
+
+import com.jogamp.opengl.*;
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+import java.util.*;
+import lib.gmaths.*;
+
+/**
+ * I declare that this code is my own work.
+ * A binary snapshot of a built scene: the optimised vertices and indices of its meshes, its
+ * models with their shaders, materials, texture paths and levels of detail, and its scene graphs
+ * with the local transform of every node. A loaded scene skips generating and optimising the
+ * meshes and building the scene graphs. The file is memory-mapped, and each mesh is also written
+ * packed in the vertex format of the scene, so a backend storing that format uploads it straight
+ * from the mapping. The whole file is read and checked before anything is created, so a file
+ * that cannot be loaded leaves nothing behind.
+ *
+ * <p>The scene graphs are loaded as plain nodes: an animated transform is saved as the transform
+ * it had when written, and a light node keeps the index of its light. Nodes reached from several
+ * roots, e.g. the objects on the table, are written once and shared again when loaded. Animated
+ * parts, e.g. the lamp, are left out of the scene graphs and built again by their own class once
+ * loaded, from the models, nodes and values written by name, see Named.
+ *
+ * <p>Every value is little endian. The file holds, in order: the magic number and version, the
+ * vertex format and whether the meshes are packed, the texture paths, the shaders (paths and
+ * defines), the meshes (counts, ACMRs, bounds, floats, indices, then their packed bytes), the
+ * models, the nodes (type, name, operand, children), the roots (label, node), the named meshes
+ * (name, mesh), models (name, model), nodes (name, count, nodes) and values (name, count,
+ * floats), and the labels of the roots casting cached shadows.
+ *
+ * @author Zer Jun Eng (zjeng1@sheffield.ac.uk)
+ */
+public class SceneFile {
+
+  private static final int MAGIC = 0x414C5343;  // "ALSC"
+  private static final int VERSION = 3;
+
+  // Types of nodes, followed by a transform, a model index, a light index or nothing
+  private static final int NAME = 0;
+  private static final int TRANSFORM = 1;
+  private static final int MODEL = 2;
+  private static final int ANCHOR = 3;
+  private static final int LIGHT = 4;
+
+  /**
+   * A render backend that remembers the paths of the textures and shaders it creates, so the
+   * scene built with it can be written
+   */
+  public static class Recorder implements RenderBackend {
+
+    private final RenderBackend backend;
+    private final Map<int[], String> texturePaths = new IdentityHashMap<>();
+    private final Map<Shader, String[]> shaderSources = new IdentityHashMap<>();
+
+    /**
+     * Recorder constructor
+     *
+     * @param backend The backend creating everything
+     */
+    public Recorder(RenderBackend backend) {
+      this.backend = backend;
+    }
+
+    public Mesh createMesh(float[] vertices, int[] indices) {
+      return backend.createMesh(vertices, indices);
+    }
+
+    public Mesh createOptimisedMesh(float[] vertices, int[] indices, float acmrBefore) {
+      return backend.createOptimisedMesh(vertices, indices, acmrBefore);
+    }
+
+    // Not recorded, a packed mesh keeps no floats to write
+    public Mesh createPackedMesh(Mesh.Format format, ByteBuffer vertices, ByteBuffer indices,
+        int vertexCount, int indexCount, AABB bounds, float acmrBefore, float acmrAfter) {
+      return backend.createPackedMesh(format, vertices, indices, vertexCount, indexCount,
+          bounds, acmrBefore, acmrAfter);
+    }
+
+    public int[] loadTexture(String path) {
+      int[] texture = backend.loadTexture(path);
+      texturePaths.put(texture, path);
+      return texture;
+    }
+
+    // Not recorded, a scene with such a texture cannot be written
+    public int[] createTexture(int width, int height, ByteBuffer rgb) {
+      return backend.createTexture(width, height, rgb);
+    }
+
+    // The paths of the shader are followed by its defines
+    public Shader createShader(String vertexPath, String fragmentPath, String... defines) {
+      Shader shader = backend.createShader(vertexPath, fragmentPath, defines);
+      String[] sources = new String[defines.length + 2];
+      sources[0] = vertexPath;
+      sources[1] = fragmentPath;
+      System.arraycopy(defines, 0, sources, 2, defines.length);
+      shaderSources.put(shader, sources);
+      return shader;
+    }
+  }
+
+  /**
+   * Parts of a scene looked up by name once loaded: meshes, e.g. of the skybox, and the models,
+   * nodes and values an animated part left out of the scene graphs is built again from
+   */
+  public static final class Named {
+    public final Map<String, Mesh> meshes = new LinkedHashMap<>();
+    public final Map<String, Model> models = new LinkedHashMap<>();
+    public final Map<String, SGNode[]> nodes = new LinkedHashMap<>();
+    public final Map<String, float[]> values = new LinkedHashMap<>();
+  }
+
+  // The parts of a file, read and checked before anything is created in the backend
+  private static final class Contents {
+    String[] texturePaths;
+    String[][] shaderSources;
+    MeshData[] meshes;
+    ModelData[] models;
+    NodeData[] nodes;
+    Map<String, Integer> roots = new LinkedHashMap<>();
+    Map<String, Integer> namedMeshes = new LinkedHashMap<>();
+    Map<String, Integer> namedModels = new LinkedHashMap<>();
+    Map<String, int[]> namedNodes = new LinkedHashMap<>();
+    Map<String, float[]> values = new LinkedHashMap<>();
+    List<String> shadowCasters = new ArrayList<>();
+  }
+
+  private static final class MeshData {
+    int vertexCount;
+    int indexCount;
+    float acmrBefore;
+    float acmrAfter;
+    AABB bounds;
+    ByteBuffer vertices;  // 8 floats each
+    ByteBuffer indices;
+    ByteBuffer packedVertices;  // Null if the file has no packed meshes
+    ByteBuffer packedIndices;
+  }
+
+  private static final class ModelData {
+    int shader;
+    int texture1;  // -1 for none
+    int texture2;
+    Material material;
+    float offsetX;
+    float offsetY;
+    boolean transparent;
+    int[] levels;
+    float[] levelRadius;
+  }
+
+  private static final class NodeData {
+    int type;
+    String name;
+    Mat4 transform;
+    int operand;  // Model or light index
+    int[] children;
+  }
+
+  private final Map<String, SGNode> roots = new LinkedHashMap<>();
+  private final Named named = new Named();
+  private final List<Model> models = new ArrayList<>();
+  private SGNode[] shadowCasters;
+  private int meshCount, packedCount, modelCount, nodeCount;
+
+  // Time spent mapping and reading the file, creating the meshes, loading the textures and
+  // shaders, and creating the models and scene graphs
+  private long mapNanos, meshNanos, textureNanos, graphNanos;
+
+  private SceneFile() {
+  }
+
+  /**
+   * Writes the scene graphs of a scene built with a recorder
+   *
+   * @param path The file to write
+   * @param recorder The backend the scene was built with
+   * @param roots Roots of the scene graphs by label, in the order to load them
+   * @param omitted Nodes left out with the nodes below them, e.g. the root of the lamp
+   * @param lights The lights of the scene, referred to by their index
+   * @param format Format of the vertices the scene is drawn with, the meshes are also written
+   *     packed in it
+   * @param named Parts to look up by name once loaded, the nodes must be in the scene graphs
+   * @param shadowCasters Labels of the roots casting cached shadows
+   * @throws IOException If the file cannot be written
+   * @throws IllegalArgumentException If a model uses a texture or shader not of the recorder,
+   *     a mesh has no floats or a named node is not written
+   */
+  public static void write(Path path, Recorder recorder, Map<String, SGNode> roots,
+      Collection<SGNode> omitted, List<Light> lights, Mesh.Format format, Named named,
+      Collection<String> shadowCasters) throws IOException {
+    // Number every node once, then the models, meshes, shaders and textures they use
+    List<SGNode> nodes = new ArrayList<>();
+    Map<SGNode, Integer> nodeIds = new IdentityHashMap<>();
+    Set<SGNode> left = Collections.newSetFromMap(new IdentityHashMap<>());
+    left.addAll(omitted);
+    for (SGNode root : roots.values()) {
+      addNode(root, nodes, nodeIds, left);
+    }
+    for (Map.Entry<String, SGNode[]> list : named.nodes.entrySet()) {
+      for (SGNode node : list.getValue()) {
+        if (!nodeIds.containsKey(node)) {
+          throw new IllegalArgumentException("The named node " + list.getKey()
+              + " is not written");
+        }
+      }
+    }
+    Map<Model, Integer> models = new LinkedHashMap<>();
+    for (SGNode node : nodes) {
+      if (node instanceof ModelNode) {
+        models.putIfAbsent(((ModelNode) node).getModel(), models.size());
+      }
+    }
+    for (Model model : named.models.values()) {
+      models.putIfAbsent(model, models.size());
+    }
+    Map<Mesh, Integer> meshes = new LinkedHashMap<>();
+    Map<Shader, Integer> shaders = new LinkedHashMap<>();
+    Map<int[], Integer> textures = new LinkedHashMap<>();
+    for (Model model : models.keySet()) {
+      for (int level = 0; level < model.getLOD().getLevelCount(); level++) {
+        meshes.putIfAbsent(model.getLOD().getMesh(level), meshes.size());
+      }
+      if (!recorder.shaderSources.containsKey(model.getShader())) {
+        throw new IllegalArgumentException("A shader was not created by the recorder");
+      }
+      shaders.putIfAbsent(model.getShader(), shaders.size());
+      for (int[] texture : new int[][]{model.getTextureId1(), model.getTextureId2()}) {
+        if (texture != null) {
+          if (!recorder.texturePaths.containsKey(texture)) {
+            throw new IllegalArgumentException("A texture was not loaded by the recorder");
+          }
+          textures.putIfAbsent(texture, textures.size());
+        }
+      }
+    }
+    for (Mesh mesh : named.meshes.values()) {
+      meshes.putIfAbsent(mesh, meshes.size());
+    }
+    for (String label : shadowCasters) {
+      if (!roots.containsKey(label)) {
+        throw new IllegalArgumentException("The shadow caster " + label + " is not a root");
+      }
+    }
+
+    // The packed vertices and indices are in native order, as loaded on this machine
+    boolean packed = ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN;
+    Writer out = new Writer();
+    out.putInt(MAGIC);
+    out.putInt(VERSION);
+    out.putInt(format.ordinal());
+    out.putInt(packed ? 1 : 0);
+    out.putInt(textures.size());
+    for (int[] texture : textures.keySet()) {
+      out.putString(recorder.texturePaths.get(texture));
+    }
+    out.putInt(shaders.size());
+    for (Shader shader : shaders.keySet()) {
+      String[] sources = recorder.shaderSources.get(shader);
+      out.putInt(sources.length);
+      for (String source : sources) {
+        out.putString(source);
+      }
+    }
+
+    out.putInt(meshes.size());
+    for (Mesh mesh : meshes.keySet()) {
+      float[] vertices = mesh.getVertices();
+      int[] indices = mesh.getIndices();
+      if (vertices == null) {
+        throw new IllegalArgumentException("A mesh was uploaded packed and has no floats");
+      }
+      AABB bounds = mesh.getBounds();
+      out.putInt(mesh.getVertexCount());
+      out.putInt(indices.length);
+      out.putFloat(mesh.getAcmrBefore());
+      out.putFloat(mesh.getAcmrAfter());
+      out.putVec3(bounds.min);
+      out.putVec3(bounds.max);
+      out.putFloats(vertices);
+      out.putInts(indices);
+      if (packed) {
+        out.putBytes(Mesh.getLayout(format, bounds).encode(vertices));
+        out.putBytes(MeshArena.packIndices(indices, Mesh.getIndexType(mesh.getVertexCount())));
+      }
+    }
+
+    out.putInt(models.size());
+    for (Model model : models.keySet()) {
+      out.putInt(shaders.get(model.getShader()));
+      out.putInt(model.getTextureId1() == null ? -1 : textures.get(model.getTextureId1()));
+      out.putInt(model.getTextureId2() == null ? -1 : textures.get(model.getTextureId2()));
+      Material material = model.getMaterial();
+      out.putVec3(material.getAmbient());
+      out.putVec3(material.getDiffuse());
+      out.putVec3(material.getSpecular());
+      out.putFloat(material.getShininess());
+      out.putFloat(model.getOffsetX());
+      out.putFloat(model.getOffsetY());
+      out.putInt(model.isTransparent() ? 1 : 0);
+      MeshLOD lod = model.getLOD();
+      out.putInt(lod.getLevelCount());
+      for (int level = 0; level < lod.getLevelCount(); level++) {
+        out.putInt(meshes.get(lod.getMesh(level)));
+        out.putFloat(lod.getLevelRadius(level));
+      }
+    }
+
+    out.putInt(nodes.size());
+    for (SGNode node : nodes) {
+      if (node instanceof TransformNode) {
+        out.putInt(TRANSFORM);
+        out.putString(node.name);
+        Mat4 transform = ((TransformNode) node).getTransform();
+        for (int r = 0; r < 4; r++) {
+          for (int c = 0; c < 4; c++) {
+            out.putFloat(transform.get(r, c));
+          }
+        }
+      } else if (node instanceof ModelNode) {
+        out.putInt(MODEL);
+        out.putString(node.name);
+        out.putInt(models.get(((ModelNode) node).getModel()));
+      } else if (node instanceof LightNode) {
+        out.putInt(LIGHT);
+        out.putString(node.name);
+        out.putInt(lights.indexOf(((LightNode) node).getLight()));
+      } else {
+        out.putInt(node instanceof AnchorNode ? ANCHOR : NAME);
+        out.putString(node.name);
+      }
+      List<SGNode> children = new ArrayList<>();
+      for (SGNode child : node.children) {
+        if (nodeIds.containsKey(child)) {
+          children.add(child);
+        }
+      }
+      out.putInt(children.size());
+      for (SGNode child : children) {
+        out.putInt(nodeIds.get(child));
+      }
+    }
+
+    out.putInt(roots.size());
+    for (Map.Entry<String, SGNode> root : roots.entrySet()) {
+      out.putString(root.getKey());
+      out.putInt(nodeIds.get(root.getValue()));
+    }
+    out.putInt(named.meshes.size());
+    for (Map.Entry<String, Mesh> mesh : named.meshes.entrySet()) {
+      out.putString(mesh.getKey());
+      out.putInt(meshes.get(mesh.getValue()));
+    }
+    out.putInt(named.models.size());
+    for (Map.Entry<String, Model> model : named.models.entrySet()) {
+      out.putString(model.getKey());
+      out.putInt(models.get(model.getValue()));
+    }
+    out.putInt(named.nodes.size());
+    for (Map.Entry<String, SGNode[]> list : named.nodes.entrySet()) {
+      out.putString(list.getKey());
+      out.putInt(list.getValue().length);
+      for (SGNode node : list.getValue()) {
+        out.putInt(nodeIds.get(node));
+      }
+    }
+    out.putInt(named.values.size());
+    for (Map.Entry<String, float[]> value : named.values.entrySet()) {
+      out.putString(value.getKey());
+      out.putInt(value.getValue().length);
+      out.putFloats(value.getValue());
+    }
+    out.putInt(shadowCasters.size());
+    for (String label : shadowCasters) {
+      out.putString(label);
+    }
+    out.writeTo(path);
+  }
+
+  /**
+   * Loads a scene written by write(). The whole file is read and checked before anything is
+   * created in the backend, so a file that cannot be loaded leaves nothing behind.
+   *
+   * @param path The file to load
+   * @param backend The backend to create the meshes, textures and shaders of
+   * @param format Format of the vertices the scene is drawn with, the file must be written in
+   *     it as its shaders are compiled for it
+   * @param camera The camera of the models
+   * @param lighting The lighting of the models, with the lights of the written scene
+   * @return The loaded scene
+   * @throws IOException If the file cannot be read or is not a scene file of this version
+   */
+  public static SceneFile load(Path path, RenderBackend backend, Mesh.Format format,
+      Camera camera, Lighting lighting) throws IOException {
+    SceneFile scene = new SceneFile();
+    long start = System.nanoTime();
+    ByteBuffer in;
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size())
+          .order(ByteOrder.LITTLE_ENDIAN);
+    }
+    Contents contents;
+    try {
+      if (in.getInt() != MAGIC || in.getInt() != VERSION) {
+        throw new IOException("Not a scene file of version " + VERSION + ": " + path);
+      }
+      if (in.getInt() != format.ordinal()) {
+        throw new IOException("Not a scene file of " + format + " vertices: " + path);
+      }
+      contents = read(in, format);
+    } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+      throw new IOException("Truncated or corrupt scene file: " + path, e);
+    }
+    scene.mapNanos = System.nanoTime() - start;
+    scene.create(contents, backend, format, camera, lighting);
+    return scene;
+  }
+
+  /**
+   * Gets the roots of the scene graphs, updated
+   *
+   * @return The roots by label, in the order they were written
+   */
+  public Map<String, SGNode> getRoots() {
+    return Collections.unmodifiableMap(roots);
+  }
+
+  public Collection<Model> getModels() {
+    return Collections.unmodifiableList(models);
+  }
+
+  /**
+   * Gets a mesh written by name
+   *
+   * @param name Name of the mesh
+   * @return The mesh, or null if none was written by that name
+   */
+  public Mesh getMesh(String name) {
+    return named.meshes.get(name);
+  }
+
+  /**
+   * Gets the parts written by name, the models and nodes as loaded
+   *
+   * @return The named parts
+   */
+  public Named getNamed() {
+    return named;
+  }
+
+  /**
+   * Gets the roots casting cached shadows, the still parts of the written scene
+   *
+   * @return The roots
+   */
+  public SGNode[] getShadowCasters() {
+    return shadowCasters.clone();
+  }
+
+  // The contents and the time taken by each step of the loading
+  public String toString() {
+    return String.format("Scene file: %d meshes (%d uploaded packed), %d models, %d nodes "
+            + "loaded in %.2f ms: mapped and read in %.2f ms, meshes in %.2f ms, textures and "
+            + "shaders in %.2f ms, models and scene graphs in %.2f ms", meshCount, packedCount,
+        modelCount, nodeCount, (mapNanos + meshNanos + textureNanos + graphNanos) / 1e6,
+        mapNanos / 1e6, meshNanos / 1e6, textureNanos / 1e6, graphNanos / 1e6);
+  }
+
+  /**
+   * Reads the file after its header, the meshes are left in the mapping
+   */
+  private static Contents read(ByteBuffer in, Mesh.Format format) throws IOException {
+    Contents c = new Contents();
+    boolean filePacked = in.getInt() != 0;
+    boolean packed = filePacked && ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN;
+    c.texturePaths = new String[getCount(in, Integer.BYTES)];
+    for (int i = 0; i < c.texturePaths.length; i++) {
+      c.texturePaths[i] = getString(in);
+    }
+    c.shaderSources = new String[getCount(in, Integer.BYTES)][];
+    for (int i = 0; i < c.shaderSources.length; i++) {
+      String[] sources = new String[getCount(in, Integer.BYTES)];
+      if (sources.length < 2) {
+        throw new IOException("A shader without its paths");
+      }
+      for (int j = 0; j < sources.length; j++) {
+        sources[j] = getString(in);
+      }
+      c.shaderSources[i] = sources;
+    }
+
+    c.meshes = new MeshData[getCount(in, 10 * Integer.BYTES)];
+    for (int i = 0; i < c.meshes.length; i++) {
+      MeshData mesh = new MeshData();
+      mesh.vertexCount = getCount(in, 0);
+      mesh.indexCount = getCount(in, 0);
+      mesh.acmrBefore = in.getFloat();
+      mesh.acmrAfter = in.getFloat();
+      mesh.bounds = new AABB(getVec3(in), getVec3(in));
+      mesh.vertices = getSlice(in, (long) mesh.vertexCount * 8 * Float.BYTES);
+      mesh.indices = getSlice(in, (long) mesh.indexCount * Integer.BYTES);
+      checkIndices(mesh.indices, Integer.BYTES, mesh.vertexCount);
+      if (filePacked) {
+        ByteBuffer vertices = getPacked(in);
+        ByteBuffer indices = getPacked(in);
+        int stride = Mesh.getLayout(format, mesh.bounds).stride;
+        int indexSize = Mesh.getIndexType(mesh.vertexCount) == GL.GL_UNSIGNED_SHORT
+            ? Short.BYTES : Integer.BYTES;
+        if (vertices.remaining() != (long) mesh.vertexCount * stride
+            || indices.remaining() != (long) mesh.indexCount * indexSize) {
+          throw new IOException("Packed mesh of the wrong size");
+        }
+        if (packed) {
+          checkIndices(indices, indexSize, mesh.vertexCount);
+          mesh.packedVertices = vertices;
+          mesh.packedIndices = indices;
+        }
+      }
+      c.meshes[i] = mesh;
+    }
+
+    c.models = new ModelData[getCount(in, 17 * Integer.BYTES)];
+    for (int i = 0; i < c.models.length; i++) {
+      ModelData model = new ModelData();
+      model.shader = getIndex(in, c.shaderSources.length);
+      model.texture1 = getIndexOrNone(in, c.texturePaths.length);
+      model.texture2 = getIndexOrNone(in, c.texturePaths.length);
+      model.material = new Material(getVec3(in), getVec3(in), getVec3(in), in.getFloat());
+      model.offsetX = in.getFloat();
+      model.offsetY = in.getFloat();
+      model.transparent = in.getInt() != 0;
+      model.levels = new int[getCount(in, 2 * Integer.BYTES)];
+      if (model.levels.length == 0) {
+        throw new IOException("A model without a mesh");
+      }
+      model.levelRadius = new float[model.levels.length];
+      for (int level = 0; level < model.levels.length; level++) {
+        model.levels[level] = getIndex(in, c.meshes.length);
+        model.levelRadius[level] = in.getFloat();
+      }
+      c.models[i] = model;
+    }
+
+    c.nodes = new NodeData[getCount(in, 3 * Integer.BYTES)];
+    for (int i = 0; i < c.nodes.length; i++) {
+      NodeData node = new NodeData();
+      node.type = in.getInt();
+      node.name = getString(in);
+      if (node.type == TRANSFORM) {
+        node.transform = new Mat4();
+        for (int r = 0; r < 4; r++) {
+          for (int col = 0; col < 4; col++) {
+            node.transform.set(r, col, in.getFloat());
+          }
+        }
+      } else if (node.type == MODEL) {
+        node.operand = getIndex(in, c.models.length);
+      } else if (node.type == LIGHT) {
+        node.operand = in.getInt();
+      }
+      node.children = new int[getCount(in, Integer.BYTES)];
+      for (int j = 0; j < node.children.length; j++) {
+        node.children[j] = getIndex(in, c.nodes.length);
+      }
+      c.nodes[i] = node;
+    }
+    byte[] visits = new byte[c.nodes.length];
+    for (int i = 0; i < c.nodes.length; i++) {
+      checkAcyclic(c.nodes, i, visits);
+    }
+
+    int rootCount = getCount(in, 2 * Integer.BYTES);
+    for (int i = 0; i < rootCount; i++) {
+      String label = getString(in);
+      c.roots.put(label, getIndex(in, c.nodes.length));
+    }
+    int namedCount = getCount(in, 2 * Integer.BYTES);
+    for (int i = 0; i < namedCount; i++) {
+      String name = getString(in);
+      c.namedMeshes.put(name, getIndex(in, c.meshes.length));
+    }
+    namedCount = getCount(in, 2 * Integer.BYTES);
+    for (int i = 0; i < namedCount; i++) {
+      String name = getString(in);
+      c.namedModels.put(name, getIndex(in, c.models.length));
+    }
+    namedCount = getCount(in, 2 * Integer.BYTES);
+    for (int i = 0; i < namedCount; i++) {
+      String name = getString(in);
+      int[] nodes = new int[getCount(in, Integer.BYTES)];
+      for (int j = 0; j < nodes.length; j++) {
+        nodes[j] = getIndex(in, c.nodes.length);
+      }
+      c.namedNodes.put(name, nodes);
+    }
+    namedCount = getCount(in, 2 * Integer.BYTES);
+    for (int i = 0; i < namedCount; i++) {
+      String name = getString(in);
+      float[] values = new float[getCount(in, Float.BYTES)];
+      in.asFloatBuffer().get(values);
+      in.position(in.position() + values.length * Float.BYTES);
+      c.values.put(name, values);
+    }
+    int casterCount = getCount(in, Integer.BYTES);
+    for (int i = 0; i < casterCount; i++) {
+      String label = getString(in);
+      if (!c.roots.containsKey(label)) {
+        throw new IOException("The shadow caster " + label + " is not a root");
+      }
+      c.shadowCasters.add(label);
+    }
+    return c;
+  }
+
+  /**
+   * Creates the meshes, textures, shaders, models and scene graphs of a file that was read.
+   * The packed meshes are uploaded straight from the mapping where the backend stores their
+   * format, the others are copied to floats.
+   */
+  private void create(Contents c, RenderBackend backend, Mesh.Format format, Camera camera,
+      Lighting lighting) {
+    long start = System.nanoTime();
+    int[][] textures = new int[c.texturePaths.length][];
+    for (int i = 0; i < textures.length; i++) {
+      textures[i] = backend.loadTexture(c.texturePaths[i]);
+    }
+    Shader[] shaders = new Shader[c.shaderSources.length];
+    for (int i = 0; i < shaders.length; i++) {
+      String[] sources = c.shaderSources[i];
+      shaders[i] = backend.createShader(sources[0], sources[1],
+          Arrays.copyOfRange(sources, 2, sources.length));
+    }
+    long loaded = System.nanoTime();
+    textureNanos = loaded - start;
+
+    Mesh[] meshes = new Mesh[c.meshes.length];
+    for (int i = 0; i < meshes.length; i++) {
+      MeshData data = c.meshes[i];
+      if (data.packedVertices != null) {
+        meshes[i] = backend.createPackedMesh(format, data.packedVertices, data.packedIndices,
+            data.vertexCount, data.indexCount, data.bounds, data.acmrBefore, data.acmrAfter);
+      }
+      if (meshes[i] == null) {
+        float[] vertices = new float[data.vertexCount * 8];
+        int[] indices = new int[data.indexCount];
+        data.vertices.asFloatBuffer().get(vertices);
+        data.indices.asIntBuffer().get(indices);
+        meshes[i] = backend.createOptimisedMesh(vertices, indices, data.acmrBefore);
+      } else {
+        packedCount++;
+      }
+    }
+    meshCount = meshes.length;
+    for (Map.Entry<String, Integer> mesh : c.namedMeshes.entrySet()) {
+      named.meshes.put(mesh.getKey(), meshes[mesh.getValue()]);
+    }
+    long meshed = System.nanoTime();
+    meshNanos = meshed - loaded;
+
+    Model[] models = new Model[c.models.length];
+    for (int i = 0; i < models.length; i++) {
+      ModelData data = c.models[i];
+      Mesh[] levels = new Mesh[data.levels.length];
+      for (int level = 0; level < levels.length; level++) {
+        levels[level] = meshes[data.levels[level]];
+      }
+      models[i] = new Model(camera, lighting, shaders[data.shader], data.material,
+          new MeshLOD(levels, data.levelRadius),
+          data.texture1 < 0 ? null : textures[data.texture1],
+          data.texture2 < 0 ? null : textures[data.texture2]);
+      models[i].setMovingTexture(data.offsetX, data.offsetY);
+      models[i].setTransparent(data.transparent);
+      this.models.add(models[i]);
+    }
+    modelCount = models.length;
+    for (Map.Entry<String, Integer> model : c.namedModels.entrySet()) {
+      named.models.put(model.getKey(), models[model.getValue()]);
+    }
+
+    // Nodes may have children written after them, so they are linked once all are created
+    SGNode[] nodes = new SGNode[c.nodes.length];
+    boolean[] isChild = new boolean[nodes.length];
+    List<Light> lights = lighting.getLights();
+    for (int i = 0; i < nodes.length; i++) {
+      NodeData data = c.nodes[i];
+      switch (data.type) {
+        case TRANSFORM:
+          nodes[i] = new TransformNode(data.name, data.transform);
+          break;
+        case MODEL:
+          nodes[i] = new ModelNode(data.name, models[data.operand]);
+          break;
+        case LIGHT:
+          nodes[i] = data.operand >= 0 && data.operand < lights.size()
+              ? new LightNode(data.name, lights.get(data.operand)) : new NameNode(data.name);
+          break;
+        case ANCHOR:
+          nodes[i] = new AnchorNode(data.name);
+          break;
+        default:
+          nodes[i] = new NameNode(data.name);
+      }
+      for (int child : data.children) {
+        isChild[child] = true;
+      }
+    }
+    for (int i = 0; i < nodes.length; i++) {
+      for (int child : c.nodes[i].children) {
+        nodes[i].addChild(nodes[child]);
+      }
+    }
+    nodeCount = nodes.length;
+    for (Map.Entry<String, int[]> list : c.namedNodes.entrySet()) {
+      SGNode[] listed = new SGNode[list.getValue().length];
+      for (int i = 0; i < listed.length; i++) {
+        listed[i] = nodes[list.getValue()[i]];
+      }
+      named.nodes.put(list.getKey(), listed);
+    }
+    named.values.putAll(c.values);
+
+    // Roots below other roots are updated by them
+    for (Map.Entry<String, Integer> root : c.roots.entrySet()) {
+      roots.put(root.getKey(), nodes[root.getValue()]);
+    }
+    shadowCasters = new SGNode[c.shadowCasters.size()];
+    for (int i = 0; i < shadowCasters.length; i++) {
+      shadowCasters[i] = roots.get(c.shadowCasters.get(i));
+    }
+    for (int i = 0; i < nodes.length; i++) {
+      if (!isChild[i]) {
+        nodes[i].update();
+      }
+    }
+    graphNanos = System.nanoTime() - meshed;
+  }
+
+  /**
+   * Numbers a node and the nodes below it in depth first order, unless numbered before or
+   * left out
+   */
+  private static void addNode(SGNode node, List<SGNode> nodes, Map<SGNode, Integer> nodeIds,
+      Set<SGNode> omitted) {
+    if (nodeIds.containsKey(node) || omitted.contains(node)) {
+      return;
+    }
+    nodeIds.put(node, nodes.size());
+    nodes.add(node);
+    for (SGNode child : node.children) {
+      addNode(child, nodes, nodeIds, omitted);
+    }
+  }
+
+  /**
+   * Checks no node is below itself, which would update it forever
+   *
+   * @param visits 0 for a node not visited, 1 while visiting the nodes below it, then 2
+   */
+  private static void checkAcyclic(NodeData[] nodes, int node, byte[] visits)
+      throws IOException {
+    if (visits[node] == 1) {
+      throw new IOException("A node is below itself");
+    }
+    if (visits[node] == 0) {
+      visits[node] = 1;
+      for (int child : nodes[node].children) {
+        checkAcyclic(nodes, child, visits);
+      }
+      visits[node] = 2;
+    }
+  }
+
+  /**
+   * Checks every index of a mesh is one of its vertices
+   *
+   * @param size Bytes of each index
+   */
+  private static void checkIndices(ByteBuffer indices, int size, int vertexCount)
+      throws IOException {
+    for (int i = indices.position(); i < indices.limit(); i += size) {
+      long index = size == Short.BYTES ? indices.getShort(i) & 0xffff
+          : indices.getInt(i) & 0xffffffffL;
+      if (index >= vertexCount) {
+        throw new IOException("Index out of range: " + index);
+      }
+    }
+  }
+
+  /**
+   * Reads a count of items and checks the file can hold them
+   *
+   * @param bytesEach The fewest bytes of each item
+   */
+  private static int getCount(ByteBuffer in, int bytesEach) throws IOException {
+    int count = in.getInt();
+    if (count < 0 || (long) count * bytesEach > in.remaining()) {
+      throw new IOException("Count out of range: " + count);
+    }
+    return count;
+  }
+
+  private static int getIndex(ByteBuffer in, int count) throws IOException {
+    int index = in.getInt();
+    if (index < 0 || index >= count) {
+      throw new IOException("Index out of range: " + index);
+    }
+    return index;
+  }
+
+  // -1 for none
+  private static int getIndexOrNone(ByteBuffer in, int count) throws IOException {
+    int index = in.getInt();
+    if (index < -1 || index >= count) {
+      throw new IOException("Index out of range: " + index);
+    }
+    return index;
+  }
+
+  /**
+   * Takes the next bytes of the mapping, without copying them
+   */
+  private static ByteBuffer getSlice(ByteBuffer in, long bytes) throws IOException {
+    if (bytes > in.remaining()) {
+      throw new IOException("Truncated scene file");
+    }
+    ByteBuffer slice = in.slice().order(ByteOrder.LITTLE_ENDIAN);
+    slice.limit((int) bytes);
+    in.position(in.position() + (int) bytes);
+    return slice;
+  }
+
+  // Bytes written by putBytes(), in native order
+  private static ByteBuffer getPacked(ByteBuffer in) throws IOException {
+    int length = getCount(in, 1);
+    ByteBuffer packed = getSlice(in, length).order(ByteOrder.nativeOrder());
+    getSlice(in, (4 - length % 4) % 4);
+    return packed;
+  }
+
+  private static String getString(ByteBuffer in) throws IOException {
+    byte[] bytes = new byte[getCount(in, 1)];
+    in.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  private static Vec3 getVec3(ByteBuffer in) {
+    return new Vec3(in.getFloat(), in.getFloat(), in.getFloat());
+  }
+
+  /**
+   * A growing little endian buffer of the file being written
+   */
+  private static final class Writer {
+
+    private ByteBuffer buffer = ByteBuffer.allocate(64 * 1024).order(ByteOrder.LITTLE_ENDIAN);
+
+    void putInt(int value) {
+      reserve(Integer.BYTES).putInt(value);
+    }
+
+    void putFloat(float value) {
+      reserve(Float.BYTES).putFloat(value);
+    }
+
+    void putVec3(Vec3 v) {
+      putFloat(v.x);
+      putFloat(v.y);
+      putFloat(v.z);
+    }
+
+    void putFloats(float[] values) {
+      reserve(values.length * Float.BYTES);
+      buffer.asFloatBuffer().put(values);
+      buffer.position(buffer.position() + values.length * Float.BYTES);
+    }
+
+    void putInts(int[] values) {
+      reserve(values.length * Integer.BYTES);
+      buffer.asIntBuffer().put(values);
+      buffer.position(buffer.position() + values.length * Integer.BYTES);
+    }
+
+    // The length, then the bytes as they are, padded to 4 bytes
+    void putBytes(ByteBuffer bytes) {
+      int length = bytes.remaining();
+      putInt(length);
+      reserve(length + 3).put(bytes.duplicate());
+      buffer.position(buffer.position() + (4 - length % 4) % 4);
+    }
+
+    void putString(String s) {
+      byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+      putInt(bytes.length);
+      reserve(bytes.length).put(bytes);
+    }
+
+    void writeTo(Path path) throws IOException {
+      buffer.flip();
+      try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+          StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+        while (buffer.hasRemaining()) {
+          channel.write(buffer);
+        }
+      }
+    }
+
+    private ByteBuffer reserve(int bytes) {
+      if (buffer.remaining() < bytes) {
+        ByteBuffer larger = ByteBuffer.allocate(Math.max(buffer.capacity() * 2,
+            buffer.position() + bytes)).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.flip();
+        buffer = larger.put(buffer);
+      }
+      return buffer;
+    }
+  }
+}
@@ -5,28 +5,52 @@ import com.jogamp.opengl.util.glsl.*;
 import java.io.*;
 import java.nio.charset.*;
 import java.nio.file.*;
+import java.util.*;
 import lib.gmaths.*;
 
 /**
  * Shader class adapted from tutorial 7
+ * Sources can #include "file" other sources, relative to the including file, and variants are
+ * compiled by passing the names to #define after the #version line
+ * A shader of a backend without OpenGL is never compiled, the backend only tells it apart
+ * Uniform locations are looked up once, and the values set by command lists are remembered so
+ * unchanged uniforms are skipped, see updateUniform()
+ * The Draw uniform block of a shader, if any, is bound to the binding point of the UniformRing
+ * A shader compiled for indirect draws reads the draw data from a texture buffer, see isIndirect()
  *
- * @author Dr. Steve Maddock
+ * @author Dr. Steve Maddock and Zer Jun Eng (zjeng1@sheffield.ac.uk)
  */
 public class Shader {
 
   private static final boolean DISPLAY_SHADERS = false;
+  private static final String INCLUDE = "#include";
+  private static final String VERSION = "#version";
+
+  /**
+   * A uniform of the program and the last value set by a command list
+   */
+  private static final class Uniform {
+
+    final int location;
+    final int[] bits = new int[16];  // Floats as Float.floatToRawIntBits
+    int size = -1;                   // -1 while the value is unknown
+
+    private Uniform(int location) {
+      this.location = location;
+    }
+  }
 
   private final int ID;
+  private final boolean indirect;
+  private final Map<String, Uniform> uniforms = new HashMap<>();
   private String vertexShaderSource;
   private String fragmentShaderSource;
 
   /* The constructor */
-  public Shader(GL3 gl, String vertexPath, String fragmentPath) {
+  public Shader(GL3 gl, String vertexPath, String fragmentPath, String... defines) {
     try {
-      vertexShaderSource = new String(Files.readAllBytes(Paths.get(vertexPath)),
-          Charset.defaultCharset());
-      fragmentShaderSource = new String(Files.readAllBytes(Paths.get(fragmentPath)),
-          Charset.defaultCharset());
+      vertexShaderSource = addDefines(readSource(Paths.get(vertexPath)), defines);
+      fragmentShaderSource = addDefines(readSource(Paths.get(fragmentPath)), defines);
     } catch (IOException e) {
       e.printStackTrace();
     }
@@ -34,6 +58,28 @@ public class Shader {
       display();
     }
     ID = compileAndLink(gl);
+    int drawBlock = gl.glGetUniformBlockIndex(ID, UniformRing.DRAW_BLOCK);
+    if (drawBlock != GL2ES3.GL_INVALID_INDEX) {
+      gl.glUniformBlockBinding(ID, drawBlock, UniformRing.DRAW_BINDING);
+    }
+    indirect = gl.glGetUniformLocation(ID, IndirectDraws.DRAW_DATA) >= 0;
+  }
+
+  /**
+   * A shader that is never compiled, for a backend that draws without OpenGL
+   */
+  Shader() {
+    ID = 0;
+    indirect = false;
+  }
+
+  /**
+   * Tells if the shader was compiled for indirect draws, see IndirectDraws
+   *
+   * @return True if the draw data is read from the drawData texture buffer
+   */
+  public boolean isIndirect() {
+    return indirect;
   }
 
   public void use(GL3 gl) {
@@ -41,28 +87,129 @@ public class Shader {
   }
 
   public void setInt(GL3 gl, String name, int value) {
-    int location = gl.glGetUniformLocation(ID, name);
-    gl.glUniform1i(location, value);
+    gl.glUniform1i(locate(gl, name), value);
+  }
+
+  public void setInt(GL3 gl, String name, int i1, int i2, int i3) {
+    gl.glUniform3i(locate(gl, name), i1, i2, i3);
   }
 
   public void setFloat(GL3 gl, String name, float value) {
-    int location = gl.glGetUniformLocation(ID, name);
-    gl.glUniform1f(location, value);
+    gl.glUniform1f(locate(gl, name), value);
   }
 
   public void setFloat(GL3 gl, String name, float f1, float f2) {
-    int location = gl.glGetUniformLocation(ID, name);
-    gl.glUniform2f(location, f1, f2);
+    gl.glUniform2f(locate(gl, name), f1, f2);
   }
 
   public void setFloatArray(GL3 gl, String name, float[] f) {
-    int location = gl.glGetUniformLocation(ID, name);
-    gl.glUniformMatrix4fv(location, 1, false, f, 0);
+    gl.glUniformMatrix4fv(locate(gl, name), 1, false, f, 0);
   }
 
   public void setVec3(GL3 gl, String name, Vec3 v) {
-    int location = gl.glGetUniformLocation(ID, name);
-    gl.glUniform3f(location, v.x, v.y, v.z);
+    gl.glUniform3f(locate(gl, name), v.x, v.y, v.z);
+  }
+
+  /**
+   * Remembers the value of an int uniform set by a command list
+   *
+   * @param gl OpenGL object
+   * @param name Name of the uniform
+   * @param values Array holding the value
+   * @param offset Index of the value in the array
+   * @param size Number of ints of the value
+   * @return The location to set the value at, -1 if the uniform already holds it or is unused
+   */
+  int updateUniform(GL3 gl, String name, int[] values, int offset, int size) {
+    Uniform uniform = getUniform(gl, name);
+    boolean changed = uniform.size != size;
+    for (int i = 0; i < size; i++) {
+      changed |= uniform.bits[i] != values[offset + i];
+      uniform.bits[i] = values[offset + i];
+    }
+    uniform.size = size;
+    return changed ? uniform.location : -1;
+  }
+
+  /**
+   * Remembers the value of a float, vector or matrix uniform set by a command list
+   *
+   * @param gl OpenGL object
+   * @param name Name of the uniform
+   * @param values Array holding the value
+   * @param offset Index of the value in the array
+   * @param size Number of floats of the value
+   * @return The location to set the value at, -1 if the uniform already holds it or is unused
+   */
+  int updateUniform(GL3 gl, String name, float[] values, int offset, int size) {
+    Uniform uniform = getUniform(gl, name);
+    boolean changed = uniform.size != size;
+    for (int i = 0; i < size; i++) {
+      int bits = Float.floatToRawIntBits(values[offset + i]);
+      changed |= uniform.bits[i] != bits;
+      uniform.bits[i] = bits;
+    }
+    uniform.size = size;
+    return changed ? uniform.location : -1;
+  }
+
+  /**
+   * Gets the location of a uniform set directly, forgetting its value as it is not remembered
+   */
+  private int locate(GL3 gl, String name) {
+    Uniform uniform = getUniform(gl, name);
+    uniform.size = -1;
+    return uniform.location;
+  }
+
+  private Uniform getUniform(GL3 gl, String name) {
+    Uniform uniform = uniforms.get(name);
+    if (uniform == null) {
+      uniform = new Uniform(gl.glGetUniformLocation(ID, name));
+      uniforms.put(name, uniform);
+    }
+    return uniform;
+  }
+
+  /**
+   * Reads a shader source, replacing each #include line with the source of the included file
+   *
+   * @param path Path of the source file
+   * @return The source, with every include resolved
+   * @throws IOException If a file cannot be read
+   */
+  private static String readSource(Path path) throws IOException {
+    StringBuilder source = new StringBuilder();
+    for (String line : Files.readAllLines(path, Charset.defaultCharset())) {
+      String trimmed = line.trim();
+      if (trimmed.startsWith(INCLUDE)) {
+        String file = trimmed.substring(INCLUDE.length()).trim().replace("\"", "");
+        source.append(readSource(path.resolveSibling(file)));
+      } else {
+        source.append(line).append('\n');
+      }
+    }
+    return source.toString();
+  }
+
+  /**
+   * Defines macros after the #version line of a source, which must come first
+   *
+   * @param source The shader source
+   * @param defines Names of the macros
+   * @return The source with the macros defined
+   */
+  private static String addDefines(String source, String[] defines) {
+    if (defines.length == 0) {
+      return source;
+    }
+    StringBuilder lines = new StringBuilder();
+    for (String define : defines) {
+      lines.append("#define ").append(define).append('\n');
+    }
+    int version = source.indexOf(VERSION);
+    int insert = version < 0 ? 0 : source.indexOf('\n', version) + 1;
+    return source.substring(0, insert) + lines + source.substring(insert);
   }
 
   private void display() {
@@ -0,0 +1,221 @@
+package lib;
+
+import com.jogamp.opengl.*;
+import java.util.*;
+import lib.gmaths.*;
+
+/**
+ * I declare that this code is my own work.
+ * A perspective shadow map of a light. The depth of the static casters (e.g. room, table and
+ * the objects on it) is cached in a texture of its own and only redrawn when the light moves,
+ * each frame the cache is copied into the shadow map and the dynamic casters (e.g. the lamp)
+ * are drawn on top of it. Lookups are filtered with percentage closer filtering (PCF).
+ *
+ * @author Zer Jun Eng (zjeng1@sheffield.ac.uk)
+ */
+public class ShadowMap {
+
+  public static final float DEFAULT_NEAR = 0.1f;
+  public static final float DEFAULT_FAR = 40f;
+
+  // Slope scaled depth offset of the casters, against shadow acne
+  private static final float OFFSET_FACTOR = 2f;
+  private static final float OFFSET_UNITS = 4f;
+
+  // Looks down when the light has no direction, e.g. a world light
+  private static final Vec3 DEFAULT_DIRECTION = new Vec3(0, -1, 0);
+
+  private final int resolution;
+  private final float fov;
+  private int pcfRadius;
+  private final Shader depthShader;
+
+  // 0 is the shadow map, 1 is the cache of the static casters
+  private final int[] textureId = new int[2];
+  private final int[] framebufferId = new int[2];
+
+  private final List<SGNode> staticCasters = new ArrayList<>();
+  private final List<SGNode> dynamicCasters = new ArrayList<>();
+  private Mat4 lightMatrix = new Mat4(1);
+  private Mat4 cachedMatrix;
+  private int cacheRebuilds = 0;
+
+  private final int[] viewport = new int[4];
+  private final int[] framebuffer = new int[1];
+
+  /**
+   * Shadow map constructor
+   *
+   * @param gl OpenGL object
+   * @param resolution Width and height of the depth textures in texels
+   * @param pcfRadius Radius of the PCF kernel in texels, 0 for a single (bilinear) lookup
+   * @param fov Field of view of the light in degrees, wide enough to cover what it lights
+   */
+  public ShadowMap(GL3 gl, int resolution, int pcfRadius, float fov) {
+    this.resolution = resolution;
+    this.pcfRadius = pcfRadius;
+    this.fov = fov;
+    depthShader = new Shader(gl, "shaders/vs_shadow.txt", "shaders/fs_shadow.txt");
+
+    gl.glGenTextures(2, textureId, 0);
+    gl.glGenFramebuffers(2, framebufferId, 0);
+    for (int i = 0; i < 2; i++) {
+      createDepthTexture(gl, textureId[i]);
+      gl.glBindFramebuffer(GL.GL_FRAMEBUFFER, framebufferId[i]);
+      gl.glFramebufferTexture2D(GL.GL_FRAMEBUFFER, GL.GL_DEPTH_ATTACHMENT, GL.GL_TEXTURE_2D,
+          textureId[i], 0);
+      gl.glDrawBuffer(GL.GL_NONE);
+      gl.glReadBuffer(GL.GL_NONE);
+      if (gl.glCheckFramebufferStatus(GL.GL_FRAMEBUFFER) != GL.GL_FRAMEBUFFER_COMPLETE) {
+        System.err.println("[error] Incomplete shadow map framebuffer");
+      }
+    }
+    gl.glBindFramebuffer(GL.GL_FRAMEBUFFER, 0);
+  }
+
+  /**
+   * Sets the casters that never move, their depth is cached
+   *
+   * @param roots Roots of the scene graphs
+   */
+  public void setStaticCasters(SGNode... roots) {
+    staticCasters.clear();
+    staticCasters.addAll(Arrays.asList(roots));
+    invalidate();
+  }
+
+  /**
+   * Sets the casters that are drawn every frame
+   *
+   * @param roots Roots of the scene graphs
+   */
+  public void setDynamicCasters(SGNode... roots) {
+    dynamicCasters.clear();
+    dynamicCasters.addAll(Arrays.asList(roots));
+  }
+
+  /**
+   * Redraws the cache of the static casters on the next render, e.g. after one has moved
+   */
+  public void invalidate() {
+    cachedMatrix = null;
+  }
+
+  public void setPcfRadius(int pcfRadius) {
+    this.pcfRadius = pcfRadius;
+  }
+
+  public int getResolution() {
+    return resolution;
+  }
+
+  /**
+   * Gets the number of times the static cache has been redrawn, for profiling
+   *
+   * @return Number of cache rebuilds
+   */
+  public int getCacheRebuilds() {
+    return cacheRebuilds;
+  }
+
+  /**
+   * Renders the shadow map from the current position and direction of a light. The scene graphs
+   * of the casters must have been updated for this frame. The framebuffer, viewport and face
+   * culling are restored afterwards.
+   *
+   * @param gl OpenGL object, for rendering
+   * @param light The light casting the shadows
+   */
+  public void render(GL3 gl, Light light) {
+    lightMatrix = calculateLightMatrix(light.getPosition(), light.getDirection());
+
+    gl.glGetIntegerv(GL.GL_DRAW_FRAMEBUFFER_BINDING, framebuffer, 0);
+    gl.glGetIntegerv(GL.GL_VIEWPORT, viewport, 0);
+    gl.glViewport(0, 0, resolution, resolution);
+    gl.glDisable(GL.GL_CULL_FACE);  // Walls and pictures are single sided
+    gl.glEnable(GL.GL_POLYGON_OFFSET_FILL);
+    gl.glPolygonOffset(OFFSET_FACTOR, OFFSET_UNITS);
+
+    depthShader.use(gl);
+    depthShader.setFloatArray(gl, "lightSpaceMatrix", lightMatrix.toFloatArrayForGLSL());
+
+    if (!lightMatrix.equals(cachedMatrix)) {
+      drawCasters(gl, framebufferId[1], staticCasters);
+      cachedMatrix = lightMatrix;
+      cacheRebuilds++;
+    }
+
+    // Start from the cached static depth, then add the dynamic casters
+    gl.glBindFramebuffer(GL.GL_READ_FRAMEBUFFER, framebufferId[1]);
+    gl.glBindFramebuffer(GL.GL_DRAW_FRAMEBUFFER, framebufferId[0]);
+    gl.glBlitFramebuffer(0, 0, resolution, resolution, 0, 0, resolution, resolution,
+        GL.GL_DEPTH_BUFFER_BIT, GL.GL_NEAREST);
+    for (SGNode caster : dynamicCasters) {
+      caster.drawDepth(gl, depthShader);
+    }
+
+    gl.glDisable(GL.GL_POLYGON_OFFSET_FILL);
+    gl.glEnable(GL.GL_CULL_FACE);
+    gl.glBindFramebuffer(GL.GL_FRAMEBUFFER, framebuffer[0]);
+    gl.glViewport(viewport[0], viewport[1], viewport[2], viewport[3]);
+  }
+
+  /**
+   * Records the binding of the shadow map and the uniforms of a Shadow struct in a lit shader,
+   * after the shadow map has been rendered for the frame
+   *
+   * @param commands The command list, with the lit shader in use
+   * @param name Name of the Shadow uniform
+   * @param unit Texture unit for the shadow map
+   */
+  void record(CommandList commands, String name, int unit) {
+    commands.setInt(name + ".enabled", 1);
+    commands.setInt(name + ".pcfRadius", pcfRadius);
+    commands.setMatrix(name + ".matrix", lightMatrix);
+    commands.bindTexture(unit, GL.GL_TEXTURE_2D, textureId[0]);
+  }
+
+  public void dispose(GL3 gl) {
+    gl.glDeleteFramebuffers(2, framebufferId, 0);
+    gl.glDeleteTextures(2, textureId, 0);
+  }
+
+  private void drawCasters(GL3 gl, int target, List<SGNode> casters) {
+    gl.glBindFramebuffer(GL.GL_FRAMEBUFFER, target);
+    gl.glClear(GL.GL_DEPTH_BUFFER_BIT);
+    for (SGNode caster : casters) {
+      caster.drawDepth(gl, depthShader);
+    }
+  }
+
+  private Mat4 calculateLightMatrix(Vec3 position, Vec3 direction) {
+    float length = (float) Math.sqrt(direction.x * direction.x + direction.y * direction.y
+        + direction.z * direction.z);
+    Vec3 front = length > 0 ? direction : DEFAULT_DIRECTION;
+    // Any up vector not parallel to the light direction will do
+    boolean vertical = length == 0 || Math.abs(direction.y) > 0.99f * length;
+    Vec3 up = vertical ? new Vec3(0, 0, -1) : new Vec3(0, 1, 0);
+    Mat4 view = Mat4Transform.lookAt(position, Vec3.add(position, front), up);
+    return Mat4.multiply(Mat4Transform.perspective(fov, 1, DEFAULT_NEAR, DEFAULT_FAR), view);
+  }
+
+  private void createDepthTexture(GL3 gl, int id) {
+    gl.glBindTexture(GL.GL_TEXTURE_2D, id);
+    gl.glTexImage2D(GL.GL_TEXTURE_2D, 0, GL.GL_DEPTH_COMPONENT24, resolution, resolution, 0,
+        GL2ES2.GL_DEPTH_COMPONENT, GL.GL_FLOAT, null);
+
+    // Hardware depth comparison, linear filtering adds a 2x2 PCF to each lookup
+    gl.glTexParameteri(GL.GL_TEXTURE_2D, GL.GL_TEXTURE_MIN_FILTER, GL.GL_LINEAR);
+    gl.glTexParameteri(GL.GL_TEXTURE_2D, GL.GL_TEXTURE_MAG_FILTER, GL.GL_LINEAR);
+    gl.glTexParameteri(GL.GL_TEXTURE_2D, GL2ES2.GL_TEXTURE_COMPARE_MODE,
+        GL2ES2.GL_COMPARE_REF_TO_TEXTURE);
+    gl.glTexParameteri(GL.GL_TEXTURE_2D, GL2ES2.GL_TEXTURE_COMPARE_FUNC, GL.GL_LEQUAL);
+
+    // Anything outside the light frustum is lit
+    gl.glTexParameteri(GL.GL_TEXTURE_2D, GL.GL_TEXTURE_WRAP_S, GL2ES2.GL_CLAMP_TO_BORDER);
+    gl.glTexParameteri(GL.GL_TEXTURE_2D, GL.GL_TEXTURE_WRAP_T, GL2ES2.GL_CLAMP_TO_BORDER);
+    gl.glTexParameterfv(GL.GL_TEXTURE_2D, GL2ES2.GL_TEXTURE_BORDER_COLOR,
+        new float[]{1, 1, 1, 1}, 0);
+    gl.glBindTexture(GL.GL_TEXTURE_2D, 0);
+  }
+}
@@ -0,0 +1,210 @@
+package lib;
+
+import java.nio.*;
+
+/**
+ * I declare that this code is my own work.
+ * Sky colours from single scattering of sunlight in the atmosphere, Rayleigh scattering by the
+ * air and Mie scattering by aerosols, integrated along each view ray (Nishita et al.). Far too
+ * slow for every frame, so it is baked into cubemaps away from the rendering thread.
+ * Adapted from https://github.com/wwwtyro/glsl-atmosphere
+ *
+ * @author Zer Jun Eng (zjeng1@sheffield.ac.uk)
+ */
+final class SkyModel {
+
+  // Metres, the viewer stands slightly above the ground
+  private static final double PLANET_RADIUS = 6371e3;
+  private static final double ATMOSPHERE_RADIUS = 6471e3;
+  private static final double VIEWER_HEIGHT = 1e3;
+
+  // Scattering coefficients at sea level and the heights they fall by 1/e over
+  private static final double[] RAYLEIGH = {5.5e-6, 13.0e-6, 22.4e-6};
+  private static final double MIE = 21e-6;
+  private static final double RAYLEIGH_SCALE_HEIGHT = 8e3;
+  private static final double MIE_SCALE_HEIGHT = 1.2e3;
+  private static final double MIE_G = 0.758;    // Preferred scattering direction, forwards
+  private static final double SUN_INTENSITY = 22;
+
+  private static final double EXPOSURE = 2;
+
+  private static final int VIEW_STEPS = 16;
+  private static final int SUN_STEPS = 8;
+
+  // Starlight, so the night is not black
+  private static final double[] NIGHT = {0.01, 0.012, 0.03};
+
+  private SkyModel() {
+  }
+
+  /**
+   * Bakes the sky for one position of the sun into the six faces of a cubemap, in the order
+   * of GL_TEXTURE_CUBE_MAP_POSITIVE_X + face
+   *
+   * @param sun Direction towards the sun, normalised
+   * @param size Width and height of each face in texels
+   * @return RGB bytes of each face, rows in increasing t
+   */
+  static ByteBuffer[] bakeCubemap(double[] sun, int size) {
+    ByteBuffer[] faces = new ByteBuffer[6];
+    double[] dir = new double[3];
+    double[] colour = new double[3];
+    for (int face = 0; face < 6; face++) {
+      faces[face] = ByteBuffer.allocateDirect(size * size * 3);
+      for (int t = 0; t < size; t++) {
+        for (int s = 0; s < size; s++) {
+          setFaceDirection(face, 2 * (s + 0.5) / size - 1, 2 * (t + 0.5) / size - 1, dir);
+          skyColour(dir, sun, colour);
+          for (int c = 0; c < 3; c++) {
+            // Exposure, maps the unbounded radiance into [0, 1)
+            double v = 1 - Math.exp(-EXPOSURE * (colour[c] + NIGHT[c]));
+            faces[face].put((byte) Math.round(Math.min(v, 1) * 255));
+          }
+        }
+      }
+      faces[face].flip();
+    }
+    return faces;
+  }
+
+  /**
+   * Sets the direction of a texel of a cubemap face, as in the cube map face selection table of
+   * the OpenGL specification
+   */
+  private static void setFaceDirection(int face, double sc, double tc, double[] dir) {
+    switch (face) {
+      case 0:
+        set(dir, 1, -tc, -sc);
+        break;
+      case 1:
+        set(dir, -1, -tc, sc);
+        break;
+      case 2:
+        set(dir, sc, 1, tc);
+        break;
+      case 3:
+        set(dir, sc, -1, -tc);
+        break;
+      case 4:
+        set(dir, sc, -tc, 1);
+        break;
+      default:
+        set(dir, -sc, -tc, -1);
+    }
+    double length = Math.sqrt(dot(dir, dir));
+    for (int i = 0; i < 3; i++) {
+      dir[i] /= length;
+    }
+  }
+
+  /**
+   * Integrates the light scattered towards the viewer along a view ray
+   */
+  private static void skyColour(double[] dir, double[] sun, double[] colour) {
+    double[] origin = {0, PLANET_RADIUS + VIEWER_HEIGHT, 0};
+    colour[0] = colour[1] = colour[2] = 0;
+
+    // The ray ends where it leaves the atmosphere or hits the ground
+    double end = intersect(origin, dir, ATMOSPHERE_RADIUS)[1];
+    double[] ground = intersect(origin, dir, PLANET_RADIUS);
+    if (ground[0] > 0) {
+      end = Math.min(end, ground[0]);
+    }
+    if (end <= 0) {
+      return;
+    }
+
+    double mu = dot(dir, sun);
+    double gg = MIE_G * MIE_G;
+    double phaseRayleigh = 3 / (16 * Math.PI) * (1 + mu * mu);
+    double phaseMie = 3 / (8 * Math.PI) * ((1 - gg) * (mu * mu + 1))
+        / (Math.pow(1 + gg - 2 * mu * MIE_G, 1.5) * (2 + gg));
+
+    double step = end / VIEW_STEPS;
+    double depthRayleigh = 0;
+    double depthMie = 0;
+    double[] totalRayleigh = new double[3];
+    double[] totalMie = new double[3];
+    double[] position = new double[3];
+    for (int i = 0; i < VIEW_STEPS; i++) {
+      double distance = step * (i + 0.5);
+      for (int c = 0; c < 3; c++) {
+        position[c] = origin[c] + dir[c] * distance;
+      }
+      double height = Math.sqrt(dot(position, position)) - PLANET_RADIUS;
+      double stepRayleigh = Math.exp(-height / RAYLEIGH_SCALE_HEIGHT) * step;
+      double stepMie = Math.exp(-height / MIE_SCALE_HEIGHT) * step;
+      depthRayleigh += stepRayleigh;
+      depthMie += stepMie;
+
+      // Optical depth from this point towards the sun, no light if the planet is in the way
+      double[] sunDepth = sunOpticalDepth(position, sun);
+      if (sunDepth == null) {
+        continue;
+      }
+      for (int c = 0; c < 3; c++) {
+        double attenuation = Math.exp(-(MIE * (depthMie + sunDepth[1])
+            + RAYLEIGH[c] * (depthRayleigh + sunDepth[0])));
+        totalRayleigh[c] += stepRayleigh * attenuation;
+        totalMie[c] += stepMie * attenuation;
+      }
+    }
+
+    for (int c = 0; c < 3; c++) {
+      colour[c] = SUN_INTENSITY
+          * (phaseRayleigh * RAYLEIGH[c] * totalRayleigh[c] + phaseMie * MIE * totalMie[c]);
+    }
+  }
+
+  /**
+   * Gets the Rayleigh and Mie optical depths from a point to the edge of the atmosphere towards
+   * the sun
+   *
+   * @return The depths, or null if the ground is in the way
+   */
+  private static double[] sunOpticalDepth(double[] from, double[] sun) {
+    if (intersect(from, sun, PLANET_RADIUS)[0] > 0) {
+      return null;
+    }
+
+    double step = intersect(from, sun, ATMOSPHERE_RADIUS)[1] / SUN_STEPS;
+    double[] depth = new double[2];
+    double[] position = new double[3];
+    for (int j = 0; j < SUN_STEPS; j++) {
+      double distance = step * (j + 0.5);
+      for (int c = 0; c < 3; c++) {
+        position[c] = from[c] + sun[c] * distance;
+      }
+      double height = Math.sqrt(dot(position, position)) - PLANET_RADIUS;
+      depth[0] += Math.exp(-height / RAYLEIGH_SCALE_HEIGHT) * step;
+      depth[1] += Math.exp(-height / MIE_SCALE_HEIGHT) * step;
+    }
+    return depth;
+  }
+
+  /**
+   * Intersects a ray with a sphere at the centre of the planet
+   *
+   * @return Distances to the near and far intersections, near greater than far if there are none
+   */
+  private static double[] intersect(double[] origin, double[] dir, double radius) {
+    double b = 2 * dot(dir, origin);
+    double c = dot(origin, origin) - radius * radius;
+    double d = b * b - 4 * c;
+    if (d < 0) {
+      return new double[]{1e5, -1e5};
+    }
+    double root = Math.sqrt(d);
+    return new double[]{(-b - root) / 2, (-b + root) / 2};
+  }
+
+  private static double dot(double[] a, double[] b) {
+    return a[0] * b[0] + a[1] * b[1] + a[2] * b[2];
+  }
+
+  private static void set(double[] v, double x, double y, double z) {
+    v[0] = x;
+    v[1] = y;
+    v[2] = z;
+  }
+}
@@ -0,0 +1,163 @@
+package lib;
+
+import com.jogamp.opengl.*;
+import java.nio.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * I declare that this code is my own work.
+ * The sky outside, a cube around the camera drawn where nothing else has been drawn. The sky is
+ * baked by SkyModel into a cubemap for each of a few times of day on background threads, and
+ * the two cubemaps around the current time are blended on the GPU. Nothing is drawn until both
+ * have been baked and uploaded.
+ *
+ * @author Zer Jun Eng (zjeng1@sheffield.ac.uk)
+ */
+public class Skybox {
+
+  private static final int TIMES_OF_DAY = 8;
+  private static final int FACE_SIZE = 48;           // Texels, rows of RGB bytes stay 4 aligned
+  private static final double DAY_LENGTH = 4 * Math.PI;  // Seconds
+
+  private final Mesh cubeMesh;
+  private final Shader shader;
+  private final int[] textureId = new int[TIMES_OF_DAY];
+  private final boolean[] uploaded = new boolean[TIMES_OF_DAY];
+  private final List<Future<ByteBuffer[]>> bakes = new ArrayList<>();
+  private final ExecutorService baker;
+
+  private double timeOfDay = 0;  // Fraction of the day since noon, 0.5 is midnight
+
+  /**
+   * Skybox constructor, starts baking the sky
+   *
+   * @param gl OpenGL object
+   * @param cubeMesh A cube around the origin
+   */
+  public Skybox(GL3 gl, Mesh cubeMesh) {
+    this.cubeMesh = cubeMesh;
+    shader = new Shader(gl, "shaders/vs_skybox.txt", "shaders/fs_skybox.txt");
+    gl.glGenTextures(TIMES_OF_DAY, textureId, 0);
+    gl.glEnable(GL3.GL_TEXTURE_CUBE_MAP_SEAMLESS);
+
+    int threads = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+    baker = Executors.newFixedThreadPool(threads, task -> {
+      Thread thread = new Thread(task, "Sky baker");
+      thread.setDaemon(true);
+      return thread;
+    });
+    for (int i = 0; i < TIMES_OF_DAY; i++) {
+      double[] sun = getSunDirection((double) i / TIMES_OF_DAY);
+      bakes.add(baker.submit(() -> SkyModel.bakeCubemap(sun, FACE_SIZE)));
+    }
+    baker.shutdown();
+  }
+
+  /**
+   * Advances the time of day, and uploads the cubemaps baked since the last frame
+   *
+   * @param gl OpenGL object
+   * @param seconds Time since the start of the scene
+   */
+  public void update(GL3 gl, double seconds) {
+    timeOfDay = seconds / DAY_LENGTH % 1;
+    uploadBakes(gl, false);
+  }
+
+  /**
+   * Waits for every cubemap to be baked and uploads them, so the frames drawn from then on do
+   * not depend on how long the baking takes
+   *
+   * @param gl OpenGL object
+   */
+  public void finish(GL3 gl) {
+    uploadBakes(gl, true);
+  }
+
+  // Uploads the baked cubemaps, waiting for the others if asked to
+  private void uploadBakes(GL3 gl, boolean wait) {
+    for (int i = 0; i < TIMES_OF_DAY; i++) {
+      Future<ByteBuffer[]> bake = bakes.get(i);
+      if (bake == null || !(wait || bake.isDone())) {
+        continue;
+      }
+      bakes.set(i, null);
+      try {
+        upload(gl, textureId[i], bake.get());
+        uploaded[i] = true;
+      } catch (InterruptedException | ExecutionException e) {
+        System.err.println("[error] Unable to bake the sky: " + e.getCause());
+      }
+    }
+  }
+
+  /**
+   * Renders the sky behind everything drawn so far, before any transparent model
+   *
+   * @param gl OpenGL object, for rendering
+   * @param camera The camera of the view
+   */
+  public void render(GL3 gl, Camera camera) {
+    double key = timeOfDay * TIMES_OF_DAY;
+    int from = (int) key % TIMES_OF_DAY;
+    int to = (from + 1) % TIMES_OF_DAY;
+    if (!uploaded[from] || !uploaded[to]) {
+      return;
+    }
+
+    shader.use(gl);
+    shader.setFloatArray(gl, "view", camera.getViewMatrix().toFloatArrayForGLSL());
+    shader.setFloatArray(gl, "projection", camera.getPerspectiveMatrix().toFloatArrayForGLSL());
+    shader.setFloat(gl, "blend", (float) (key - Math.floor(key)));
+    shader.setInt(gl, "skyFrom", 0);
+    shader.setInt(gl, "skyTo", 1);
+    gl.glActiveTexture(GL.GL_TEXTURE0);
+    gl.glBindTexture(GL.GL_TEXTURE_CUBE_MAP, textureId[from]);
+    gl.glActiveTexture(GL.GL_TEXTURE1);
+    gl.glBindTexture(GL.GL_TEXTURE_CUBE_MAP, textureId[to]);
+
+    // Seen from inside, at the depth of the far plane
+    gl.glDepthMask(false);
+    gl.glCullFace(GL.GL_FRONT);
+    cubeMesh.render(gl);
+    gl.glCullFace(GL.GL_BACK);
+    gl.glDepthMask(true);
+  }
+
+  public void dispose(GL3 gl) {
+    baker.shutdownNow();
+    gl.glDeleteTextures(TIMES_OF_DAY, textureId, 0);
+  }
+
+  /**
+   * Gets the direction towards the sun, which sets on the right of the window and rises on its
+   * left
+   *
+   * @param timeOfDay Fraction of the day since noon
+   * @return The normalised direction
+   */
+  private static double[] getSunDirection(double timeOfDay) {
+    double angle = 2 * Math.PI * timeOfDay;
+    double[] sun = {0.6 * Math.sin(angle), Math.cos(angle), -0.8};
+    double length = Math.sqrt(sun[0] * sun[0] + sun[1] * sun[1] + sun[2] * sun[2]);
+    for (int i = 0; i < 3; i++) {
+      sun[i] /= length;
+    }
+    return sun;
+  }
+
+  private static void upload(GL3 gl, int id, ByteBuffer[] faces) {
+    gl.glBindTexture(GL.GL_TEXTURE_CUBE_MAP, id);
+    for (int face = 0; face < faces.length; face++) {
+      gl.glTexImage2D(GL.GL_TEXTURE_CUBE_MAP_POSITIVE_X + face, 0, GL.GL_RGB8, FACE_SIZE,
+          FACE_SIZE, 0, GL.GL_RGB, GL.GL_UNSIGNED_BYTE, faces[face]);
+    }
+    gl.glTexParameteri(GL.GL_TEXTURE_CUBE_MAP, GL.GL_TEXTURE_MIN_FILTER, GL.GL_LINEAR);
+    gl.glTexParameteri(GL.GL_TEXTURE_CUBE_MAP, GL.GL_TEXTURE_MAG_FILTER, GL.GL_LINEAR);
+    gl.glTexParameteri(GL.GL_TEXTURE_CUBE_MAP, GL.GL_TEXTURE_WRAP_S, GL.GL_CLAMP_TO_EDGE);
+    gl.glTexParameteri(GL.GL_TEXTURE_CUBE_MAP, GL.GL_TEXTURE_WRAP_T, GL.GL_CLAMP_TO_EDGE);
+    gl.glTexParameteri(GL.GL_TEXTURE_CUBE_MAP, GL2ES2.GL_TEXTURE_WRAP_R, GL.GL_CLAMP_TO_EDGE);
+    gl.glBindTexture(GL.GL_TEXTURE_CUBE_MAP, 0);
+  }
+}
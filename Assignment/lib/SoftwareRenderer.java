@@ -0,0 +1,835 @@
+package lib;
+
+import com.jogamp.opengl.util.texture.spi.*;
+import java.io.*;
+import java.nio.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.*;
+import lib.gmaths.*;
+
+/**
+ * I declare that this code is my own work.
+ * A backend that draws without OpenGL, for machines without a GPU. It draws a DrawList with the
+ * subset of the pipeline the scene uses: indexed triangles clipped to the near plane, back faces
+ * culled, a LEQUAL depth test, the Phong lighting of inc_lighting.txt without shadows, and
+ * alpha blending of the transparent draws. The sky is not drawn.
+ *
+ * <p>The frame is split into tiles. The draws are transformed, clipped and binned into the
+ * tiles their triangles overlap in parallel, then the tiles are rasterised in parallel, each
+ * going through the draws in order. A tile only writes its own pixels, so the threads never
+ * share a pixel and blending keeps the order of the draws.
+ *
+ * @author Zer Jun Eng (zjeng1@sheffield.ac.uk)
+ */
+public class SoftwareRenderer implements RenderBackend {
+
+  /**
+   * The fragment shaders the renderer can draw as, by file name
+   */
+  private enum Program {
+    CUBE("fs_cube.txt"),
+    TWO_TRIANGLES("fs_tt.txt"),
+    GLASS("fs_glass.txt"),
+    LIGHT("fs_light.txt");
+
+    final String file;
+
+    Program(String file) {
+      this.file = file;
+    }
+  }
+
+  private static final int TILE_SIZE = 32;
+
+  // Floats of a transformed vertex: clip position, world position, world normal, s, t
+  private static final int VERTEX_FLOATS = 12;
+
+  // Floats of a triangle set up for rasterising, each plane is (a, b, c) of a * x + b * y + c
+  private static final int EDGES = 0;        // 3 edge functions, inside when >= 0
+  private static final int OWNS_EDGE = 9;    // 1 if the triangle owns pixels on the edge
+  private static final int BOUNDS = 12;      // Pixel bounds, min x, min y, max x, max y
+  private static final int DEPTH = 16;       // Window depth
+  private static final int INV_W = 19;       // 1 / w
+  private static final int ATTRIBUTES = 22;  // World position, normal, s and t over w
+  private static final int ATTRIBUTE_COUNT = 8;
+  private static final int TRIANGLE_FLOATS = ATTRIBUTES + 3 * ATTRIBUTE_COUNT;
+
+  // Floats of each light in the light arrays of a frame
+  private static final int DIR_LIGHT_FLOATS = 12;
+  private static final int LOCAL_LIGHT_FLOATS = 22;
+
+  // Alpha of fs_glass.txt
+  private static final float GLASS_ALPHA = 0.3f;
+
+  private final int width;
+  private final int height;
+  private final int tilesX;
+  private final int tilesY;
+  private final ForkJoinPool pool;
+
+  // Colour as 0xRRGGBB with the first row at the top, and window depth with the first row at
+  // the bottom as in OpenGL
+  private final int[] frame;
+  private final float[] depth;
+
+  private final List<SoftwareTexture> textures = new ArrayList<>();
+  private final Map<Shader, Program> programs = new IdentityHashMap<>();
+
+  // Lights of the frame being drawn
+  private float[] dirLights = new float[0];
+  private int dirLightCount = 0;
+  private float[] localLights = new float[0];
+  private Vec3 viewPos = new Vec3();
+
+  // Statistics of the last frame
+  private long geometryNanos = 0;
+  private long rasterNanos = 0;
+  private int trianglesRasterised = 0;
+  private int binnedTriangles = 0;
+
+  /**
+   * SoftwareRenderer constructor
+   *
+   * @param width Width of the frame in pixels
+   * @param height Height of the frame in pixels
+   * @param threads Number of threads that draw the frame
+   */
+  public SoftwareRenderer(int width, int height, int threads) {
+    this.width = width;
+    this.height = height;
+    tilesX = (width + TILE_SIZE - 1) / TILE_SIZE;
+    tilesY = (height + TILE_SIZE - 1) / TILE_SIZE;
+    pool = new ForkJoinPool(threads);
+    frame = new int[width * height];
+    depth = new float[width * height];
+  }
+
+  public Mesh createMesh(float[] vertices, int[] indices) {
+    return new Mesh(vertices, indices);
+  }
+
+  public Mesh createOptimisedMesh(float[] vertices, int[] indices, float acmrBefore) {
+    return new Mesh(null, null, vertices, indices, acmrBefore);
+  }
+
+  // The meshes are drawn from their floats
+  public Mesh createPackedMesh(Mesh.Format format, ByteBuffer vertices, ByteBuffer indices,
+      int vertexCount, int indexCount, AABB bounds, float acmrBefore, float acmrAfter) {
+    return null;
+  }
+
+  public int[] loadTexture(String path) {
+    SoftwareTexture texture = null;
+    try (InputStream in = new FileInputStream(path)) {
+      JPEGImage img = JPEGImage.read(in);
+      texture = new SoftwareTexture(img.getWidth(), img.getHeight(), img.getData());
+    } catch (Exception e) {
+      System.out.println("Error loading texture " + path);
+    }
+    textures.add(texture);
+    return new int[]{textures.size()};  // 0 is no texture, as in OpenGL
+  }
+
+  public int[] createTexture(int width, int height, ByteBuffer rgb) {
+    textures.add(new SoftwareTexture(width, height, rgb));
+    return new int[]{textures.size()};
+  }
+
+  /**
+   * Creates a shader that draws as its fragment shader, the defines are ignored
+   *
+   * @throws IllegalArgumentException If the renderer has no equivalent of the fragment shader
+   */
+  public Shader createShader(String vertexPath, String fragmentPath, String... defines) {
+    String file = Paths.get(fragmentPath).getFileName().toString();
+    for (Program program : Program.values()) {
+      if (program.file.equals(file)) {
+        Shader shader = new Shader();
+        programs.put(shader, program);
+        return shader;
+      }
+    }
+    throw new IllegalArgumentException("No software equivalent of " + fragmentPath);
+  }
+
+  public int getWidth() {
+    return width;
+  }
+
+  public int getHeight() {
+    return height;
+  }
+
+  /**
+   * Gets the last frame
+   *
+   * @return The pixels as 0xRRGGBB, the first row at the top
+   */
+  public int[] getFrame() {
+    return frame;
+  }
+
+  /**
+   * Draws a frame: the opaque draws, the light bulbs, then the transparent draws
+   *
+   * @param drawList The draws, sorted for this frame
+   * @param camera The camera of the view
+   * @param lighting The lights of the scene
+   * @return The frame, see getFrame()
+   */
+  public int[] render(DrawList drawList, Camera camera, Lighting lighting) {
+    Mat4 viewProjection = Mat4.multiply(camera.getPerspectiveMatrix(), camera.getViewMatrix());
+    viewPos = camera.getPosition();
+    setLights(lighting.getLights());
+
+    List<Draw> draws = new ArrayList<>();
+    for (ModelNode node : drawList.getOpaqueDraws()) {
+      draws.add(new Draw(node.getModel(), node.getLevel(), node.worldTransform));
+    }
+    for (Light light : lighting.getLights()) {
+      if (light.getBulb() != null) {
+        draws.add(new Draw(light));
+      }
+    }
+    for (ModelNode node : drawList.getTransparentDraws()) {
+      draws.add(new Draw(node.getModel(), node.getLevel(), node.worldTransform));
+    }
+
+    long start = System.nanoTime();
+    pool.invoke(new ParallelFor(0, draws.size(), i -> draws.get(i).setup(viewProjection)));
+    long binned = System.nanoTime();
+    pool.invoke(new ParallelFor(0, tilesX * tilesY, tile -> rasteriseTile(tile, draws)));
+    long end = System.nanoTime();
+
+    geometryNanos = binned - start;
+    rasterNanos = end - binned;
+    trianglesRasterised = 0;
+    binnedTriangles = 0;
+    for (Draw draw : draws) {
+      trianglesRasterised += draw.triangleCount;
+      binnedTriangles += draw.binStart[tilesX * tilesY];
+    }
+    return frame;
+  }
+
+  public void dispose() {
+    pool.shutdown();
+  }
+
+  public String toString() {
+    return String.format("Software renderer: %dx%d, %d threads, geometry %.2f ms, raster %.2f ms,"
+            + " %d triangles in %d tile bins", width, height, pool.getParallelism(),
+        geometryNanos / 1e6, rasterNanos / 1e6, trianglesRasterised, binnedTriangles);
+  }
+
+  /**
+   * Packs the lights as LightClusters does, world lights up to Lighting.MAX_DIR_LIGHTS
+   */
+  private void setLights(List<Light> lights) {
+    dirLights = new float[Lighting.MAX_DIR_LIGHTS * DIR_LIGHT_FLOATS];
+    dirLightCount = 0;
+    List<Light> local = new ArrayList<>();
+    for (Light light : lights) {
+      if (light.getType() != Light.Type.DIRECTIONAL) {
+        local.add(light);
+      } else if (dirLightCount < Lighting.MAX_DIR_LIGHTS) {
+        Material m = light.getMaterial();
+        int o = dirLightCount++ * DIR_LIGHT_FLOATS;
+        put(dirLights, o, light.getPosition());
+        put(dirLights, o + 3, m.getAmbient());
+        put(dirLights, o + 6, m.getDiffuse());
+        put(dirLights, o + 9, m.getSpecular());
+      }
+    }
+
+    localLights = new float[local.size() * LOCAL_LIGHT_FLOATS];
+    for (int i = 0; i < local.size(); i++) {
+      Light light = local.get(i);
+      Material m = light.getMaterial();
+      boolean spot = light.getType() == Light.Type.SPOT;
+      int o = i * LOCAL_LIGHT_FLOATS;
+      put(localLights, o, light.getPosition());
+      localLights[o + 3] = light.getRange();
+      put(localLights, o + 4, spot ? light.getDirection() : new Vec3(0, -1, 0));
+      localLights[o + 7] = light.getSpotlightIntensity();
+      localLights[o + 8] = light.getConstant();
+      localLights[o + 9] = light.getLinear();
+      localLights[o + 10] = light.getQuadratic();
+      localLights[o + 11] = spot ? (float) Math.cos(Math.toRadians(light.getCutOff())) : -1;
+      localLights[o + 12] = spot ? (float) Math.cos(Math.toRadians(light.getOuterCutOff())) : -2;
+      put(localLights, o + 13, m.getAmbient());
+      put(localLights, o + 16, m.getDiffuse());
+      put(localLights, o + 19, m.getSpecular());
+    }
+  }
+
+  private static void put(float[] array, int offset, Vec3 v) {
+    array[offset] = v.x;
+    array[offset + 1] = v.y;
+    array[offset + 2] = v.z;
+  }
+
+  private SoftwareTexture getTexture(int[] textureId) {
+    return textureId == null || textureId[0] == 0 ? null : textures.get(textureId[0] - 1);
+  }
+
+  /**
+   * A model or light bulb to draw, with its triangles set up and binned for this frame
+   */
+  private final class Draw {
+
+    final Mesh mesh;
+    final Mat4 modelMatrix;
+    final Program program;
+    final boolean blended;
+    final float lightColor;
+    final SoftwareTexture diffuse;
+    final SoftwareTexture specular;
+    final float[] ambient;
+    final float[] diffuseColour;
+    final float[] specularColour;
+    final float shininess;
+    final float offsetX;
+    final float offsetY;
+
+    // Local lights whose range reaches the draw
+    final int[] lights;
+
+    float[] triangles = new float[0];
+    int triangleCount = 0;
+
+    // Triangles overlapping each tile, binTriangles[binStart[tile]] to binStart[tile + 1]
+    int[] binStart;
+    int[] binTriangles;
+
+    Draw(Model model, int level, Mat4 modelMatrix) {
+      mesh = model.getLOD().getMesh(level);
+      this.modelMatrix = modelMatrix;
+      program = programs.get(model.getShader());
+      if (program == null) {
+        throw new IllegalStateException("The model was not created by the software renderer");
+      }
+      blended = model.isTransparent();
+      lightColor = 0;
+      diffuse = getTexture(model.getTextureId1());
+      specular = getTexture(model.getTextureId2());
+      Material m = model.getMaterial();
+      ambient = toArray(m.getAmbient());
+      diffuseColour = toArray(m.getDiffuse());
+      specularColour = toArray(m.getSpecular());
+      shininess = m.getShininess();
+      offsetX = model.getOffsetX();
+      offsetY = model.getOffsetY();
+      lights = findLights(model.getBounds().transform(modelMatrix));
+    }
+
+    Draw(Light light) {
+      mesh = light.getBulb();
+      modelMatrix = light.getBulbMatrix();
+      program = Program.LIGHT;
+      blended = false;
+      lightColor = light.getLightColor();
+      diffuse = null;
+      specular = null;
+      ambient = null;
+      diffuseColour = null;
+      specularColour = null;
+      shininess = 0;
+      offsetX = 0;
+      offsetY = 0;
+      lights = new int[0];
+    }
+
+    private int[] findLights(AABB bounds) {
+      int[] found = new int[localLights.length / LOCAL_LIGHT_FLOATS];
+      int count = 0;
+      for (int i = 0; i < found.length; i++) {
+        int o = i * LOCAL_LIGHT_FLOATS;
+        float range = localLights[o + 3];
+        if (bounds.distanceSquared(new Vec3(localLights[o], localLights[o + 1],
+            localLights[o + 2])) <= range * range) {
+          found[count++] = o;
+        }
+      }
+      return Arrays.copyOf(found, count);
+    }
+
+    /**
+     * Transforms the vertices, then clips, culls, sets up and bins the triangles
+     */
+    void setup(Mat4 viewProjection) {
+      float[] vertices = mesh.getVertices();
+      int[] indices = mesh.getIndices();
+      int vertexCount = vertices.length / 8;
+      float[] m = toArray(modelMatrix);
+      float[] mvp = toArray(Mat4.multiply(viewProjection, modelMatrix));
+
+      // Cofactors of the model matrix, its inverse transpose up to the determinant, whose
+      // sign keeps the normals facing out of mirrored models
+      float[] n = new float[9];
+      for (int r = 0; r < 3; r++) {
+        for (int c = 0; c < 3; c++) {
+          int r1 = (r + 1) % 3, r2 = (r + 2) % 3, c1 = (c + 1) % 3, c2 = (c + 2) % 3;
+          n[r * 3 + c] = m[r1 * 4 + c1] * m[r2 * 4 + c2] - m[r1 * 4 + c2] * m[r2 * 4 + c1];
+        }
+      }
+      float det = m[0] * n[0] + m[1] * n[1] + m[2] * n[2];
+      if (det < 0) {
+        for (int i = 0; i < 9; i++) {
+          n[i] = -n[i];
+        }
+      }
+
+      float[] transformed = new float[vertexCount * VERTEX_FLOATS];
+      for (int v = 0; v < vertexCount; v++) {
+        int i = v * 8;
+        int o = v * VERTEX_FLOATS;
+        float x = vertices[i], y = vertices[i + 1], z = vertices[i + 2];
+        for (int r = 0; r < 4; r++) {
+          transformed[o + r] = mvp[r * 4] * x + mvp[r * 4 + 1] * y + mvp[r * 4 + 2] * z
+              + mvp[r * 4 + 3];
+        }
+        for (int r = 0; r < 3; r++) {
+          transformed[o + 4 + r] = m[r * 4] * x + m[r * 4 + 1] * y + m[r * 4 + 2] * z
+              + m[r * 4 + 3];
+          transformed[o + 7 + r] = n[r * 3] * vertices[i + 3] + n[r * 3 + 1] * vertices[i + 4]
+              + n[r * 3 + 2] * vertices[i + 5];
+        }
+        transformed[o + 10] = vertices[i + 6] + offsetX;
+        transformed[o + 11] = vertices[i + 7] + offsetY;
+      }
+
+      // Clipping to the near plane can split a triangle in two
+      triangles = new float[indices.length / 3 * 2 * TRIANGLE_FLOATS];
+      triangleCount = 0;
+      float[][] polygon = new float[4][VERTEX_FLOATS];
+      for (int i = 0; i + 2 < indices.length; i += 3) {
+        int count = clipNear(transformed, indices[i], indices[i + 1], indices[i + 2], polygon);
+        for (int k = 2; k < count; k++) {
+          addTriangle(polygon[0], polygon[k - 1], polygon[k]);
+        }
+      }
+      bin();
+    }
+
+    /**
+     * Clips a triangle to the near plane, z >= -w
+     *
+     * @return Number of vertices of the clipped polygon in polygon, 0 to 4
+     */
+    private int clipNear(float[] vertices, int a, int b, int c, float[][] polygon) {
+      int[] corners = {a, b, c};
+      int count = 0;
+      for (int k = 0; k < 3; k++) {
+        int p = corners[k] * VERTEX_FLOATS;
+        int q = corners[(k + 1) % 3] * VERTEX_FLOATS;
+        float dp = vertices[p + 2] + vertices[p + 3];
+        float dq = vertices[q + 2] + vertices[q + 3];
+        if (dp >= 0) {
+          System.arraycopy(vertices, p, polygon[count++], 0, VERTEX_FLOATS);
+        }
+        if ((dp >= 0) != (dq >= 0)) {
+          float t = dp / (dp - dq);
+          for (int j = 0; j < VERTEX_FLOATS; j++) {
+            polygon[count][j] = vertices[p + j] + (vertices[q + j] - vertices[p + j]) * t;
+          }
+          count++;
+        }
+      }
+      return count;
+    }
+
+    /**
+     * Projects a triangle to the window, culls it if it faces away or is off screen, and sets
+     * up its edge functions and the planes of its depth and attributes
+     */
+    private void addTriangle(float[] v0, float[] v1, float[] v2) {
+      float[][] v = {v0, v1, v2};
+      float[] x = new float[3];
+      float[] y = new float[3];
+      float[] invW = new float[3];
+      for (int k = 0; k < 3; k++) {
+        invW[k] = 1 / v[k][3];
+        x[k] = (v[k][0] * invW[k] * 0.5f + 0.5f) * width;
+        y[k] = (v[k][1] * invW[k] * 0.5f + 0.5f) * height;
+      }
+
+      // Counter-clockwise front faces have a positive area
+      float area = (x[1] - x[0]) * (y[2] - y[0]) - (x[2] - x[0]) * (y[1] - y[0]);
+      if (!(area > 0)) {
+        return;
+      }
+      int minX = Math.max((int) Math.floor(Math.min(x[0], Math.min(x[1], x[2]))), 0);
+      int minY = Math.max((int) Math.floor(Math.min(y[0], Math.min(y[1], y[2]))), 0);
+      int maxX = Math.min((int) Math.ceil(Math.max(x[0], Math.max(x[1], x[2]))), width - 1);
+      int maxY = Math.min((int) Math.ceil(Math.max(y[0], Math.max(y[1], y[2]))), height - 1);
+      if (minX > maxX || minY > maxY) {
+        return;
+      }
+
+      int t = triangleCount++ * TRIANGLE_FLOATS;
+      for (int k = 0; k < 3; k++) {
+        int a = k, b = (k + 1) % 3;
+        float ea = y[a] - y[b];
+        float eb = x[b] - x[a];
+        triangles[t + EDGES + k * 3] = ea;
+        triangles[t + EDGES + k * 3 + 1] = eb;
+        triangles[t + EDGES + k * 3 + 2] = -(ea * x[a] + eb * y[a]);
+
+        // Of two triangles sharing an edge, exactly one owns the pixels on it
+        triangles[t + OWNS_EDGE + k] = ea > 0 || ea == 0 && eb < 0 ? 1 : 0;
+      }
+      triangles[t + BOUNDS] = minX;
+      triangles[t + BOUNDS + 1] = minY;
+      triangles[t + BOUNDS + 2] = maxX;
+      triangles[t + BOUNDS + 3] = maxY;
+
+      float[] q = new float[3];
+      for (int k = 0; k < 3; k++) {
+        q[k] = v[k][2] * invW[k] * 0.5f + 0.5f;
+      }
+      setPlane(t + DEPTH, x, y, q, area);
+      setPlane(t + INV_W, x, y, invW, area);
+      for (int j = 0; j < ATTRIBUTE_COUNT; j++) {
+        for (int k = 0; k < 3; k++) {
+          q[k] = v[k][4 + j] * invW[k];
+        }
+        setPlane(t + ATTRIBUTES + j * 3, x, y, q, area);
+      }
+    }
+
+    /**
+     * Sets the plane through the values of a quantity at the corners of a triangle
+     */
+    private void setPlane(int offset, float[] x, float[] y, float[] q, float area) {
+      float dx = ((q[1] - q[0]) * (y[2] - y[0]) - (q[2] - q[0]) * (y[1] - y[0])) / area;
+      float dy = ((q[2] - q[0]) * (x[1] - x[0]) - (q[1] - q[0]) * (x[2] - x[0])) / area;
+      triangles[offset] = dx;
+      triangles[offset + 1] = dy;
+      triangles[offset + 2] = q[0] - dx * x[0] - dy * y[0];
+    }
+
+    /**
+     * Lists the triangles of each tile their bounds overlap, in the order of the mesh
+     */
+    private void bin() {
+      int tiles = tilesX * tilesY;
+      binStart = new int[tiles + 1];
+      for (int pass = 0; pass < 2; pass++) {
+        int[] next = pass == 0 ? null : Arrays.copyOf(binStart, tiles);
+        for (int i = 0; i < triangleCount; i++) {
+          int t = i * TRIANGLE_FLOATS;
+          int tx0 = (int) triangles[t + BOUNDS] / TILE_SIZE;
+          int ty0 = (int) triangles[t + BOUNDS + 1] / TILE_SIZE;
+          int tx1 = (int) triangles[t + BOUNDS + 2] / TILE_SIZE;
+          int ty1 = (int) triangles[t + BOUNDS + 3] / TILE_SIZE;
+          for (int ty = ty0; ty <= ty1; ty++) {
+            for (int tx = tx0; tx <= tx1; tx++) {
+              if (pass == 0) {
+                binStart[ty * tilesX + tx + 1]++;
+              } else {
+                binTriangles[next[ty * tilesX + tx]++] = t;
+              }
+            }
+          }
+        }
+        if (pass == 0) {
+          for (int tile = 0; tile < tiles; tile++) {
+            binStart[tile + 1] += binStart[tile];
+          }
+          binTriangles = new int[binStart[tiles]];
+        }
+      }
+    }
+  }
+
+  /**
+   * Clears a tile and draws the triangles of every draw binned into it, in the order of the
+   * draws
+   */
+  private void rasteriseTile(int tile, List<Draw> draws) {
+    int tx = tile % tilesX;
+    int ty = tile / tilesX;
+    int x0 = tx * TILE_SIZE;
+    int y0 = ty * TILE_SIZE;
+    int x1 = Math.min(x0 + TILE_SIZE, width) - 1;
+    int y1 = Math.min(y0 + TILE_SIZE, height) - 1;
+    for (int y = y0; y <= y1; y++) {
+      Arrays.fill(depth, y * width + x0, y * width + x1 + 1, 1);
+      Arrays.fill(frame, (height - 1 - y) * width + x0, (height - 1 - y) * width + x1 + 1, 0);
+    }
+
+    Fragment fragment = new Fragment();
+    for (Draw draw : draws) {
+      for (int b = draw.binStart[tile]; b < draw.binStart[tile + 1]; b++) {
+        rasterise(draw, draw.binTriangles[b], x0, y0, x1, y1, fragment);
+      }
+    }
+  }
+
+  /**
+   * Rasterises a triangle within a tile, shading the pixels that pass the depth test
+   */
+  private void rasterise(Draw draw, int t, int x0, int y0, int x1, int y1, Fragment fragment) {
+    float[] tri = draw.triangles;
+    int minX = Math.max((int) tri[t + BOUNDS], x0);
+    int minY = Math.max((int) tri[t + BOUNDS + 1], y0);
+    int maxX = Math.min((int) tri[t + BOUNDS + 2], x1);
+    int maxY = Math.min((int) tri[t + BOUNDS + 3], y1);
+
+    for (int py = minY; py <= maxY; py++) {
+      float y = py + 0.5f;
+      for (int px = minX; px <= maxX; px++) {
+        float x = px + 0.5f;
+        if (!inside(tri, t, 0, x, y) || !inside(tri, t, 1, x, y) || !inside(tri, t, 2, x, y)) {
+          continue;
+        }
+
+        int index = py * width + px;
+        float z = plane(tri, t + DEPTH, x, y);
+        if (z < 0 || z > 1 || z > depth[index]) {
+          continue;
+        }
+
+        // Perspective correct attributes
+        float invW = plane(tri, t + INV_W, x, y);
+        float w = 1 / invW;
+        float[] a = fragment.attributes;
+        for (int j = 0; j < ATTRIBUTE_COUNT; j++) {
+          a[j] = plane(tri, t + ATTRIBUTES + j * 3, x, y) * w;
+        }
+
+        // Largest change of (s, t) to the next pixel, for the mipmap level
+        int st = t + ATTRIBUTES + 6 * 3;
+        float dsdx = (tri[st] - a[6] * tri[t + INV_W]) * w;
+        float dtdx = (tri[st + 3] - a[7] * tri[t + INV_W]) * w;
+        float dsdy = (tri[st + 1] - a[6] * tri[t + INV_W + 1]) * w;
+        float dtdy = (tri[st + 4] - a[7] * tri[t + INV_W + 1]) * w;
+        fragment.footprint = (float) Math.sqrt(Math.max(dsdx * dsdx + dtdx * dtdx,
+            dsdy * dsdy + dtdy * dtdy));
+
+        shade(draw, fragment);
+        float[] rgba = fragment.rgba;
+        int pixel = (height - 1 - py) * width + px;
+        if (draw.blended) {
+          int dst = frame[pixel];
+          float alpha = rgba[3];
+          frame[pixel] = pack(clamp(rgba[0]) * alpha + (dst >> 16 & 0xff) / 255f * (1 - alpha),
+              clamp(rgba[1]) * alpha + (dst >> 8 & 0xff) / 255f * (1 - alpha),
+              clamp(rgba[2]) * alpha + (dst & 0xff) / 255f * (1 - alpha));
+        } else {
+          frame[pixel] = pack(rgba[0], rgba[1], rgba[2]);
+          depth[index] = z;
+        }
+      }
+    }
+  }
+
+  private static boolean inside(float[] tri, int t, int edge, float x, float y) {
+    float e = plane(tri, t + EDGES + edge * 3, x, y);
+    return e > 0 || e == 0 && tri[t + OWNS_EDGE + edge] != 0;
+  }
+
+  private static float plane(float[] tri, int offset, float x, float y) {
+    return tri[offset] * x + tri[offset + 1] * y + tri[offset + 2];
+  }
+
+  private static int pack(float r, float g, float b) {
+    return channel(r) << 16 | channel(g) << 8 | channel(b);
+  }
+
+  private static int channel(float c) {
+    return Math.round(Math.min(Math.max(c, 0), 1) * 255);
+  }
+
+  /**
+   * Shades a fragment as the fragment shader of its draw, see inc_lighting.txt
+   *
+   * @param draw The draw
+   * @param f The fragment, its colour is set
+   */
+  private void shade(Draw draw, Fragment f) {
+    float[] rgba = f.rgba;
+    rgba[3] = draw.program == Program.GLASS ? GLASS_ALPHA : 1;
+    if (draw.program == Program.LIGHT) {
+      rgba[0] = rgba[1] = rgba[2] = draw.lightColor;
+      return;
+    }
+
+    float[] a = f.attributes;
+    f.sample(draw.diffuse, f.colour);
+    if (draw.program != Program.TWO_TRIANGLES) {
+      f.sample(draw.specular, f.specular);
+    }
+    f.setDirections(viewPos);
+
+    // The average of the world lights, fs_tt.txt tints the texture with the material
+    boolean tinted = draw.program == Program.TWO_TRIANGLES;
+    rgba[0] = rgba[1] = rgba[2] = 0;
+    for (int i = 0; i < dirLightCount; i++) {
+      int o = i * DIR_LIGHT_FLOATS;
+      f.phong(dirLights, o, draw.shininess);
+      for (int c = 0; c < 3; c++) {
+        float ambient = tinted ? draw.ambient[c] * f.colour[c] : f.colour[c];
+        float diffuse = tinted ? draw.diffuseColour[c] * f.colour[c] : f.colour[c];
+        float specular = tinted ? draw.specularColour[c] : f.specular[c];
+        rgba[c] += dirLights[o + 3 + c] * ambient + dirLights[o + 6 + c] * f.diffuse * diffuse
+            + dirLights[o + 9 + c] * f.shine * specular;
+      }
+    }
+    for (int c = 0; c < 3; c++) {
+      rgba[c] /= Math.max(dirLightCount, 1);
+    }
+
+    // The local lights that reach the draw, with the untinted texture and, but for fs_cube.txt,
+    // the specular colour of the material
+    boolean specularMap = draw.program == Program.CUBE;
+    for (int o : draw.lights) {
+      f.phong(localLights, o, draw.shininess);
+      float lx = localLights[o] - a[0];
+      float ly = localLights[o + 1] - a[1];
+      float lz = localLights[o + 2] - a[2];
+      float distance = (float) Math.sqrt(lx * lx + ly * ly + lz * lz);
+      float attenuation = 1 / (localLights[o + 8] + localLights[o + 9] * distance
+          + localLights[o + 10] * distance * distance);
+      float fade = clamp(1 - (float) Math.pow(distance / localLights[o + 3], 4));
+      attenuation *= fade * fade;
+
+      float theta = -(lx * localLights[o + 4] + ly * localLights[o + 5]
+          + lz * localLights[o + 6]) / distance;
+      float intensity = clamp((theta - localLights[o + 12])
+          / (localLights[o + 11] - localLights[o + 12]));
+      float scale = attenuation * intensity * localLights[o + 7];
+      for (int c = 0; c < 3; c++) {
+        float specular = specularMap ? f.specular[c] : draw.specularColour[c];
+        rgba[c] += (localLights[o + 13 + c] * f.colour[c]
+            + localLights[o + 16 + c] * f.diffuse * f.colour[c]
+            + localLights[o + 19 + c] * f.shine * specular) * scale;
+      }
+    }
+  }
+
+  private static float[] toArray(Vec3 v) {
+    return new float[]{v.x, v.y, v.z};
+  }
+
+  /**
+   * Gets the values of a matrix, row by row
+   */
+  private static float[] toArray(Mat4 m) {
+    float[] values = new float[16];
+    for (int r = 0; r < 4; r++) {
+      for (int c = 0; c < 4; c++) {
+        values[r * 4 + c] = m.get(r, c);
+      }
+    }
+    return values;
+  }
+
+  private static float clamp(float f) {
+    return Math.min(Math.max(f, 0), 1);
+  }
+
+  /**
+   * The inputs and outputs of the fragment being shaded, one per thread
+   */
+  private static final class Fragment {
+
+    // World position, world normal, s and t
+    final float[] attributes = new float[ATTRIBUTE_COUNT];
+    float footprint;
+
+    final float[] colour = new float[3];
+    final float[] specular = new float[3];
+    final float[] rgba = new float[4];
+
+    // Unit normal and direction to the viewer
+    float nx, ny, nz;
+    float vx, vy, vz;
+
+    // Diffuse and specular factors of the last light, see phong()
+    float diffuse, shine;
+
+    /**
+     * Samples a texture at the fragment, black if there is none as for an OpenGL texture
+     * without an image
+     */
+    void sample(SoftwareTexture texture, float[] rgb) {
+      if (texture == null) {
+        rgb[0] = rgb[1] = rgb[2] = 0;
+      } else {
+        texture.sample(attributes[6], attributes[7], footprint, rgb);
+      }
+    }
+
+    void setDirections(Vec3 viewPos) {
+      float length = (float) Math.sqrt(attributes[3] * attributes[3]
+          + attributes[4] * attributes[4] + attributes[5] * attributes[5]);
+      nx = attributes[3] / length;
+      ny = attributes[4] / length;
+      nz = attributes[5] / length;
+      vx = viewPos.x - attributes[0];
+      vy = viewPos.y - attributes[1];
+      vz = viewPos.z - attributes[2];
+      length = (float) Math.sqrt(vx * vx + vy * vy + vz * vz);
+      vx /= length;
+      vy /= length;
+      vz /= length;
+    }
+
+    /**
+     * Sets the diffuse and specular factors of a light
+     *
+     * @param lights Packed lights
+     * @param o Offset of the light, its position comes first
+     * @param shininess Shininess of the surface
+     */
+    void phong(float[] lights, int o, float shininess) {
+      float lx = lights[o] - attributes[0];
+      float ly = lights[o + 1] - attributes[1];
+      float lz = lights[o + 2] - attributes[2];
+      float length = (float) Math.sqrt(lx * lx + ly * ly + lz * lz);
+      lx /= length;
+      ly /= length;
+      lz /= length;
+      float nDotL = nx * lx + ny * ly + nz * lz;
+      diffuse = Math.max(nDotL, 0);
+
+      // reflect(-lightDir, norm)
+      float rx = 2 * nDotL * nx - lx;
+      float ry = 2 * nDotL * ny - ly;
+      float rz = 2 * nDotL * nz - lz;
+      shine = (float) Math.pow(Math.max(vx * rx + vy * ry + vz * rz, 0), shininess);
+    }
+  }
+
+  /**
+   * Runs a body for every index of a range, splitting it in halves down to single indices so
+   * idle threads can steal them
+   */
+  private static final class ParallelFor extends RecursiveAction {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int from;
+    private final int to;
+    private final IntConsumer body;
+
+    ParallelFor(int from, int to, IntConsumer body) {
+      this.from = from;
+      this.to = to;
+      this.body = body;
+    }
+
+    protected void compute() {
+      if (to - from == 1) {
+        body.accept(from);
+      } else if (to - from > 1) {
+        int middle = (from + to) >>> 1;
+        invokeAll(new ParallelFor(from, middle, body), new ParallelFor(middle, to, body));
+      }
+    }
+  }
+}
@@ -0,0 +1,139 @@
+package lib;
+
+import java.nio.*;
+
+/**
+ * I declare that this code is my own work.
+ * A texture of the software renderer, sampled as TextureLibrary sets up its OpenGL textures:
+ * repeated in both directions, with trilinear filtering between box filtered mipmaps. The first
+ * row of the image is at t = 0, as in glTexImage2D.
+ *
+ * @author Zer Jun Eng (zjeng1@sheffield.ac.uk)
+ */
+final class SoftwareTexture {
+
+  // RGB of each level packed as 0xRRGGBB, level 0 is the image
+  private final int[][] levels;
+  private final int[] widths;
+  private final int[] heights;
+
+  /**
+   * SoftwareTexture constructor
+   *
+   * @param width Width of the image
+   * @param height Height of the image
+   * @param rgb RGB bytes of the image
+   */
+  SoftwareTexture(int width, int height, ByteBuffer rgb) {
+    int count = 1 + 31 - Integer.numberOfLeadingZeros(Math.max(width, height));
+    levels = new int[count][];
+    widths = new int[count];
+    heights = new int[count];
+
+    int[] texels = new int[width * height];
+    for (int i = 0; i < texels.length; i++) {
+      texels[i] = (rgb.get() & 0xff) << 16 | (rgb.get() & 0xff) << 8 | (rgb.get() & 0xff);
+    }
+    levels[0] = texels;
+    widths[0] = width;
+    heights[0] = height;
+    for (int level = 1; level < count; level++) {
+      downsample(level);
+    }
+  }
+
+  /**
+   * Samples the texture with the footprint of a pixel
+   *
+   * @param s S coordinate
+   * @param t T coordinate
+   * @param footprint Largest change of (s, t) between neighbouring pixels, in texture coordinates
+   * @param rgb Receives the colour, each channel in [0, 1]
+   */
+  void sample(float s, float t, float footprint, float[] rgb) {
+    float lod = (float) (Math.log(footprint * Math.max(widths[0], heights[0])) / Math.log(2));
+    if (!(lod > 0)) {
+      sampleLevel(0, s, t, rgb, 1, true);
+      return;
+    }
+    if (lod >= levels.length - 1) {
+      sampleLevel(levels.length - 1, s, t, rgb, 1, true);
+      return;
+    }
+    int level = (int) lod;
+    float fraction = lod - level;
+    sampleLevel(level, s, t, rgb, 1 - fraction, true);
+    sampleLevel(level + 1, s, t, rgb, fraction, false);
+  }
+
+  /**
+   * Samples a level bilinearly, adding its weighted colour to rgb
+   */
+  private void sampleLevel(int level, float s, float t, float[] rgb, float weight,
+      boolean clear) {
+    int width = widths[level];
+    int height = heights[level];
+    int[] texels = levels[level];
+
+    // Texel centres are at half texels
+    float x = s * width - 0.5f;
+    float y = t * height - 0.5f;
+    int x0 = (int) Math.floor(x);
+    int y0 = (int) Math.floor(y);
+    float fx = x - x0;
+    float fy = y - y0;
+    int x1 = Math.floorMod(x0 + 1, width);
+    int y1 = Math.floorMod(y0 + 1, height);
+    x0 = Math.floorMod(x0, width);
+    y0 = Math.floorMod(y0, height);
+
+    int c00 = texels[y0 * width + x0];
+    int c10 = texels[y0 * width + x1];
+    int c01 = texels[y1 * width + x0];
+    int c11 = texels[y1 * width + x1];
+    float w00 = (1 - fx) * (1 - fy) * weight / 255;
+    float w10 = fx * (1 - fy) * weight / 255;
+    float w01 = (1 - fx) * fy * weight / 255;
+    float w11 = fx * fy * weight / 255;
+    if (clear) {
+      rgb[0] = rgb[1] = rgb[2] = 0;
+    }
+    for (int c = 0, shift = 16; c < 3; c++, shift -= 8) {
+      rgb[c] += (c00 >> shift & 0xff) * w00 + (c10 >> shift & 0xff) * w10
+          + (c01 >> shift & 0xff) * w01 + (c11 >> shift & 0xff) * w11;
+    }
+  }
+
+  /**
+   * Averages 2x2 texels of the level above into a level, as glGenerateMipmap does
+   */
+  private void downsample(int level) {
+    int width = widths[level - 1];
+    int height = heights[level - 1];
+    int[] source = levels[level - 1];
+    widths[level] = Math.max(width / 2, 1);
+    heights[level] = Math.max(height / 2, 1);
+    int[] texels = new int[widths[level] * heights[level]];
+
+    for (int y = 0; y < heights[level]; y++) {
+      for (int x = 0; x < widths[level]; x++) {
+        int sx = Math.min(x * 2, width - 1);
+        int sy = Math.min(y * 2, height - 1);
+        int sx1 = Math.min(sx + 1, width - 1);
+        int sy1 = Math.min(sy + 1, height - 1);
+        int a = source[sy * width + sx];
+        int b = source[sy * width + sx1];
+        int c = source[sy1 * width + sx];
+        int d = source[sy1 * width + sx1];
+        int rgb = 0;
+        for (int shift = 16; shift >= 0; shift -= 8) {
+          int sum = (a >> shift & 0xff) + (b >> shift & 0xff) + (c >> shift & 0xff)
+              + (d >> shift & 0xff);
+          rgb |= ((sum + 2) / 4) << shift;
+        }
+        texels[y * widths[level] + x] = rgb;
+      }
+    }
+    levels[level] = texels;
+  }
+}
@@ -1,7 +1,5 @@
 package lib;
 
-import com.jogamp.opengl.*;
-
 /**
  * I declare that this code is my own work
  * A class for spotlight
@@ -13,10 +11,10 @@ public class Spotlight extends Light {
   /**
    * Spotlight constructor, does everything at once
    *
-   * @param gl OpenGL object
+   * @param backend Backend of the bulb
    * @param camera Camera object for setting
    */
-  public Spotlight(GL3 gl, Camera camera) {
-    super(gl, camera);
+  public Spotlight(RenderBackend backend, Camera camera) {
+    super(backend, camera, Type.SPOT);
   }
 }
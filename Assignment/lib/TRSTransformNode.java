@@ -0,0 +1,71 @@
+package lib;
+
+import lib.gmaths.*;
+
+/**
+ * A transform node that keeps its translation, rotation and scale separately.
+ * The local matrix is composed as T x R x S only when one of them has changed.
+ *
+ * @author Zer Jun Eng (zjeng1@sheffield.ac.uk)
+ */
+public class TRSTransformNode extends TransformNode {
+
+  private final Vec3 translation = new Vec3();
+  private final Quat rotation = new Quat();
+  private final Vec3 scale = new Vec3(1, 1, 1);
+  private boolean dirty = false;
+
+  public TRSTransformNode(String name) {
+    super(name, new Mat4(1));
+  }
+
+  public void setTranslation(float x, float y, float z) {
+    if (translation.x != x || translation.y != y || translation.z != z) {
+      translation.x = x;
+      translation.y = y;
+      translation.z = z;
+      dirty = true;
+    }
+  }
+
+  /**
+   * Sets the rotation, the quaternion is copied so it can be reused by the caller
+   *
+   * @param q The rotation, must be a unit quaternion
+   */
+  public void setRotation(Quat q) {
+    if (!rotation.equals(q)) {
+      rotation.set(q);
+      dirty = true;
+    }
+  }
+
+  public void setScale(float x, float y, float z) {
+    if (scale.x != x || scale.y != y || scale.z != z) {
+      scale.x = x;
+      scale.y = y;
+      scale.z = z;
+      dirty = true;
+    }
+  }
+
+  public Vec3 getTranslation() {
+    return new Vec3(translation);
+  }
+
+  public Quat getRotation() {
+    return new Quat(rotation);
+  }
+
+  public Vec3 getScale() {
+    return new Vec3(scale);
+  }
+
+  protected void update(Mat4 t) {
+    if (dirty) {
+      super.setTransform(Mat4Transform.trs(translation, rotation, scale));
+      dirty = false;
+    }
+    super.update(t);
+  }
+}
@@ -3,6 +3,7 @@ package lib;
 import com.jogamp.opengl.*;
 import com.jogamp.opengl.util.texture.spi.*;
 import java.io.*;
+import java.nio.*;
 
 /**
  * TextureLibrary class adapted from tutorial 7
@@ -25,20 +26,42 @@ public final class TextureLibrary {
     try {
       File f = new File(filename);
       JPEGImage img = JPEGImage.read(new FileInputStream(f));
-      gl.glGenTextures(1, textureId, 0);
-      gl.glBindTexture(GL.GL_TEXTURE_2D, textureId[0]);
-      gl.glTexParameteri(GL.GL_TEXTURE_2D, GL.GL_TEXTURE_WRAP_S, wrappingS);
-      gl.glTexParameteri(GL.GL_TEXTURE_2D, GL.GL_TEXTURE_WRAP_T, wrappingT);
-      gl.glTexParameteri(GL.GL_TEXTURE_2D, GL.GL_TEXTURE_MIN_FILTER, filterS);
-      gl.glTexParameteri(GL.GL_TEXTURE_2D, GL.GL_TEXTURE_MAG_FILTER, filterT);
-      gl.glTexImage2D(GL.GL_TEXTURE_2D, 0, GL.GL_RGB, img.getWidth(), img.getHeight(), 0, GL.GL_RGB,
-          GL.GL_UNSIGNED_BYTE, img.getData());
-      gl.glGenerateMipmap(GL.GL_TEXTURE_2D);
-      gl.glTexParameteri(GL.GL_TEXTURE_2D, GL2.GL_TEXTURE_MIN_FILTER, GL2.GL_LINEAR_MIPMAP_LINEAR);
-      gl.glBindTexture(GL.GL_TEXTURE_2D, 0);
+      createTexture(gl, textureId, img.getWidth(), img.getHeight(), img.getData(), wrappingS,
+          wrappingT, filterS, filterT);
     } catch (Exception e) {
       System.out.println("Error loading texture " + filename);
     }
     return textureId;
   }
+
+  /**
+   * Creates a texture set up as loadTexture() does from a decoded image
+   *
+   * @param gl OpenGL object
+   * @param width Width of the image
+   * @param height Height of the image
+   * @param rgb RGB bytes of the image
+   * @return The texture name
+   */
+  public static int[] createTexture(GL3 gl, int width, int height, ByteBuffer rgb) {
+    int[] textureId = new int[1];
+    createTexture(gl, textureId, width, height, rgb, GL.GL_REPEAT, GL.GL_REPEAT,
+        GL.GL_LINEAR, GL.GL_LINEAR);
+    return textureId;
+  }
+
+  private static void createTexture(GL3 gl, int[] textureId, int width, int height,
+      ByteBuffer rgb, int wrappingS, int wrappingT, int filterS, int filterT) {
+    gl.glGenTextures(1, textureId, 0);
+    gl.glBindTexture(GL.GL_TEXTURE_2D, textureId[0]);
+    gl.glTexParameteri(GL.GL_TEXTURE_2D, GL.GL_TEXTURE_WRAP_S, wrappingS);
+    gl.glTexParameteri(GL.GL_TEXTURE_2D, GL.GL_TEXTURE_WRAP_T, wrappingT);
+    gl.glTexParameteri(GL.GL_TEXTURE_2D, GL.GL_TEXTURE_MIN_FILTER, filterS);
+    gl.glTexParameteri(GL.GL_TEXTURE_2D, GL.GL_TEXTURE_MAG_FILTER, filterT);
+    gl.glTexImage2D(GL.GL_TEXTURE_2D, 0, GL.GL_RGB, width, height, 0, GL.GL_RGB,
+        GL.GL_UNSIGNED_BYTE, rgb);
+    gl.glGenerateMipmap(GL.GL_TEXTURE_2D);
+    gl.glTexParameteri(GL.GL_TEXTURE_2D, GL2.GL_TEXTURE_MIN_FILTER, GL2.GL_LINEAR_MIPMAP_LINEAR);
+    gl.glBindTexture(GL.GL_TEXTURE_2D, 0);
+  }
 }
@@ -0,0 +1,306 @@
+package lib;
+
+import com.jogamp.opengl.util.texture.spi.*;
+import java.io.*;
+import java.nio.*;
+import java.util.*;
+import java.util.concurrent.*;
+import lib.gmaths.*;
+
+/**
+ * I declare that this code is my own work.
+ * A render backend that streams the textures of a scene in after its first frame. Decoding the
+ * JPEGs takes most of the time of building the scene, so loadTexture() returns at once with a
+ * grey placeholder, and the images are decoded on worker threads. Once the scene is built,
+ * start() orders the decoding: the diffuse textures of the models in view first, then their
+ * specular textures, then the textures of the models out of view, each largest on screen first.
+ * Each frame, update() creates the textures decoded so far in the wrapped backend, within a time
+ * budget, and swaps each into the name array the models hold, so every frame draws whatever is
+ * loaded. finish() creates all of them at once instead, for frames that must not depend on the
+ * decoding time. Meshes and shaders are still created when asked, they take a few milliseconds.
+ *
+ * @author Zer Jun Eng (zjeng1@sheffield.ac.uk)
+ */
+public class TextureStreamer implements RenderBackend {
+
+  // Time spent creating decoded textures each frame, at least one is created
+  private static final long UPLOAD_BUDGET_NANOS = 4_000_000;
+  private static final byte PLACEHOLDER_GREY = (byte) 128;
+
+  private final RenderBackend backend;
+  private final int threads;
+  private final int[] placeholder;
+  private final Map<String, Request> requests = new LinkedHashMap<>();
+  private final Queue<Request> decoded = new ConcurrentLinkedQueue<>();
+  private ExecutorService decoders;
+  private Collection<SGNode> roots;
+  private Camera camera;
+
+  // Loading times since the streamer was created, -1 until reached
+  private final long startNanos = System.nanoTime();
+  private long firstFrameNanos = -1;
+  private long loadedNanos = -1;
+  private int created = 0;
+  private int frames = 0;
+  private int loadedFrame = -1;
+
+  // A texture to decode, and the name array of the models drawing it
+  private static final class Request {
+    final String path;
+    final int[] textureId;
+    int tier = Integer.MAX_VALUE;
+    float size = -1;  // Largest apparent size of its models, see prioritise()
+    volatile JPEGImage image;  // null if it could not be decoded
+
+    Request(String path, int[] textureId) {
+      this.path = path;
+      this.textureId = textureId;
+    }
+  }
+
+  /**
+   * TextureStreamer constructor, the loading times start
+   *
+   * @param backend The backend creating everything
+   * @param threads Threads decoding the images
+   */
+  public TextureStreamer(RenderBackend backend, int threads) {
+    this.backend = backend;
+    this.threads = Math.max(1, threads);
+    ByteBuffer grey = ByteBuffer.allocateDirect(3);
+    grey.put(PLACEHOLDER_GREY).put(PLACEHOLDER_GREY).put(PLACEHOLDER_GREY).flip();
+    placeholder = backend.createTexture(1, 1, grey);
+  }
+
+  public Mesh createMesh(float[] vertices, int[] indices) {
+    return backend.createMesh(vertices, indices);
+  }
+
+  public Mesh createOptimisedMesh(float[] vertices, int[] indices, float acmrBefore) {
+    return backend.createOptimisedMesh(vertices, indices, acmrBefore);
+  }
+
+  public Mesh createPackedMesh(Mesh.Format format, ByteBuffer vertices, ByteBuffer indices,
+      int vertexCount, int indexCount, AABB bounds, float acmrBefore, float acmrAfter) {
+    return backend.createPackedMesh(format, vertices, indices, vertexCount, indexCount, bounds,
+        acmrBefore, acmrAfter);
+  }
+
+  /**
+   * Queues a texture, loading the same image again shares its texture
+   *
+   * @return The name of the placeholder until the texture is created
+   */
+  public int[] loadTexture(String path) {
+    return requests.computeIfAbsent(path, p -> new Request(p, placeholder.clone())).textureId;
+  }
+
+  public int[] createTexture(int width, int height, ByteBuffer rgb) {
+    return backend.createTexture(width, height, rgb);
+  }
+
+  public Shader createShader(String vertexPath, String fragmentPath, String... defines) {
+    return backend.createShader(vertexPath, fragmentPath, defines);
+  }
+
+  /**
+   * Sets the scene whose textures are streamed, they are ordered and decoded from the first
+   * update(), once the camera has its perspective
+   *
+   * @param roots The roots of the scene graphs
+   * @param camera The camera of the first frame
+   */
+  public void start(Collection<SGNode> roots, Camera camera) {
+    this.roots = new ArrayList<>(roots);
+    this.camera = camera;
+  }
+
+  /**
+   * Creates the textures decoded since the last frame, within the time budget, before a frame
+   * is recorded
+   */
+  public void update() {
+    if (decoders == null && roots != null) {
+      decode();
+    }
+    create(UPLOAD_BUDGET_NANOS);
+  }
+
+  /**
+   * Decodes and creates every texture left before returning, so the frames drawn from then on
+   * do not depend on how long the decoding takes, e.g. when the input is recorded or replayed
+   */
+  public void finish() {
+    if (decoders == null && roots != null) {
+      decode();
+    }
+    if (decoders == null) {
+      return;
+    }
+    decoders.shutdown();
+    try {
+      decoders.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    create(Long.MAX_VALUE);
+  }
+
+  /**
+   * Creates the textures decoded so far, within a time budget
+   */
+  private void create(long budgetNanos) {
+    long start = System.nanoTime();
+    Request request;
+    while (System.nanoTime() - start < budgetNanos && (request = decoded.poll()) != null) {
+      JPEGImage image = request.image;
+      if (image != null) {
+        request.textureId[0] = backend.createTexture(image.getWidth(), image.getHeight(),
+            image.getData())[0];
+        request.image = null;
+      }
+      created++;
+    }
+    if (isLoaded() && loadedNanos < 0) {
+      loadedNanos = System.nanoTime() - startNanos;
+      loadedFrame = frames + 1;
+      decoders.shutdown();
+    }
+  }
+
+  /**
+   * Counts a drawn frame, after it is drawn
+   *
+   * @return True after the first frame and the frame the last texture was created in, when the
+   *     loading times are worth reporting
+   */
+  public boolean endFrame() {
+    frames++;
+    if (firstFrameNanos < 0) {
+      firstFrameNanos = System.nanoTime() - startNanos;
+      return true;
+    }
+    return frames == loadedFrame;
+  }
+
+  public boolean isLoaded() {
+    return decoders != null && created == requests.size();
+  }
+
+  public void dispose() {
+    if (decoders != null) {
+      decoders.shutdownNow();
+    }
+  }
+
+  public String toString() {
+    String s = String.format("Texture streaming: %d/%d textures, first frame after %.1f ms",
+        created, requests.size(), firstFrameNanos / 1e6);
+    return loadedNanos < 0 ? s : s + String.format(", fully loaded after %.1f ms in %d frames",
+        loadedNanos / 1e6, loadedFrame);
+  }
+
+  /**
+   * Orders the textures by how soon they are seen and starts decoding them in that order
+   */
+  private void decode() {
+    Mat4 viewProjection = Mat4.multiply(camera.getPerspectiveMatrix(), camera.getViewMatrix());
+    Vec3 eye = camera.getPosition();
+    Map<int[], Request> byName = new IdentityHashMap<>();
+    for (Request request : requests.values()) {
+      byName.put(request.textureId, request);
+    }
+    List<ModelNode> models = new ArrayList<>();
+    for (SGNode root : roots) {
+      addModels(root, models);
+    }
+    for (ModelNode node : models) {
+      AABB bounds = node.getWorldBounds();
+      boolean visible = isVisible(viewProjection, bounds);
+      Vec3 centre = Vec3.multiply(Vec3.add(bounds.min, bounds.max), 0.5f);
+      Vec3 d = Vec3.subtract(centre, eye);
+      Vec3 r = Vec3.subtract(bounds.max, centre);
+      float size = (r.x * r.x + r.y * r.y + r.z * r.z) / (d.x * d.x + d.y * d.y + d.z * d.z);
+      prioritise(byName.get(node.getModel().getTextureId1()), visible ? 0 : 2, size);
+      prioritise(byName.get(node.getModel().getTextureId2()), visible ? 1 : 3, size);
+    }
+
+    List<Request> order = new ArrayList<>(requests.values());
+    order.sort(Comparator.<Request>comparingInt(r -> r.tier)
+        .thenComparing(r -> -r.size));
+    decoders = Executors.newFixedThreadPool(threads, r -> {
+      Thread thread = new Thread(r, "Texture decoder");
+      thread.setDaemon(true);
+      return thread;
+    });
+    for (Request request : order) {
+      decoders.execute(() -> {
+        try (InputStream in = new FileInputStream(request.path)) {
+          request.image = JPEGImage.read(in);
+        } catch (Exception e) {
+          System.out.println("Error loading texture " + request.path);
+        }
+        decoded.add(request);
+      });
+    }
+  }
+
+  /**
+   * Raises the priority of a texture for a model
+   *
+   * @param request The texture, null for none
+   * @param tier Tier of the model, lower tiers are decoded first
+   * @param size Squared ratio of the bounding radius of the model to its distance from the
+   *     camera, larger models are decoded first within a tier
+   */
+  private static void prioritise(Request request, int tier, float size) {
+    if (request != null && (tier < request.tier
+        || (tier == request.tier && size > request.size))) {
+      request.tier = tier;
+      request.size = size;
+    }
+  }
+
+  private static void addModels(SGNode node, List<ModelNode> models) {
+    if (node instanceof ModelNode) {
+      models.add((ModelNode) node);
+    }
+    for (SGNode child : node.children) {
+      addModels(child, models);
+    }
+  }
+
+  /**
+   * Tells if a box may be in view: it is out of view if its corners are all beyond one plane of
+   * the clip space
+   */
+  private static boolean isVisible(Mat4 viewProjection, AABB bounds) {
+    if (bounds.isEmpty()) {
+      return false;
+    }
+    int outside = 0x3f;
+    for (int corner = 0; corner < 8; corner++) {
+      float[] p = {
+          (corner & 1) == 0 ? bounds.min.x : bounds.max.x,
+          (corner & 2) == 0 ? bounds.min.y : bounds.max.y,
+          (corner & 4) == 0 ? bounds.min.z : bounds.max.z, 1};
+      float[] clip = new float[4];
+      for (int r = 0; r < 4; r++) {
+        for (int c = 0; c < 4; c++) {
+          clip[r] += viewProjection.get(r, c) * p[c];
+        }
+      }
+      int planes = 0;
+      for (int axis = 0; axis < 3; axis++) {
+        if (clip[axis] < -clip[3]) {
+          planes |= 1 << (axis * 2);
+        }
+        if (clip[axis] > clip[3]) {
+          planes |= 2 << (axis * 2);
+        }
+      }
+      outside &= planes;
+    }
+    return outside == 0;
+  }
+}
@@ -0,0 +1,188 @@
+package lib;
+
+import com.jogamp.opengl.*;
+import java.nio.*;
+
+/**
+ * I declare that this code is my own work.
+ * A ring of uniform buffer regions for the per-draw uniforms of the command lists, one region
+ * per frame in flight. The draw data of a frame is copied into its region in bulk, and each draw
+ * binds its block of the region with glBindBufferRange instead of setting its uniforms one by
+ * one. A fence after the last draw of a frame tells when the region can be written again, three
+ * frames later.
+ *
+ * <p>The buffer is mapped once and for all with GL_ARB_buffer_storage (OpenGL 4.4) where
+ * available. Otherwise the region of the frame is mapped unsynchronised each frame, which is
+ * safe as the fence has been waited for.
+ *
+ * @author Zer Jun Eng (zjeng1@sheffield.ac.uk)
+ */
+public class UniformRing {
+
+  // Uniform block of the draw data, see inc_draw.txt, and its binding point
+  public static final String DRAW_BLOCK = "Draw";
+  public static final int DRAW_BINDING = 0;
+
+  // Size of the Draw block, and the space taken by each block. The offset of a bound range must
+  // be a multiple of GL_UNIFORM_BUFFER_OFFSET_ALIGNMENT, which is at most 256 bytes.
+  public static final int BLOCK_BYTES = 192;
+  public static final int STRIDE_BYTES = 256;
+
+  private static final int FRAMES = 3;
+  private static final int INITIAL_REGION_BYTES = 64 * 1024;
+  private static final long WAIT_NANOS = 1000000;
+
+  private final boolean persistent;
+  private final int[] bufferId = new int[1];
+  private final long[] fences = new long[FRAMES];
+  private int regionBytes = 0;
+  private int frame = 0;
+  private int used = 0;
+
+  // The whole buffer when persistent, else the region of the frame while mapped
+  private FloatBuffer mapped;
+  private int mappedStart = 0;
+
+  // Bytes written and time spent waiting for fences in the last frame
+  private int frameBytes = 0;
+  private long waitNanos = 0;
+
+  public UniformRing(GL3 gl) {
+    persistent = gl instanceof GL4 && gl.isFunctionAvailable("glBufferStorage");
+    allocate(gl, INITIAL_REGION_BYTES);
+  }
+
+  public int getBufferId() {
+    return bufferId[0];
+  }
+
+  /**
+   * Starts writing the draw data of a frame into the next region, waiting until the GPU has
+   * finished the frame that last used it
+   *
+   * @param gl OpenGL object
+   * @param bytes Bytes the frame will write, the buffer grows if they do not fit in a region
+   */
+  public void beginFrame(GL3 gl, int bytes) {
+    waitNanos = 0;
+    if (bytes > regionBytes) {
+      for (int i = 0; i < FRAMES; i++) {
+        waitFence(gl, i);
+      }
+      release(gl);
+      allocate(gl, Math.max(regionBytes * 2, bytes));
+    }
+
+    frame = (frame + 1) % FRAMES;
+    waitFence(gl, frame);
+    used = 0;
+    if (!persistent) {
+      int flags = GL.GL_MAP_WRITE_BIT | GL.GL_MAP_INVALIDATE_RANGE_BIT
+          | GL.GL_MAP_UNSYNCHRONIZED_BIT;
+      gl.glBindBuffer(GL2ES3.GL_UNIFORM_BUFFER, bufferId[0]);
+      mapped = gl.glMapBufferRange(GL2ES3.GL_UNIFORM_BUFFER, frame * (long) regionBytes,
+          regionBytes, flags).order(ByteOrder.nativeOrder()).asFloatBuffer();
+      gl.glBindBuffer(GL2ES3.GL_UNIFORM_BUFFER, 0);
+      mappedStart = frame * regionBytes;
+    }
+  }
+
+  /**
+   * Copies draw data into the region of the frame
+   *
+   * @param data The draw blocks, STRIDE_BYTES apart
+   * @param floats Number of floats to copy
+   * @return Offset of the data in the buffer in bytes
+   */
+  public int write(float[] data, int floats) {
+    int offset = frame * regionBytes + used;
+    mapped.position((offset - mappedStart) / Float.BYTES);
+    mapped.put(data, 0, floats);
+    used += floats * Float.BYTES;
+    return offset;
+  }
+
+  /**
+   * Ends the writes of the frame, before its draws
+   *
+   * @param gl OpenGL object
+   */
+  public void endWrites(GL3 gl) {
+    frameBytes = used;
+    if (!persistent) {
+      gl.glBindBuffer(GL2ES3.GL_UNIFORM_BUFFER, bufferId[0]);
+      gl.glUnmapBuffer(GL2ES3.GL_UNIFORM_BUFFER);
+      gl.glBindBuffer(GL2ES3.GL_UNIFORM_BUFFER, 0);
+      mapped = null;
+    }
+  }
+
+  /**
+   * Fences the region of the frame, after its last draw
+   *
+   * @param gl OpenGL object
+   */
+  public void endFrame(GL3 gl) {
+    fences[frame] = gl.glFenceSync(GL3ES3.GL_SYNC_GPU_COMMANDS_COMPLETE, 0);
+  }
+
+  public void dispose(GL3 gl) {
+    for (int i = 0; i < FRAMES; i++) {
+      if (fences[i] != 0) {
+        gl.glDeleteSync(fences[i]);
+        fences[i] = 0;
+      }
+    }
+    release(gl);
+  }
+
+  public String toString() {
+    return String.format("Uniform ring: %s, %d KB of draw data, %.3f ms waiting for the GPU",
+        persistent ? "persistently mapped" : "mapped each frame", frameBytes / 1024,
+        waitNanos / 1e6);
+  }
+
+  private void waitFence(GL3 gl, int region) {
+    if (fences[region] == 0) {
+      return;
+    }
+    long start = System.nanoTime();
+    int result;
+    do {
+      result = gl.glClientWaitSync(fences[region], GL3ES3.GL_SYNC_FLUSH_COMMANDS_BIT, WAIT_NANOS);
+    } while (result == GL3ES3.GL_TIMEOUT_EXPIRED);
+    if (result == GL3ES3.GL_WAIT_FAILED) {
+      System.err.println("[error] Unable to wait for a uniform ring fence");
+    }
+    waitNanos += System.nanoTime() - start;
+    gl.glDeleteSync(fences[region]);
+    fences[region] = 0;
+  }
+
+  private void allocate(GL3 gl, int bytes) {
+    regionBytes = (bytes + STRIDE_BYTES - 1) / STRIDE_BYTES * STRIDE_BYTES;
+    long size = (long) regionBytes * FRAMES;
+    gl.glGenBuffers(1, bufferId, 0);
+    gl.glBindBuffer(GL2ES3.GL_UNIFORM_BUFFER, bufferId[0]);
+    if (persistent) {
+      int flags = GL.GL_MAP_WRITE_BIT | GL4.GL_MAP_PERSISTENT_BIT | GL4.GL_MAP_COHERENT_BIT;
+      ((GL4) gl).glBufferStorage(GL2ES3.GL_UNIFORM_BUFFER, size, null, flags);
+      mapped = gl.glMapBufferRange(GL2ES3.GL_UNIFORM_BUFFER, 0, size, flags)
+          .order(ByteOrder.nativeOrder()).asFloatBuffer();
+      mappedStart = 0;
+    } else {
+      gl.glBufferData(GL2ES3.GL_UNIFORM_BUFFER, size, null, GL2ES2.GL_STREAM_DRAW);
+    }
+    gl.glBindBuffer(GL2ES3.GL_UNIFORM_BUFFER, 0);
+  }
+
+  private void release(GL3 gl) {
+    if (persistent) {
+      gl.glBindBuffer(GL2ES3.GL_UNIFORM_BUFFER, bufferId[0]);
+      gl.glUnmapBuffer(GL2ES3.GL_UNIFORM_BUFFER);
+      gl.glBindBuffer(GL2ES3.GL_UNIFORM_BUFFER, 0);
+      mapped = null;
+    }
+    gl.glDeleteBuffers(1, bufferId, 0);
+  }
+}
@@ -0,0 +1,116 @@
+package lib;
+
+import com.jogamp.common.nio.*;
+import com.jogamp.opengl.*;
+import java.nio.*;
+
+/**
+ * I declare that this code is my own work.
+ * Layouts of the vertices in a vertex buffer, from the 8 floats (x,y,z, nx,ny,nz, s,t) of a
+ * mesh. Every attribute is aligned to 4 bytes.
+ *
+ * @author Zer Jun Eng (zjeng1@sheffield.ac.uk)
+ */
+enum VertexLayout {
+
+  // Mesh.Format.FLOAT
+  FLOAT(8 * Float.BYTES),
+
+  // Mesh.Format.COMPACT, with the positions as normalised shorts and a short of padding
+  COMPACT(4 * Short.BYTES + 2 * Short.BYTES + 2 * Short.BYTES),
+
+  // Mesh.Format.COMPACT of a mesh that does not lie in [-1, 1], with the positions as floats
+  COMPACT_FLOAT_POSITIONS(3 * Float.BYTES + 2 * Short.BYTES + 2 * Short.BYTES);
+
+  private static final int FLOATS_PER_VERTEX = 8;
+
+  final int stride;
+
+  VertexLayout(int stride) {
+    this.stride = stride;
+  }
+
+  /**
+   * Gets the layout of a mesh in a format
+   *
+   * @param format The format
+   * @param shortPositions Whether the positions fit normalised shorts
+   * @return The layout
+   */
+  static VertexLayout of(Mesh.Format format, boolean shortPositions) {
+    if (format == Mesh.Format.FLOAT) {
+      return FLOAT;
+    }
+    return shortPositions ? COMPACT : COMPACT_FLOAT_POSITIONS;
+  }
+
+  /**
+   * Converts the vertices of a mesh to this layout
+   *
+   * @param vertices The vertices, 8 floats each
+   * @return The bytes of the vertices, in native order for the vertex buffer
+   */
+  ByteBuffer encode(float[] vertices) {
+    int vertexCount = vertices.length / FLOATS_PER_VERTEX;
+    ByteBuffer bb = Buffers.newDirectByteBuffer(vertexCount * stride);
+    if (this == FLOAT) {
+      bb.asFloatBuffer().put(vertices, 0, vertexCount * FLOATS_PER_VERTEX);
+      return bb;
+    }
+
+    short[] normal = new short[2];
+    for (int i = 0; i < vertexCount * FLOATS_PER_VERTEX; i += FLOATS_PER_VERTEX) {
+      for (int j = 0; j < 3; j++) {
+        if (this == COMPACT) {
+          bb.putShort(VertexPacking.toSnorm16(vertices[i + j]));
+        } else {
+          bb.putFloat(vertices[i + j]);
+        }
+      }
+      if (this == COMPACT) {
+        bb.putShort((short) 0);
+      }
+      VertexPacking.toOctahedral(vertices[i + 3], vertices[i + 4], vertices[i + 5], normal);
+      bb.putShort(normal[0]).putShort(normal[1]);
+      bb.putShort(VertexPacking.toHalf(vertices[i + 6]));
+      bb.putShort(VertexPacking.toHalf(vertices[i + 7]));
+    }
+    bb.flip();
+    return bb;
+  }
+
+  /**
+   * Points the vertex attributes of the bound vertex array at the bound vertex buffer:
+   * location 0 for the position, 1 for the normal and 2 for the texture coordinates
+   *
+   * @param gl OpenGL object
+   */
+  void setAttributes(GL3 gl) {
+    int normalOffset;
+    switch (this) {
+      case FLOAT:
+        gl.glVertexAttribPointer(0, 3, GL.GL_FLOAT, false, stride, 0);
+        gl.glVertexAttribPointer(1, 3, GL.GL_FLOAT, false, stride, 3 * Float.BYTES);
+        gl.glVertexAttribPointer(2, 2, GL.GL_FLOAT, false, stride, 6 * Float.BYTES);
+        break;
+      case COMPACT:
+        normalOffset = 4 * Short.BYTES;
+        gl.glVertexAttribPointer(0, 3, GL.GL_SHORT, true, stride, 0);
+        setCompactAttributes(gl, normalOffset);
+        break;
+      default:
+        normalOffset = 3 * Float.BYTES;
+        gl.glVertexAttribPointer(0, 3, GL.GL_FLOAT, false, stride, 0);
+        setCompactAttributes(gl, normalOffset);
+    }
+    for (int location = 0; location < 3; location++) {
+      gl.glEnableVertexAttribArray(location);
+    }
+  }
+
+  private void setCompactAttributes(GL3 gl, int normalOffset) {
+    gl.glVertexAttribPointer(1, 2, GL.GL_SHORT, true, stride, normalOffset);
+    gl.glVertexAttribPointer(2, 2, GL.GL_HALF_FLOAT, false, stride,
+        normalOffset + 2 * Short.BYTES);
+  }
+}
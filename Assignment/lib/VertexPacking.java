@@ -0,0 +1,100 @@
+package lib;
+
+/**
+ * I declare that this code is my own work.
+ * Conversions of vertex attributes to the compact types of Mesh.Format.COMPACT, each decoded to
+ * floats by the vertex fetch or the vertex shader.
+ *
+ * @author Zer Jun Eng (zjeng1@sheffield.ac.uk)
+ */
+final class VertexPacking {
+
+  private static final int SNORM16_MAX = 32767;
+
+  private VertexPacking() {
+  }
+
+  /**
+   * Converts a value in [-1, 1] to a normalised signed short, read back as value / 32767
+   *
+   * @param value The value, clamped to [-1, 1]
+   * @return The normalised short
+   */
+  static short toSnorm16(float value) {
+    return (short) Math.round(Math.max(-1, Math.min(1, value)) * SNORM16_MAX);
+  }
+
+  /**
+   * Encodes a direction as the two coordinates of its octahedral mapping: the direction is
+   * projected onto the octahedron |x| + |y| + |z| = 1, and the lower half is folded over the
+   * upper half onto the square [-1, 1]. Decoded by decodeNormal() of inc_vertex.txt.
+   *
+   * @param x X of the direction
+   * @param y Y of the direction
+   * @param z Z of the direction
+   * @param out The two normalised shorts
+   */
+  static void toOctahedral(float x, float y, float z, short[] out) {
+    float sum = Math.abs(x) + Math.abs(y) + Math.abs(z);
+    if (sum == 0) {
+      out[0] = out[1] = 0;
+      return;
+    }
+    float u = x / sum;
+    float v = y / sum;
+    if (z < 0) {
+      float foldedU = (1 - Math.abs(v)) * Math.signum(u == 0 ? 1 : u);
+      float foldedV = (1 - Math.abs(u)) * Math.signum(v == 0 ? 1 : v);
+      u = foldedU;
+      v = foldedV;
+    }
+    out[0] = toSnorm16(u);
+    out[1] = toSnorm16(v);
+  }
+
+  /**
+   * Converts a float to the bits of the nearest IEEE 754 half float, rounding to even.
+   * Magnitudes beyond the largest half float become infinite.
+   *
+   * @param value The value
+   * @return The half float bits
+   */
+  static short toHalf(float value) {
+    int bits = Float.floatToRawIntBits(value);
+    int sign = (bits >>> 16) & 0x8000;
+    int exponent = (bits >>> 23) & 0xff;
+    int mantissa = bits & 0x7fffff;
+
+    if (exponent == 0xff) {
+      // Infinity, or NaN with a mantissa bit kept
+      return (short) (sign | 0x7c00 | (mantissa != 0 ? 0x200 : 0));
+    }
+
+    int halfExponent = exponent - 127 + 15;
+    if (halfExponent >= 0x1f) {
+      return (short) (sign | 0x7c00);
+    }
+    if (halfExponent <= 0) {
+      if (halfExponent < -10) {
+        return (short) sign;  // Too small even for a subnormal half float
+      }
+      // Subnormal, the implicit leading bit becomes explicit
+      mantissa |= 0x800000;
+      int shift = 14 - halfExponent;
+      int half = mantissa >> shift;
+      int remainder = mantissa & ((1 << shift) - 1);
+      int halfway = 1 << (shift - 1);
+      if (remainder > halfway || (remainder == halfway && (half & 1) != 0)) {
+        half++;
+      }
+      return (short) (sign | half);
+    }
+
+    int half = (halfExponent << 10) | (mantissa >> 13);
+    int remainder = mantissa & 0x1fff;
+    if (remainder > 0x1000 || (remainder == 0x1000 && (half & 1) != 0)) {
+      half++;  // May carry into the exponent, up to infinity, which is still correct
+    }
+    return (short) (sign | half);
+  }
+}
@@ -0,0 +1,188 @@
+package lib.animation;
+
+/**
+ * A baked animation clip. Every channel (a joint angle or a position) is stored as a reduced set
+ * of 16-bit quantised keyframes, and a per-frame lookup table maps a frame to the key before it,
+ * so playing a clip back is a table lookup and a linear interpolation per channel. A clip can
+ * be retargeted to another length and amplitude without being baked again, see retarget().
+ *
+ * @author Zer Jun Eng (zjeng1@sheffield.ac.uk)
+ */
+public class AnimationClip {
+
+  static final float QUANTISE_LEVELS = 65535;
+
+  private final float duration;
+  private final float frameRate;
+  private final boolean looping;
+  private final int frameCount;
+
+  // Dequantised value = channelMin + key * channelScale
+  private final float[] channelMin;
+  private final float[] channelScale;
+
+  // Unsigned 16-bit key frame indices and values, one array per channel
+  private final char[][] keyFrames;
+  private final char[][] keyValues;
+
+  // Index of the last key at or before each frame, one table per channel
+  private final char[][] frameToKey;
+
+  /**
+   * Clip constructor, used by the baker
+   *
+   * @param duration Length of the clip in seconds
+   * @param frameRate Number of frames per second the clip was sampled at
+   * @param looping Whether the clip wraps around when played past its end
+   * @param channelMin Minimum value of each channel
+   * @param channelRange Range (max - min) of each channel
+   * @param keyFrames Frame index of every key, per channel
+   * @param keyValues Quantised value of every key, per channel
+   */
+  AnimationClip(float duration, float frameRate, boolean looping, float[] channelMin,
+      float[] channelRange, char[][] keyFrames, char[][] keyValues) {
+    this.duration = duration;
+    this.frameRate = frameRate;
+    this.looping = looping;
+    this.channelMin = channelMin;
+    this.keyFrames = keyFrames;
+    this.keyValues = keyValues;
+
+    channelScale = new float[channelMin.length];
+    for (int c = 0; c < channelMin.length; c++) {
+      channelScale[c] = channelRange[c] / QUANTISE_LEVELS;
+    }
+
+    frameCount = Math.round(duration * frameRate) + 1;
+    frameToKey = new char[channelMin.length][frameCount];
+    for (int c = 0; c < channelMin.length; c++) {
+      int key = 0;
+      for (int f = 0; f < frameCount; f++) {
+        while (key < keyFrames[c].length - 1 && keyFrames[c][key + 1] <= f) {
+          key++;
+        }
+        frameToKey[c][f] = (char) key;
+      }
+    }
+  }
+
+  /**
+   * Retargeted clip constructor, sharing the keys and lookup tables of the clip
+   */
+  private AnimationClip(AnimationClip clip, float duration, float[] channelMin,
+      float[] channelScale) {
+    this.duration = duration;
+    this.frameRate = duration > 0 ? (clip.frameCount - 1) / duration : clip.frameRate;
+    this.looping = clip.looping;
+    this.frameCount = clip.frameCount;
+    this.channelMin = channelMin;
+    this.channelScale = channelScale;
+    this.keyFrames = clip.keyFrames;
+    this.keyValues = clip.keyValues;
+    this.frameToKey = clip.frameToKey;
+  }
+
+  /**
+   * Creates a clip holding a single pose, useful as a blending target
+   *
+   * @param pose Value of every channel
+   * @return A clip that samples to the given pose at any time
+   */
+  public static AnimationClip pose(float[] pose) {
+    int channels = pose.length;
+    char[][] keyFrames = new char[channels][1];
+    char[][] keyValues = new char[channels][1];
+    return new AnimationClip(0, 1, false, pose.clone(), new float[channels], keyFrames,
+        keyValues);
+  }
+
+  /**
+   * Stretches the clip to another duration and maps every channel to value * scale + offset.
+   * The keys are shared, so a clip baked once at load can be played at any length and amplitude.
+   *
+   * @param duration Length of the retargeted clip in seconds
+   * @param scale Scale of each channel
+   * @param offset Offset of each channel, added after scaling
+   * @return The retargeted clip
+   */
+  public AnimationClip retarget(float duration, float[] scale, float[] offset) {
+    float[] min = new float[channelMin.length];
+    float[] step = new float[channelMin.length];
+    for (int c = 0; c < channelMin.length; c++) {
+      min[c] = channelMin[c] * scale[c] + offset[c];
+      step[c] = channelScale[c] * scale[c];
+    }
+    return new AnimationClip(this, duration, min, step);
+  }
+
+  public float getDuration() {
+    return duration;
+  }
+
+  public boolean isLooping() {
+    return looping;
+  }
+
+  public int getChannelCount() {
+    return channelMin.length;
+  }
+
+  /**
+   * Gets the number of stored keys over all channels, used to check the reduction ratio
+   *
+   * @return The number of keys
+   */
+  public int getKeyCount() {
+    int count = 0;
+    for (char[] keys : keyFrames) {
+      count += keys.length;
+    }
+    return count;
+  }
+
+  /**
+   * Samples every channel of the clip at the given time, does not allocate
+   *
+   * @param time Time since the start of the clip in seconds
+   * @param out Output array, at least getChannelCount() long
+   */
+  public void sample(float time, float[] out) {
+    float frame = toFrame(time);
+    int f = (int) frame;
+
+    for (int c = 0; c < channelMin.length; c++) {
+      char[] frames = keyFrames[c];
+      char[] values = keyValues[c];
+      int key = frameToKey[c][f];
+      float value = values[key];
+
+      if (key < frames.length - 1) {
+        float t = (frame - frames[key]) / (frames[key + 1] - frames[key]);
+        value += (values[key + 1] - value) * t;
+      }
+
+      out[c] = channelMin[c] + value * channelScale[c];
+    }
+  }
+
+  /**
+   * Converts a time to a fractional frame index inside the lookup table
+   *
+   * @param time Time since the start of the clip in seconds
+   * @return Frame index, clamped or wrapped to the clip
+   */
+  private float toFrame(float time) {
+    if (duration <= 0) {
+      return 0;
+    }
+
+    if (looping) {
+      time %= duration;
+      if (time < 0) time += duration;
+    } else {
+      time = Math.max(0, Math.min(time, duration));
+    }
+
+    return Math.min(time * frameRate, frameCount - 1);
+  }
+}
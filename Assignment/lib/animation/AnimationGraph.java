@@ -0,0 +1,189 @@
+package lib.animation;
+
+/**
+ * Blends baked clips into a single pose. The base layer cross-fades from the previous clip to the
+ * current one, and additive layers add their offset from their first frame on top (e.g. an idle
+ * sway on top of a jump). Starting a clip during a cross-fade freezes the blended pose and fades
+ * from it, so transitions can be interrupted at any time.
+ * No memory is allocated after construction, so many graphs can be updated every frame.
+ *
+ * @author Zer Jun Eng (zjeng1@sheffield.ac.uk)
+ */
+public class AnimationGraph {
+
+  public static final int MAX_LAYERS = 4;
+
+  private final int channels;
+
+  // Base layer, fading from the "from" clip (or a frozen pose) to the "to" clip
+  private AnimationClip fromClip;
+  private float fromTime;
+  private AnimationClip toClip;
+  private float toTime;
+  private float fadeTime;
+  private float fadeDuration;
+  private final float[] fromPose;
+  private final float[] toPose;
+
+  // Additive layers
+  private final AnimationClip[] layerClips = new AnimationClip[MAX_LAYERS];
+  private final float[] layerTime = new float[MAX_LAYERS];
+  private final float[] layerWeight = new float[MAX_LAYERS];
+  private final float[] layerTargetWeight = new float[MAX_LAYERS];
+  private final float[] layerFadeSpeed = new float[MAX_LAYERS];
+  private final float[][] layerPose;
+  private final float[][] layerReference;
+
+  private final float[] basePose;
+  private final float[] pose;
+
+  /**
+   * Animation graph constructor
+   *
+   * @param initialPose The pose before any clip is played, also sets the number of channels
+   */
+  public AnimationGraph(float[] initialPose) {
+    channels = initialPose.length;
+    fromPose = new float[channels];
+    toPose = new float[channels];
+    basePose = initialPose.clone();
+    pose = initialPose.clone();
+    layerPose = new float[MAX_LAYERS][channels];
+    layerReference = new float[MAX_LAYERS][channels];
+    toClip = AnimationClip.pose(initialPose);
+  }
+
+  /**
+   * Cross-fades from whatever is playing to a clip. Interrupts a running cross-fade.
+   *
+   * @param clip The clip to play
+   * @param fadeDuration Cross-fade time in seconds, 0 to cut
+   */
+  public void play(AnimationClip clip, float fadeDuration) {
+    if (isFading()) {
+      // Freeze the current blend and fade from it
+      System.arraycopy(basePose, 0, fromPose, 0, channels);
+      fromClip = null;
+    } else {
+      fromClip = toClip;
+      fromTime = toTime;
+    }
+
+    toClip = clip;
+    toTime = 0;
+    fadeTime = 0;
+    this.fadeDuration = fadeDuration;
+  }
+
+  /**
+   * Sets an additive layer, its offset from its first frame is added to the base layer
+   *
+   * @param layer Layer index, less than MAX_LAYERS
+   * @param clip The additive clip, usually looping
+   */
+  public void setLayer(int layer, AnimationClip clip) {
+    layerClips[layer] = clip;
+    layerTime[layer] = 0;
+    clip.sample(0, layerReference[layer]);
+  }
+
+  /**
+   * Fades the weight of an additive layer
+   *
+   * @param layer Layer index
+   * @param weight Target weight, 0 disables the layer
+   * @param fadeDuration Time in seconds to reach the target weight, 0 to cut
+   */
+  public void setLayerWeight(int layer, float weight, float fadeDuration) {
+    layerTargetWeight[layer] = weight;
+    if (fadeDuration <= 0) {
+      layerWeight[layer] = weight;
+      layerFadeSpeed[layer] = 0;
+    } else {
+      layerFadeSpeed[layer] = Math.abs(weight - layerWeight[layer]) / fadeDuration;
+    }
+  }
+
+  public boolean isFading() {
+    return fadeTime < fadeDuration;
+  }
+
+  /**
+   * Checks whether the current clip has played to its end, looping clips never finish
+   *
+   * @return true if nothing is left to play on the base layer
+   */
+  public boolean isFinished() {
+    return !isFading() && !toClip.isLooping() && toTime >= toClip.getDuration();
+  }
+
+  /**
+   * Gets the base layer pose without the additive layers
+   *
+   * @return The base pose, do not modify
+   */
+  public float[] getBasePose() {
+    return basePose;
+  }
+
+  /**
+   * Gets the blended pose computed by the last update(), or the initial pose
+   *
+   * @return The pose, do not modify
+   */
+  public float[] getPose() {
+    return pose;
+  }
+
+  /**
+   * Advances every clip and blends the pose
+   *
+   * @param deltaTime Time since the last update in seconds
+   */
+  public void update(float deltaTime) {
+    fromTime += deltaTime;
+    toTime += deltaTime;
+    fadeTime = Math.min(fadeTime + deltaTime, fadeDuration);
+
+    float fade = 1;
+    if (fadeDuration > 0 && fadeTime < fadeDuration) {
+      fade = (float) Math.sin(fadeTime / fadeDuration * Math.PI / 2); // Ease out
+      if (fromClip != null) {
+        fromClip.sample(fromTime, fromPose);
+      }
+    }
+    toClip.sample(toTime, toPose);
+
+    int layers = 0;
+    for (int l = 0; l < MAX_LAYERS; l++) {
+      if (layerClips[l] == null) {
+        continue;
+      }
+
+      layerTime[l] += deltaTime;
+      float step = layerFadeSpeed[l] * deltaTime;
+      if (Math.abs(layerTargetWeight[l] - layerWeight[l]) <= step || layerFadeSpeed[l] == 0) {
+        layerWeight[l] = layerTargetWeight[l];
+      } else {
+        layerWeight[l] += Math.signum(layerTargetWeight[l] - layerWeight[l]) * step;
+      }
+
+      if (layerWeight[l] != 0) {
+        layerClips[l].sample(layerTime[l], layerPose[l]);
+        layers = l + 1;
+      }
+    }
+
+    // Single pass over the channels
+    for (int c = 0; c < channels; c++) {
+      float value = fade < 1 ? fromPose[c] + (toPose[c] - fromPose[c]) * fade : toPose[c];
+      basePose[c] = value;
+      for (int l = 0; l < layers; l++) {
+        if (layerClips[l] != null && layerWeight[l] != 0) {
+          value += (layerPose[l][c] - layerReference[l][c]) * layerWeight[l];
+        }
+      }
+      pose[c] = value;
+    }
+  }
+}
@@ -0,0 +1,156 @@
+package lib.animation;
+
+/**
+ * Bakes a procedural animation into an AnimationClip. The procedure is sampled once per frame,
+ * every channel is quantised to 16 bits over its own range, and keys that can be rebuilt by
+ * linear interpolation within the error tolerance are removed.
+ *
+ * @author Zer Jun Eng (zjeng1@sheffield.ac.uk)
+ */
+public final class ClipBaker {
+
+  /**
+   * A procedural animation to be baked
+   */
+  public interface Procedure {
+
+    /**
+     * Evaluates every channel of the animation
+     *
+     * @param time Time since the start of the animation in seconds
+     * @param out Output array, one value per channel
+     */
+    void sample(float time, float[] out);
+  }
+
+  public static final float DEFAULT_FRAME_RATE = 60;
+  public static final float DEFAULT_TOLERANCE = 0.01f;
+
+  private ClipBaker() {
+  }
+
+  /**
+   * Bakes a procedure at the default frame rate and tolerance
+   *
+   * @param procedure The animation to sample
+   * @param channels Number of channels the procedure writes
+   * @param duration Length of the animation in seconds
+   * @param looping Whether the baked clip wraps around
+   * @return The baked clip
+   */
+  public static AnimationClip bake(Procedure procedure, int channels, float duration,
+      boolean looping) {
+    return bake(procedure, channels, duration, DEFAULT_FRAME_RATE, DEFAULT_TOLERANCE, looping);
+  }
+
+  /**
+   * Bakes a procedure into a quantised, keyframe reduced clip
+   *
+   * @param procedure The animation to sample
+   * @param channels Number of channels the procedure writes
+   * @param duration Length of the animation in seconds
+   * @param frameRate Number of samples per second
+   * @param tolerance Maximum error allowed when removing keys, in channel units
+   * @param looping Whether the baked clip wraps around
+   * @return The baked clip
+   */
+  public static AnimationClip bake(Procedure procedure, int channels, float duration,
+      float frameRate, float tolerance, boolean looping) {
+    int frameCount = Math.round(duration * frameRate) + 1;
+    if (frameCount > AnimationClip.QUANTISE_LEVELS) {
+      throw new IllegalArgumentException("Clip is too long to bake: " + frameCount + " frames");
+    }
+
+    // Sample the procedure, channel major
+    float[][] samples = new float[channels][frameCount];
+    float[] pose = new float[channels];
+    for (int f = 0; f < frameCount; f++) {
+      procedure.sample(Math.min(f / frameRate, duration), pose);
+      for (int c = 0; c < channels; c++) {
+        samples[c][f] = pose[c];
+      }
+    }
+
+    float[] channelMin = new float[channels];
+    float[] channelRange = new float[channels];
+    char[][] keyFrames = new char[channels][];
+    char[][] keyValues = new char[channels][];
+
+    for (int c = 0; c < channels; c++) {
+      float min = Float.MAX_VALUE;
+      float max = -Float.MAX_VALUE;
+      for (float value : samples[c]) {
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+      }
+
+      channelMin[c] = min;
+      channelRange[c] = max - min;
+
+      char[] quantised = new char[frameCount];
+      float scale = max > min ? AnimationClip.QUANTISE_LEVELS / (max - min) : 0;
+      for (int f = 0; f < frameCount; f++) {
+        quantised[f] = (char) Math.round((samples[c][f] - min) * scale);
+      }
+
+      // Tolerance in quantised units, at least half a step so rounding noise is ignored
+      float keyTolerance = Math.max(tolerance * scale, 0.5f);
+      boolean[] keep = new boolean[frameCount];
+      keep[0] = true;
+      keep[frameCount - 1] = true;
+      reduce(quantised, 0, frameCount - 1, keyTolerance, keep);
+
+      int keys = 0;
+      for (boolean k : keep) {
+        if (k) keys++;
+      }
+
+      keyFrames[c] = new char[keys];
+      keyValues[c] = new char[keys];
+      for (int f = 0, k = 0; f < frameCount; f++) {
+        if (keep[f]) {
+          keyFrames[c][k] = (char) f;
+          keyValues[c][k] = quantised[f];
+          k++;
+        }
+      }
+    }
+
+    return new AnimationClip(duration, frameRate, looping, channelMin, channelRange, keyFrames,
+        keyValues);
+  }
+
+  /**
+   * Ramer-Douglas-Peucker reduction: keeps the frame with the largest interpolation error between
+   * two kept frames if it exceeds the tolerance, then recurses on both halves
+   *
+   * @param values Quantised values of one channel
+   * @param first First kept frame
+   * @param last Last kept frame
+   * @param tolerance Maximum interpolation error
+   * @param keep Output flags, true for frames that become keys
+   */
+  private static void reduce(char[] values, int first, int last, float tolerance, boolean[] keep) {
+    if (last - first < 2) {
+      return;
+    }
+
+    float maxError = 0;
+    int maxFrame = -1;
+    for (int f = first + 1; f < last; f++) {
+      float t = (float) (f - first) / (last - first);
+      float interpolated = values[first] + (values[last] - values[first]) * t;
+      float error = Math.abs(values[f] - interpolated);
+      if (error > maxError) {
+        maxError = error;
+        maxFrame = f;
+      }
+    }
+
+    if (maxError > tolerance) {
+      keep[maxFrame] = true;
+      reduce(values, first, maxFrame, tolerance, keep);
+      reduce(values, maxFrame, last, tolerance, keep);
+    }
+  }
+}
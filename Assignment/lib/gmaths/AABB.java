@@ -0,0 +1,113 @@
+package lib.gmaths;
+
+/**
+ * An axis aligned bounding box. A new box is empty (min greater than max) until a point or
+ * another box is added to it.
+ *
+ * @author Zer Jun Eng (zjeng1@sheffield.ac.uk)
+ */
+public final class AABB {
+  public final Vec3 min;
+  public final Vec3 max;
+
+  public AABB() {
+    min = new Vec3(Float.MAX_VALUE, Float.MAX_VALUE, Float.MAX_VALUE);
+    max = new Vec3(-Float.MAX_VALUE, -Float.MAX_VALUE, -Float.MAX_VALUE);
+  }
+
+  public AABB(Vec3 min, Vec3 max) {
+    this.min = new Vec3(min);
+    this.max = new Vec3(max);
+  }
+
+  public AABB(AABB b) {
+    this(b.min, b.max);
+  }
+
+  public boolean isEmpty() {
+    return min.x > max.x || min.y > max.y || min.z > max.z;
+  }
+
+  public void expand(float x, float y, float z) {
+    min.x = Math.min(min.x, x);
+    min.y = Math.min(min.y, y);
+    min.z = Math.min(min.z, z);
+    max.x = Math.max(max.x, x);
+    max.y = Math.max(max.y, y);
+    max.z = Math.max(max.z, z);
+  }
+
+  public void union(AABB b) {
+    if (!b.isEmpty()) {
+      expand(b.min.x, b.min.y, b.min.z);
+      expand(b.max.x, b.max.y, b.max.z);
+    }
+  }
+
+  public boolean overlaps(AABB b) {
+    return min.x <= b.max.x && max.x >= b.min.x
+        && min.y <= b.max.y && max.y >= b.min.y
+        && min.z <= b.max.z && max.z >= b.min.z;
+  }
+
+  public boolean contains(float x, float y, float z) {
+    return x >= min.x && x <= max.x && y >= min.y && y <= max.y && z >= min.z && z <= max.z;
+  }
+
+  public Vec3 getCentre() {
+    return new Vec3((min.x + max.x) / 2, (min.y + max.y) / 2, (min.z + max.z) / 2);
+  }
+
+  public Vec3 getSize() {
+    return Vec3.subtract(max, min);
+  }
+
+  /**
+   * Gets the squared distance from a point to the nearest point of the box
+   *
+   * @param p The point
+   * @return The squared distance, 0 if the point is inside
+   */
+  public float distanceSquared(Vec3 p) {
+    float dx = Math.max(0, Math.max(min.x - p.x, p.x - max.x));
+    float dy = Math.max(0, Math.max(min.y - p.y, p.y - max.y));
+    float dz = Math.max(0, Math.max(min.z - p.z, p.z - max.z));
+    return dx * dx + dy * dy + dz * dz;
+  }
+
+  /**
+   * Transforms the box and bounds the result. Each axis of the new box is the sum of the
+   * smallest and largest products of the matrix row with the old box (Arvo's method).
+   *
+   * @param m The transformation matrix
+   * @return The bounds of the transformed box
+   */
+  public AABB transform(Mat4 m) {
+    AABB b = new AABB();
+    if (isEmpty()) {
+      return b;
+    }
+
+    float[] lo = {min.x, min.y, min.z};
+    float[] hi = {max.x, max.y, max.z};
+    float[] outMin = new float[3];
+    float[] outMax = new float[3];
+    for (int r = 0; r < 3; r++) {
+      outMin[r] = outMax[r] = m.get(r, 3);
+      for (int c = 0; c < 3; c++) {
+        float a = m.get(r, c) * lo[c];
+        float e = m.get(r, c) * hi[c];
+        outMin[r] += Math.min(a, e);
+        outMax[r] += Math.max(a, e);
+      }
+    }
+    b.expand(outMin[0], outMin[1], outMin[2]);
+    b.expand(outMax[0], outMax[1], outMax[2]);
+    return b;
+  }
+
+  public String toString() {
+    return "[" + min + " - " + max + "]";
+  }
+
+} // end of AABB class
@@ -2,8 +2,7 @@ package lib.gmaths;
 
 /**
  * A matrix class, provided by Dr Steve Maddock.
- * Added getTranslationVec() and getRotationVec() for the position and the
- * direction of the spotlight
+ * Added getTranslationVec() for the position of the spotlight and get() for reading entries
  *
  * @author Dr. Steve Maddock and Zer Jun Eng (zjeng1@sheffield.ac.uk)
  */
@@ -34,6 +33,10 @@ public class Mat4 {   // row column formulation
     values[r][c] = f;
   }
 
+  public float get(int r, int c) {
+    return values[r][c];
+  }
+
   private void makeZero() {
     for (int i = 0; i < 4; ++i) {
       for (int j = 0; j < 4; ++j) {
@@ -77,23 +80,29 @@ public class Mat4 {   // row column formulation
     return new Vec3(f[12], f[13], f[14]);
   }
 
-  /**
-   * Gets the rotated direction of the spotlight
-   * Source: Lecture 2, Slide 10
-   *
-   * @return The x, y, z rotation of the spotlight
-   */
-  public Vec3 getRotationVec() {
-    /*
-     * The X rotation of headJoint is the Z of the light bulb
-     * The Y rotation of headJoint is the Y of the light bulb
-     * The Z rotation of headJoint is the X of the light bulb
-     */
-    float x = (float) Math.asin(values[0][1]);
-    float y = (float) Math.asin(values[1][1]);
-    float z = (float) Math.asin(values[2][1]);
-
-    return new Vec3(-x, -y, -z);
+  public boolean equals(Object o) {
+    if (!(o instanceof Mat4)) {
+      return false;
+    }
+    Mat4 m = (Mat4) o;
+    for (int i = 0; i < 4; ++i) {
+      for (int j = 0; j < 4; ++j) {
+        if (values[i][j] != m.values[i][j]) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  public int hashCode() {
+    int h = 0;
+    for (int i = 0; i < 4; ++i) {
+      for (int j = 0; j < 4; ++j) {
+        h = 31 * h + Float.floatToIntBits(values[i][j]);
+      }
+    }
+    return h;
   }
 
   public String toString() {
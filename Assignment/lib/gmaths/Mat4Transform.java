@@ -4,8 +4,9 @@ package lib.gmaths;
  * A static class for a set of methods to create transformation matrices.
  * The matrix is represented in row-column form.
  * Matrices are formed so as to be used in premultiplication of vectors, i.e. matrix <strong>x</strong> vector.
+ * Added rotate() and trs() for quaternion rotations.
  *
- * @author Dr Steve Maddock
+ * @author Dr Steve Maddock and Zer Jun Eng (zjeng1@sheffield.ac.uk)
  * @version 1.0 (01/10/2017)
  */
 
@@ -104,6 +105,49 @@ public final class Mat4Transform {   // row column formulation
     return m;
   }
 
+  /**
+   * Creates a 4x4 rotation matrix from a quaternion.
+   *
+   * @param q The rotation, must be a unit quaternion.
+   * @return The resulting 4x4 rotation matrix, as a Mat4
+   */
+  public static Mat4 rotate(Quat q) {
+    return trs(0, 0, 0, q, 1, 1, 1);
+  }
+
+  /**
+   * Creates a 4x4 matrix that scales, then rotates, then translates, i.e. T x R x S.
+   * Cheaper than multiplying the three matrices.
+   *
+   * @param t The translation amount (x,y,z)
+   * @param q The rotation, must be a unit quaternion.
+   * @param s The scale amount (x,y,z)
+   * @return The resulting 4x4 matrix, as a Mat4
+   */
+  public static Mat4 trs(Vec3 t, Quat q, Vec3 s) {
+    return trs(t.x, t.y, t.z, q, s.x, s.y, s.z);
+  }
+
+  private static Mat4 trs(float tx, float ty, float tz, Quat q, float sx, float sy, float sz) {
+    float xx = q.x * q.x, yy = q.y * q.y, zz = q.z * q.z;
+    float xy = q.x * q.y, xz = q.x * q.z, yz = q.y * q.z;
+    float wx = q.w * q.x, wy = q.w * q.y, wz = q.w * q.z;
+    Mat4 m = new Mat4(1);
+    m.set(0, 0, (1 - 2 * (yy + zz)) * sx);
+    m.set(0, 1, 2 * (xy - wz) * sy);
+    m.set(0, 2, 2 * (xz + wy) * sz);
+    m.set(1, 0, 2 * (xy + wz) * sx);
+    m.set(1, 1, (1 - 2 * (xx + zz)) * sy);
+    m.set(1, 2, 2 * (yz - wx) * sz);
+    m.set(2, 0, 2 * (xz - wy) * sx);
+    m.set(2, 1, 2 * (yz + wx) * sy);
+    m.set(2, 2, (1 - 2 * (xx + yy)) * sz);
+    m.set(0, 3, tx);
+    m.set(1, 3, ty);
+    m.set(2, 3, tz);
+    return m;
+  }
+
   /**
    * Creates a perspective matrix with near clip plane at 0.1f and far clip plane at 100f.
    *
@@ -124,7 +168,7 @@ public final class Mat4Transform {   // row column formulation
    * @param far The distance of the far clip plane. Default is 100f.
    * @return The resulting perspective matrix, as a Mat4
    */
-  private static Mat4 perspective(float fov, float aspect, float near, float far) {
+  public static Mat4 perspective(float fov, float aspect, float near, float far) {
     float field = (float) Math.tan(Math.toRadians(fov * 0.5f));
     float sx = 1 / (field * aspect);
     float sy = 1 / field;
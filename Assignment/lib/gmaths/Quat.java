@@ -0,0 +1,244 @@
+package lib.gmaths;
+
+/**
+ * A unit quaternion for rotations: x, y, z is the vector part and w the scalar part.
+ * Angles are in degrees to match Mat4Transform.
+ *
+ * @author Zer Jun Eng (zjeng1@sheffield.ac.uk)
+ */
+public final class Quat {
+  public float x;
+  public float y;
+  public float z;
+  public float w;
+
+  public Quat() {
+    this(0, 0, 0, 1);
+  }
+
+  public Quat(float x, float y, float z, float w) {
+    this.x = x;
+    this.y = y;
+    this.z = z;
+    this.w = w;
+  }
+
+  public Quat(Quat q) {
+    this(q.x, q.y, q.z, q.w);
+  }
+
+  public Quat set(float x, float y, float z, float w) {
+    this.x = x;
+    this.y = y;
+    this.z = z;
+    this.w = w;
+    return this;
+  }
+
+  public Quat set(Quat q) {
+    return set(q.x, q.y, q.z, q.w);
+  }
+
+  /**
+   * Sets this quaternion to a rotation around an axis
+   *
+   * @param ax Axis x, the axis must be normalised
+   * @param ay Axis y
+   * @param az Axis z
+   * @param angle The amount of rotation in degrees, positive is anticlockwise
+   * @return This quaternion
+   */
+  public Quat setAxisAngle(float ax, float ay, float az, float angle) {
+    double half = Math.toRadians(angle) / 2;
+    float s = (float) Math.sin(half);
+    return set(ax * s, ay * s, az * s, (float) Math.cos(half));
+  }
+
+  public static Quat fromAxisAngle(Vec3 axis, float angle) {
+    return new Quat().setAxisAngle(axis.x, axis.y, axis.z, angle);
+  }
+
+  public static Quat rotateAroundX(float angle) {
+    return new Quat().setAxisAngle(1, 0, 0, angle);
+  }
+
+  public static Quat rotateAroundY(float angle) {
+    return new Quat().setAxisAngle(0, 1, 0, angle);
+  }
+
+  public static Quat rotateAroundZ(float angle) {
+    return new Quat().setAxisAngle(0, 0, 1, angle);
+  }
+
+  /**
+   * Hamilton product a * b, which applies b first and then a (like Mat4.multiply)
+   *
+   * @param a Left quaternion
+   * @param b Right quaternion
+   * @param out Output quaternion, may be a or b
+   * @return out
+   */
+  public static Quat multiply(Quat a, Quat b, Quat out) {
+    return out.set(
+        a.w * b.x + a.x * b.w + a.y * b.z - a.z * b.y,
+        a.w * b.y - a.x * b.z + a.y * b.w + a.z * b.x,
+        a.w * b.z + a.x * b.y - a.y * b.x + a.z * b.w,
+        a.w * b.w - a.x * b.x - a.y * b.y - a.z * b.z);
+  }
+
+  public static Quat multiply(Quat a, Quat b) {
+    return multiply(a, b, new Quat());
+  }
+
+  public static float dot(Quat a, Quat b) {
+    return a.x * b.x + a.y * b.y + a.z * b.z + a.w * b.w;
+  }
+
+  public Quat conjugate() {
+    return new Quat(-x, -y, -z, w);
+  }
+
+  public void normalize() {
+    float mag = (float) Math.sqrt(dot(this, this));   // fails if mag = 0
+    x /= mag;
+    y /= mag;
+    z /= mag;
+    w /= mag;
+  }
+
+  /**
+   * Normalised linear interpolation, cheaper than slerp but not constant speed
+   *
+   * @param a Start rotation
+   * @param b End rotation
+   * @param t Interpolation factor, 0..1
+   * @param out Output quaternion, may be a or b
+   * @return out
+   */
+  public static Quat nlerp(Quat a, Quat b, float t, Quat out) {
+    float sign = dot(a, b) < 0 ? -1 : 1; // Take the shortest path
+    out.set(a.x + (b.x * sign - a.x) * t,
+        a.y + (b.y * sign - a.y) * t,
+        a.z + (b.z * sign - a.z) * t,
+        a.w + (b.w * sign - a.w) * t);
+    out.normalize();
+    return out;
+  }
+
+  /**
+   * Spherical linear interpolation, constant angular speed along the shortest path
+   *
+   * @param a Start rotation
+   * @param b End rotation
+   * @param t Interpolation factor, 0..1
+   * @param out Output quaternion, may be a or b
+   * @return out
+   */
+  public static Quat slerp(Quat a, Quat b, float t, Quat out) {
+    float cos = dot(a, b);
+    float sign = 1;
+    if (cos < 0) {
+      cos = -cos;
+      sign = -1;
+    }
+
+    // Nearly parallel, sin(theta) is too small to divide by
+    if (cos > 0.9995f) {
+      return nlerp(a, b, t, out);
+    }
+
+    double theta = Math.acos(cos);
+    double sin = Math.sin(theta);
+    float wa = (float) (Math.sin((1 - t) * theta) / sin);
+    float wb = (float) (Math.sin(t * theta) / sin) * sign;
+    return out.set(a.x * wa + b.x * wb, a.y * wa + b.y * wb, a.z * wa + b.z * wb,
+        a.w * wa + b.w * wb);
+  }
+
+  public static Quat slerp(Quat a, Quat b, float t) {
+    return slerp(a, b, t, new Quat());
+  }
+
+  /**
+   * Rotates a vector by this quaternion
+   *
+   * @param v The vector
+   * @return The rotated vector
+   */
+  public Vec3 rotate(Vec3 v) {
+    // v + 2w(q x v) + 2q x (q x v)
+    float tx = 2 * (y * v.z - z * v.y);
+    float ty = 2 * (z * v.x - x * v.z);
+    float tz = 2 * (x * v.y - y * v.x);
+    return new Vec3(v.x + w * tx + (y * tz - z * ty),
+        v.y + w * ty + (z * tx - x * tz),
+        v.z + w * tz + (x * ty - y * tx));
+  }
+
+  /**
+   * Creates a 4x4 rotation matrix
+   *
+   * @return The rotation matrix, as a Mat4
+   */
+  public Mat4 toMat4() {
+    return Mat4Transform.rotate(this);
+  }
+
+  /**
+   * Extracts the rotation of a transformation matrix. Scale is removed by normalising the basis
+   * vectors, so the matrix must not contain shear.
+   *
+   * @param m The matrix
+   * @return The rotation, as a unit quaternion
+   */
+  public static Quat fromMat4(Mat4 m) {
+    float sx = length(m.get(0, 0), m.get(1, 0), m.get(2, 0));
+    float sy = length(m.get(0, 1), m.get(1, 1), m.get(2, 1));
+    float sz = length(m.get(0, 2), m.get(1, 2), m.get(2, 2));
+    float m00 = m.get(0, 0) / sx, m01 = m.get(0, 1) / sy, m02 = m.get(0, 2) / sz;
+    float m10 = m.get(1, 0) / sx, m11 = m.get(1, 1) / sy, m12 = m.get(1, 2) / sz;
+    float m20 = m.get(2, 0) / sx, m21 = m.get(2, 1) / sy, m22 = m.get(2, 2) / sz;
+
+    Quat q = new Quat();
+    float trace = m00 + m11 + m22;
+    if (trace > 0) {
+      float s = (float) Math.sqrt(trace + 1) * 2;
+      q.set((m21 - m12) / s, (m02 - m20) / s, (m10 - m01) / s, s / 4);
+    } else if (m00 > m11 && m00 > m22) {
+      float s = (float) Math.sqrt(1 + m00 - m11 - m22) * 2;
+      q.set(s / 4, (m01 + m10) / s, (m02 + m20) / s, (m21 - m12) / s);
+    } else if (m11 > m22) {
+      float s = (float) Math.sqrt(1 + m11 - m00 - m22) * 2;
+      q.set((m01 + m10) / s, s / 4, (m12 + m21) / s, (m02 - m20) / s);
+    } else {
+      float s = (float) Math.sqrt(1 + m22 - m00 - m11) * 2;
+      q.set((m02 + m20) / s, (m12 + m21) / s, s / 4, (m10 - m01) / s);
+    }
+    q.normalize();
+    return q;
+  }
+
+  private static float length(float x, float y, float z) {
+    return (float) Math.sqrt(x * x + y * y + z * z);
+  }
+
+  public boolean equals(Object o) {
+    if (!(o instanceof Quat)) {
+      return false;
+    }
+    Quat q = (Quat) o;
+    return x == q.x && y == q.y && z == q.z && w == q.w;
+  }
+
+  public int hashCode() {
+    int h = Float.floatToIntBits(x);
+    h = 31 * h + Float.floatToIntBits(y);
+    h = 31 * h + Float.floatToIntBits(z);
+    return 31 * h + Float.floatToIntBits(w);
+  }
+
+  public String toString() {
+    return "(" + x + "," + y + "," + z + "," + w + ")";
+  }
+
+} // end of Quat class
@@ -0,0 +1,254 @@
+package lib.physics;
+
+import java.util.*;
+import lib.gmaths.*;
+
+/**
+ * A flat ground (e.g. a table top) with static box colliders standing on it. Bodies follow
+ * ballistic arcs under gravity and are pushed out of colliders sideways, so they always land
+ * on the ground. Colliders are found through a spatial grid, so the cost of a query depends on
+ * the number of nearby colliders only.
+ *
+ * @author Zer Jun Eng (zjeng1@sheffield.ac.uk)
+ */
+public class PhysicsWorld {
+
+  public static final float DEFAULT_GRAVITY = 9.81f;
+  public static final float DEFAULT_CELL_SIZE = 0.5f;
+
+  private final AABB ground;
+  private final SpatialGrid grid;
+  private final List<AABB> colliders = new ArrayList<>();
+  private float gravity = DEFAULT_GRAVITY;
+
+  public PhysicsWorld(AABB ground) {
+    this(ground, DEFAULT_CELL_SIZE);
+  }
+
+  /**
+   * Physics world constructor
+   *
+   * @param ground The ground, bodies stand on its top and stay within its X and Z
+   * @param cellSize Size of a broad phase cell, about the size of the bodies
+   */
+  public PhysicsWorld(AABB ground, float cellSize) {
+    this.ground = new AABB(ground);
+    grid = new SpatialGrid(ground, cellSize);
+  }
+
+  public void setGravity(float gravity) {
+    this.gravity = gravity;
+  }
+
+  public float getGravity() {
+    return gravity;
+  }
+
+  public float getGroundHeight() {
+    return ground.max.y;
+  }
+
+  /**
+   * Adds a static obstacle
+   *
+   * @param bounds World bounds of the obstacle
+   * @return Index of the collider
+   */
+  public int addCollider(AABB bounds) {
+    int index = colliders.size();
+    colliders.add(new AABB(bounds));
+    grid.insert(index, bounds);
+    return index;
+  }
+
+  /**
+   * Checks whether a body of the given radius can stand at a position
+   *
+   * @param x World X of the body centre
+   * @param z World Z of the body centre
+   * @param radius Half of the body width and depth
+   * @return true if the body is on the ground and clear of every collider
+   */
+  public boolean isFree(float x, float z, float radius) {
+    if (x - radius < ground.min.x || x + radius > ground.max.x
+        || z - radius < ground.min.z || z + radius > ground.max.z) {
+      return false;
+    }
+
+    int count = grid.query(x - radius, z - radius, x + radius, z + radius);
+    for (int i = 0; i < count; i++) {
+      AABB c = colliders.get(grid.getResult(i));
+      if (x - radius <= c.max.x && x + radius >= c.min.x
+          && z - radius <= c.max.z && z + radius >= c.min.z) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Picks a random free position on the ground. Candidates are the free grid cells far enough
+   * from the start, jittered inside their cell.
+   *
+   * @param r Random generator
+   * @param radius Half of the body width and depth
+   * @param fromX World X to move away from
+   * @param fromZ World Z to move away from
+   * @param minDistance Minimum distance from (fromX, fromZ)
+   * @return World position on the ground, or null if there is no free space
+   */
+  public Vec3 findFreeSpot(Random r, float radius, float fromX, float fromZ, float minDistance) {
+    List<Vec2> candidates = new ArrayList<>();
+    for (int row = 0; row < grid.getRows(); row++) {
+      for (int column = 0; column < grid.getColumns(); column++) {
+        Vec2 centre = grid.getCellCentre(column, row);
+        float dx = centre.x - fromX;
+        float dz = centre.y - fromZ;
+        if (dx * dx + dz * dz >= minDistance * minDistance && isFree(centre.x, centre.y, radius)) {
+          candidates.add(centre);
+        }
+      }
+    }
+
+    if (candidates.isEmpty()) {
+      return null;
+    }
+
+    Vec2 centre = candidates.get(r.nextInt(candidates.size()));
+    float jitter = grid.getCellSize() / 2;
+    float x = centre.x + (r.nextFloat() * 2 - 1) * jitter;
+    float z = centre.y + (r.nextFloat() * 2 - 1) * jitter;
+    if (!isFree(x, z, radius)) {
+      x = centre.x;
+      z = centre.y;
+    }
+    return new Vec3(x, getGroundHeight(), z);
+  }
+
+  /**
+   * Finds the lowest apex of a ballistic jump between two points on the ground that passes over
+   * every collider in the way. The arc height at a fraction s of the way is 4 * apex * s * (1 - s).
+   *
+   * @param from Start position
+   * @param to End position
+   * @param radius Half of the body width and depth
+   * @return The apex height above the ground, 0 if the way is clear
+   */
+  public float getClearance(Vec3 from, Vec3 to, float radius) {
+    final float EDGE = 0.05f; // The arc cannot clear anything at its ends
+    int count = grid.query(Math.min(from.x, to.x) - radius, Math.min(from.z, to.z) - radius,
+        Math.max(from.x, to.x) + radius, Math.max(from.z, to.z) + radius);
+
+    float apex = 0;
+    float[] hit = new float[2];
+    for (int i = 0; i < count; i++) {
+      AABB c = colliders.get(grid.getResult(i));
+      if (segmentHitsRect(from.x, from.z, to.x, to.z, c.min.x - radius, c.min.z - radius,
+          c.max.x + radius, c.max.z + radius, hit)) {
+        // The lowest point of the arc over the collider is the end furthest from the middle
+        float s = Math.abs(hit[0] - 0.5f) > Math.abs(hit[1] - 0.5f) ? hit[0] : hit[1];
+        s = Math.max(EDGE, Math.min(1 - EDGE, s));
+        apex = Math.max(apex, (c.max.y - getGroundHeight()) / (4 * s * (1 - s)));
+      }
+    }
+    return apex;
+  }
+
+  /**
+   * Calculates the launch velocity of a ballistic jump between two points on the ground
+   *
+   * @param from Start position
+   * @param to Landing position
+   * @param apex Highest point of the jump above the start
+   * @return The launch velocity
+   */
+  public Vec3 getLaunchVelocity(Vec3 from, Vec3 to, float apex) {
+    float up = (float) Math.sqrt(2 * gravity * apex);
+    float fall = Math.max(apex + from.y - to.y, 0);
+    float time = up / gravity + (float) Math.sqrt(2 * fall / gravity);
+    return new Vec3((to.x - from.x) / time, up, (to.z - from.z) / time);
+  }
+
+  /**
+   * Advances a body with semi-implicit Euler integration, then resolves its collisions
+   *
+   * @param body The body to move
+   * @param deltaTime Time step in seconds
+   */
+  public void step(RigidBody body, float deltaTime) {
+    body.velocity.y -= gravity * deltaTime;
+    body.position.x += body.velocity.x * deltaTime;
+    body.position.y += body.velocity.y * deltaTime;
+    body.position.z += body.velocity.z * deltaTime;
+
+    // Stay above the table and within its edges
+    float radius = body.radius;
+    body.position.x = Math.max(ground.min.x + radius,
+        Math.min(ground.max.x - radius, body.position.x));
+    body.position.z = Math.max(ground.min.z + radius,
+        Math.min(ground.max.z - radius, body.position.z));
+    body.grounded = body.position.y <= getGroundHeight();
+    if (body.grounded) {
+      body.position.y = getGroundHeight();
+      body.velocity.x = 0;
+      body.velocity.y = 0;
+      body.velocity.z = 0;
+    }
+
+    AABB bounds = body.getBounds();
+    int count = grid.query(bounds.min.x, bounds.min.z, bounds.max.x, bounds.max.z);
+    for (int i = 0; i < count; i++) {
+      AABB c = colliders.get(grid.getResult(i));
+      if (!c.overlaps(bounds)) {
+        continue;
+      }
+
+      // Push out along the horizontal axis with the least penetration
+      float pushX = body.position.x < (c.min.x + c.max.x) / 2
+          ? c.min.x - bounds.max.x : c.max.x - bounds.min.x;
+      float pushZ = body.position.z < (c.min.z + c.max.z) / 2
+          ? c.min.z - bounds.max.z : c.max.z - bounds.min.z;
+      if (Math.abs(pushX) < Math.abs(pushZ)) {
+        body.position.x += pushX;
+        body.velocity.x = 0;
+      } else {
+        body.position.z += pushZ;
+        body.velocity.z = 0;
+      }
+      bounds = body.getBounds();
+    }
+  }
+
+  /**
+   * Tests a 2D segment against a rectangle with the slab method
+   *
+   * @param hit Output, the fractions of the segment where it enters and leaves the rectangle
+   * @return true if the segment crosses the rectangle
+   */
+  private static boolean segmentHitsRect(float x0, float z0, float x1, float z1,
+      float minX, float minZ, float maxX, float maxZ, float[] hit) {
+    float tMin = 0, tMax = 1;
+    float[] origin = {x0, z0};
+    float[] delta = {x1 - x0, z1 - z0};
+    float[] lo = {minX, minZ};
+    float[] hi = {maxX, maxZ};
+    for (int axis = 0; axis < 2; axis++) {
+      if (Math.abs(delta[axis]) < 1e-6f) {
+        if (origin[axis] < lo[axis] || origin[axis] > hi[axis]) {
+          return false;
+        }
+      } else {
+        float t0 = (lo[axis] - origin[axis]) / delta[axis];
+        float t1 = (hi[axis] - origin[axis]) / delta[axis];
+        tMin = Math.max(tMin, Math.min(t0, t1));
+        tMax = Math.min(tMax, Math.max(t0, t1));
+        if (tMin > tMax) {
+          return false;
+        }
+      }
+    }
+    hit[0] = tMin;
+    hit[1] = tMax;
+    return true;
+  }
+}
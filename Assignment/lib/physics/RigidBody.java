@@ -0,0 +1,42 @@
+package lib.physics;
+
+import lib.gmaths.*;
+
+/**
+ * A body moved by the physics world: a box standing on its position, radius wide in X and Z
+ * and height tall. Bodies do not rotate, the animation takes care of that.
+ *
+ * @author Zer Jun Eng (zjeng1@sheffield.ac.uk)
+ */
+public class RigidBody {
+
+  public final Vec3 position;
+  public final Vec3 velocity = new Vec3();
+  public final float radius;
+  public final float height;
+
+  // Set when the body touches the ground, cleared when it moves up
+  boolean grounded;
+
+  /**
+   * Rigid body constructor
+   *
+   * @param position Centre of the bottom of the body
+   * @param radius Half of the width and depth
+   * @param height Height of the body
+   */
+  public RigidBody(Vec3 position, float radius, float height) {
+    this.position = new Vec3(position);
+    this.radius = radius;
+    this.height = height;
+  }
+
+  public boolean isGrounded() {
+    return grounded;
+  }
+
+  public AABB getBounds() {
+    return new AABB(new Vec3(position.x - radius, position.y, position.z - radius),
+        new Vec3(position.x + radius, position.y + height, position.z + radius));
+  }
+}
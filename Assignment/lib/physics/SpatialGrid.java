@@ -0,0 +1,143 @@
+package lib.physics;
+
+import java.util.*;
+import lib.gmaths.*;
+
+/**
+ * A uniform grid over the XZ plane for the broad phase. Every item is stored in each cell its
+ * bounds overlap, so a query only visits the items near the query area.
+ * Queries reuse an internal result buffer and are not thread safe.
+ *
+ * @author Zer Jun Eng (zjeng1@sheffield.ac.uk)
+ */
+public class SpatialGrid {
+
+  private final float minX;
+  private final float minZ;
+  private final float cellSize;
+  private final int columns;
+  private final int rows;
+
+  private final int[][] cellItems;
+  private final int[] cellCounts;
+
+  // Query results, and the query that last visited each item so none is returned twice
+  private int[] results = new int[16];
+  private int resultCount;
+  private int[] visited = new int[16];
+  private int queryStamp;
+
+  /**
+   * Spatial grid constructor
+   *
+   * @param area The area to cover, only X and Z are used
+   * @param cellSize Width and depth of a cell
+   */
+  public SpatialGrid(AABB area, float cellSize) {
+    this.minX = area.min.x;
+    this.minZ = area.min.z;
+    this.cellSize = cellSize;
+    columns = Math.max(1, (int) Math.ceil((area.max.x - area.min.x) / cellSize));
+    rows = Math.max(1, (int) Math.ceil((area.max.z - area.min.z) / cellSize));
+    cellItems = new int[columns * rows][];
+    cellCounts = new int[columns * rows];
+  }
+
+  public int getColumns() {
+    return columns;
+  }
+
+  public int getRows() {
+    return rows;
+  }
+
+  public float getCellSize() {
+    return cellSize;
+  }
+
+  /**
+   * Gets the centre of a cell
+   *
+   * @param column Cell column, along X
+   * @param row Cell row, along Z
+   * @return The X and Z of the centre, as a Vec2
+   */
+  public Vec2 getCellCentre(int column, int row) {
+    return new Vec2(minX + (column + 0.5f) * cellSize, minZ + (row + 0.5f) * cellSize);
+  }
+
+  /**
+   * Inserts an item in every cell its bounds overlap
+   *
+   * @param item Item index, chosen by the caller
+   * @param bounds The item bounds, only X and Z are used
+   */
+  public void insert(int item, AABB bounds) {
+    if (item >= visited.length) {
+      visited = Arrays.copyOf(visited, Math.max(item + 1, visited.length * 2));
+    }
+
+    int c0 = column(bounds.min.x), c1 = column(bounds.max.x);
+    int r0 = row(bounds.min.z), r1 = row(bounds.max.z);
+    for (int r = r0; r <= r1; r++) {
+      for (int c = c0; c <= c1; c++) {
+        int cell = r * columns + c;
+        if (cellItems[cell] == null) {
+          cellItems[cell] = new int[4];
+        } else if (cellCounts[cell] == cellItems[cell].length) {
+          cellItems[cell] = Arrays.copyOf(cellItems[cell], cellCounts[cell] * 2);
+        }
+        cellItems[cell][cellCounts[cell]++] = item;
+      }
+    }
+  }
+
+  /**
+   * Finds the items stored in the cells overlapping an area. The caller still has to test the
+   * exact bounds of each item.
+   *
+   * @param minX Minimum X of the area
+   * @param minZ Minimum Z of the area
+   * @param maxX Maximum X of the area
+   * @param maxZ Maximum Z of the area
+   * @return Number of items found, read them with getResult()
+   */
+  public int query(float minX, float minZ, float maxX, float maxZ) {
+    resultCount = 0;
+    if (++queryStamp == 0) {
+      Arrays.fill(visited, 0);
+      queryStamp = 1;
+    }
+
+    int c0 = column(minX), c1 = column(maxX);
+    int r0 = row(minZ), r1 = row(maxZ);
+    for (int r = r0; r <= r1; r++) {
+      for (int c = c0; c <= c1; c++) {
+        int cell = r * columns + c;
+        for (int i = 0; i < cellCounts[cell]; i++) {
+          int item = cellItems[cell][i];
+          if (visited[item] != queryStamp) {
+            visited[item] = queryStamp;
+            if (resultCount == results.length) {
+              results = Arrays.copyOf(results, resultCount * 2);
+            }
+            results[resultCount++] = item;
+          }
+        }
+      }
+    }
+    return resultCount;
+  }
+
+  public int getResult(int i) {
+    return results[i];
+  }
+
+  private int column(float x) {
+    return Math.max(0, Math.min(columns - 1, (int) Math.floor((x - minX) / cellSize)));
+  }
+
+  private int row(float z) {
+    return Math.max(0, Math.min(rows - 1, (int) Math.floor((z - minZ) / cellSize)));
+  }
+}
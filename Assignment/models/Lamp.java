@@ -1,9 +1,10 @@
 package models;
 
-import com.jogamp.opengl.*;
 import java.util.*;
 import lib.*;
+import lib.animation.*;
 import lib.gmaths.*;
+import lib.physics.*;
 
 /**
  * A class for rendering a lamp with spotlight and animation
@@ -13,12 +14,16 @@ import lib.gmaths.*;
 public class Lamp {
 
   private SGNode lampRoot;
-  private TransformNode rootTranslateX;
-  private TransformNode baseRotateY;
-  private TransformNode baseRotateZ;
-  private TransformNode lowerJointRotateZ;
-  private TransformNode upperJointRotateZ;
-  private TransformNode headJointRotateY, headJointRotateZ;
+  private TRSTransformNode rootTranslate;
+  private TRSTransformNode baseRotate;
+  private TRSTransformNode lowerJointRotate;
+  private TRSTransformNode upperJointRotate;
+  private TRSTransformNode headJointRotate;
+
+  // Reused every frame when applying a pose
+  private final Quat rotationY = new Quat();
+  private final Quat rotationZ = new Quat();
+  private final Quat rotation = new Quat();
 
   private final Model cube;
   private final Model cylinder;
@@ -27,6 +32,10 @@ public class Lamp {
   private final Model lampEar;
   private final Model lowerTail;
   private final Light lampLight;
+  private final PhysicsWorld world;
+  private final SGNode tableTop;  // The lamp stands on it
+  private final float tableWidth;
+  private final float tableDepth;
 
   private final float lampRadius;
   private final float baseHeight;
@@ -36,31 +45,70 @@ public class Lamp {
   private final float upperBodyHeight;
   private final float lampX;
   private final float lampY;
+  private final float lampClearance;
 
-  private double startTime;
+  // World position of the lamp pose origin, on the table top
+  private Vec3 origin;
 
-  // Animation controls
+  // Animation controls, set by the UI and consumed on the next frame
   public boolean clickedRandom = false;
-  public boolean isAnimatingRandom = false;
-
   public boolean clickedReset = false;
-  public boolean isAnimatingReset = false;
-
   public boolean clickedJump = false;
-  public boolean isAnimatingJump = false;
-  private boolean preparingToJump = false;
+  public boolean idleSway = false;
+
+  // Sway switched on as of the last update, the layer weight fades towards it
+  private boolean swaying = false;
+
+  // Pose channels, one per animated degree of freedom
+  private static final int POS_X = 0;
+  private static final int POS_Y = 1;
+  private static final int POS_Z = 2;
+  private static final int BASE_Y = 3;
+  private static final int BASE_Z = 4;
+  private static final int LOWER_Z = 5;
+  private static final int UPPER_Z = 6;
+  private static final int HEAD_Y = 7;
+  private static final int HEAD_Z = 8;
+  private static final int CHANNELS = 9;
+
+  // Time to blend into a new pose, sin(time) reaches 1 at PI / 2
+  private static final float POSE_FADE = (float) (Math.PI / 2);
+
+  // Idle head sway, added on top of the current animation
+  private static final int SWAY_LAYER = 0;
+  private static final float SWAY_FADE = 1;
+  private static final float SWAY_PERIOD = 4;
+  private static final float SWAY_ANGLE_Y = 12;
+  private static final float SWAY_ANGLE_Z = 5;
+
+  private AnimationGraph animation;
+  private AnimationClip swayClip;
+
+  // A jump of unit length, apex and joint amplitudes, retargeted to every jump
+  private static final float UNIT_JUMP_TOLERANCE = 0.001f;
+  private AnimationClip unitJumpClip;
+
+  private enum JumpPhase {NONE, COMPRESS, FLIGHT}
+
+  private JumpPhase jumpPhase = JumpPhase.NONE;
   private float jumpHeight;
-  private float jumpSpeed = 1;
+  private final float[] jumpStart = new float[CHANNELS];
+
+  // Simulated flight, where in pose space and when the lamp lands
+  private static final float FLIGHT_STEP = 1 / ClipBaker.DEFAULT_FRAME_RATE;
+  private static final float MAX_FLIGHT_TIME = 5;
+  private static final float MIN_JUMP_DISTANCE = 2;
+  private static final float CLEARANCE_MARGIN = 0.3f;
+  private static final float MAX_JUMP_HEIGHT = 4;
+  private float landingX, landingZ;
+  private float flightDuration;
 
   // Angle and position
   private final int DEFAULT_BASE_ANGLE_Y = -20;
-  private float initialBaseAngle = DEFAULT_BASE_ANGLE_Y;
-  private float targetBaseAngle;
   private float baseSwingAngle;
-  private float initialPosX;
+  private float targetBaseAngle;
   private float targetPosX;
   private float targetPosZ;
-  private float initialPosZ;
   private float distance;
   private float maxDistance;
 
@@ -68,29 +116,21 @@ public class Lamp {
   private final int DEFAULT_LOWER_JOINT_ANGLE_Z = 10;
   private final int MIN_LOWER_JOINT_ANGLE_Z = -20;
   private final int MAX_LOWER_JOINT_ANGLE_Z = 60;
-  private float initialLowerJointAngle = DEFAULT_LOWER_JOINT_ANGLE_Z;
-  private float targetLowerJointAngle;
 
   // Upper joint
   private final int DEFAULT_UPPER_JOINT_ANGLE_Z = -60;
   private final int MIN_UPPER_JOINT_ANGLE_Z = -120;
   private final int MAX_UPPER_JOINT_ANGLE_Z = 0;
-  private float initialUpperJointAngle = DEFAULT_UPPER_JOINT_ANGLE_Z;
-  private float targetUpperJointAngle;
 
   // Head joint Y
   private final int DEFAULT_HEAD_JOINT_ANGLE_Y = 0;
   private final int MIN_HEAD_JOINT_ANGLE_Y = -80;
   private final int MAX_HEAD_JOINT_ANGLE_Y = 80;
-  private float initialHeadJointAngleY = DEFAULT_HEAD_JOINT_ANGLE_Y;
-  private float targetHeadJointAngleY;
 
   // Head joint Z
   private final int DEFAULT_HEAD_JOINT_ANGLE_Z = -10;
   private final int MIN_HEAD_JOINT_ANGLE_Z = -30;
   private final int MAX_HEAD_JOINT_ANGLE_Z = 50;
-  private float initialHeadJointAngleZ = DEFAULT_HEAD_JOINT_ANGLE_Z;
-  private float targetHeadJointAngleZ;
 
   private final Random r = new Random();
 
@@ -104,9 +144,14 @@ public class Lamp {
    * @param lampLight Light bulb
    * @param lampEar Sphere shaped ear
    * @param lowerTail Cube shaped tail
+   * @param world Table top with the accessories, for jumping
+   * @param tableTop Node of the table top the lamp is added to, at its centre
+   * @param tableSize The table dimension in width, height, depth
+   * @param topThickness Thickness of the table top
    */
   public Lamp(Model cube, Model cylinder, Model sphere, Model frustumCone, Light lampLight,
-      Model lampEar, Model lowerTail) {
+      Model lampEar, Model lowerTail, PhysicsWorld world, SGNode tableTop, Vec3 tableSize,
+      float topThickness) {
     this.cube = cube;
     this.cylinder = cylinder;
     this.sphere = sphere;
@@ -114,157 +159,245 @@ public class Lamp {
     this.lampLight = lampLight;
     this.lampEar = lampEar;
     this.lowerTail = lowerTail;
+    this.world = world;
+    this.tableTop = tableTop;
+    tableWidth = tableSize.x;
+    tableDepth = tableSize.z;
 
-    lampRadius = Table.tableWidth * 0.1f;
-    baseHeight = Table.tableHeight * 0.06f;
+    lampRadius = tableWidth * 0.1f;
+    baseHeight = tableSize.y * 0.06f;
     jointRadius = lampRadius * 0.2f;
     bodyRadius = jointRadius / 2;
-    lowerBodyHeight = Table.tableHeight * 0.4f;
-    upperBodyHeight = Table.tableHeight * 0.37f;
+    lowerBodyHeight = tableSize.y * 0.4f;
+    upperBodyHeight = tableSize.y * 0.37f;
 
-    lampX = -Table.tableWidth / 2 + 2;
-    lampY = (Table.FRAME_DIM + baseHeight / 2) / 2;
+    lampX = -tableWidth / 2 + 2;
+    lampY = (topThickness + baseHeight / 2) / 2;
+    lampClearance = lampRadius / 1.5f;
   }
 
   /**
    * Initialises the scene graph
    */
   public void initialise() {
-    initialPosX = lampX;
-
     lampRoot = new NameNode("Lamp root");
     TransformNode rootTranslateY = new TransformNode("Root translate Y",
         Mat4Transform.translate(0, lampY, 0));
 
-    rootTranslateX = new TransformNode("Root translate X",
-        Mat4Transform.translate(lampX, 0, 0));
+    rootTranslate = new TRSTransformNode("Root translate");
+    rootTranslate.setTranslation(lampX, 0, 0);
 
-    Table.tableTop.addChild(lampRoot);
+    tableTop.addChild(lampRoot);
       lampRoot.addChild(rootTranslateY);
-        rootTranslateY.addChild(rootTranslateX);
-          createBase(rootTranslateX);
+        rootTranslateY.addChild(rootTranslate);
+          createBase(rootTranslate);
 
-    Table.tableRoot.update();
+    tableTop.update();
     lampRoot.update();
+    origin = lampRoot.getWorldTransform().getTranslateVec();
+
+    float[] pose = new float[CHANNELS];
+    pose[POS_X] = lampX;
+    pose[BASE_Y] = DEFAULT_BASE_ANGLE_Y;
+    pose[LOWER_Z] = DEFAULT_LOWER_JOINT_ANGLE_Z;
+    pose[UPPER_Z] = DEFAULT_UPPER_JOINT_ANGLE_Z;
+    pose[HEAD_Y] = DEFAULT_HEAD_JOINT_ANGLE_Y;
+    pose[HEAD_Z] = DEFAULT_HEAD_JOINT_ANGLE_Z;
+    animation = new AnimationGraph(pose);
+
+    swayClip = ClipBaker.bake(this::sampleSway, CHANNELS, SWAY_PERIOD, true);
+    animation.setLayer(SWAY_LAYER, swayClip);
+    unitJumpClip = ClipBaker.bake(this::sampleUnitJump, CHANNELS, 1,
+        ClipBaker.DEFAULT_FRAME_RATE, UNIT_JUMP_TOLERANCE, false);
+  }
+
+  /**
+   * Seeds the random poses and jump targets, for the animations of a run to be repeated
+   *
+   * @param seed The seed
+   */
+  public void setSeed(long seed) {
+    r.setSeed(seed);
   }
 
   /**
-   * Renders a lamp
+   * Advances the animation and updates the scene graph, including the spotlight
    *
-   * @param gl OpenGL object, for rendering
+   * @param deltaTime Seconds since the last update
    */
-  public void render(GL3 gl) {
-    if (clickedRandom || isAnimatingRandom) {
-      if (clickedRandom) {
-        calculateRandomPose();
-      } else {
-        float elapsedTime = (float) Math.sin(getSeconds() - startTime);
-        changePose(elapsedTime);
-      }
-    } else if (clickedReset || isAnimatingReset) {
-      if (clickedReset) {
-        calculateResetPose();
-      } else {
-        float elapsedTime = (float) Math.sin(getSeconds() - startTime);
-        changePose(elapsedTime);
-      }
-    } else if (clickedJump || isAnimatingJump) {
-      if (clickedJump) {
-        calculateTarget();
-        calculateJump();
-      } else {
-        float elapsedTime = (float) (getSeconds() - startTime);
-
-        if (preparingToJump) {
-          changePose((float) Math.sin(elapsedTime));
-        } else {
-          jump(elapsedTime);
-        }
-      }
+  public void update(float deltaTime) {
+    // A new request interrupts whatever is playing, the graph cross-fades from the current pose
+    if (clickedJump) {
+      clickedJump = false;
+      clickedRandom = false;
+      clickedReset = false;
+      startJump();
+    } else if (clickedRandom) {
+      clickedRandom = false;
+      jumpPhase = JumpPhase.NONE;
+      animation.play(AnimationClip.pose(calculateRandomPose()), POSE_FADE);
+    } else if (clickedReset) {
+      clickedReset = false;
+      jumpPhase = JumpPhase.NONE;
+      animation.play(AnimationClip.pose(calculateResetPose()), POSE_FADE);
+    }
+
+    // Fade the sway only when it is switched, the fade speed is set from the weight left
+    if (idleSway != swaying) {
+      swaying = idleSway;
+      animation.setLayerWeight(SWAY_LAYER, swaying ? 1 : 0, SWAY_FADE);
     }
+    animation.update(deltaTime);
+    advanceJump();
+    applyPose(animation.getPose());
 
     lampRoot.update();
-    lampRoot.draw(gl);
+  }
+
+  /**
+   * Gets the root of the scene graph, for scene queries
+   *
+   * @return The root node
+   */
+  public SGNode getRoot() {
+    return lampRoot;
   }
 
   /*------------------ ANIMATION -----------------------*/
   /**
    * Calculates the random rotation angles of the joints, while maintaining the lamp balance
+   *
+   * @return The random pose, grounded at the current position
    */
-  private void calculateRandomPose() {
-    targetBaseAngle = 0;
+  private float[] calculateRandomPose() {
+    float[] current = animation.getBasePose();
+    float[] pose = groundedPose(current);
 
     /* Lower joint */
-    float min = MIN_LOWER_JOINT_ANGLE_Z - initialLowerJointAngle;
-    float max = MAX_LOWER_JOINT_ANGLE_Z - initialLowerJointAngle;
-    targetLowerJointAngle = min + r.nextFloat() * (max - min);
-
-    float finalLowerJointAngle = initialLowerJointAngle + targetLowerJointAngle;
+    pose[LOWER_Z] = MIN_LOWER_JOINT_ANGLE_Z
+        + r.nextFloat() * (MAX_LOWER_JOINT_ANGLE_Z - MIN_LOWER_JOINT_ANGLE_Z);
 
     /* Upper joint, try to maintain the balance of the lamp */
-    if (finalLowerJointAngle > 0) {
-      max = MIN_UPPER_JOINT_ANGLE_Z - initialUpperJointAngle;
-      min = MIN_UPPER_JOINT_ANGLE_Z - initialUpperJointAngle + finalLowerJointAngle / 2;
+    float min, max;
+    if (pose[LOWER_Z] > 0) {
+      max = MIN_UPPER_JOINT_ANGLE_Z - current[UPPER_Z];
+      min = MIN_UPPER_JOINT_ANGLE_Z - current[UPPER_Z] + pose[LOWER_Z] / 2;
     } else {
-      max = MAX_UPPER_JOINT_ANGLE_Z - initialUpperJointAngle;
-      min = initialLowerJointAngle + targetLowerJointAngle;
+      max = MAX_UPPER_JOINT_ANGLE_Z - current[UPPER_Z];
+      min = pose[LOWER_Z];
     }
 
-    targetUpperJointAngle = min + r.nextFloat() * (max - min);
+    pose[UPPER_Z] = current[UPPER_Z] + min + r.nextFloat() * (max - min);
 
     /* Head joint */
-    max = MAX_HEAD_JOINT_ANGLE_Y - initialHeadJointAngleY;
-    min = MIN_HEAD_JOINT_ANGLE_Y - initialHeadJointAngleY;
-    targetHeadJointAngleY = min + r.nextFloat() * (max - min);
-
-    max = MAX_HEAD_JOINT_ANGLE_Z - initialHeadJointAngleZ;
-    min = MIN_HEAD_JOINT_ANGLE_Z - initialHeadJointAngleZ;
-    targetHeadJointAngleZ = min + r.nextFloat() * (max - min);
+    pose[HEAD_Y] = MIN_HEAD_JOINT_ANGLE_Y
+        + r.nextFloat() * (MAX_HEAD_JOINT_ANGLE_Y - MIN_HEAD_JOINT_ANGLE_Y);
+    pose[HEAD_Z] = MIN_HEAD_JOINT_ANGLE_Z
+        + r.nextFloat() * (MAX_HEAD_JOINT_ANGLE_Z - MIN_HEAD_JOINT_ANGLE_Z);
 
-    clickedRandom = false;
-    isAnimatingRandom = true;
-    startTime = getSeconds();
+    return pose;
   }
 
   /**
    * Calculate the reset pose
+   *
+   * @return The default joint angles, grounded at the current position
    */
-  private void calculateResetPose() {
-    targetBaseAngle = 0;
-    targetLowerJointAngle = DEFAULT_LOWER_JOINT_ANGLE_Z - initialLowerJointAngle;
-    targetUpperJointAngle = DEFAULT_UPPER_JOINT_ANGLE_Z - initialUpperJointAngle;
-    targetHeadJointAngleY = DEFAULT_HEAD_JOINT_ANGLE_Y - initialHeadJointAngleY;
-    targetHeadJointAngleZ = DEFAULT_HEAD_JOINT_ANGLE_Z - initialHeadJointAngleZ;
-
-    clickedReset = false;
-    isAnimatingReset = true;
-    startTime = getSeconds();
+  private float[] calculateResetPose() {
+    float[] pose = groundedPose(animation.getBasePose());
+    pose[LOWER_Z] = DEFAULT_LOWER_JOINT_ANGLE_Z;
+    pose[UPPER_Z] = DEFAULT_UPPER_JOINT_ANGLE_Z;
+    pose[HEAD_Y] = DEFAULT_HEAD_JOINT_ANGLE_Y;
+    pose[HEAD_Z] = DEFAULT_HEAD_JOINT_ANGLE_Z;
+    return pose;
   }
 
   /**
-   * Calculate the random position, and base angle to rotate
+   * Copies a pose with the lamp standing on the table, so an interrupted jump lands
+   *
+   * @param current The pose to copy
+   * @return The copy, with no height and no base swing
    */
-  private void calculateTarget() {
-    /* Random position */
-    final float BORDER_X = lampRadius / 1.5f;
-    final float MIN_POS_X = -Table.tableWidth / 2 + BORDER_X;
-    final float MAX_POS_X = Table.tableWidth / 2 - BORDER_X;
-
-    // Prevent intersecting with table objects and wall
-    final float BORDER_Z = Math.abs(PictureFrame.holderZ) + lampRadius / 2;
-    final float MIN_POS_Z = Table.tableDepth / 2 - BORDER_X;
-    final float MAX_POS_Z = -Table.tableDepth / 2 + BORDER_Z;
-    maxDistance = (float) Math.sqrt(Math.pow(MAX_POS_X - MIN_POS_X, 2) + Math.pow(MAX_POS_Z - MIN_POS_Z, 2));
-
-    // Do not make very very small jump
-    float deltaX, deltaZ;
-    do {
-      targetPosX = MIN_POS_X + r.nextFloat() * (MAX_POS_X - MIN_POS_X);
-      targetPosZ = MIN_POS_Z + r.nextFloat() * (MAX_POS_Z - MIN_POS_Z);
-      deltaX = targetPosX - initialPosX;
-      deltaZ = targetPosZ - initialPosZ;
-      distance = (float) Math.sqrt(deltaX * deltaX + deltaZ * deltaZ);
-    } while (distance < 2);
+  private float[] groundedPose(float[] current) {
+    float[] pose = current.clone();
+    pose[POS_Y] = 0;
+    pose[BASE_Z] = 0;
+    return pose;
+  }
+
+  /**
+   * Starts a jump from the current pose: the lamp turns and compresses, then jumps
+   */
+  private void startJump() {
+    float[] pose = groundedPose(animation.getBasePose());
+    if (!calculateTarget(pose)) {
+      // Nowhere to land, stand still
+      jumpPhase = JumpPhase.NONE;
+      animation.play(AnimationClip.pose(calculateResetPose()), POSE_FADE);
+      return;
+    }
+    calculateJump(pose);
+
+    /* Compress pose */
+    final float COMPRESS_CONSTANT = distance / maxDistance;
+    pose[BASE_Y] += targetBaseAngle;
+    pose[LOWER_Z] = DEFAULT_LOWER_JOINT_ANGLE_Z
+        + (MAX_LOWER_JOINT_ANGLE_Z - DEFAULT_LOWER_JOINT_ANGLE_Z) * COMPRESS_CONSTANT;
+    pose[UPPER_Z] = DEFAULT_UPPER_JOINT_ANGLE_Z
+        + (MIN_UPPER_JOINT_ANGLE_Z - DEFAULT_UPPER_JOINT_ANGLE_Z) * COMPRESS_CONSTANT;
+    pose[HEAD_Y] = DEFAULT_HEAD_JOINT_ANGLE_Y;
+    pose[HEAD_Z] = DEFAULT_HEAD_JOINT_ANGLE_Z
+        + (MAX_HEAD_JOINT_ANGLE_Z - DEFAULT_HEAD_JOINT_ANGLE_Z) / 2f;
+
+    System.arraycopy(pose, 0, jumpStart, 0, CHANNELS);
+    animation.play(AnimationClip.pose(pose), POSE_FADE);
+    jumpPhase = JumpPhase.COMPRESS;
+  }
+
+  /**
+   * Moves the jump to its next phase when the current one has finished
+   */
+  private void advanceJump() {
+    if (jumpPhase == JumpPhase.NONE || !animation.isFinished()) {
+      return;
+    }
+
+    if (jumpPhase == JumpPhase.COMPRESS) {
+      // Simulate the flight once and retarget the jump baked at load, every frame of it is then
+      // a table lookup
+      simulateFlight();
+      animation.play(retargetJump(), 0);
+      jumpPhase = JumpPhase.FLIGHT;
+    } else {
+      animation.play(AnimationClip.pose(calculateResetPose()), POSE_FADE);
+      jumpPhase = JumpPhase.NONE;
+    }
+  }
+
+  /**
+   * Chooses a free landing spot on the table, and the base angle to rotate
+   *
+   * @param pose The pose the lamp jumps from
+   * @return false if there is no free space to land on
+   */
+  private boolean calculateTarget(float[] pose) {
+    final float initialPosX = pose[POS_X];
+    final float initialPosZ = pose[POS_Z];
+    final float initialBaseAngle = pose[BASE_Y];
+    maxDistance = (float) Math.sqrt(Math.pow(tableWidth, 2) + Math.pow(tableDepth, 2));
+
+    // Landing spots clear of the table edges and accessories, do not make very very small jump
+    Vec3 target = world.findFreeSpot(r, lampClearance, origin.x + initialPosX,
+        origin.z + initialPosZ, MIN_JUMP_DISTANCE);
+    if (target == null) {
+      return false;
+    }
+
+    targetPosX = target.x - origin.x;
+    targetPosZ = target.z - origin.z;
+    float deltaX = targetPosX - initialPosX;
+    float deltaZ = targetPosZ - initialPosZ;
+    distance = (float) Math.sqrt(deltaX * deltaX + deltaZ * deltaZ);
 
     /* Base angle to rotate */
     // Acute angle between the initial position and the target position
@@ -285,114 +418,131 @@ public class Lamp {
     targetBaseAngle %= 360;
     if (targetBaseAngle > 180) targetBaseAngle -= 360;
     if (targetBaseAngle < -180) targetBaseAngle += 360;
+    return true;
   }
 
   /**
-   * Calculate the jump height, jump speed, and compression angle
+   * Calculate the jump height, high enough to clear the accessories on the way, and base swing
+   *
+   * @param pose The pose the lamp jumps from
    */
-  private void calculateJump() {
-    /* Jump height and speed */
+  private void calculateJump(float[] pose) {
+    /* Jump height */
     final float HEIGHT_CONSTANT = 0.21f;
-    jumpHeight = HEIGHT_CONSTANT * distance + 0.5f;
-
-    final float SPEED_CONSTANT = 2.8f;
-    jumpSpeed = SPEED_CONSTANT / jumpHeight;
+    Vec3 from = new Vec3(origin.x + pose[POS_X], world.getGroundHeight(), origin.z + pose[POS_Z]);
+    Vec3 to = new Vec3(origin.x + targetPosX, world.getGroundHeight(), origin.z + targetPosZ);
+    float apex = world.getClearance(from, to, lampClearance);
+    jumpHeight = Math.max(HEIGHT_CONSTANT * distance + 0.5f, apex + CLEARANCE_MARGIN);
+    jumpHeight = Math.min(jumpHeight, MAX_JUMP_HEIGHT); // Too close to clear, bump into it instead
 
-    /* Angle to compress */
+    /* Angle to swing */
     final float BASE_CONSTANT = 45;
     baseSwingAngle = BASE_CONSTANT * (float) Math.log(distance);
+  }
 
-    final float COMPRESS_CONSTANT = distance / maxDistance;
-    targetLowerJointAngle = (MAX_LOWER_JOINT_ANGLE_Z - initialLowerJointAngle) * COMPRESS_CONSTANT;
-    targetUpperJointAngle = (MIN_UPPER_JOINT_ANGLE_Z - initialUpperJointAngle) * COMPRESS_CONSTANT;
-    targetHeadJointAngleY = DEFAULT_HEAD_JOINT_ANGLE_Y - initialHeadJointAngleY;
-    targetHeadJointAngleZ = (MAX_HEAD_JOINT_ANGLE_Z - initialHeadJointAngleZ) / 2;
-
-    clickedJump = false;
-    isAnimatingJump = true;
-    preparingToJump = true;
-    startTime = getSeconds();
+  /**
+   * Simulates the ballistic flight from the jump start to the target, bumping into the
+   * accessories on the way, to find where and when the lamp lands
+   */
+  private void simulateFlight() {
+    final float GROUND = world.getGroundHeight();
+    Vec3 from = new Vec3(origin.x + jumpStart[POS_X], GROUND, origin.z + jumpStart[POS_Z]);
+    Vec3 to = new Vec3(origin.x + targetPosX, GROUND, origin.z + targetPosZ);
+
+    RigidBody body = new RigidBody(from, lampClearance, baseHeight);
+    Vec3 velocity = world.getLaunchVelocity(from, to, jumpHeight);
+    body.velocity.x = velocity.x;
+    body.velocity.y = velocity.y;
+    body.velocity.z = velocity.z;
+
+    int maxSteps = Math.round(MAX_FLIGHT_TIME / FLIGHT_STEP);
+    int steps = 0;
+    do {
+      world.step(body, FLIGHT_STEP);
+      steps++;
+    } while (!body.isGrounded() && steps < maxSteps);
+
+    landingX = body.position.x - origin.x;
+    landingZ = body.position.z - origin.z;
+    flightDuration = steps * FLIGHT_STEP;
   }
 
   /**
-   * The lamp will change its current pose
+   * Retargets the unit jump to the simulated flight: from the jump start to the landing, as high
+   * as the jump and as long as the flight, with the swing and stretch of the jump
    *
-   * @param time The elapsed time
+   * @return The jump clip
    */
-  private void changePose(float time) {
-    float rotateAngleBY = initialBaseAngle + targetBaseAngle * time;            // Base Angle Y
-    float rotateAngleL = initialLowerJointAngle + targetLowerJointAngle * time; // Lower joint
-    float rotateAngleU = initialUpperJointAngle + targetUpperJointAngle * time; // Upper joint
-    float rotateAngleHY = initialHeadJointAngleY + targetHeadJointAngleY * time; // Head joint Y
-    float rotateANgleHZ = initialHeadJointAngleZ + targetHeadJointAngleZ * time; // Head joint Z
-
-    float finalBaseAngleY = initialBaseAngle + targetBaseAngle - rotateAngleBY;
-    float finalAngleL = initialLowerJointAngle + targetLowerJointAngle - rotateAngleL;
-    float finalAngleU = initialUpperJointAngle + targetUpperJointAngle - rotateAngleU;
-    float finalAngleHY = initialHeadJointAngleY + targetHeadJointAngleY - rotateAngleHY;
-    float finalAngleHZ = initialHeadJointAngleZ + targetHeadJointAngleZ - rotateANgleHZ;
-
-    final float THRESHOLD = 0.1f;
-
-    if (Math.abs(finalBaseAngleY) < THRESHOLD && Math.abs(finalAngleL) < THRESHOLD &&
-        Math.abs(finalAngleU) < THRESHOLD && Math.abs(finalAngleHY) < THRESHOLD &&
-        Math.abs(finalAngleHZ) < THRESHOLD) {
-      // Update the initial angles
-      initialBaseAngle += targetBaseAngle;
-      initialLowerJointAngle += targetLowerJointAngle;
-      initialUpperJointAngle += targetUpperJointAngle;
-      initialHeadJointAngleY += targetHeadJointAngleY;
-      initialHeadJointAngleZ += targetHeadJointAngleZ;
-
-      // Random, reset and compress are sharing this method
-      isAnimatingRandom = false;
-      isAnimatingReset = false;
-      preparingToJump = false;
-      startTime = getSeconds();
-    } else {
-      baseRotateY.setTransform(Mat4Transform.rotateAroundY(rotateAngleBY));
-      lowerJointRotateZ.setTransform(Mat4Transform.rotateAroundZ(rotateAngleL));
-      upperJointRotateZ.setTransform(Mat4Transform.rotateAroundZ(rotateAngleU));
-      headJointRotateY.setTransform(Mat4Transform.rotateAroundY(rotateAngleHY));
-      headJointRotateZ.setTransform(Mat4Transform.rotateAroundZ(rotateANgleHZ));
-    }
+  private AnimationClip retargetJump() {
+    float[] scale = new float[CHANNELS];
+    scale[POS_X] = landingX - jumpStart[POS_X];
+    scale[POS_Y] = jumpHeight;
+    scale[POS_Z] = landingZ - jumpStart[POS_Z];
+    scale[BASE_Z] = baseSwingAngle;
+
+    final float STRETCH = (jumpStart[LOWER_Z] - DEFAULT_LOWER_JOINT_ANGLE_Z) * 3.5f;
+    scale[LOWER_Z] = -STRETCH;
+    scale[UPPER_Z] = STRETCH;
+    return unitJumpClip.retarget(flightDuration, scale, jumpStart);
   }
 
   /**
-   * The lamp will jump to random position, height and speed are affected by the distance
+   * Sets the scene graph transforms from a pose
    *
-   * @param time The elapsed time
+   * @param pose The pose, indexed by the channel constants
    */
-  private void jump(float time) {
-    time = (float) Math.sin(time * jumpSpeed); // Speed is affected by height and distance
-
-    float translateBPosX = initialPosX + (targetPosX - initialPosX) * time; // Base Pos X
-    float translateBPosY = bezierCurve(jumpHeight, jumpHeight, time); // Base Pos Y
-    float translateBPosZ = initialPosZ + (targetPosZ - initialPosZ) * time; // Base Pos Z
-
-    // Fine tuning the jumping animation
-    float rotateAngleBZ = bezierCurve(-baseSwingAngle / 1.2f, baseSwingAngle, time); // Base swing
+  private void applyPose(float[] pose) {
+    rootTranslate.setTranslation(pose[POS_X], pose[POS_Y], pose[POS_Z]);
+    baseRotate.setRotation(rotateYZ(pose[BASE_Y], pose[BASE_Z]));
+    lowerJointRotate.setRotation(rotation.setAxisAngle(0, 0, 1, pose[LOWER_Z]));
+    upperJointRotate.setRotation(rotation.setAxisAngle(0, 0, 1, pose[UPPER_Z]));
+    headJointRotate.setRotation(rotateYZ(pose[HEAD_Y], pose[HEAD_Z]));
+  }
 
-    final float STRETCH = (initialLowerJointAngle - DEFAULT_LOWER_JOINT_ANGLE_Z) * 3.5f;
-    float rotateAngleL = initialLowerJointAngle - bezierCurve(STRETCH / 4, -STRETCH / 8, time);
-    float rotateAngleU = initialUpperJointAngle + bezierCurve(STRETCH, -STRETCH / 2, time); // Upper joint stretch and compress
+  /**
+   * Combines a Y rotation followed by a Z rotation into a single quaternion
+   *
+   * @param angleY Rotation around Y in degrees
+   * @param angleZ Rotation around Z in degrees
+   * @return The combined rotation, reused by the next call
+   */
+  private Quat rotateYZ(float angleY, float angleZ) {
+    rotationY.setAxisAngle(0, 1, 0, angleY);
+    rotationZ.setAxisAngle(0, 0, 1, angleZ);
+    return Quat.multiply(rotationY, rotationZ, rotation);
+  }
 
-    float finalBasePosX = targetPosX - translateBPosX;
-    float finalBasePosZ = targetPosZ - translateBPosZ;
+  /**
+   * The jump of unit length, apex and amplitudes sampled by the baker, see retargetJump(). The
+   * position moves from 0 to 1 along a ballistic arc, and the joints swing, stretch and compress
+   * over the flight.
+   *
+   * @param time The elapsed fraction of the flight
+   * @param out The pose offsets at the given time
+   */
+  private void sampleUnitJump(float time, float[] out) {
+    Arrays.fill(out, 0);
+    out[POS_X] = time;
+    out[POS_Y] = 4 * time * (1 - time);
+    out[POS_Z] = time;
 
-    final float THRESHOLD = 0.005f;
+    // Fine tuning the jumping animation
+    out[BASE_Z] = bezierCurve(-1 / 1.2f, 1, time);       // Base swing
+    out[LOWER_Z] = bezierCurve(1 / 4f, -1 / 8f, time);   // Lower joint stretch and compress
+    out[UPPER_Z] = bezierCurve(1, -1 / 2f, time);        // Upper joint stretch and compress
+  }
 
-    if (Math.abs(finalBasePosX) < THRESHOLD && Math.abs(finalBasePosZ) < THRESHOLD) {
-      initialPosX = targetPosX;
-      initialPosZ = targetPosZ;
-      clickedReset = true;
-      isAnimatingJump = false;
-    } else {
-      rootTranslateX.setTransform(Mat4Transform.translate(translateBPosX, translateBPosY, translateBPosZ));
-      baseRotateZ.setTransform(Mat4Transform.rotateAroundZ(rotateAngleBZ));
-      lowerJointRotateZ.setTransform(Mat4Transform.rotateAroundZ(rotateAngleL));
-      upperJointRotateZ.setTransform(Mat4Transform.rotateAroundZ(rotateAngleU));
-    }
+  /**
+   * The looping idle sway sampled by the baker, only the head moves
+   *
+   * @param time The elapsed time
+   * @param out The sway offsets at the given time
+   */
+  private void sampleSway(float time, float[] out) {
+    double phase = 2 * Math.PI * time / SWAY_PERIOD;
+    Arrays.fill(out, 0);
+    out[HEAD_Y] = SWAY_ANGLE_Y * (float) Math.sin(phase);
+    out[HEAD_Z] = SWAY_ANGLE_Z * (float) Math.sin(2 * phase);
   }
 
   /**
@@ -421,11 +571,9 @@ public class Lamp {
     float outerBaseHeight = baseHeight / 3.5f;
     float outerBasePosY = -baseHeight / 4 + outerBaseHeight / 4;
 
-    baseRotateY = new TransformNode("Base rotate Y",
-        Mat4Transform.rotateAroundY(DEFAULT_BASE_ANGLE_Y));
-
-    // For jumping use
-    baseRotateZ = new TransformNode("Base rotate Z", Mat4Transform.rotateAroundZ(0));
+    // Turning, and swinging around Z when jumping
+    baseRotate = new TRSTransformNode("Base rotate");
+    baseRotate.setRotation(rotateYZ(DEFAULT_BASE_ANGLE_Y, 0));
 
     NameNode innerBase = new NameNode("Inner base");
     Mat4 m = Mat4Transform.scale(lampRadius, baseHeight, lampRadius);
@@ -438,11 +586,10 @@ public class Lamp {
     TransformNode outerBaseTransform = new TransformNode("Outer base transform", m);
     ModelNode outerBaseModel = new ModelNode("Outer base model", cylinder);
 
-    parent.addChild(baseRotateY);
-      baseRotateY.addChild(baseRotateZ);
-        baseRotateZ.addAllChildren(innerBase, innerBaseTransform, innerBaseModel);
-          createLowerBody(innerBase);
-        baseRotateZ.addAllChildren(outerBase, outerBaseTransform, outerBaseModel);
+    parent.addChild(baseRotate);
+      baseRotate.addAllChildren(innerBase, innerBaseTransform, innerBaseModel);
+        createLowerBody(innerBase);
+      baseRotate.addAllChildren(outerBase, outerBaseTransform, outerBaseModel);
   }
 
   /**
@@ -456,8 +603,8 @@ public class Lamp {
     TransformNode lowerJointTranslate = new TransformNode("Lower joint translate",
         Mat4Transform.translate(0, POS_Y, 0));
 
-    lowerJointRotateZ = new TransformNode("Lower joint rotate",
-        Mat4Transform.rotateAroundZ(DEFAULT_LOWER_JOINT_ANGLE_Z));
+    lowerJointRotate = new TRSTransformNode("Lower joint rotate");
+    lowerJointRotate.setRotation(Quat.rotateAroundZ(DEFAULT_LOWER_JOINT_ANGLE_Z));
 
     NameNode lowerJoint = new NameNode("Base joint");
     Mat4 m = Mat4Transform.scale(jointRadius, jointRadius, jointRadius);
@@ -473,8 +620,8 @@ public class Lamp {
     ModelNode lowerBodyModel = new ModelNode("Lower body model", cylinder);
 
     parent.addChild(lowerJointTranslate);
-      lowerJointTranslate.addChild(lowerJointRotateZ);
-        lowerJointRotateZ.addAllChildren(lowerJoint, lowerJointTransform, lowerJointModel);
+      lowerJointTranslate.addChild(lowerJointRotate);
+        lowerJointRotate.addAllChildren(lowerJoint, lowerJointTransform, lowerJointModel);
           lowerJoint.addChild(lowerBodyTranslate);
             lowerBodyTranslate.addAllChildren(lowerBody, lowerBodyTransform, lowerBodyModel);
               createUpperBody(lowerBody);
@@ -489,8 +636,8 @@ public class Lamp {
     TransformNode upperJointTranslate = new TransformNode("Upper joint translate",
         Mat4Transform.translate(0, lowerBodyHeight / 4, 0));
 
-    upperJointRotateZ = new TransformNode("Upper joint rotate",
-        Mat4Transform.rotateAroundZ(DEFAULT_UPPER_JOINT_ANGLE_Z));
+    upperJointRotate = new TRSTransformNode("Upper joint rotate");
+    upperJointRotate.setRotation(Quat.rotateAroundZ(DEFAULT_UPPER_JOINT_ANGLE_Z));
 
     NameNode upperJoint = new NameNode("Upper joint");
     Mat4 m = Mat4Transform.scale(jointRadius, jointRadius, jointRadius);
@@ -506,8 +653,8 @@ public class Lamp {
     ModelNode upperBodyModel = new ModelNode("Upper body model", cylinder);
 
     parent.addChild(upperJointTranslate);
-      upperJointTranslate.addChild(upperJointRotateZ);
-        upperJointRotateZ.addAllChildren(upperJoint, upperJointTransform, upperJointModel);
+      upperJointTranslate.addChild(upperJointRotate);
+        upperJointRotate.addAllChildren(upperJoint, upperJointTransform, upperJointModel);
           createTail(upperJoint);
           upperJoint.addChild(upperBodyTranslate);
             upperBodyTranslate.addAllChildren(upperBody, upperBodyTransform, upperBodyModel);
@@ -527,13 +674,9 @@ public class Lamp {
     TransformNode headJointTranslate = new TransformNode("Head joint translate",
         Mat4Transform.translate(0, upperBodyHeight / 4, 0));
 
-    // Left right rotation
-    headJointRotateY = new TransformNode("Head joint rotate Y",
-        Mat4Transform.rotateAroundY(DEFAULT_HEAD_JOINT_ANGLE_Y));
-
-    // Up down rotation
-    headJointRotateZ = new TransformNode("Head joint rotate Z",
-            Mat4Transform.rotateAroundZ(DEFAULT_HEAD_JOINT_ANGLE_Z));
+    // Left right rotation, then up down rotation
+    headJointRotate = new TRSTransformNode("Head joint rotate");
+    headJointRotate.setRotation(rotateYZ(DEFAULT_HEAD_JOINT_ANGLE_Y, DEFAULT_HEAD_JOINT_ANGLE_Z));
 
     NameNode headJoint = new NameNode("Head joint");
     Mat4 m = Mat4Transform.scale(HEAD_JOINT_RADIUS, HEAD_JOINT_RADIUS, HEAD_JOINT_RADIUS);
@@ -552,14 +695,13 @@ public class Lamp {
     ModelNode backHeadModel = new ModelNode("Back head model", cylinder);
 
     parent.addChild(headJointTranslate);
-      headJointTranslate.addChild(headJointRotateY);
-        headJointRotateY.addChild(headJointRotateZ);
-          headJointRotateZ.addAllChildren(headJoint, headJointTransform, headJointModel);
-            headJoint.addChild(backHeadTranslate);
-              backHeadTranslate.addChild(backHeadRotate);
-                backHeadRotate.addAllChildren(backHead, backHeadTranform, backHeadModel);
-                  createEars(backHead, BACK_HEAD_RADIUS);
-                  createFrontHead(backHead);
+      headJointTranslate.addChild(headJointRotate);
+        headJointRotate.addAllChildren(headJoint, headJointTransform, headJointModel);
+          headJoint.addChild(backHeadTranslate);
+            backHeadTranslate.addChild(backHeadRotate);
+              backHeadRotate.addAllChildren(backHead, backHeadTranform, backHeadModel);
+                createEars(backHead, BACK_HEAD_RADIUS);
+                createFrontHead(backHead);
   }
 
   /**
@@ -702,13 +844,4 @@ public class Lamp {
       upperTailVTranslate.addAllChildren(upperTailV, upperTailTransformV, upperTailModelV);
         upperTailV.addAllChildren(upperTailH, upperTailTransformH, upperTailModelH);
   }
-
-  /**
-   * Get the elapsed time in seconds
-   *
-   * @return The elapsed time in seconds
-   */
-  private double getSeconds() {
-    return System.currentTimeMillis() / 1000.0;
-  }
 }
@@ -16,22 +16,28 @@ public final class Cylinder {
   private static final int XLONG = 30;
   private static final int YLAT = 4;
 
-  public static final float[] vertices = createVertices();
-  public static final int[] indices = createIndices();
+  public static final float[] vertices = createVertices(XLONG);
+  public static final int[] indices = createIndices(XLONG);
 
-  private static float[] createVertices() {
+  /**
+   * Creates the vertices of a cylinder, coarser cylinders are levels of detail
+   *
+   * @param xlong Vertices around the cylinder, the first and last overlap
+   * @return Cylinder vertices
+   */
+  public static float[] createVertices(int xlong) {
     double r = 0.5;
     int step = 8;
-    float[] vertices = new float[XLONG * YLAT * step + 2 * step];
+    float[] vertices = new float[xlong * YLAT * step + 2 * step];
 
     for (int j = 0; j < YLAT; ++j) {
       double b = Math.toRadians(-90 + 180 * (double) (j) / (YLAT - 1));
-      for (int i = 0; i < XLONG + 2; ++i) {
-        double a = Math.toRadians(360 * (double) (i) / (XLONG - 1));
+      for (int i = 0; i < xlong + 2; ++i) {
+        double a = Math.toRadians(360 * (double) (i) / (xlong - 1));
         double x = Math.cos(b) * Math.sin(a);
         double y = Math.sin(b);
         double z = Math.cos(b) * Math.cos(a);
-        int base = j * XLONG * step;
+        int base = j * xlong * step;
 
         // Top and bottom cover
         if (j == 0 || j == YLAT - 1) {
@@ -43,7 +49,7 @@ public final class Cylinder {
           vertices[base + i * step + 3] = (float) x;
           vertices[base + i * step + 4] = (float) y;
           vertices[base + i * step + 5] = (float) z;
-          vertices[base + i * step + 6] = (float) (i) / (float) (XLONG - 1);
+          vertices[base + i * step + 6] = (float) (i) / (float) (xlong - 1);
           vertices[base + i * step + 7] = (float) (j) / (float) (YLAT - 1);
         }
       }
@@ -52,17 +58,23 @@ public final class Cylinder {
     return vertices;
   }
 
-  private static int[] createIndices() {
-    int[] indices = new int[XLONG * YLAT * 6];
+  /**
+   * Creates the indices of a cylinder of createVertices()
+   *
+   * @param xlong Vertices around the cylinder
+   * @return Cylinder indices
+   */
+  public static int[] createIndices(int xlong) {
+    int[] indices = new int[xlong * YLAT * 6];
     for (int j = 0; j < YLAT; ++j) {
-      for (int i = 0; i < XLONG; ++i) {
-        int base = j * XLONG * 6;
-        indices[base + i * 6] = j * XLONG + i;
-        indices[base + i * 6 + 1] = j * XLONG + i + 1;
-        indices[base + i * 6 + 2] = (j + 1) * XLONG + i + 1;
-        indices[base + i * 6 + 3] = j * XLONG + i;
-        indices[base + i * 6 + 4] = (j + 1) * XLONG + i + 1;
-        indices[base + i * 6 + 5] = (j + 1) * XLONG + i;
+      for (int i = 0; i < xlong; ++i) {
+        int base = j * xlong * 6;
+        indices[base + i * 6] = j * xlong + i;
+        indices[base + i * 6 + 1] = j * xlong + i + 1;
+        indices[base + i * 6 + 2] = (j + 1) * xlong + i + 1;
+        indices[base + i * 6 + 3] = j * xlong + i;
+        indices[base + i * 6 + 4] = (j + 1) * xlong + i + 1;
+        indices[base + i * 6 + 5] = (j + 1) * xlong + i;
       }
     }
 
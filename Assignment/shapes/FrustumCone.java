@@ -20,14 +20,24 @@ public class FrustumCone {
    * @return Frustum cone vertices
    */
   public static float[] createVertices(boolean isForLamp) {
+    return createVertices(isForLamp, XLONG);
+  }
+
+  /**
+   * Create an array of cone vertices, coarser cones are levels of detail
+   *
+   * @param xlong Vertices around the cone, the first and last overlap
+   * @return Frustum cone vertices
+   */
+  public static float[] createVertices(boolean isForLamp, int xlong) {
     double r = 0.5;
     int step = 8;
-    float[] vertices = new float[XLONG * YLAT * step];
+    float[] vertices = new float[xlong * YLAT * step];
 
     for (int j = 0; j < YLAT; ++j) {
       double b = Math.toRadians(180 * (double) (j) / (YLAT - 1));
-      for (int i = 0; i < XLONG; ++i) {
-        double a = Math.toRadians(360 * (double) (i) / (XLONG - 1));
+      for (int i = 0; i < xlong; ++i) {
+        double a = Math.toRadians(360 * (double) (i) / (xlong - 1));
         double x = Math.cos(b) * Math.cos(a);
         double y = Math.sin(b);
         double z = Math.cos(b) * Math.sin(a);
@@ -37,14 +47,14 @@ public class FrustumCone {
           z *= 1.5;
         }
 
-        int base = j * XLONG * step;
+        int base = j * xlong * step;
         vertices[base + i * step] = (float) (r * x);
         vertices[base + i * step + 1] = (float) (r * y);
         vertices[base + i * step + 2] = (float) (r * z);
         vertices[base + i * step + 3] = (float) x;
         vertices[base + i * step + 4] = (float) y;
         vertices[base + i * step + 5] = (float) z;
-        vertices[base + i * step + 6] = (float) (i) / (float) (XLONG - 1);
+        vertices[base + i * step + 6] = (float) (i) / (float) (xlong - 1);
         vertices[base + i * step + 7] = (float) (j) / (float) (YLAT - 1);
       }
     }
@@ -58,23 +68,33 @@ public class FrustumCone {
    * @return Frustum cone indices
    */
   public static int[] createIndices(boolean hasCover) {
-    int[] indices = new int[(XLONG - 1) * YLAT * 6];
+    return createIndices(hasCover, XLONG);
+  }
+
+  /**
+   * Create an array of cone indices of createVertices()
+   *
+   * @param xlong Vertices around the cone
+   * @return Frustum cone indices
+   */
+  public static int[] createIndices(boolean hasCover, int xlong) {
+    int[] indices = new int[(xlong - 1) * YLAT * 6];
     for (int j = 0; j < YLAT - 1; ++j) {
-      for (int i = 0; i < XLONG - 1; ++i) {
-        int base = j * (XLONG - 1) * 6;
-        indices[base + i * 6] = j * XLONG + i;
-        indices[base + i * 6 + 1] = j * XLONG + i + 1;
-        indices[base + i * 6 + 2] = (j + 1) * XLONG + i + 1;
-        indices[base + i * 6 + 3] = j * XLONG + i;
-        indices[base + i * 6 + 4] = (j + 1) * XLONG + i + 1;
-        indices[base + i * 6 + 5] = (j + 1) * XLONG + i;
+      for (int i = 0; i < xlong - 1; ++i) {
+        int base = j * (xlong - 1) * 6;
+        indices[base + i * 6] = j * xlong + i;
+        indices[base + i * 6 + 1] = j * xlong + i + 1;
+        indices[base + i * 6 + 2] = (j + 1) * xlong + i + 1;
+        indices[base + i * 6 + 3] = j * xlong + i;
+        indices[base + i * 6 + 4] = (j + 1) * xlong + i + 1;
+        indices[base + i * 6 + 5] = (j + 1) * xlong + i;
       }
     }
 
     // Bottom cover
     if (hasCover) {
-      for (int i = 0; i < XLONG - 1; i++) {
-        int base = (XLONG - 1) * (YLAT - 1) * 6;
+      for (int i = 0; i < xlong - 1; i++) {
+        int base = (xlong - 1) * (YLAT - 1) * 6;
         indices[base + i * 3] = i;
         indices[base + i * 3 + 1] = i + 1;
         indices[base + i * 3 + 2] = vertices.length - 15;
@@ -15,30 +15,37 @@ public final class Sphere {
   private static final int XLONG = 30;
   private static final int YLAT = 30;
 
-  public static final float[] vertices = createVertices();
-  public static final int[] indices = createIndices();
+  public static final float[] vertices = createVertices(XLONG, YLAT);
+  public static final int[] indices = createIndices(XLONG, YLAT);
 
-  private static float[] createVertices() {
+  /**
+   * Creates the vertices of a sphere, coarser spheres are levels of detail
+   *
+   * @param xlong Vertices around each latitude, the first and last overlap
+   * @param ylat Vertices from pole to pole
+   * @return Sphere vertices
+   */
+  public static float[] createVertices(int xlong, int ylat) {
     double r = 0.5;
     int step = 8;
-    float[] vertices = new float[XLONG * YLAT * step];
+    float[] vertices = new float[xlong * ylat * step];
 
-    for (int j = 0; j < YLAT; ++j) {
-      double b = Math.toRadians(-90 + 180 * (double) (j) / (YLAT - 1));
-      for (int i = 0; i < XLONG; ++i) {
-        double a = Math.toRadians(360 * (double) (i) / (XLONG - 1));
+    for (int j = 0; j < ylat; ++j) {
+      double b = Math.toRadians(-90 + 180 * (double) (j) / (ylat - 1));
+      for (int i = 0; i < xlong; ++i) {
+        double a = Math.toRadians(360 * (double) (i) / (xlong - 1));
         double x = Math.cos(b) * Math.sin(a);
         double y = Math.sin(b);
         double z = Math.cos(b) * Math.cos(a);
-        int base = j * XLONG * step;
+        int base = j * xlong * step;
         vertices[base + i * step] = (float) (r * x);
         vertices[base + i * step + 1] = (float) (r * y);
         vertices[base + i * step + 2] = (float) (r * z);
         vertices[base + i * step + 3] = (float) x;
         vertices[base + i * step + 4] = (float) y;
         vertices[base + i * step + 5] = (float) z;
-        vertices[base + i * step + 6] = (float) (i) / (float) (XLONG - 1);
-        vertices[base + i * step + 7] = (float) (j) / (float) (YLAT - 1);
+        vertices[base + i * step + 6] = (float) (i) / (float) (xlong - 1);
+        vertices[base + i * step + 7] = (float) (j) / (float) (ylat - 1);
       }
     }
     return vertices;
@@ -49,17 +56,24 @@ public final class Sphere {
     //}
   }
 
-  private static int[] createIndices() {
-    int[] indices = new int[(XLONG - 1) * (YLAT - 1) * 6];
-    for (int j = 0; j < YLAT - 1; ++j) {
-      for (int i = 0; i < XLONG - 1; ++i) {
-        int base = j * (XLONG - 1) * 6;
-        indices[base + i * 6] = j * XLONG + i;
-        indices[base + i * 6 + 1] = j * XLONG + i + 1;
-        indices[base + i * 6 + 2] = (j + 1) * XLONG + i + 1;
-        indices[base + i * 6 + 3] = j * XLONG + i;
-        indices[base + i * 6 + 4] = (j + 1) * XLONG + i + 1;
-        indices[base + i * 6 + 5] = (j + 1) * XLONG + i;
+  /**
+   * Creates the indices of a sphere of createVertices()
+   *
+   * @param xlong Vertices around each latitude
+   * @param ylat Vertices from pole to pole
+   * @return Sphere indices
+   */
+  public static int[] createIndices(int xlong, int ylat) {
+    int[] indices = new int[(xlong - 1) * (ylat - 1) * 6];
+    for (int j = 0; j < ylat - 1; ++j) {
+      for (int i = 0; i < xlong - 1; ++i) {
+        int base = j * (xlong - 1) * 6;
+        indices[base + i * 6] = j * xlong + i;
+        indices[base + i * 6 + 1] = j * xlong + i + 1;
+        indices[base + i * 6 + 2] = (j + 1) * xlong + i + 1;
+        indices[base + i * 6 + 3] = j * xlong + i;
+        indices[base + i * 6 + 4] = (j + 1) * xlong + i + 1;
+        indices[base + i * 6 + 5] = (j + 1) * xlong + i;
       }
     }
     return indices;